@@ -27,6 +27,7 @@ package sonia.scm;
 //~--- JDK imports ------------------------------------------------------------
 
 import java.util.Collection;
+import java.util.function.Consumer;
 
 /**
  * Generic data access object. A DAO does not check the permission of the
@@ -86,6 +87,34 @@ public interface GenericDAO<T>
    */
   public void delete(T item);
 
+  /**
+   * Executes multiple modifications as one batch. Backends which have to write all of their items at once, should
+   * persist the whole batch with a single write. The modifications of the batch are persisted, when the method
+   * returns. The default implementation applies every modification on its own.
+   *
+   * @param modifications consumer which applies the modifications to the batch
+   *
+   * @since 2.15.0
+   */
+  default void batch(Consumer<Batch<T>> modifications) {
+    modifications.accept(new Batch<T>() {
+      @Override
+      public void add(T item) {
+        GenericDAO.this.add(item);
+      }
+
+      @Override
+      public void modify(T item) {
+        GenericDAO.this.modify(item);
+      }
+
+      @Override
+      public void delete(T item) {
+        GenericDAO.this.delete(item);
+      }
+    });
+  }
+
   //~--- get methods ----------------------------------------------------------
 
   /**
@@ -107,4 +136,35 @@ public interface GenericDAO<T>
    */
   public Collection<T> getAll();
 
+  /**
+   * Modifications which are executed by {@link GenericDAO#batch(Consumer)}.
+   *
+   * @param <T> type of object
+   *
+   * @since 2.15.0
+   */
+  interface Batch<T> {
+
+    /**
+     * Persists a new item with the batch.
+     *
+     * @param item item to persist
+     */
+    void add(T item);
+
+    /**
+     * Updates an existing item with the batch.
+     *
+     * @param item item to update
+     */
+    void modify(T item);
+
+    /**
+     * Removes the specified item with the batch.
+     *
+     * @param item item to remove
+     */
+    void delete(T item);
+  }
+
 }
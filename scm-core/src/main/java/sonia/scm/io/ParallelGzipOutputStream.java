@@ -0,0 +1,247 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.io;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * {@link OutputStream} which writes gzip compressed data and compresses independent blocks of the input in parallel.
+ * Every block is deflated with the last 32 KiB of the previous block as dictionary and ends with a sync flush, so
+ * that the blocks can be concatenated to a single deflate stream. The result is a regular gzip file with one member,
+ * which can be read by every gzip implementation. The compression ratio is nearly the same as with a single
+ * threaded gzip stream.
+ * <p>
+ * By default the blocks are compressed by a shared pool with one thread per available processor. The block size can
+ * be configured in bytes with the system property {@code scm.gzip.blockSize} (default 1 MiB).
+ *
+ * @since 2.15.0
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+  private static final int DEFAULT_BLOCK_SIZE = Integer.getInteger("scm.gzip.blockSize", 1024 * 1024);
+  private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+  private static final ExecutorService DEFAULT_EXECUTOR = Executors.newFixedThreadPool(
+    THREADS, new ThreadFactoryBuilder().setNameFormat("ParallelGzip-%d").setDaemon(true).build()
+  );
+
+  private static final int DICTIONARY_SIZE = 32 * 1024;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final byte[] HEADER = {
+    (byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+  };
+
+  private final OutputStream out;
+  private final ExecutorService executor;
+  private final int blockSize;
+  private final int level;
+  private final int maxPendingBlocks;
+
+  private final CRC32 crc = new CRC32();
+  private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+  private byte[] block;
+  private int count;
+  private byte[] dictionary;
+  private long size;
+  private boolean headerWritten;
+  private boolean finished;
+
+  /**
+   * Creates a new stream with the default compression level, block size and executor.
+   *
+   * @param out underlying stream
+   */
+  public ParallelGzipOutputStream(OutputStream out) {
+    this(out, DEFAULT_EXECUTOR, THREADS, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  @VisibleForTesting
+  ParallelGzipOutputStream(OutputStream out, ExecutorService executor, int threads, int blockSize, int level) {
+    this.out = out;
+    this.executor = executor;
+    this.blockSize = Math.max(DICTIONARY_SIZE, blockSize);
+    this.level = level;
+    this.maxPendingBlocks = Math.max(2, threads * 2);
+    this.block = new byte[this.blockSize];
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[]{(byte) b}, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (finished) {
+      throw new IOException("stream is already finished");
+    }
+    while (len > 0) {
+      if (count == blockSize) {
+        submit(false);
+      }
+      int n = Math.min(len, blockSize - count);
+      System.arraycopy(b, off, block, count, n);
+      count += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  /**
+   * Compresses the remaining data and writes the gzip trailer, without closing the underlying stream.
+   *
+   * @throws IOException if the data could not be written
+   */
+  public void finish() throws IOException {
+    if (!finished) {
+      submit(true);
+      while (!pending.isEmpty()) {
+        writeNext();
+      }
+      writeInt((int) crc.getValue());
+      writeInt((int) size);
+      finished = true;
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      finish();
+    } finally {
+      for (Future<byte[]> future : pending) {
+        future.cancel(true);
+      }
+      out.close();
+    }
+  }
+
+  private void submit(boolean last) throws IOException {
+    if (!headerWritten) {
+      out.write(HEADER);
+      headerWritten = true;
+    }
+
+    byte[] data = block;
+    int length = count;
+    byte[] dict = dictionary;
+
+    crc.update(data, 0, length);
+    size += length;
+    if (length >= DICTIONARY_SIZE) {
+      dictionary = Arrays.copyOfRange(data, length - DICTIONARY_SIZE, length);
+    } else if (length > 0) {
+      dictionary = concat(dictionary, data, length);
+    }
+
+    pending.add(executor.submit(() -> deflate(data, length, dict, last)));
+    block = new byte[blockSize];
+    count = 0;
+
+    while (pending.size() >= maxPendingBlocks) {
+      writeNext();
+    }
+  }
+
+  private static byte[] concat(byte[] dictionary, byte[] data, int length) {
+    if (dictionary == null) {
+      return Arrays.copyOf(data, length);
+    }
+    int keep = Math.min(dictionary.length, DICTIONARY_SIZE - length);
+    byte[] result = new byte[keep + length];
+    System.arraycopy(dictionary, dictionary.length - keep, result, 0, keep);
+    System.arraycopy(data, 0, result, keep, length);
+    return result;
+  }
+
+  private void writeNext() throws IOException {
+    Future<byte[]> future = pending.poll();
+    try {
+      out.write(future.get());
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted during compression");
+    } catch (ExecutionException ex) {
+      throw new IOException("failed to compress block", ex.getCause());
+    }
+  }
+
+  private byte[] deflate(byte[] data, int length, byte[] dict, boolean last) {
+    Deflater deflater = new Deflater(level, true);
+    try {
+      if (dict != null) {
+        deflater.setDictionary(dict);
+      }
+      deflater.setInput(data, 0, length);
+      ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(BUFFER_SIZE, length / 2));
+      byte[] buffer = new byte[BUFFER_SIZE];
+      if (last) {
+        deflater.finish();
+        while (!deflater.finished()) {
+          int n = deflater.deflate(buffer);
+          output.write(buffer, 0, n);
+        }
+      } else {
+        int n;
+        do {
+          n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+          output.write(buffer, 0, n);
+        } while (n == buffer.length);
+      }
+      return output.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private void writeInt(int value) throws IOException {
+    out.write(value & 0xff);
+    out.write((value >> 8) & 0xff);
+    out.write((value >> 16) & 0xff);
+    out.write((value >> 24) & 0xff);
+  }
+}
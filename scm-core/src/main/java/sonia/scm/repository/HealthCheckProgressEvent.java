@@ -0,0 +1,64 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository;
+
+import lombok.Value;
+import sonia.scm.event.Event;
+
+/**
+ * This event is fired during a health check of all repositories. It is fired after every batch of checked
+ * repositories and once more, when all repositories are checked.
+ *
+ * @since 2.15.0
+ */
+@Event
+@Value
+public class HealthCheckProgressEvent {
+
+  /**
+   * Number of repositories which are part of the run.
+   */
+  int total;
+
+  /**
+   * Number of repositories which were checked so far.
+   */
+  int checked;
+
+  /**
+   * Number of repositories which were skipped so far, because they have not changed since their last check.
+   */
+  int skipped;
+
+  /**
+   * Number of checked repositories which are unhealthy.
+   */
+  int unhealthy;
+
+  /**
+   * {@code true} if the run has finished.
+   */
+  boolean finished;
+}
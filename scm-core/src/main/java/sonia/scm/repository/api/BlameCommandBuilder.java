@@ -86,14 +86,16 @@ public final class BlameCommandBuilder
    * only be called from the {@link RepositoryService}.
    *
    * @param cacheManager cache manager
+   * @param cacheGenerations cache generations of the repositories
    * @param blameCommand implementation of the {@link BlameCommand}
    * @param repository repository to query
    * @param preProcessorUtil
    */
-  BlameCommandBuilder(CacheManager cacheManager, BlameCommand blameCommand,
+  BlameCommandBuilder(CacheManager cacheManager, RepositoryCacheGenerations cacheGenerations, BlameCommand blameCommand,
                       Repository repository, PreProcessorUtil preProcessorUtil)
   {
     this.cache = cacheManager.getCache(CACHE_NAME);
+    this.cacheGenerations = cacheGenerations;
     this.blameCommand = blameCommand;
     this.repository = repository;
     this.preProcessorUtil = preProcessorUtil;
@@ -150,7 +152,7 @@ public final class BlameCommandBuilder
     }
     else
     {
-      CacheKey key = new CacheKey(repository, requestClone);
+      CacheKey key = new CacheKey(repository, cacheGenerations.get(repository), requestClone);
 
       result = cache.get(key);
 
@@ -254,11 +256,13 @@ public final class BlameCommandBuilder
      *
      *
      * @param repository
+     * @param generation
      * @param request
      */
-    public CacheKey(Repository repository, BlameCommandRequest request)
+    public CacheKey(Repository repository, long generation, BlameCommandRequest request)
     {
       this.repositoryId = repository.getId();
+      this.generation = generation;
       this.request = request;
     }
 
@@ -288,7 +292,8 @@ public final class BlameCommandBuilder
       final CacheKey other = (CacheKey) obj;
 
       return Objects.equal(repositoryId, other.repositoryId)
-             && Objects.equal(request, other.request);
+        && generation == other.generation
+        && Objects.equal(request, other.request);
     }
 
     /**
@@ -300,7 +305,7 @@ public final class BlameCommandBuilder
     @Override
     public int hashCode()
     {
-      return Objects.hashCode(repositoryId, request);
+      return Objects.hashCode(repositoryId, generation, request);
     }
 
     //~--- get methods --------------------------------------------------------
@@ -322,6 +327,9 @@ public final class BlameCommandBuilder
     /** repository id */
     private final String repositoryId;
 
+    /** cache generation of the repository */
+    private final long generation;
+
     /** request object */
     private final BlameCommandRequest request;
   }
@@ -335,6 +343,9 @@ public final class BlameCommandBuilder
   /** the cache */
   private final Cache<CacheKey, BlameResult> cache;
 
+  /** cache generations of the repositories */
+  private final RepositoryCacheGenerations cacheGenerations;
+
   /** disable change */
   private boolean disableCache = false;
 
@@ -71,13 +71,15 @@ public final class BranchesCommandBuilder
    * only be called from the {@link RepositoryService}.
    *
    * @param cacheManager cache manager
+   * @param cacheGenerations cache generations of the repositories
    * @param branchesCommand implementation of the {@link BranchesCommand}
    * @param repository repository to query
    */
-  BranchesCommandBuilder(CacheManager cacheManager,
+  BranchesCommandBuilder(CacheManager cacheManager, RepositoryCacheGenerations cacheGenerations,
     BranchesCommand branchesCommand, Repository repository)
   {
     this.cache = cacheManager.getCache(CACHE_NAME);
+    this.cacheGenerations = cacheGenerations;
     this.branchesCommand = branchesCommand;
     this.repository = repository;
   }
@@ -108,7 +110,7 @@ public final class BranchesCommandBuilder
     }
     else
     {
-      CacheKey key = new CacheKey(repository);
+      CacheKey key = new CacheKey(repository, cacheGenerations.get(repository));
 
       branches = cache.get(key);
 
@@ -185,10 +187,12 @@ public final class BranchesCommandBuilder
      *
      *
      * @param repository
+     * @param generation
      */
-    public CacheKey(Repository repository)
+    public CacheKey(Repository repository, long generation)
     {
       this.repositoryId = repository.getId();
+      this.generation = generation;
     }
 
     //~--- methods ------------------------------------------------------------
@@ -216,7 +220,8 @@ public final class BranchesCommandBuilder
 
       final CacheKey other = (CacheKey) obj;
 
-      return Objects.equal(repositoryId, other.repositoryId);
+      return Objects.equal(repositoryId, other.repositoryId)
+        && generation == other.generation;
     }
 
     /**
@@ -228,7 +233,7 @@ public final class BranchesCommandBuilder
     @Override
     public int hashCode()
     {
-      return Objects.hashCode(repositoryId);
+      return Objects.hashCode(repositoryId, generation);
     }
 
     //~--- get methods --------------------------------------------------------
@@ -249,6 +254,9 @@ public final class BranchesCommandBuilder
 
     /** repository id */
     private final String repositoryId;
+
+    /** cache generation of the repository */
+    private final long generation;
   }
 
 
@@ -260,6 +268,9 @@ public final class BranchesCommandBuilder
   /** cache for branches */
   private final Cache<CacheKey, Branches> cache;
 
+  /** cache generations of the repositories */
+  private final RepositoryCacheGenerations cacheGenerations;
+
   /** disable cache */
   private boolean disableCache = false;
 
@@ -84,15 +84,17 @@ public final class BrowseCommandBuilder
    * only be called from the {@link RepositoryService}.
    *
    * @param cacheManager cache manager
+   * @param cacheGenerations cache generations of the repositories
    * @param browseCommand implementation of the {@link BrowseCommand}
    * @param browseCommand
    * @param repository repository to query
    * @param preProcessorUtil
    */
-  BrowseCommandBuilder(CacheManager cacheManager, BrowseCommand browseCommand,
+  BrowseCommandBuilder(CacheManager cacheManager, RepositoryCacheGenerations cacheGenerations, BrowseCommand browseCommand,
     Repository repository, PreProcessorUtil preProcessorUtil)
   {
     this.cache = cacheManager.getCache(CACHE_NAME);
+    this.cacheGenerations = cacheGenerations;
     this.browseCommand = browseCommand;
     this.repository = repository;
     this.preProcessorUtil = preProcessorUtil;
@@ -140,7 +142,7 @@ public final class BrowseCommandBuilder
     }
     else
     {
-      CacheKey key = new CacheKey(repository, request);
+      CacheKey key = new CacheKey(repository, cacheGenerations.get(repository), request);
 
       result = cache.get(key);
 
@@ -322,7 +324,7 @@ public final class BrowseCommandBuilder
 
   private void updateCache(BrowserResult updatedResult) {
     if (!disableCache) {
-      CacheKey key = new CacheKey(repository, request);
+      CacheKey key = new CacheKey(repository, cacheGenerations.get(repository), request);
       cache.put(key, updatedResult);
     }
   }
@@ -349,11 +351,13 @@ public final class BrowseCommandBuilder
      *
      *
      * @param repository
+     * @param generation
      * @param request
      */
-    public CacheKey(Repository repository, BrowseCommandRequest request)
+    public CacheKey(Repository repository, long generation, BrowseCommandRequest request)
     {
       this.repositoryId = repository.getId();
+      this.generation = generation;
       this.request = request;
     }
 
@@ -383,6 +387,7 @@ public final class BrowseCommandBuilder
       final CacheKey other = (CacheKey) obj;
 
       return Objects.equal(repositoryId, other.repositoryId)
+        && generation == other.generation
         && Objects.equal(request, other.request);
     }
 
@@ -395,7 +400,7 @@ public final class BrowseCommandBuilder
     @Override
     public int hashCode()
     {
-      return Objects.hashCode(repositoryId, request);
+      return Objects.hashCode(repositoryId, generation, request);
     }
 
     //~--- get methods --------------------------------------------------------
@@ -417,6 +422,9 @@ public final class BrowseCommandBuilder
     /** repository id */
     private final String repositoryId;
 
+    /** cache generation of the repository */
+    private final long generation;
+
     /** request object */
     private final BrowseCommandRequest request;
   }
@@ -430,6 +438,9 @@ public final class BrowseCommandBuilder
   /** cache */
   private final Cache<CacheKey, BrowserResult> cache;
 
+  /** cache generations of the repositories */
+  private final RepositoryCacheGenerations cacheGenerations;
+
   /** disables the cache */
   private boolean disableCache = false;
 
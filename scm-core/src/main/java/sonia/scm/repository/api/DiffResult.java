@@ -24,9 +24,39 @@
     
 package sonia.scm.repository.api;
 
+import java.util.Optional;
+
 public interface DiffResult extends Iterable<DiffFile> {
 
   String getOldRevision();
 
   String getNewRevision();
+
+  /**
+   * Returns {@code true}, if the result does not contain all files of the diff, because the files were limited
+   * with {@link DiffResultCommandBuilder#setLimit(Integer)}.
+   *
+   * @since 2.15.0
+   */
+  default boolean isPartial() {
+    return false;
+  }
+
+  /**
+   * Returns the number of files which were skipped at the beginning of the diff.
+   *
+   * @since 2.15.0
+   */
+  default int getOffset() {
+    return 0;
+  }
+
+  /**
+   * Returns the maximum number of files of this result, if the files were limited.
+   *
+   * @since 2.15.0
+   */
+  default Optional<Integer> getLimit() {
+    return Optional.empty();
+  }
 }
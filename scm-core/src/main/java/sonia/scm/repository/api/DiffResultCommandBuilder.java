@@ -44,6 +44,31 @@ public class DiffResultCommandBuilder extends AbstractDiffCommandBuilder<DiffRes
     this.diffResultCommand = diffResultCommand;
   }
 
+  /**
+   * Skips the given number of files at the beginning of the diff.
+   *
+   * @param offset number of files to skip
+   * @return {@code this}
+   * @since 2.15.0
+   */
+  public DiffResultCommandBuilder setOffset(Integer offset) {
+    request.setOffset(offset);
+    return this;
+  }
+
+  /**
+   * Limits the number of files of the diff result. Use {@link DiffResult#isPartial()} to check, if there are more
+   * files, which can be retrieved with the next offset.
+   *
+   * @param limit maximum number of files
+   * @return {@code this}
+   * @since 2.15.0
+   */
+  public DiffResultCommandBuilder setLimit(Integer limit) {
+    request.setLimit(limit);
+    return this;
+  }
+
   /**
    * Returns the content of the difference as parsed objects.
    *
@@ -99,15 +99,17 @@ public final class LogCommandBuilder
    * Constructs a new {@link LogCommandBuilder}, this constructor should
    * only be called from the {@link RepositoryService}.
    *  @param cacheManager cache manager
+   * @param cacheGenerations cache generations of the repositories
    * @param logCommand implementation of the {@link LogCommand}
    * @param repository repository to query
    * @param preProcessorUtil
    * @param supportedFeatures The supported features of the provider
    */
-  LogCommandBuilder(CacheManager cacheManager, LogCommand logCommand,
+  LogCommandBuilder(CacheManager cacheManager, RepositoryCacheGenerations cacheGenerations, LogCommand logCommand,
                     Repository repository, PreProcessorUtil preProcessorUtil, Set<Feature> supportedFeatures)
   {
     this.cache = cacheManager.getCache(CACHE_NAME);
+    this.cacheGenerations = cacheGenerations;
     this.logCommand = logCommand;
     this.repository = repository;
     this.preProcessorUtil = preProcessorUtil;
@@ -173,7 +175,7 @@ public final class LogCommandBuilder
     }
     else
     {
-      CacheKey key = new CacheKey(repository, id);
+      CacheKey key = new CacheKey(repository, cacheGenerations.get(repository), id);
       ChangesetPagingResult cpr = cache.get(key);
 
       if (cpr == null)
@@ -232,7 +234,7 @@ public final class LogCommandBuilder
     }
     else
     {
-      CacheKey key = new CacheKey(repository, request);
+      CacheKey key = new CacheKey(repository, cacheGenerations.get(repository), request);
 
       cpr = cache.get(key);
 
@@ -429,11 +431,13 @@ public final class LogCommandBuilder
      *
      *
      * @param repository
+     * @param generation
      * @param request
      */
-    public CacheKey(Repository repository, LogCommandRequest request)
+    public CacheKey(Repository repository, long generation, LogCommandRequest request)
     {
       this.repositoryId = repository.getId();
+      this.generation = generation;
       this.request = request;
       this.changesetId = null;
     }
@@ -444,11 +448,13 @@ public final class LogCommandBuilder
      *
      *
      * @param repository
+     * @param generation
      * @param changesetId
      */
-    public CacheKey(Repository repository, String changesetId)
+    public CacheKey(Repository repository, long generation, String changesetId)
     {
       this.repositoryId = repository.getId();
+      this.generation = generation;
       this.changesetId = changesetId;
       this.request = null;
     }
@@ -479,6 +485,7 @@ public final class LogCommandBuilder
       final CacheKey other = (CacheKey) obj;
 
       return Objects.equal(repositoryId, other.repositoryId)
+        && generation == other.generation
         && Objects.equal(changesetId, other.changesetId)
         && Objects.equal(request, other.request);
     }
@@ -492,7 +499,7 @@ public final class LogCommandBuilder
     @Override
     public int hashCode()
     {
-      return Objects.hashCode(repositoryId, changesetId, request);
+      return Objects.hashCode(repositoryId, generation, changesetId, request);
     }
 
     //~--- get methods --------------------------------------------------------
@@ -517,6 +524,9 @@ public final class LogCommandBuilder
     /** Field description */
     private final String repositoryId;
 
+    /** cache generation of the repository */
+    private final long generation;
+
     /** Field description */
     private final LogCommandRequest request;
   }
@@ -527,6 +537,9 @@ public final class LogCommandBuilder
   /** cache for changesets */
   private final Cache<CacheKey, ChangesetPagingResult> cache;
 
+  /** cache generations of the repositories */
+  private final RepositoryCacheGenerations cacheGenerations;
+
   /** Implementation of the log command */
   private final LogCommand logCommand;
 
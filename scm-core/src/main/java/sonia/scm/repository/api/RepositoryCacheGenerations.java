@@ -0,0 +1,80 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository.api;
+
+import sonia.scm.repository.Repository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a generation counter for each repository, which is part of the keys of the repository caches
+ * (log, browse, blame, tags and branches). Incrementing the generation of a repository invalidates all cached
+ * entries of the repository in constant time, because the old keys are never requested again. The stale entries
+ * age out through the normal eviction of the caches.
+ */
+final class RepositoryCacheGenerations {
+
+  private final Map<String, Long> generations = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the current cache generation of the given repository.
+   *
+   * @param repository repository
+   * @return current generation
+   */
+  long get(Repository repository) {
+    return get(repository.getId());
+  }
+
+  /**
+   * Returns the current cache generation of the repository with the given id.
+   *
+   * @param repositoryId id of the repository
+   * @return current generation
+   */
+  long get(String repositoryId) {
+    return generations.getOrDefault(repositoryId, 0L);
+  }
+
+  /**
+   * Starts a new cache generation for the repository with the given id.
+   *
+   * @param repositoryId id of the repository
+   */
+  void increment(String repositoryId) {
+    generations.merge(repositoryId, 1L, Long::sum);
+  }
+
+  /**
+   * Removes the generation of the repository with the given id. This should only be called, after all cache
+   * entries of the repository are removed.
+   *
+   * @param repositoryId id of the repository
+   */
+  void remove(String repositoryId) {
+    generations.remove(repositoryId);
+  }
+}
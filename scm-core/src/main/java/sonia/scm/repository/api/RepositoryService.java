@@ -86,6 +86,7 @@ public final class RepositoryService implements Closeable {
   private static final Logger LOG = LoggerFactory.getLogger(RepositoryService.class);
 
   private final CacheManager cacheManager;
+  private final RepositoryCacheGenerations cacheGenerations;
   private final PreProcessorUtil preProcessorUtil;
   private final RepositoryServiceProvider provider;
   private final Repository repository;
@@ -115,7 +116,32 @@ public final class RepositoryService implements Closeable {
                     @SuppressWarnings({"rawtypes", "java:S3740"}) Set<ScmProtocolProvider> protocolProviders,
                     WorkdirProvider workdirProvider,
                     @Nullable EMail eMail, RepositoryExportingCheck repositoryExportingCheck) {
+    this(cacheManager, new RepositoryCacheGenerations(), provider, repository, preProcessorUtil, protocolProviders,
+      workdirProvider, eMail, repositoryExportingCheck);
+  }
+
+  /**
+   * Constructs a new {@link RepositoryService}. This constructor should only
+   * be called from the {@link RepositoryServiceFactory}.
+   *
+   * @param cacheManager     cache manager
+   * @param cacheGenerations cache generations of the repositories
+   * @param provider         implementation for {@link RepositoryServiceProvider}
+   * @param repository       the repository
+   * @param workdirProvider  provider for workdirs
+   * @param eMail            utility to compute email addresses if missing
+   * @param repositoryExportingCheck
+   */
+  RepositoryService(CacheManager cacheManager,
+                    RepositoryCacheGenerations cacheGenerations,
+                    RepositoryServiceProvider provider,
+                    Repository repository,
+                    PreProcessorUtil preProcessorUtil,
+                    @SuppressWarnings({"rawtypes", "java:S3740"}) Set<ScmProtocolProvider> protocolProviders,
+                    WorkdirProvider workdirProvider,
+                    @Nullable EMail eMail, RepositoryExportingCheck repositoryExportingCheck) {
     this.cacheManager = cacheManager;
+    this.cacheGenerations = cacheGenerations;
     this.provider = provider;
     this.repository = repository;
     this.preProcessorUtil = preProcessorUtil;
@@ -161,7 +187,7 @@ public final class RepositoryService implements Closeable {
     LOG.debug("create blame command for repository {}",
       repository.getNamespaceAndName());
 
-    return new BlameCommandBuilder(cacheManager, provider.getBlameCommand(),
+    return new BlameCommandBuilder(cacheManager, cacheGenerations, provider.getBlameCommand(),
       repository, preProcessorUtil);
   }
 
@@ -176,7 +202,7 @@ public final class RepositoryService implements Closeable {
     LOG.debug("create branches command for repository {}",
       repository.getNamespaceAndName());
 
-    return new BranchesCommandBuilder(cacheManager,
+    return new BranchesCommandBuilder(cacheManager, cacheGenerations,
       provider.getBranchesCommand(), repository);
   }
 
@@ -207,7 +233,7 @@ public final class RepositoryService implements Closeable {
     LOG.debug("create browse command for repository {}",
       repository.getNamespaceAndName());
 
-    return new BrowseCommandBuilder(cacheManager, provider.getBrowseCommand(),
+    return new BrowseCommandBuilder(cacheManager, cacheGenerations, provider.getBrowseCommand(),
       repository, preProcessorUtil);
   }
 
@@ -298,7 +324,7 @@ public final class RepositoryService implements Closeable {
     LOG.debug("create log command for repository {}",
       repository.getNamespaceAndName());
 
-    return new LogCommandBuilder(cacheManager, provider.getLogCommand(),
+    return new LogCommandBuilder(cacheManager, cacheGenerations, provider.getLogCommand(),
       repository, preProcessorUtil, provider.getSupportedFeatures());
   }
 
@@ -381,7 +407,7 @@ public final class RepositoryService implements Closeable {
     LOG.debug("create tags command for repository {}",
       repository.getNamespaceAndName());
 
-    return new TagsCommandBuilder(cacheManager, provider.getTagsCommand(),
+    return new TagsCommandBuilder(cacheManager, cacheGenerations, provider.getTagsCommand(),
       repository);
   }
 
@@ -126,6 +126,7 @@ public final class RepositoryServiceFactory {
   private final Set<ScmProtocolProvider> protocolProviders;
   private final WorkdirProvider workdirProvider;
   private final RepositoryExportingCheck repositoryExportingCheck;
+  private final RepositoryCacheGenerations cacheGenerations = new RepositoryCacheGenerations();
 
   @Nullable
   private final EMail eMail;
@@ -203,7 +204,7 @@ public final class RepositoryServiceFactory {
     this.eMail = eMail;
     this.repositoryExportingCheck = repositoryExportingCheck;
 
-    eventBus.register(new CacheClearHook(cacheManager));
+    eventBus.register(new CacheClearHook(cacheManager, cacheGenerations));
   }
 
   /**
@@ -290,7 +291,7 @@ public final class RepositoryServiceFactory {
             repository.getName(), repository.getType());
         }
 
-        service = new RepositoryService(cacheManager, provider, repository,
+        service = new RepositoryService(cacheManager, cacheGenerations, provider, repository,
           preProcessorUtil, protocolProviders, workdirProvider, eMail, repositoryExportingCheck);
 
         break;
@@ -311,15 +312,18 @@ public final class RepositoryServiceFactory {
 
     private final Set<Cache<?, ?>> caches = Sets.newHashSet();
     private final CacheManager cacheManager;
+    private final RepositoryCacheGenerations cacheGenerations;
 
     /**
      * Constructs a new instance and collect all repository relevant
      * caches from the {@link CacheManager}.
      *
      * @param cacheManager cache manager
+     * @param cacheGenerations cache generations of the repositories
      */
-    public CacheClearHook(CacheManager cacheManager) {
+    public CacheClearHook(CacheManager cacheManager, RepositoryCacheGenerations cacheGenerations) {
       this.cacheManager = cacheManager;
+      this.cacheGenerations = cacheGenerations;
       this.caches.add(cacheManager.getCache(BlameCommandBuilder.CACHE_NAME));
       this.caches.add(cacheManager.getCache(BrowseCommandBuilder.CACHE_NAME));
       this.caches.add(cacheManager.getCache(LogCommandBuilder.CACHE_NAME));
@@ -334,7 +338,7 @@ public final class RepositoryServiceFactory {
      */
     @Subscribe
     public void onEvent(ClearRepositoryCacheEvent event) {
-      clearCaches(event.getRepository().getId());
+      invalidateCaches(event.getRepository().getId());
     }
 
     /**
@@ -351,7 +355,7 @@ public final class RepositoryServiceFactory {
       if (repository != null) {
         String id = repository.getId();
 
-        clearCaches(id);
+        invalidateCaches(id);
       }
     }
 
@@ -377,6 +381,15 @@ public final class RepositoryServiceFactory {
       cacheManager.getCache(LogCommandBuilder.CACHE_NAME).clear();
     }
 
+    /**
+     * Invalidates the cached entries of the repository by starting a new cache generation. This does not have to scan
+     * the caches, the entries of the old generation are evicted by the caches over time.
+     */
+    private void invalidateCaches(final String repositoryId) {
+      logger.debug("start new cache generation for repository id {}", repositoryId);
+      cacheGenerations.increment(repositoryId);
+    }
+
     @SuppressWarnings({"unchecked", "java:S3740", "rawtypes"})
     private void clearCaches(final String repositoryId) {
       if (logger.isDebugEnabled()) {
@@ -385,6 +398,7 @@ public final class RepositoryServiceFactory {
 
       RepositoryCacheKeyPredicate predicate = new RepositoryCacheKeyPredicate(repositoryId);
       caches.forEach(cache -> cache.removeAll(predicate));
+      cacheGenerations.remove(repositoryId);
     }
   }
 
@@ -75,13 +75,15 @@ public final class TagsCommandBuilder
    * only be called from the {@link RepositoryService}.
    *
    * @param cacheManager cache manager
+   * @param cacheGenerations cache generations of the repositories
    * @param command implementation of the {@link TagsCommand}
    * @param repository repository
    */
-  TagsCommandBuilder(CacheManager cacheManager, TagsCommand command,
+  TagsCommandBuilder(CacheManager cacheManager, RepositoryCacheGenerations cacheGenerations, TagsCommand command,
     Repository repository)
   {
     this.cache = cacheManager.getCache(CACHE_NAME);
+    this.cacheGenerations = cacheGenerations;
     this.command = command;
     this.repository = repository;
   }
@@ -111,7 +113,7 @@ public final class TagsCommandBuilder
     }
     else
     {
-      CacheKey key = new CacheKey(repository);
+      CacheKey key = new CacheKey(repository, cacheGenerations.get(repository));
 
       tags = cache.get(key);
 
@@ -192,10 +194,12 @@ public final class TagsCommandBuilder
      *
      *
      * @param repository
+     * @param generation
      */
-    public CacheKey(Repository repository)
+    public CacheKey(Repository repository, long generation)
     {
       this.repositoryId = repository.getId();
+      this.generation = generation;
     }
 
     //~--- methods ------------------------------------------------------------
@@ -223,7 +227,8 @@ public final class TagsCommandBuilder
 
       final CacheKey other = (CacheKey) obj;
 
-      return Objects.equal(repositoryId, other.repositoryId);
+      return Objects.equal(repositoryId, other.repositoryId)
+        && generation == other.generation;
     }
 
     /**
@@ -235,7 +240,7 @@ public final class TagsCommandBuilder
     @Override
     public int hashCode()
     {
-      return Objects.hashCode(repositoryId);
+      return Objects.hashCode(repositoryId, generation);
     }
 
     //~--- get methods --------------------------------------------------------
@@ -256,6 +261,9 @@ public final class TagsCommandBuilder
 
     /** repository id */
     private final String repositoryId;
+
+    /** cache generation of the repository */
+    private final long generation;
   }
 
 
@@ -264,6 +272,9 @@ public final class TagsCommandBuilder
   /** cache for changesets */
   private final Cache<CacheKey, Tags> cache;
 
+  /** cache generations of the repositories */
+  private final RepositoryCacheGenerations cacheGenerations;
+
   /** command implementation */
   private final TagsCommand command;
 
@@ -102,8 +102,48 @@ public final class DiffCommandRequest extends FileBaseCommandRequest
     return ancestorChangeset;
   }
 
+  /**
+   * Sets the number of files to skip at the beginning of a parsed diff.
+   *
+   * @since 2.15.0
+   */
+  public void setOffset(Integer offset) {
+    this.offset = offset;
+  }
+
+  /**
+   * Sets the maximum number of files of a parsed diff.
+   *
+   * @since 2.15.0
+   */
+  public void setLimit(Integer limit) {
+    this.limit = limit;
+  }
+
+  /**
+   * Returns the number of files to skip at the beginning of a parsed diff or {@code null}.
+   *
+   * @since 2.15.0
+   */
+  public Integer getOffset() {
+    return offset;
+  }
+
+  /**
+   * Returns the maximum number of files of a parsed diff or {@code null}, if the files are not limited.
+   *
+   * @since 2.15.0
+   */
+  public Integer getLimit() {
+    return limit;
+  }
+
   /** diff format */
   private DiffFormat format = DiffFormat.NATIVE;
 
   private String ancestorChangeset;
+
+  private Integer offset;
+
+  private Integer limit;
 }
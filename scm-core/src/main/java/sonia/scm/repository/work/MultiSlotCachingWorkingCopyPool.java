@@ -0,0 +1,501 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository.work;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.util.IOUtil;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Implementation of the {@link WorkingCopyPool}, which caches multiple working copies per repository. This pool is
+ * meant for instances with many concurrent modifications (like merges) on the same repositories.
+ * <br>
+ * The pool can be configured with the following system properties:
+ * <dl>
+ *   <dt>{@code scm.workingCopyPool.slotsPerRepository}</dt>
+ *   <dd>maximum number of cached directories per repository (default 3)</dd>
+ *   <dt>{@code scm.workingCopyPool.maxSize}</dt>
+ *   <dd>maximum number of cached directories of all repositories (default 32)</dd>
+ *   <dt>{@code scm.workingCopyPool.maxBytes}</dt>
+ *   <dd>maximum disk space in bytes of all cached directories, {@code 0} for no limit (default 0)</dd>
+ *   <dt>{@code scm.workingCopyPool.prewarm}</dt>
+ *   <dd>{@code false} to disable the pre-warming of busy repositories (default true)</dd>
+ * </dl>
+ * If one of the limits is exceeded, the least recently used directories are deleted.
+ * <br>
+ * Repositories for which more working copies are requested in parallel than directories are cached, are pre-warmed:
+ * When a working copy of such a repository is closed, a cached directory is copied in the background until there is
+ * one more directory than the observed number of parallel requests. Pre-warming never evicts other directories. The
+ * copies are reclaimed like any other cached directory, when they are used.
+ * <br>
+ * To use this pool, set the system property {@code scm.workingCopyPoolStrategy} to
+ * {@code sonia.scm.repository.work.MultiSlotCachingWorkingCopyPool}.
+ *
+ * @since 2.15.0
+ */
+public class MultiSlotCachingWorkingCopyPool implements WorkingCopyPool {
+
+  static final String PROPERTY_SLOTS_PER_REPOSITORY = "scm.workingCopyPool.slotsPerRepository";
+  static final String PROPERTY_MAX_SIZE = "scm.workingCopyPool.maxSize";
+  static final String PROPERTY_MAX_BYTES = "scm.workingCopyPool.maxBytes";
+  static final String PROPERTY_PREWARM = "scm.workingCopyPool.prewarm";
+
+  private static final Logger LOG = LoggerFactory.getLogger(MultiSlotCachingWorkingCopyPool.class);
+
+  private final WorkdirProvider workdirProvider;
+  private final int slotsPerRepository;
+  private final int maxSize;
+  private final long maxBytes;
+  private final Executor prewarmExecutor;
+
+  private final Map<String, Deque<Slot>> idleSlots = new HashMap<>();
+  private final Set<Slot> leastRecentlyUsed = new LinkedHashSet<>();
+  private final Map<String, Integer> inUse = new HashMap<>();
+  private final Map<String, Integer> demand = new HashMap<>();
+  private final Set<String> prewarming = new HashSet<>();
+  private long idleBytes = 0;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong reclaimFailures = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong prewarmed = new AtomicLong();
+  private final AtomicLong reclaimNanos = new AtomicLong();
+
+  @Inject
+  public MultiSlotCachingWorkingCopyPool(WorkdirProvider workdirProvider) {
+    this(
+      workdirProvider,
+      Integer.getInteger(PROPERTY_SLOTS_PER_REPOSITORY, 3),
+      Integer.getInteger(PROPERTY_MAX_SIZE, 32),
+      Long.getLong(PROPERTY_MAX_BYTES, 0L),
+      Boolean.parseBoolean(System.getProperty(PROPERTY_PREWARM, "true")) ? createPrewarmExecutor() : null
+    );
+  }
+
+  @VisibleForTesting
+  MultiSlotCachingWorkingCopyPool(WorkdirProvider workdirProvider, int slotsPerRepository, int maxSize, long maxBytes, Executor prewarmExecutor) {
+    this.workdirProvider = workdirProvider;
+    this.slotsPerRepository = slotsPerRepository;
+    this.maxSize = maxSize;
+    this.maxBytes = maxBytes;
+    this.prewarmExecutor = prewarmExecutor;
+  }
+
+  private static Executor createPrewarmExecutor() {
+    return Executors.newSingleThreadExecutor(
+      new ThreadFactoryBuilder()
+        .setNameFormat("WorkingCopyPrewarm-%d")
+        .setDaemon(true)
+        .build()
+    );
+  }
+
+  @Override
+  public <R, W> WorkingCopy<R, W> getWorkingCopy(SimpleWorkingCopyFactory<R, W, ?>.WorkingCopyContext workingCopyContext) {
+    String id = workingCopyContext.getScmRepository().getId();
+    Slot slot;
+    synchronized (this) {
+      slot = takeIdle(id);
+      int used = inUse.merge(id, 1, Integer::sum);
+      if (slot == null && used > 1) {
+        // parallel requests for the same repository, keep one spare directory for the next one
+        demand.merge(id, Math.min(slotsPerRepository, used + 1), Math::max);
+      }
+    }
+    try {
+      if (slot != null) {
+        WorkingCopy<R, W> reclaimed = reclaim(workingCopyContext, slot.directory);
+        if (reclaimed != null) {
+          return reclaimed;
+        }
+      } else {
+        misses.incrementAndGet();
+      }
+      return createNewWorkingCopy(workingCopyContext);
+    } catch (RuntimeException e) {
+      synchronized (this) {
+        release(id);
+      }
+      throw e;
+    }
+  }
+
+  private <R, W> WorkingCopy<R, W> reclaim(SimpleWorkingCopyFactory<R, W, ?>.WorkingCopyContext workingCopyContext, File workdir) {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    try {
+      WorkingCopy<R, W> reclaimed = workingCopyContext.reclaim(workdir);
+      hits.incrementAndGet();
+      LOG.debug("reclaimed workdir for {} in path {} in {}", workingCopyContext.getScmRepository(), workdir, stopwatch);
+      return reclaimed;
+    } catch (SimpleWorkingCopyFactory.ReclaimFailedException e) {
+      reclaimFailures.incrementAndGet();
+      LOG.debug("failed to reclaim workdir for {} in path {} in {}", workingCopyContext.getScmRepository(), workdir, stopwatch, e);
+      deleteWorkdir(workdir);
+      return null;
+    } finally {
+      reclaimNanos.addAndGet(stopwatch.elapsed(TimeUnit.NANOSECONDS));
+    }
+  }
+
+  private <R, W> WorkingCopy<R, W> createNewWorkingCopy(SimpleWorkingCopyFactory<R, W, ?>.WorkingCopyContext workingCopyContext) {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    File newWorkdir = workdirProvider.createNewWorkdir(workingCopyContext.getScmRepository().getId());
+    WorkingCopy<R, W> parentAndClone = workingCopyContext.initialize(newWorkdir);
+    LOG.debug("initialized new workdir for {} in path {} in {}", workingCopyContext.getScmRepository(), newWorkdir, stopwatch.stop());
+    return parentAndClone;
+  }
+
+  @Override
+  public void contextClosed(SimpleWorkingCopyFactory<?, ?, ?>.WorkingCopyContext workingCopyContext, File workdir) {
+    String id = workingCopyContext.getScmRepository().getId();
+    long size = sizeOf(workdir);
+    List<File> stale = new ArrayList<>();
+    synchronized (this) {
+      release(id);
+      putIdle(id, workdir, size, stale);
+    }
+    stale.forEach(this::deleteWorkdir);
+    prewarm(id);
+  }
+
+  @Override
+  public void shutdown() {
+    List<File> stale = new ArrayList<>();
+    synchronized (this) {
+      leastRecentlyUsed.forEach(slot -> stale.add(slot.directory));
+      leastRecentlyUsed.clear();
+      idleSlots.clear();
+      idleBytes = 0;
+    }
+    stale.parallelStream().forEach(this::deleteWorkdir);
+    LOG.info("working copy pool statistics: {}", getStatistics());
+  }
+
+  @Override
+  public void evict(String repositoryId) {
+    List<File> stale = new ArrayList<>();
+    synchronized (this) {
+      Deque<Slot> slots = idleSlots.remove(repositoryId);
+      if (slots != null) {
+        for (Slot slot : slots) {
+          leastRecentlyUsed.remove(slot);
+          idleBytes -= slot.size;
+          evictions.incrementAndGet();
+          LOG.debug("evict workdir {} of repository {}", slot.directory, slot.repositoryId);
+          stale.add(slot.directory);
+        }
+      }
+    }
+    stale.forEach(this::deleteWorkdir);
+  }
+
+  /**
+   * Returns the statistics of this pool.
+   */
+  public Statistics getStatistics() {
+    return new Statistics(hits.get(), misses.get(), reclaimFailures.get(), evictions.get(), prewarmed.get(), reclaimNanos.get());
+  }
+
+  @VisibleForTesting
+  synchronized int getIdleCount(String repositoryId) {
+    return getIdleCountOf(repositoryId);
+  }
+
+  private Slot takeIdle(String id) {
+    Deque<Slot> slots = idleSlots.get(id);
+    if (slots == null || slots.isEmpty()) {
+      return null;
+    }
+    Slot slot = slots.pop();
+    if (slots.isEmpty()) {
+      idleSlots.remove(id);
+    }
+    leastRecentlyUsed.remove(slot);
+    idleBytes -= slot.size;
+    return slot;
+  }
+
+  private void release(String id) {
+    inUse.computeIfPresent(id, (key, used) -> used > 1 ? used - 1 : null);
+  }
+
+  private void putIdle(String id, File workdir, long size, List<File> stale) {
+    Deque<Slot> slots = idleSlots.computeIfAbsent(id, key -> new ArrayDeque<>());
+    if (slots.size() >= slotsPerRepository) {
+      stale.add(workdir);
+      return;
+    }
+    Slot slot = new Slot(id, workdir, size);
+    slots.push(slot);
+    leastRecentlyUsed.add(slot);
+    idleBytes += size;
+    evict(stale);
+  }
+
+  private void evict(List<File> stale) {
+    Iterator<Slot> iterator = leastRecentlyUsed.iterator();
+    while (iterator.hasNext() && (leastRecentlyUsed.size() > maxSize || (maxBytes > 0 && idleBytes > maxBytes))) {
+      Slot slot = iterator.next();
+      iterator.remove();
+      Deque<Slot> slots = idleSlots.get(slot.repositoryId);
+      slots.remove(slot);
+      if (slots.isEmpty()) {
+        idleSlots.remove(slot.repositoryId);
+      }
+      idleBytes -= slot.size;
+      evictions.incrementAndGet();
+      LOG.debug("evict workdir {} of repository {}", slot.directory, slot.repositoryId);
+      stale.add(slot.directory);
+    }
+  }
+
+  /**
+   * Copies cached directories in the background, if more working copies of the repository were requested in parallel
+   * than directories exist.
+   */
+  private void prewarm(String id) {
+    if (prewarmExecutor == null) {
+      return;
+    }
+    synchronized (this) {
+      if (!needsPrewarm(id) || !prewarming.add(id)) {
+        return;
+      }
+    }
+    prewarmExecutor.execute(() -> {
+      try {
+        while (prewarmOne(id)) {
+          prewarmed.incrementAndGet();
+        }
+      } finally {
+        synchronized (this) {
+          prewarming.remove(id);
+        }
+      }
+    });
+  }
+
+  private boolean needsPrewarm(String id) {
+    int target = demand.getOrDefault(id, 0);
+    return getIdleCountOf(id) > 0
+      && getIdleCountOf(id) < slotsPerRepository
+      && getIdleCountOf(id) + inUse.getOrDefault(id, 0) < target
+      && leastRecentlyUsed.size() < maxSize;
+  }
+
+  private int getIdleCountOf(String id) {
+    Deque<Slot> slots = idleSlots.get(id);
+    return slots == null ? 0 : slots.size();
+  }
+
+  private boolean prewarmOne(String id) {
+    Slot source;
+    synchronized (this) {
+      if (!needsPrewarm(id)) {
+        return false;
+      }
+      source = takeIdle(id);
+      if (maxBytes > 0 && idleBytes + 2 * source.size > maxBytes) {
+        // a copy would evict other directories
+        putIdle(id, source.directory, source.size, new ArrayList<>());
+        return false;
+      }
+    }
+    File copy = null;
+    try {
+      copy = workdirProvider.createNewWorkdir(id);
+      LOG.debug("pre-warm workdir {} for repository {} from {}", copy, id, source.directory);
+      copyDirectory(source.directory.toPath(), copy.toPath());
+    } catch (IOException | UncheckedIOException | WorkdirCreationException e) {
+      LOG.warn("failed to pre-warm workdir for repository {}", id, e);
+      if (copy != null) {
+        deleteWorkdir(copy);
+      }
+      copy = null;
+    }
+    List<File> stale = new ArrayList<>();
+    synchronized (this) {
+      putIdle(id, source.directory, source.size, stale);
+      if (copy != null) {
+        putIdle(id, copy, source.size, stale);
+      }
+    }
+    stale.forEach(this::deleteWorkdir);
+    return copy != null;
+  }
+
+  private void copyDirectory(Path source, Path target) throws IOException {
+    try (Stream<Path> paths = Files.walk(source)) {
+      paths.forEach(path -> {
+        Path destination = target.resolve(source.relativize(path).toString());
+        try {
+          if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            Files.createDirectories(destination);
+          } else {
+            Files.copy(path, destination, StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    }
+  }
+
+  private long sizeOf(File workdir) {
+    if (maxBytes <= 0) {
+      return 0;
+    }
+    try (Stream<Path> paths = Files.walk(workdir.toPath())) {
+      return paths
+        .filter(path -> Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS))
+        .mapToLong(path -> path.toFile().length())
+        .sum();
+    } catch (IOException | UncheckedIOException e) {
+      LOG.debug("could not compute size of workdir {}", workdir, e);
+      return 0;
+    }
+  }
+
+  private void deleteWorkdir(File workdir) {
+    if (workdir.exists()) {
+      IOUtil.deleteSilently(workdir);
+    }
+  }
+
+  private static final class Slot {
+
+    private final String repositoryId;
+    private final File directory;
+    private final long size;
+
+    private Slot(String repositoryId, File directory, long size) {
+      this.repositoryId = repositoryId;
+      this.directory = directory;
+      this.size = size;
+    }
+  }
+
+  /**
+   * Statistics of the {@link MultiSlotCachingWorkingCopyPool}.
+   */
+  public static final class Statistics {
+
+    private final long hits;
+    private final long misses;
+    private final long reclaimFailures;
+    private final long evictions;
+    private final long prewarmed;
+    private final long reclaimNanos;
+
+    private Statistics(long hits, long misses, long reclaimFailures, long evictions, long prewarmed, long reclaimNanos) {
+      this.hits = hits;
+      this.misses = misses;
+      this.reclaimFailures = reclaimFailures;
+      this.evictions = evictions;
+      this.prewarmed = prewarmed;
+      this.reclaimNanos = reclaimNanos;
+    }
+
+    /**
+     * Number of working copies, which were reclaimed from a cached directory.
+     */
+    public long getHits() {
+      return hits;
+    }
+
+    /**
+     * Number of working copies, which had to be initialized, because no directory was cached.
+     */
+    public long getMisses() {
+      return misses;
+    }
+
+    /**
+     * Number of cached directories, which could not be reclaimed.
+     */
+    public long getReclaimFailures() {
+      return reclaimFailures;
+    }
+
+    /**
+     * Number of cached directories, which were deleted to stay within the limits of the pool.
+     */
+    public long getEvictions() {
+      return evictions;
+    }
+
+    /**
+     * Number of directories, which were created by pre-warming.
+     */
+    public long getPrewarmed() {
+      return prewarmed;
+    }
+
+    /**
+     * Total time spent for reclaiming cached directories.
+     */
+    public long getReclaimTime(TimeUnit unit) {
+      return unit.convert(reclaimNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+      return "hits=" + hits
+        + ", misses=" + misses
+        + ", reclaimFailures=" + reclaimFailures
+        + ", evictions=" + evictions
+        + ", prewarmed=" + prewarmed
+        + ", reclaimTime=" + TimeUnit.NANOSECONDS.toMillis(reclaimNanos) + "ms";
+    }
+  }
+}
@@ -117,6 +117,15 @@ public class SimpleCachingWorkingCopyPool implements WorkingCopyPool {
     workdirs.clear();
   }
 
+  @Override
+  public void evict(String repositoryId) {
+    File workdir = workdirs.remove(repositoryId);
+    if (workdir != null) {
+      LOG.debug("evict workdir {} of repository {}", workdir, repositoryId);
+      deleteWorkdir(workdir);
+    }
+  }
+
   private void deleteWorkdir(File workdir) {
     if (workdir.exists()) {
       IOUtil.deleteSilently(workdir);
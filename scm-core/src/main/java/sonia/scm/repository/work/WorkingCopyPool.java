@@ -32,4 +32,16 @@ public interface WorkingCopyPool {
   void contextClosed(SimpleWorkingCopyFactory<?, ?, ?>.WorkingCopyContext workingCopyContext, File workdir);
 
   void shutdown();
+
+  /**
+   * Deletes the cached working copies of the repository, which are currently not in use. This has to be called before
+   * objects are removed from the central repository, if working copies may reference them without copying them (e.g.
+   * with git alternates). Pools without a cache do not have to do anything.
+   *
+   * @param repositoryId id of the repository
+   *
+   * @since 2.15.0
+   */
+  default void evict(String repositoryId) {
+  }
 }
@@ -0,0 +1,149 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.io;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ParallelGzipOutputStreamTest {
+
+  private static final int BLOCK_SIZE = 32 * 1024;
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+  @AfterEach
+  void shutdownExecutor() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void shouldCompressEmptyStream() throws IOException {
+    assertRoundTrip(new byte[0]);
+  }
+
+  @Test
+  void shouldCompressSingleByte() throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (ParallelGzipOutputStream gzos = create(baos)) {
+      gzos.write(42);
+    }
+
+    assertThat(decompress(baos.toByteArray())).containsExactly(42);
+  }
+
+  @Test
+  void shouldCompressMultipleBlocksOfText() throws IOException {
+    byte[] data = text(200_000);
+
+    byte[] compressed = assertRoundTrip(data);
+
+    // blocks use the end of the previous block as dictionary, so the ratio should be close to a single stream
+    assertThat(compressed.length).isLessThan(gzip(data).length * 105 / 100);
+  }
+
+  @Test
+  void shouldCompressRandomData() throws IOException {
+    byte[] data = new byte[BLOCK_SIZE * 5 + 17];
+    new Random(42).nextBytes(data);
+
+    assertRoundTrip(data);
+  }
+
+  @Test
+  void shouldCompressExactlyOneBlock() throws IOException {
+    assertRoundTrip(text(BLOCK_SIZE));
+  }
+
+  @Test
+  void shouldFailToWriteAfterFinish() throws IOException {
+    ParallelGzipOutputStream gzos = create(new ByteArrayOutputStream());
+    gzos.finish();
+
+    assertThrows(IOException.class, () -> gzos.write(1));
+  }
+
+  private byte[] assertRoundTrip(byte[] data) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (ParallelGzipOutputStream gzos = create(baos)) {
+      // write in uneven chunks, to cross the block boundaries
+      int offset = 0;
+      while (offset < data.length) {
+        int length = Math.min(data.length - offset, 10_000);
+        gzos.write(data, offset, length);
+        offset += length;
+      }
+    }
+    byte[] compressed = baos.toByteArray();
+    assertThat(decompress(compressed)).isEqualTo(data);
+    return compressed;
+  }
+
+  private ParallelGzipOutputStream create(ByteArrayOutputStream baos) {
+    return new ParallelGzipOutputStream(baos, executor, 4, BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  private byte[] text(int length) {
+    Random random = new Random(42);
+    StringBuilder builder = new StringBuilder();
+    while (builder.length() < length) {
+      builder.append("line ").append(random.nextInt(1000)).append(" of the hitchhiker's guide\n");
+    }
+    return builder.substring(0, length).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private byte[] gzip(byte[] data) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzos = new GZIPOutputStream(baos)) {
+      gzos.write(data);
+    }
+    return baos.toByteArray();
+  }
+
+  private byte[] decompress(byte[] compressed) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (GZIPInputStream gzis = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      byte[] buffer = new byte[8192];
+      int n;
+      while ((n = gzis.read(buffer)) > 0) {
+        baos.write(buffer, 0, n);
+      }
+    }
+    return baos.toByteArray();
+  }
+}
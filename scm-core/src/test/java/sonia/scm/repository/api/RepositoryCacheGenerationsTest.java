@@ -0,0 +1,69 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository.api;
+
+import org.junit.jupiter.api.Test;
+import sonia.scm.repository.Repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RepositoryCacheGenerationsTest {
+
+  private final RepositoryCacheGenerations generations = new RepositoryCacheGenerations();
+
+  private final Repository repository = new Repository("AmRy34KFi1", "git", "hitchhiker", "heart-of-gold");
+
+  @Test
+  void shouldStartWithFirstGeneration() {
+    assertThat(generations.get(repository)).isZero();
+  }
+
+  @Test
+  void shouldIncrementOnlyGenerationOfRepository() {
+    generations.increment(repository.getId());
+    generations.increment(repository.getId());
+
+    assertThat(generations.get(repository)).isEqualTo(2L);
+    assertThat(generations.get("42")).isZero();
+  }
+
+  @Test
+  void shouldRemoveGeneration() {
+    generations.increment(repository.getId());
+    generations.remove(repository.getId());
+
+    assertThat(generations.get(repository)).isZero();
+  }
+
+  @Test
+  void shouldNotMatchCacheKeysOfOldGeneration() {
+    LogCommandBuilder.CacheKey old = new LogCommandBuilder.CacheKey(repository, generations.get(repository), "42");
+    generations.increment(repository.getId());
+    LogCommandBuilder.CacheKey current = new LogCommandBuilder.CacheKey(repository, generations.get(repository), "42");
+
+    assertThat(current).isNotEqualTo(old);
+    assertThat(current.getRepositoryId()).isEqualTo(old.getRepositoryId());
+  }
+}
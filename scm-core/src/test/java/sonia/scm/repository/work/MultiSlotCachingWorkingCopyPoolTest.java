@@ -0,0 +1,237 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository.work;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sonia.scm.repository.Repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class MultiSlotCachingWorkingCopyPoolTest {
+
+  private static final Repository HEART_OF_GOLD = new Repository("1", "git", "space", "heart-of-gold");
+  private static final Repository PUZZLE_42 = new Repository("2", "git", "space", "puzzle-42");
+
+  @Mock
+  private WorkdirProvider workdirProvider;
+
+  @Mock
+  private SimpleWorkingCopyFactory<Object, Path, ?>.WorkingCopyContext heartOfGoldContext;
+
+  private final AtomicInteger workdirCounter = new AtomicInteger();
+
+  private Path temp;
+
+  @BeforeEach
+  void initContext(@TempDir Path temp) throws SimpleWorkingCopyFactory.ReclaimFailedException {
+    this.temp = temp;
+    lenient().when(workdirProvider.createNewWorkdir(anyString())).thenAnswer(invocation -> {
+      File workdir = temp.resolve("work-" + workdirCounter.incrementAndGet()).toFile();
+      assertThat(workdir.mkdirs()).isTrue();
+      return workdir;
+    });
+    mockContext(heartOfGoldContext, HEART_OF_GOLD);
+  }
+
+  @SuppressWarnings("unchecked")
+  private SimpleWorkingCopyFactory<Object, Path, ?>.WorkingCopyContext mockContext(Repository repository) throws SimpleWorkingCopyFactory.ReclaimFailedException {
+    SimpleWorkingCopyFactory<Object, Path, ?>.WorkingCopyContext context = mock(SimpleWorkingCopyFactory.WorkingCopyContext.class);
+    mockContext(context, repository);
+    return context;
+  }
+
+  private void mockContext(SimpleWorkingCopyFactory<Object, Path, ?>.WorkingCopyContext context, Repository repository) throws SimpleWorkingCopyFactory.ReclaimFailedException {
+    lenient().when(context.getScmRepository()).thenReturn(repository);
+    lenient().when(context.initialize(any()))
+      .thenAnswer(invocation -> new WorkingCopy<>(null, null, () -> {}, invocation.getArgument(0, File.class)));
+    lenient().when(context.reclaim(any()))
+      .thenAnswer(invocation -> new WorkingCopy<>(null, null, () -> {}, invocation.getArgument(0, File.class)));
+  }
+
+  @Test
+  void shouldCacheMultipleWorkdirsForTheSameRepository() throws SimpleWorkingCopyFactory.ReclaimFailedException {
+    MultiSlotCachingWorkingCopyPool pool = new MultiSlotCachingWorkingCopyPool(workdirProvider, 3, 10, 0, null);
+
+    WorkingCopy<?, ?> first = pool.getWorkingCopy(heartOfGoldContext);
+    WorkingCopy<?, ?> second = pool.getWorkingCopy(heartOfGoldContext);
+    pool.contextClosed(heartOfGoldContext, first.getDirectory());
+    pool.contextClosed(heartOfGoldContext, second.getDirectory());
+
+    assertThat(pool.getIdleCount(HEART_OF_GOLD.getId())).isEqualTo(2);
+
+    pool.getWorkingCopy(heartOfGoldContext);
+    pool.getWorkingCopy(heartOfGoldContext);
+
+    verify(heartOfGoldContext).reclaim(first.getDirectory());
+    verify(heartOfGoldContext).reclaim(second.getDirectory());
+    verify(heartOfGoldContext, times(2)).initialize(any());
+    assertThat(pool.getStatistics().getHits()).isEqualTo(2);
+    assertThat(pool.getStatistics().getMisses()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldDeleteWorkdirIfAllSlotsAreUsed() {
+    MultiSlotCachingWorkingCopyPool pool = new MultiSlotCachingWorkingCopyPool(workdirProvider, 1, 10, 0, null);
+
+    WorkingCopy<?, ?> first = pool.getWorkingCopy(heartOfGoldContext);
+    WorkingCopy<?, ?> second = pool.getWorkingCopy(heartOfGoldContext);
+    pool.contextClosed(heartOfGoldContext, first.getDirectory());
+    pool.contextClosed(heartOfGoldContext, second.getDirectory());
+
+    assertThat(pool.getIdleCount(HEART_OF_GOLD.getId())).isEqualTo(1);
+    assertThat(first.getDirectory()).exists();
+    assertThat(second.getDirectory()).doesNotExist();
+  }
+
+  @Test
+  void shouldEvictLeastRecentlyUsedWorkdir() throws SimpleWorkingCopyFactory.ReclaimFailedException {
+    MultiSlotCachingWorkingCopyPool pool = new MultiSlotCachingWorkingCopyPool(workdirProvider, 3, 1, 0, null);
+    SimpleWorkingCopyFactory<Object, Path, ?>.WorkingCopyContext puzzleContext = mockContext(PUZZLE_42);
+
+    WorkingCopy<?, ?> heartOfGold = pool.getWorkingCopy(heartOfGoldContext);
+    WorkingCopy<?, ?> puzzle = pool.getWorkingCopy(puzzleContext);
+    pool.contextClosed(heartOfGoldContext, heartOfGold.getDirectory());
+    pool.contextClosed(puzzleContext, puzzle.getDirectory());
+
+    assertThat(heartOfGold.getDirectory()).doesNotExist();
+    assertThat(pool.getIdleCount(HEART_OF_GOLD.getId())).isZero();
+    assertThat(pool.getIdleCount(PUZZLE_42.getId())).isEqualTo(1);
+    assertThat(pool.getStatistics().getEvictions()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldEvictIdleWorkdirsOfRepository() throws SimpleWorkingCopyFactory.ReclaimFailedException {
+    MultiSlotCachingWorkingCopyPool pool = new MultiSlotCachingWorkingCopyPool(workdirProvider, 3, 10, 0, null);
+    SimpleWorkingCopyFactory<Object, Path, ?>.WorkingCopyContext puzzleContext = mockContext(PUZZLE_42);
+
+    WorkingCopy<?, ?> first = pool.getWorkingCopy(heartOfGoldContext);
+    WorkingCopy<?, ?> second = pool.getWorkingCopy(heartOfGoldContext);
+    WorkingCopy<?, ?> puzzle = pool.getWorkingCopy(puzzleContext);
+    pool.contextClosed(heartOfGoldContext, first.getDirectory());
+    pool.contextClosed(heartOfGoldContext, second.getDirectory());
+    pool.contextClosed(puzzleContext, puzzle.getDirectory());
+
+    pool.evict(HEART_OF_GOLD.getId());
+
+    assertThat(pool.getIdleCount(HEART_OF_GOLD.getId())).isZero();
+    assertThat(first.getDirectory()).doesNotExist();
+    assertThat(second.getDirectory()).doesNotExist();
+    assertThat(pool.getIdleCount(PUZZLE_42.getId())).isEqualTo(1);
+    assertThat(puzzle.getDirectory()).exists();
+  }
+
+  @Test
+  void shouldEvictWorkdirsExceedingByteBudget() throws IOException {
+    MultiSlotCachingWorkingCopyPool pool = new MultiSlotCachingWorkingCopyPool(workdirProvider, 3, 10, 15, null);
+
+    WorkingCopy<?, ?> first = pool.getWorkingCopy(heartOfGoldContext);
+    WorkingCopy<?, ?> second = pool.getWorkingCopy(heartOfGoldContext);
+    write(first.getDirectory(), "0123456789");
+    write(second.getDirectory(), "0123456789");
+    pool.contextClosed(heartOfGoldContext, first.getDirectory());
+    pool.contextClosed(heartOfGoldContext, second.getDirectory());
+
+    assertThat(pool.getIdleCount(HEART_OF_GOLD.getId())).isEqualTo(1);
+    assertThat(first.getDirectory()).doesNotExist();
+    assertThat(second.getDirectory()).exists();
+  }
+
+  @Test
+  void shouldCreateNewWorkdirIfReclaimFails() throws SimpleWorkingCopyFactory.ReclaimFailedException {
+    MultiSlotCachingWorkingCopyPool pool = new MultiSlotCachingWorkingCopyPool(workdirProvider, 3, 10, 0, null);
+    WorkingCopy<?, ?> first = pool.getWorkingCopy(heartOfGoldContext);
+    pool.contextClosed(heartOfGoldContext, first.getDirectory());
+    doThrow(new SimpleWorkingCopyFactory.ReclaimFailedException("corrupt")).when(heartOfGoldContext).reclaim(first.getDirectory());
+
+    WorkingCopy<?, ?> second = pool.getWorkingCopy(heartOfGoldContext);
+
+    assertThat(first.getDirectory()).doesNotExist();
+    assertThat(second.getDirectory()).isNotEqualTo(first.getDirectory());
+    assertThat(pool.getStatistics().getReclaimFailures()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldPrewarmBusyRepository() throws IOException {
+    MultiSlotCachingWorkingCopyPool pool = new MultiSlotCachingWorkingCopyPool(workdirProvider, 3, 10, 0, Runnable::run);
+
+    WorkingCopy<?, ?> first = pool.getWorkingCopy(heartOfGoldContext);
+    WorkingCopy<?, ?> second = pool.getWorkingCopy(heartOfGoldContext);
+    write(first.getDirectory(), "marvin");
+    pool.contextClosed(heartOfGoldContext, first.getDirectory());
+
+    assertThat(pool.getIdleCount(HEART_OF_GOLD.getId())).isEqualTo(2);
+    assertThat(pool.getStatistics().getPrewarmed()).isEqualTo(1);
+    assertThat(temp.resolve("work-3").resolve("content")).hasContent("marvin");
+
+    pool.contextClosed(heartOfGoldContext, second.getDirectory());
+
+    assertThat(pool.getIdleCount(HEART_OF_GOLD.getId())).isEqualTo(3);
+  }
+
+  @Test
+  void shouldNotPrewarmWithoutParallelRequests() {
+    MultiSlotCachingWorkingCopyPool pool = new MultiSlotCachingWorkingCopyPool(workdirProvider, 3, 10, 0, Runnable::run);
+
+    WorkingCopy<?, ?> first = pool.getWorkingCopy(heartOfGoldContext);
+    pool.contextClosed(heartOfGoldContext, first.getDirectory());
+
+    assertThat(pool.getIdleCount(HEART_OF_GOLD.getId())).isEqualTo(1);
+    assertThat(pool.getStatistics().getPrewarmed()).isZero();
+  }
+
+  @Test
+  void shouldDeleteCachedWorkdirsOnShutdown() {
+    MultiSlotCachingWorkingCopyPool pool = new MultiSlotCachingWorkingCopyPool(workdirProvider, 3, 10, 0, null);
+    WorkingCopy<?, ?> first = pool.getWorkingCopy(heartOfGoldContext);
+    pool.contextClosed(heartOfGoldContext, first.getDirectory());
+
+    pool.shutdown();
+
+    assertThat(first.getDirectory()).doesNotExist();
+  }
+
+  private void write(File directory, String content) throws IOException {
+    Files.write(directory.toPath().resolve("content"), content.getBytes());
+  }
+}
@@ -90,6 +90,25 @@ class SimpleCachingWorkingCopyPoolTest {
     assertThat(secondWorkdir.getDirectory()).isEqualTo(temp.toFile());
   }
 
+  @Test
+  void shouldEvictCachedWorkdir(@TempDir Path temp) throws SimpleWorkingCopyFactory.ReclaimFailedException {
+    when(workingCopyContext.getScmRepository()).thenReturn(REPOSITORY);
+    File firstDirectory = temp.resolve("first").toFile();
+    firstDirectory.mkdirs();
+    File secondDirectory = temp.resolve("second").toFile();
+    secondDirectory.mkdirs();
+    when(workdirProvider.createNewWorkdir(anyString())).thenReturn(firstDirectory, secondDirectory);
+
+    WorkingCopy<?, ?> firstWorkdir = simpleCachingWorkingCopyPool.getWorkingCopy(workingCopyContext);
+    simpleCachingWorkingCopyPool.contextClosed(workingCopyContext, firstWorkdir.getDirectory());
+    simpleCachingWorkingCopyPool.evict(REPOSITORY.getId());
+    WorkingCopy<?, ?> secondWorkdir = simpleCachingWorkingCopyPool.getWorkingCopy(workingCopyContext);
+
+    assertThat(firstDirectory).doesNotExist();
+    assertThat(secondWorkdir.getDirectory()).isEqualTo(secondDirectory);
+    verify(workingCopyContext, never()).reclaim(any());
+  }
+
   @Test
   void shouldCacheOnlyOneWorkdirForRepository(@TempDir Path temp) throws SimpleWorkingCopyFactory.ReclaimFailedException {
     when(workingCopyContext.getScmRepository()).thenReturn(REPOSITORY);
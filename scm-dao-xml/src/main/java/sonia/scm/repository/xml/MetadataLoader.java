@@ -0,0 +1,181 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository.xml;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.ContextEntry;
+import sonia.scm.repository.InternalRepositoryException;
+import sonia.scm.repository.Repository;
+import sonia.scm.store.StoreConstants;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the metadata of all repositories with a bounded pool of workers. If a {@link MetadataSnapshot} is available,
+ * the metadata of unchanged repositories is taken from the snapshot instead of parsing the xml files.
+ */
+class MetadataLoader {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MetadataLoader.class);
+
+  private static final int MAX_THREADS = 16;
+
+  private final MetadataStore metadataStore;
+  private final MetadataSnapshot snapshot;
+  private final int threads;
+
+  MetadataLoader(MetadataStore metadataStore, Path snapshotPath) {
+    this(metadataStore, snapshotPath, Math.min(Runtime.getRuntime().availableProcessors() * 2, MAX_THREADS));
+  }
+
+  MetadataLoader(MetadataStore metadataStore, Path snapshotPath, int threads) {
+    this.metadataStore = metadataStore;
+    this.snapshot = snapshotPath != null ? new MetadataSnapshot(snapshotPath) : null;
+    this.threads = threads;
+  }
+
+  Map<String, Repository> load(Map<String, Path> locations, Long lastModified) {
+    if (locations.isEmpty()) {
+      return Collections.emptyMap();
+    }
+
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    Map<String, MetadataSnapshot.Entry> cached = snapshot != null ? snapshot.read(lastModified) : Collections.emptyMap();
+
+    Map<String, Loaded> loaded = loadInParallel(locations, cached);
+
+    Map<String, Repository> repositories = new LinkedHashMap<>(loaded.size() * 2);
+    Map<String, MetadataSnapshot.Entry> entries = new LinkedHashMap<>(loaded.size() * 2);
+    int fromSnapshot = 0;
+    for (Map.Entry<String, Loaded> e : loaded.entrySet()) {
+      repositories.put(e.getKey(), e.getValue().entry.getRepository());
+      entries.put(e.getKey(), e.getValue().entry);
+      if (e.getValue().fromSnapshot) {
+        fromSnapshot++;
+      }
+    }
+
+    if (snapshot != null && (fromSnapshot != loaded.size() || cached.size() != loaded.size())) {
+      snapshot.write(lastModified, entries);
+    }
+
+    LOG.info(
+      "loaded metadata of {} repositories in {} ({} from snapshot, {} threads)",
+      repositories.size(), stopwatch.stop(), fromSnapshot, threads
+    );
+    return repositories;
+  }
+
+  private Map<String, Loaded> loadInParallel(Map<String, Path> locations, Map<String, MetadataSnapshot.Entry> cached) {
+    ExecutorService executor = Executors.newFixedThreadPool(
+      Math.max(1, Math.min(threads, locations.size())),
+      new ThreadFactoryBuilder().setNameFormat("RepositoryMetadataLoader-%d").setDaemon(true).build()
+    );
+    try {
+      List<String> ids = new ArrayList<>(locations.size());
+      List<Future<Loaded>> futures = new ArrayList<>(locations.size());
+      locations.forEach((id, path) -> {
+        ids.add(id);
+        futures.add(executor.submit(() -> load(path, cached.get(id))));
+      });
+
+      Map<String, Loaded> loaded = new LinkedHashMap<>(locations.size() * 2);
+      for (int i = 0; i < ids.size(); i++) {
+        loaded.put(ids.get(i), get(futures.get(i)));
+      }
+      return loaded;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private Loaded load(Path repositoryPath, MetadataSnapshot.Entry cachedEntry) {
+    Path metadataPath = repositoryPath.resolve(StoreConstants.REPOSITORY_METADATA.concat(StoreConstants.FILE_EXTENSION));
+    BasicFileAttributes attributes = readAttributes(metadataPath);
+    long lastModified = attributes != null ? attributes.lastModifiedTime().toMillis() : -1;
+    long size = attributes != null ? attributes.size() : -1;
+
+    if (cachedEntry != null && attributes != null && cachedEntry.matches(lastModified, size)) {
+      return new Loaded(cachedEntry, true);
+    }
+
+    Repository repository = metadataStore.read(repositoryPath);
+    return new Loaded(new MetadataSnapshot.Entry(lastModified, size, repository), false);
+  }
+
+  private BasicFileAttributes readAttributes(Path metadataPath) {
+    try {
+      return Files.readAttributes(metadataPath, BasicFileAttributes.class);
+    } catch (IOException ex) {
+      LOG.trace("could not read attributes of {}", metadataPath, ex);
+      return null;
+    }
+  }
+
+  private Loaded get(Future<Loaded> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("loading of repository metadata was interrupted", ex);
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new InternalRepositoryException(
+        ContextEntry.ContextBuilder.noContext(), "failed to load repository metadata", (Exception) cause
+      );
+    }
+  }
+
+  private static final class Loaded {
+
+    private final MetadataSnapshot.Entry entry;
+    private final boolean fromSnapshot;
+
+    private Loaded(MetadataSnapshot.Entry entry, boolean fromSnapshot) {
+      this.entry = entry;
+      this.fromSnapshot = fromSnapshot;
+    }
+  }
+}
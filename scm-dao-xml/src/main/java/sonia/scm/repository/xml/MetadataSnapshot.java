@@ -0,0 +1,173 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository.xml;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.repository.Repository;
+import sonia.scm.store.CopyOnWrite;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binary snapshot of the metadata of all repositories. The snapshot is stored next to the path database and is only
+ * used, if it was written for the same last modified stamp as the path database. Every entry is additionally validated
+ * against the modification time and size of its metadata file, so that metadata changed behind the back of the dao
+ * is read from xml again.
+ */
+class MetadataSnapshot {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MetadataSnapshot.class);
+
+  private static final int VERSION = 1;
+
+  private final Path snapshotPath;
+
+  MetadataSnapshot(Path snapshotPath) {
+    this.snapshotPath = snapshotPath;
+  }
+
+  Map<String, Entry> read(Long lastModified) {
+    // Files.exists is slow on java 8
+    if (lastModified == null || !snapshotPath.toFile().exists()) {
+      return Collections.emptyMap();
+    }
+    LOG.trace("read repository metadata snapshot from {}", snapshotPath);
+    try (ObjectInputStream input = new RepositoryObjectInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath)))) {
+      if (input.readInt() != VERSION) {
+        LOG.debug("ignore repository metadata snapshot {}, because it has an unknown version", snapshotPath);
+        return Collections.emptyMap();
+      }
+      long snapshotLastModified = input.readLong();
+      if (snapshotLastModified != lastModified) {
+        LOG.debug("ignore outdated repository metadata snapshot {}", snapshotPath);
+        return Collections.emptyMap();
+      }
+      int count = input.readInt();
+      Map<String, Entry> entries = new HashMap<>(count * 2);
+      for (int i = 0; i < count; i++) {
+        String id = input.readUTF();
+        long metadataLastModified = input.readLong();
+        long metadataSize = input.readLong();
+        Repository repository = (Repository) input.readObject();
+        entries.put(id, new Entry(metadataLastModified, metadataSize, repository));
+      }
+      return entries;
+    } catch (IOException | ClassNotFoundException | ClassCastException ex) {
+      LOG.warn("could not read repository metadata snapshot {}, falling back to xml", snapshotPath, ex);
+      return Collections.emptyMap();
+    }
+  }
+
+  void write(Long lastModified, Map<String, Entry> entries) {
+    if (lastModified == null) {
+      return;
+    }
+    LOG.trace("write repository metadata snapshot to {}", snapshotPath);
+    try {
+      CopyOnWrite.withTemporaryFile(
+        temp -> {
+          try (ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            output.writeInt(VERSION);
+            output.writeLong(lastModified);
+            output.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+              output.writeUTF(e.getKey());
+              output.writeLong(e.getValue().getMetadataLastModified());
+              output.writeLong(e.getValue().getMetadataSize());
+              output.writeObject(e.getValue().getRepository());
+              // the repositories are independent, so we do not have to keep back references
+              output.reset();
+            }
+          }
+        },
+        snapshotPath
+      );
+    } catch (RuntimeException ex) {
+      // the snapshot is only an optimization, so we do not fail
+      LOG.warn("could not write repository metadata snapshot {}", snapshotPath, ex);
+    }
+  }
+
+  static final class Entry {
+
+    private final long metadataLastModified;
+    private final long metadataSize;
+    private final Repository repository;
+
+    Entry(long metadataLastModified, long metadataSize, Repository repository) {
+      this.metadataLastModified = metadataLastModified;
+      this.metadataSize = metadataSize;
+      this.repository = repository;
+    }
+
+    long getMetadataLastModified() {
+      return metadataLastModified;
+    }
+
+    long getMetadataSize() {
+      return metadataSize;
+    }
+
+    Repository getRepository() {
+      return repository;
+    }
+
+    boolean matches(long lastModified, long size) {
+      return metadataLastModified == lastModified && metadataSize == size;
+    }
+  }
+
+  /**
+   * Restricts deserialization to the classes which could be part of a repository.
+   */
+  private static class RepositoryObjectInputStream extends ObjectInputStream {
+
+    RepositoryObjectInputStream(InputStream in) throws IOException {
+      super(in);
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+      String name = desc.getName();
+      if (!name.startsWith("sonia.scm.") && !name.startsWith("java.lang.") && !name.startsWith("java.util.")) {
+        throw new InvalidClassException(name, "class is not allowed in repository metadata snapshot");
+      }
+      return super.resolveClass(desc);
+    }
+  }
+}
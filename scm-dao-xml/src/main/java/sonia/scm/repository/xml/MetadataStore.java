@@ -36,13 +36,17 @@ import sonia.scm.update.UpdateStepRepositoryMetadataAccess;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
 import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class MetadataStore implements UpdateStepRepositoryMetadataAccess<Path> {
 
   private static final Logger LOG = LoggerFactory.getLogger(MetadataStore.class);
 
   private final JAXBContext jaxbContext;
+  private final Queue<Unmarshaller> unmarshallers = new ConcurrentLinkedQueue<>();
 
   public MetadataStore() {
     try {
@@ -54,15 +58,33 @@ public class MetadataStore implements UpdateStepRepositoryMetadataAccess<Path> {
 
   public Repository read(Path path) {
     LOG.trace("read repository metadata from {}", path);
+    Unmarshaller unmarshaller = null;
     try {
-      return (Repository) jaxbContext.createUnmarshaller().unmarshal(resolveDataPath(path).toFile());
+      unmarshaller = acquireUnmarshaller();
+      return (Repository) unmarshaller.unmarshal(resolveDataPath(path).toFile());
     } catch (JAXBException ex) {
       throw new InternalRepositoryException(
         ContextEntry.ContextBuilder.entity(Path.class, path.toString()).build(), "failed read repository metadata", ex
       );
+    } finally {
+      if (unmarshaller != null) {
+        unmarshallers.offer(unmarshaller);
+      }
     }
   }
 
+  /**
+   * Unmarshallers are not thread safe, but expensive to create. So we keep the created unmarshallers in a pool, which
+   * grows up to the number of concurrent readers.
+   */
+  private Unmarshaller acquireUnmarshaller() throws JAXBException {
+    Unmarshaller unmarshaller = unmarshallers.poll();
+    if (unmarshaller == null) {
+      unmarshaller = jaxbContext.createUnmarshaller();
+    }
+    return unmarshaller;
+  }
+
   void write(Path path, Repository repository) {
     LOG.trace("write repository metadata of {} to {}", repository, path);
     try {
@@ -56,6 +56,7 @@ import static sonia.scm.ContextEntry.ContextBuilder.entity;
 public class PathBasedRepositoryLocationResolver extends BasicRepositoryLocationResolver<Path> {
 
   public static final String STORE_NAME = "repository-paths";
+  private static final String SNAPSHOT_EXTENSION = ".snapshot";
 
   private final SCMContextProvider contextProvider;
   private final InitialRepositoryLocationResolver initialRepositoryLocationResolver;
@@ -187,6 +188,16 @@ public class PathBasedRepositoryLocationResolver extends BasicRepositoryLocation
       .resolve(STORE_NAME.concat(StoreConstants.FILE_EXTENSION));
   }
 
+  /**
+   * Returns the path of the binary metadata snapshot, which is stored next to the path database.
+   */
+  Path resolveMetadataSnapshotPath() {
+    return contextProvider.getBaseDirectory()
+      .toPath()
+      .resolve(StoreConstants.CONFIG_DIRECTORY_NAME)
+      .resolve(STORE_NAME.concat(SNAPSHOT_EXTENSION));
+  }
+
   private void setLocation(String repositoryId, Path repositoryBasePath) {
     pathById.put(repositoryId, repositoryBasePath);
     writePathDatabase();
@@ -41,6 +41,7 @@ import javax.inject.Inject;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -52,6 +53,7 @@ public class XmlRepositoryDAO implements RepositoryDAO {
 
 
   private final MetadataStore metadataStore = new MetadataStore();
+  private final MetadataLoader metadataLoader;
 
   private final PathBasedRepositoryLocationResolver repositoryLocationResolver;
   private final FileSystem fileSystem;
@@ -68,14 +70,16 @@ public class XmlRepositoryDAO implements RepositoryDAO {
 
     this.byId = new ConcurrentHashMap<>();
     this.byNamespaceAndName = new ConcurrentHashMap<>();
+    this.metadataLoader = new MetadataLoader(metadataStore, repositoryLocationResolver.resolveMetadataSnapshotPath());
 
     init();
   }
 
   private void init() {
     RepositoryLocationResolver.RepositoryLocationResolverInstance<Path> pathRepositoryLocationResolverInstance = repositoryLocationResolver.create(Path.class);
-    pathRepositoryLocationResolverInstance.forAllLocations((repositoryId, repositoryPath) -> {
-      Repository repository = metadataStore.read(repositoryPath);
+    Map<String, Path> locations = new LinkedHashMap<>();
+    pathRepositoryLocationResolverInstance.forAllLocations(locations::put);
+    metadataLoader.load(locations, repositoryLocationResolver.getLastModified()).forEach((repositoryId, repository) -> {
       byNamespaceAndName.put(repository.getNamespaceAndName(), repository);
       byId.put(repositoryId, repository);
     });
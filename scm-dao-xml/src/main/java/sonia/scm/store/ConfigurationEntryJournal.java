@@ -0,0 +1,489 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.store;
+
+import com.google.common.util.concurrent.Striped;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Append only journal for {@link JAXBConfigurationEntryStore}. Every mutation of the store is appended as a small
+ * record to a journal file next to the xml file of the store. The journal is folded into the xml file by a
+ * compaction, which first rotates the journal to a compacting file and removes it after the xml file was written.
+ * On load the compacting file and the journal are replayed in that order on top of the xml file. All records are
+ * absolute (put with the complete value, remove or clear), so replaying a journal which is already part of the xml
+ * file leads to the same result.
+ * <p>
+ * The rotation, the compaction and the export of a store hold a lock per store file, because the export reads the xml
+ * file and both journals one after another and would miss the rotated records, if a compaction finishes in between.
+ * Appending records does not need the lock, because the export stops at the last complete record of the journal.
+ */
+final class ConfigurationEntryJournal {
+
+  static final String JOURNAL_SUFFIX = ".journal";
+  static final String COMPACTING_SUFFIX = ".journal.compacting";
+
+  private static final Logger LOG = LoggerFactory.getLogger(ConfigurationEntryJournal.class);
+
+  private static final byte OP_PUT = 1;
+  private static final byte OP_REMOVE = 2;
+  private static final byte OP_CLEAR = 3;
+
+  private static final Striped<Lock> LOCKS = Striped.lazyWeakLock(64);
+
+  private final Path journal;
+  private final Path compacting;
+  private final Lock lock;
+
+  private int records;
+  private int rotatedRecords;
+
+  ConfigurationEntryJournal(Path storeFile) {
+    this.journal = journalOf(storeFile);
+    this.compacting = storeFile.resolveSibling(storeFile.getFileName() + COMPACTING_SUFFIX);
+    this.lock = LOCKS.get(storeFile.toAbsolutePath().normalize());
+  }
+
+  /**
+   * Returns the lock for the xml file and the journals of the store, which must be held while the xml file is written
+   * or the journal is rotated.
+   */
+  Lock lock() {
+    return lock;
+  }
+
+  static Path journalOf(Path storeFile) {
+    return storeFile.resolveSibling(storeFile.getFileName() + JOURNAL_SUFFIX);
+  }
+
+  static boolean exists(Path storeFile) {
+    return new ConfigurationEntryJournal(storeFile).hasRecords();
+  }
+
+  boolean hasRecords() {
+    return Files.exists(journal) || Files.exists(compacting);
+  }
+
+  /**
+   * Returns the number of records which were appended to the journal since the last rotation.
+   */
+  int size() {
+    return records;
+  }
+
+  boolean isCompacting() {
+    return Files.exists(compacting);
+  }
+
+  void appendPut(String key, byte[] value) {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream(value.length + 64);
+    try (DataOutputStream output = new DataOutputStream(buffer)) {
+      output.writeByte(OP_PUT);
+      writeBytes(output, key.getBytes(StandardCharsets.UTF_8));
+      writeBytes(output, value);
+    } catch (IOException ex) {
+      throw new StoreException("could not create journal record", ex);
+    }
+    append(buffer.toByteArray());
+  }
+
+  void appendRemove(String key) {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(buffer)) {
+      output.writeByte(OP_REMOVE);
+      writeBytes(output, key.getBytes(StandardCharsets.UTF_8));
+    } catch (IOException ex) {
+      throw new StoreException("could not create journal record", ex);
+    }
+    append(buffer.toByteArray());
+  }
+
+  void appendClear() {
+    append(new byte[]{OP_CLEAR});
+  }
+
+  /**
+   * Moves the current journal aside, so that it can be folded into the xml file while new records are appended to a
+   * fresh journal.
+   */
+  void rotate() {
+    lock.lock();
+    try {
+      if (Files.exists(journal)) {
+        Files.move(journal, compacting);
+      }
+      rotatedRecords = records;
+      records = 0;
+    } catch (IOException ex) {
+      throw new StoreException("could not rotate journal " + journal, ex);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Moves the records of a rotated journal, whose compaction has failed, back to the front of the journal, so that the
+   * journal can be rotated again. The records keep their order, so a replay leads to the same result.
+   */
+  void revertRotation() {
+    lock.lock();
+    try {
+      if (Files.exists(compacting)) {
+        if (Files.exists(journal)) {
+          try (OutputStream output = Files.newOutputStream(compacting, StandardOpenOption.APPEND)) {
+            Files.copy(journal, output);
+          }
+        }
+        Files.move(compacting, journal, StandardCopyOption.REPLACE_EXISTING);
+        records += rotatedRecords;
+        rotatedRecords = 0;
+      }
+    } catch (IOException ex) {
+      throw new StoreException("could not revert rotation of journal " + journal, ex);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Removes the rotated journal, after its records were written to the xml file.
+   */
+  void finishCompaction() {
+    try {
+      Files.deleteIfExists(compacting);
+    } catch (IOException ex) {
+      throw new StoreException("could not remove compacted journal " + compacting, ex);
+    }
+  }
+
+  /**
+   * Removes all journal files, after the complete store was written to the xml file.
+   */
+  void reset() {
+    try {
+      Files.deleteIfExists(compacting);
+      Files.deleteIfExists(journal);
+      records = 0;
+    } catch (IOException ex) {
+      throw new StoreException("could not remove journal " + journal, ex);
+    }
+  }
+
+  /**
+   * Replays the rotated journal and the journal. An incomplete record at the end of a journal is dropped, by truncating
+   * the file. This must only be called by the owning store, while it holds its lock.
+   */
+  void replay(RecordHandler handler) {
+    replay(compacting, handler, true);
+    records = replay(journal, handler, true);
+  }
+
+  /**
+   * Replays the rotated journal and the journal without modifying them. The replay stops at the last complete record,
+   * because an incomplete record could still be written by the store.
+   */
+  void replayReadOnly(RecordHandler handler) {
+    replay(compacting, handler, false);
+    replay(journal, handler, false);
+  }
+
+  private void append(byte[] rec) {
+    try (OutputStream output = Files.newOutputStream(journal, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+      output.write(rec);
+      records++;
+    } catch (IOException ex) {
+      throw new StoreException("could not append record to journal " + journal, ex);
+    }
+  }
+
+  private int replay(Path file, RecordHandler handler, boolean repair) {
+    if (!Files.exists(file)) {
+      return 0;
+    }
+    LOG.debug("replay journal {}", file);
+    int count = 0;
+    long validLength = 0;
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      while (true) {
+        int op = input.read();
+        if (op < 0) {
+          break;
+        }
+        long recordLength = 1;
+        if (op == OP_CLEAR) {
+          handler.clear();
+        } else {
+          byte[] key = readBytes(input);
+          recordLength += 4 + key.length;
+          if (op == OP_PUT) {
+            byte[] value = readBytes(input);
+            recordLength += 4 + value.length;
+            handler.put(new String(key, StandardCharsets.UTF_8), value);
+          } else if (op == OP_REMOVE) {
+            handler.remove(new String(key, StandardCharsets.UTF_8));
+          } else {
+            throw new StoreException("unknown journal record type " + op + " in " + file);
+          }
+        }
+        validLength += recordLength;
+        count++;
+      }
+    } catch (EOFException ex) {
+      if (repair) {
+        LOG.warn("journal {} ends with an incomplete record, which is dropped", file);
+        truncate(file, validLength);
+      } else {
+        LOG.debug("journal {} ends with an incomplete record, which is ignored", file);
+      }
+    } catch (NoSuchFileException ex) {
+      // the journal was rotated or removed by a compaction of the store
+      LOG.debug("journal {} was removed before it could be read", file);
+    } catch (IOException ex) {
+      throw new StoreException("could not read journal " + file, ex);
+    } catch (StoreException ex) {
+      throw ex;
+    } catch (Exception ex) {
+      throw new StoreException("could not replay journal " + file, ex);
+    }
+    return count;
+  }
+
+  private void truncate(Path file, long length) {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(length);
+    } catch (IOException ex) {
+      throw new StoreException("could not truncate journal " + file, ex);
+    }
+  }
+
+  private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+    output.writeInt(bytes.length);
+    output.write(bytes);
+  }
+
+  private static byte[] readBytes(DataInputStream input) throws IOException {
+    int length = input.readInt();
+    byte[] bytes = new byte[length];
+    input.readFully(bytes);
+    return bytes;
+  }
+
+  /**
+   * Folds the journal of the given store file into the xml format of the store, without knowing the type of the
+   * stored values. This is used to export stores which have not been compacted yet.
+   */
+  static byte[] fold(Path storeFile) {
+    try {
+      ConfigurationEntryJournal journal = new ConfigurationEntryJournal(storeFile);
+      journal.lock().lock();
+      try {
+        return fold(storeFile, journal);
+      } finally {
+        journal.lock().unlock();
+      }
+    } catch (StoreException ex) {
+      throw ex;
+    } catch (Exception ex) {
+      throw new StoreException("could not fold journal of " + storeFile, ex);
+    }
+  }
+
+  private static byte[] fold(Path storeFile, ConfigurationEntryJournal journal) throws Exception {
+    DocumentBuilder builder = createDocumentBuilder();
+    Document document;
+    if (Files.exists(storeFile)) {
+      try (InputStream input = Files.newInputStream(storeFile)) {
+        document = builder.parse(input);
+      }
+    } else {
+      document = builder.newDocument();
+      Element configuration = document.createElement("configuration");
+      configuration.setAttribute("type", "config-entry");
+      document.appendChild(configuration);
+    }
+
+    Element root = document.getDocumentElement();
+    Map<String, Element> entries = collectEntries(root);
+
+    // records could be appended concurrently, so we must not repair the journal
+    journal.replayReadOnly(new RecordHandler() {
+      @Override
+      public void put(String key, byte[] value) throws Exception {
+        Node valueNode = document.importNode(
+          builder.parse(new ByteArrayInputStream(value)).getDocumentElement(), true
+        );
+        Element entry = entries.get(key);
+        if (entry == null) {
+          entry = document.createElement("entry");
+          Element keyElement = document.createElement("key");
+          keyElement.setTextContent(key);
+          entry.appendChild(keyElement);
+          entry.appendChild(valueNode);
+          root.appendChild(entry);
+          entries.put(key, entry);
+        } else {
+          Element previous = firstChildElement(entry, "value");
+          if (previous != null) {
+            entry.replaceChild(valueNode, previous);
+          } else {
+            entry.appendChild(valueNode);
+          }
+        }
+      }
+
+      @Override
+      public void remove(String key) {
+        Element entry = entries.remove(key);
+        if (entry != null) {
+          root.removeChild(entry);
+        }
+      }
+
+      @Override
+      public void clear() {
+        entries.values().forEach(root::removeChild);
+        entries.clear();
+      }
+    });
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    Transformer transformer = TransformerFactory.newInstance().newTransformer();
+    transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+    transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+    transformer.transform(new DOMSource(document), new StreamResult(output));
+    return output.toByteArray();
+  }
+
+  private static DocumentBuilder createDocumentBuilder() throws Exception {
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+    factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+    factory.setExpandEntityReferences(false);
+    factory.setNamespaceAware(true);
+    return factory.newDocumentBuilder();
+  }
+
+  private static Map<String, Element> collectEntries(Element root) {
+    Map<String, Element> entries = new LinkedHashMap<>();
+    NodeList children = root.getChildNodes();
+    for (int i = 0; i < children.getLength(); i++) {
+      Node child = children.item(i);
+      if (child instanceof Element && "entry".equals(child.getLocalName())) {
+        Element key = firstChildElement((Element) child, "key");
+        if (key != null) {
+          entries.put(key.getTextContent(), (Element) child);
+        }
+      }
+    }
+    return entries;
+  }
+
+  private static Element firstChildElement(Element parent, String name) {
+    NodeList children = parent.getChildNodes();
+    for (int i = 0; i < children.getLength(); i++) {
+      Node child = children.item(i);
+      if (child instanceof Element && name.equals(child.getLocalName())) {
+        return (Element) child;
+      }
+    }
+    return null;
+  }
+
+  static final class Settings {
+
+    private static final Settings DISABLED = new Settings(0, null);
+
+    private final int compactionThreshold;
+    private final Executor compactionExecutor;
+
+    private Settings(int compactionThreshold, Executor compactionExecutor) {
+      this.compactionThreshold = compactionThreshold;
+      this.compactionExecutor = compactionExecutor;
+    }
+
+    static Settings disabled() {
+      return DISABLED;
+    }
+
+    static Settings enabled(int compactionThreshold, Executor compactionExecutor) {
+      return new Settings(compactionThreshold, compactionExecutor);
+    }
+
+    boolean isEnabled() {
+      return compactionExecutor != null;
+    }
+
+    int getCompactionThreshold() {
+      return compactionThreshold;
+    }
+
+    Executor getCompactionExecutor() {
+      return compactionExecutor;
+    }
+  }
+
+  interface RecordHandler {
+
+    @SuppressWarnings("java:S112") // we need to throw Exception here
+    void put(String key, byte[] value) throws Exception;
+
+    void remove(String key);
+
+    void clear();
+  }
+}
@@ -25,6 +25,7 @@
 package sonia.scm.store;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Path;
 import java.util.Optional;
 import java.util.function.Function;
@@ -51,6 +52,14 @@ class ExportableConfigEntryFileStore implements ExportableStore {
 
   @Override
   public void export(Exporter exporter) throws IOException {
-    putFileContentIntoStream(exporter, file);
+    if (ConfigurationEntryJournal.exists(file)) {
+      // the journal has not been compacted yet, so we export the folded xml
+      byte[] content = ConfigurationEntryJournal.fold(file);
+      try (OutputStream stream = exporter.put(file.getFileName().toString(), content.length)) {
+        stream.write(content);
+      }
+    } else {
+      putFileContentIntoStream(exporter, file);
+    }
   }
 }
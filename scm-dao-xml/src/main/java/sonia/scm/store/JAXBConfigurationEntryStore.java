@@ -33,18 +33,28 @@ import sonia.scm.xml.IndentXMLStreamWriter;
 import sonia.scm.xml.XmlStreams;
 
 import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.function.Predicate;
 
 import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
 
+/**
+ * Xml based {@link ConfigurationEntryStore}. By default every modification rewrites the whole xml file. If the journal
+ * is enabled, modifications are appended to a {@link ConfigurationEntryJournal} and are folded into the xml file by a
+ * background compaction, after a configurable amount of records.
+ */
 public class JAXBConfigurationEntryStore<V> implements ConfigurationEntryStore<V> {
 
   private static final String TAG_CONFIGURATION = "configuration";
@@ -63,16 +73,31 @@ public class JAXBConfigurationEntryStore<V> implements ConfigurationEntryStore<V
   private final Class<V> type;
   private final TypedStoreContext<V> context;
   private final Map<String, V> entries = Maps.newHashMap();
+  private final ConfigurationEntryJournal journal;
+  private final ConfigurationEntryJournal.Settings journalSettings;
+
+  private volatile boolean compacting = false;
 
   JAXBConfigurationEntryStore(File file, KeyGenerator keyGenerator, Class<V> type, TypedStoreContext<V> context) {
+    this(file, keyGenerator, type, context, ConfigurationEntryJournal.Settings.disabled());
+  }
+
+  JAXBConfigurationEntryStore(File file, KeyGenerator keyGenerator, Class<V> type, TypedStoreContext<V> context, ConfigurationEntryJournal.Settings journalSettings) {
     this.file = file;
     this.keyGenerator = keyGenerator;
     this.type = type;
     this.context = context;
+    this.journal = new ConfigurationEntryJournal(file.toPath());
+    this.journalSettings = journalSettings;
     // initial load
     if (file.exists()) {
       load();
     }
+    if (journal.hasRecords()) {
+      synchronized (file) {
+        replayJournal();
+      }
+    }
   }
 
   @Override
@@ -81,7 +106,11 @@ public class JAXBConfigurationEntryStore<V> implements ConfigurationEntryStore<V
 
     synchronized (file) {
       entries.clear();
-      store();
+      if (isJournalEnabled()) {
+        journal.appendClear();
+      } else {
+        store();
+      }
     }
   }
 
@@ -100,7 +129,12 @@ public class JAXBConfigurationEntryStore<V> implements ConfigurationEntryStore<V
 
     synchronized (file) {
       entries.put(id, item);
-      store();
+      if (isJournalEnabled()) {
+        journal.appendPut(id, marshal(item));
+        compactIfRequired();
+      } else {
+        store();
+      }
     }
   }
 
@@ -110,7 +144,12 @@ public class JAXBConfigurationEntryStore<V> implements ConfigurationEntryStore<V
 
     synchronized (file) {
       entries.remove(id);
-      store();
+      if (isJournalEnabled()) {
+        journal.appendRemove(id);
+        compactIfRequired();
+      } else {
+        store();
+      }
     }
   }
 
@@ -182,7 +221,92 @@ public class JAXBConfigurationEntryStore<V> implements ConfigurationEntryStore<V
     });
   }
 
+  private boolean isJournalEnabled() {
+    // the first write creates the xml file, so that the store can always be found by the export
+    return journalSettings.isEnabled() && file.exists();
+  }
+
+  private void replayJournal() {
+    LOG.debug("replay journal of configuration store {}", file);
+
+    context.withUnmarshaller(u -> journal.replay(new ConfigurationEntryJournal.RecordHandler() {
+      @Override
+      public void put(String key, byte[] value) throws JAXBException {
+        JAXBElement<V> element = u.unmarshal(new StreamSource(new ByteArrayInputStream(value)), type);
+        if (!element.isNil()) {
+          entries.put(key, element.getValue());
+        } else {
+          LOG.warn("could not unmarshall object of entry store journal");
+        }
+      }
+
+      @Override
+      public void remove(String key) {
+        entries.remove(key);
+      }
+
+      @Override
+      public void clear() {
+        entries.clear();
+      }
+    }));
+
+    if (journal.isCompacting()) {
+      // a previous compaction was interrupted, so we write the complete store once
+      store();
+    }
+  }
+
+  private byte[] marshal(V item) {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    context.withMarshaller(m -> {
+      m.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+      m.marshal(new JAXBElement<>(QName.valueOf(TAG_VALUE), type, item), output);
+    });
+    return output.toByteArray();
+  }
+
+  private void compactIfRequired() {
+    if (!compacting && journal.size() >= journalSettings.getCompactionThreshold()) {
+      compacting = true;
+      if (journal.isCompacting()) {
+        // the last compaction has failed, so we start over with all records
+        journal.revertRotation();
+      }
+      journal.rotate();
+      Map<String, V> snapshot = new HashMap<>(entries);
+      journalSettings.getCompactionExecutor().execute(() -> compact(snapshot));
+    }
+  }
+
+  private void compact(Map<String, V> snapshot) {
+    LOG.debug("compact journal of configuration store {}", file);
+    journal.lock().lock();
+    try {
+      write(snapshot);
+      journal.finishCompaction();
+    } catch (Exception ex) {
+      // the rotated journal is kept and is moved back into the journal by the next compaction or replayed on load
+      LOG.error("failed to compact journal of configuration store {}", file, ex);
+    } finally {
+      journal.lock().unlock();
+      compacting = false;
+    }
+  }
+
   private void store() {
+    journal.lock().lock();
+    try {
+      write(entries);
+      if (journal.hasRecords()) {
+        journal.reset();
+      }
+    } finally {
+      journal.lock().unlock();
+    }
+  }
+
+  private void write(Map<String, V> entriesToWrite) {
     LOG.debug("store configuration to {}", file);
 
     context.withMarshaller(m -> {
@@ -197,7 +321,7 @@ public class JAXBConfigurationEntryStore<V> implements ConfigurationEntryStore<V
             writer.writeStartElement(TAG_CONFIGURATION);
             writer.writeAttribute("type", "config-entry");
 
-            for (Entry<String, V> e : entries.entrySet()) {
+            for (Entry<String, V> e : entriesToWrite.entrySet()) {
 
               // entry start
               writer.writeStartElement(TAG_ENTRY);
@@ -26,6 +26,8 @@ package sonia.scm.store;
 
 //~--- non-JDK imports --------------------------------------------------------
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import sonia.scm.SCMContextProvider;
@@ -35,7 +37,12 @@ import sonia.scm.security.KeyGenerator;
 
 //~--- JDK imports ------------------------------------------------------------
 
+import java.util.concurrent.Executors;
+
 /**
+ * Creates {@link JAXBConfigurationEntryStore}s. The journal of the stores can be enabled with the system property
+ * {@code scm.store.configEntry.journal}, the amount of records after which the journal is compacted into the xml file
+ * can be configured with {@code scm.store.configEntry.journal.compactionThreshold}.
  *
  * @author Sebastian Sdorra
  */
@@ -43,12 +50,40 @@ import sonia.scm.security.KeyGenerator;
 public class JAXBConfigurationEntryStoreFactory extends FileBasedStoreFactory
   implements ConfigurationEntryStoreFactory {
 
-  private KeyGenerator keyGenerator;
+  static final String PROPERTY_JOURNAL = "scm.store.configEntry.journal";
+  static final String PROPERTY_COMPACTION_THRESHOLD = "scm.store.configEntry.journal.compactionThreshold";
+
+  private static final int DEFAULT_COMPACTION_THRESHOLD = 1000;
+
+  private final KeyGenerator keyGenerator;
+  private final ConfigurationEntryJournal.Settings journalSettings;
 
   @Inject
   public JAXBConfigurationEntryStoreFactory(SCMContextProvider contextProvider, RepositoryLocationResolver repositoryLocationResolver, KeyGenerator keyGenerator, RepositoryReadOnlyChecker readOnlyChecker) {
+    this(contextProvider, repositoryLocationResolver, keyGenerator, readOnlyChecker, createJournalSettings());
+  }
+
+  @VisibleForTesting
+  JAXBConfigurationEntryStoreFactory(SCMContextProvider contextProvider, RepositoryLocationResolver repositoryLocationResolver, KeyGenerator keyGenerator, RepositoryReadOnlyChecker readOnlyChecker, ConfigurationEntryJournal.Settings journalSettings) {
     super(contextProvider, repositoryLocationResolver, Store.CONFIG, readOnlyChecker);
     this.keyGenerator = keyGenerator;
+    this.journalSettings = journalSettings;
+  }
+
+  private static ConfigurationEntryJournal.Settings createJournalSettings() {
+    if (!Boolean.getBoolean(PROPERTY_JOURNAL)) {
+      return ConfigurationEntryJournal.Settings.disabled();
+    }
+    int threshold = Integer.getInteger(PROPERTY_COMPACTION_THRESHOLD, DEFAULT_COMPACTION_THRESHOLD);
+    return ConfigurationEntryJournal.Settings.enabled(
+      threshold,
+      Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder()
+          .setNameFormat("ConfigurationEntryJournalCompaction-%d")
+          .setDaemon(true)
+          .build()
+      )
+    );
   }
 
   @Override
@@ -57,7 +92,8 @@ public class JAXBConfigurationEntryStoreFactory extends FileBasedStoreFactory
       getStoreLocation(storeParameters.getName().concat(StoreConstants.FILE_EXTENSION), storeParameters.getType(), storeParameters.getRepositoryId()),
       keyGenerator,
       storeParameters.getType(),
-      TypedStoreContext.of(storeParameters)
+      TypedStoreContext.of(storeParameters),
+      journalSettings
     );
   }
 }
@@ -26,14 +26,24 @@ package sonia.scm.xml;
 
 //~--- non-JDK imports --------------------------------------------------------
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sonia.scm.GenericDAO;
 import sonia.scm.ModelObject;
 import sonia.scm.store.ConfigurationStore;
 
+import java.io.Closeable;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 //~--- JDK imports ------------------------------------------------------------
 
@@ -45,12 +55,24 @@ import java.util.Collection;
  * @param <T>
  */
 public abstract class AbstractXmlDAO<I extends ModelObject,
-      T extends XmlDatabase> implements GenericDAO<I>
+      T extends XmlDatabase> implements GenericDAO<I>, Closeable
 {
 
   /** Field description */
   public static final String TYPE = "xml";
 
+  /**
+   * Name of the system property, which defines the time in milliseconds in
+   * which single modifications are collected, before they are written with one
+   * store operation. The default is 0, which writes every modification
+   * immediately. Pending modifications are written, when the dao is closed
+   * during the shutdown of the injection context.
+   *
+   * @since 2.15.0
+   */
+  public static final String PROPERTY_WRITE_COALESCING_WINDOW =
+    "scm.xml.dao.writeCoalescingWindow";
+
   /**
    * the logger for XmlGroupDAO
    */
@@ -67,14 +89,33 @@ public abstract class AbstractXmlDAO<I extends ModelObject,
    * @param store
    */
   public AbstractXmlDAO(ConfigurationStore<T> store)
+  {
+    this(store, Long.getLong(PROPERTY_WRITE_COALESCING_WINDOW, 0L));
+  }
+
+  /**
+   * Constructs a new dao, which collects single modifications for the given
+   * time in milliseconds before they are written. A window of 0 or less writes
+   * every modification immediately.
+   *
+   * @param store store of the xml database
+   * @param writeCoalescingWindow time in milliseconds
+   *
+   * @since 2.15.0
+   */
+  protected AbstractXmlDAO(ConfigurationStore<T> store,
+    long writeCoalescingWindow)
   {
     this.store = store;
+    this.writeCoalescingWindow = writeCoalescingWindow;
     db = store.get();
 
     if (db == null)
     {
       db = createNewDatabase();
     }
+
+    publish();
   }
 
   //~--- methods --------------------------------------------------------------
@@ -115,10 +156,76 @@ public abstract class AbstractXmlDAO<I extends ModelObject,
     synchronized (store)
     {
       db.add(clone(item));
-      storeDB();
+      modified();
     }
   }
 
+  /**
+   * Executes the modifications of the batch and writes the database once, after
+   * all modifications are applied. The modifications and all pending
+   * modifications of the write coalescing window are persisted, when the
+   * method returns.
+   *
+   * @param modifications consumer which applies the modifications to the batch
+   *
+   * @since 2.15.0
+   */
+  @Override
+  public void batch(Consumer<Batch<I>> modifications)
+  {
+    synchronized (store)
+    {
+      try
+      {
+        modifications.accept(new XmlBatch());
+      }
+      finally
+      {
+        // the in memory database is already modified, so we have to publish
+        // and write it even if the batch has failed
+        publish();
+        storeDB();
+      }
+    }
+  }
+
+  /**
+   * Writes pending modifications of the write coalescing window.
+   *
+   * @since 2.15.0
+   */
+  public void flush()
+  {
+    synchronized (store)
+    {
+      flushScheduled = false;
+
+      if (dirty)
+      {
+        storeDB();
+      }
+    }
+  }
+
+  /**
+   * Writes pending modifications of the write coalescing window. All
+   * modifications after the dao is closed are written immediately. The dao is
+   * closed during the shutdown of the injection context, because it is a
+   * {@link Closeable}.
+   *
+   * @since 2.15.0
+   */
+  @Override
+  public void close()
+  {
+    synchronized (store)
+    {
+      closed = true;
+    }
+
+    flush();
+  }
+
   /**
    * Method description
    *
@@ -146,7 +253,7 @@ public abstract class AbstractXmlDAO<I extends ModelObject,
   @Override
   public boolean contains(String id)
   {
-    return db.contains(id);
+    return snapshot.items.containsKey(id);
   }
 
   /**
@@ -167,7 +274,7 @@ public abstract class AbstractXmlDAO<I extends ModelObject,
     synchronized (store)
     {
       db.remove(item.getId());
-      storeDB();
+      modified();
     }
   }
 
@@ -191,7 +298,7 @@ public abstract class AbstractXmlDAO<I extends ModelObject,
     {
       db.remove(item.getId());
       db.add(clone(item));
-      storeDB();
+      modified();
     }
   }
 
@@ -207,10 +314,9 @@ public abstract class AbstractXmlDAO<I extends ModelObject,
    * @return
    */
   @Override
-  @SuppressWarnings("unchecked")
   public I get(String id)
   {
-    return (I) db.get(id);
+    return snapshot.items.get(id);
   }
 
   /**
@@ -222,8 +328,7 @@ public abstract class AbstractXmlDAO<I extends ModelObject,
   @Override
   public Collection<I> getAll()
   {
-    // avoid concurrent modification exceptions
-    return ImmutableList.copyOf(db.values());
+    return snapshot.values;
   }
 
   /**
@@ -277,6 +382,127 @@ public abstract class AbstractXmlDAO<I extends ModelObject,
 
     db.setLastModified(System.currentTimeMillis());
     store.set(db);
+    dirty = false;
+  }
+
+  @VisibleForTesting
+  boolean isDirty()
+  {
+    synchronized (store)
+    {
+      return dirty;
+    }
+  }
+
+  /**
+   * Writes the database or, if a write coalescing window is configured,
+   * schedules the write at the end of the window. Must be called while holding
+   * the lock of the store.
+   */
+  private void modified()
+  {
+    publish();
+
+    if (writeCoalescingWindow <= 0 || closed)
+    {
+      storeDB();
+    }
+    else
+    {
+      dirty = true;
+
+      if (!flushScheduled)
+      {
+        flushScheduled = true;
+        Flusher.EXECUTOR.schedule(this::flush, writeCoalescingWindow,
+          TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
+  /**
+   * Publishes an immutable snapshot of the database for readers. Readers use
+   * the snapshot without locking and without copying, modifications have to
+   * publish a new one. Must be called while holding the lock of the store or
+   * from the constructor.
+   */
+  @SuppressWarnings("unchecked")
+  private void publish()
+  {
+    Map<String, I> items = new LinkedHashMap<>();
+
+    for (Object item : db.values())
+    {
+      items.put(((I) item).getId(), (I) item);
+    }
+
+    snapshot = new Snapshot<>(items);
+  }
+
+  //~--- inner classes --------------------------------------------------------
+
+  /**
+   * Immutable view of the items at the time of the last modification.
+   *
+   * @param <I> type of items
+   */
+  private static final class Snapshot<I>
+  {
+    private Snapshot(Map<String, I> items)
+    {
+      this.items = ImmutableMap.copyOf(items);
+      this.values = this.items.values().asList();
+    }
+
+    /** items by id */
+    private final ImmutableMap<String, I> items;
+
+    /** all items */
+    private final ImmutableList<I> values;
+  }
+
+  /**
+   * Batch which modifies the database without writing it.
+   */
+  private class XmlBatch implements Batch<I>
+  {
+
+    @Override
+    public void add(I item)
+    {
+      logger.trace("add item {} to xml backend with batch", item.getId());
+      db.add(clone(item));
+    }
+
+    @Override
+    public void modify(I item)
+    {
+      logger.trace("modify xml backend item {} with batch", item.getId());
+      db.remove(item.getId());
+      db.add(clone(item));
+    }
+
+    @Override
+    public void delete(I item)
+    {
+      logger.trace("delete item {} from xml backend with batch", item.getId());
+      db.remove(item.getId());
+    }
+  }
+
+  /**
+   * Lazy holder of the executor for delayed writes, which is only created if a
+   * write coalescing window is used.
+   */
+  private static class Flusher
+  {
+    private static final ScheduledExecutorService EXECUTOR =
+      Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder()
+          .setNameFormat("XmlDAOFlush-%d")
+          .setDaemon(true)
+          .build()
+      );
   }
 
   //~--- fields ---------------------------------------------------------------
@@ -286,4 +512,19 @@ public abstract class AbstractXmlDAO<I extends ModelObject,
 
   /** Field description */
   protected T db;
+
+  /** time in milliseconds in which single modifications are collected */
+  private final long writeCoalescingWindow;
+
+  /** true if the database has modifications which are not written */
+  private boolean dirty;
+
+  /** true if a delayed write is scheduled */
+  private boolean flushScheduled;
+
+  /** true if the dao is closed and modifications are written immediately */
+  private boolean closed;
+
+  /** snapshot for readers, replaced after every modification */
+  private volatile Snapshot<I> snapshot;
 }
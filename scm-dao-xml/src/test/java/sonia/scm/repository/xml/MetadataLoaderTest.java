@@ -0,0 +1,114 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository.xml;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sonia.scm.repository.Repository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class MetadataLoaderTest {
+
+  private final MetadataStore metadataStore = spy(new MetadataStore());
+
+  private Path snapshotPath;
+  private final Map<String, Path> locations = new LinkedHashMap<>();
+
+  @BeforeEach
+  void createRepositories(@TempDir Path tempDir) throws IOException {
+    snapshotPath = tempDir.resolve("repository-paths.snapshot");
+    for (int i = 0; i < 10; i++) {
+      String id = "repo-" + i;
+      Path path = tempDir.resolve(id);
+      Files.createDirectories(path);
+      metadataStore.write(path, new Repository(id, "git", "hitchhiker", "heart-of-gold-" + i));
+      locations.put(id, path);
+    }
+  }
+
+  @Test
+  void shouldLoadAllRepositories() {
+    Map<String, Repository> repositories = new MetadataLoader(metadataStore, null, 4).load(locations, 42L);
+
+    assertThat(repositories).hasSize(10);
+    assertThat(repositories.get("repo-3").getName()).isEqualTo("heart-of-gold-3");
+    assertThat(snapshotPath).doesNotExist();
+  }
+
+  @Test
+  void shouldUseSnapshotOnSecondLoad() {
+    new MetadataLoader(metadataStore, snapshotPath, 4).load(locations, 42L);
+    assertThat(snapshotPath).exists();
+
+    Map<String, Repository> repositories = new MetadataLoader(metadataStore, snapshotPath, 4).load(locations, 42L);
+
+    assertThat(repositories).hasSize(10);
+    assertThat(repositories.get("repo-7").getName()).isEqualTo("heart-of-gold-7");
+    verify(metadataStore, times(10)).read(any());
+  }
+
+  @Test
+  void shouldIgnoreSnapshotWithDifferentLastModified() {
+    new MetadataLoader(metadataStore, snapshotPath, 4).load(locations, 42L);
+
+    new MetadataLoader(metadataStore, snapshotPath, 4).load(locations, 43L);
+
+    verify(metadataStore, times(20)).read(any());
+  }
+
+  @Test
+  void shouldReadChangedMetadataFromXml() {
+    new MetadataLoader(metadataStore, snapshotPath, 4).load(locations, 42L);
+
+    Path path = locations.get("repo-2");
+    metadataStore.write(path, new Repository("repo-2", "git", "hitchhiker", "restaurant-at-the-end-of-the-universe"));
+
+    Map<String, Repository> repositories = new MetadataLoader(metadataStore, snapshotPath, 4).load(locations, 42L);
+
+    assertThat(repositories.get("repo-2").getName()).isEqualTo("restaurant-at-the-end-of-the-universe");
+    verify(metadataStore, times(11)).read(any());
+  }
+
+  @Test
+  void shouldNotReadXmlWithoutLocations() {
+    Map<String, Repository> repositories = new MetadataLoader(metadataStore, snapshotPath, 4).load(new LinkedHashMap<>(), 42L);
+
+    assertThat(repositories).isEmpty();
+    verify(metadataStore, never()).read(any());
+  }
+}
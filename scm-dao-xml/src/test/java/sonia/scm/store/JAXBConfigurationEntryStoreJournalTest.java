@@ -0,0 +1,249 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.store;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sonia.scm.security.UUIDKeyGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class JAXBConfigurationEntryStoreJournalTest {
+
+  private final List<Runnable> compactions = new ArrayList<>();
+
+  private File file;
+  private Path journal;
+
+  @BeforeEach
+  void setUpFile(@TempDir Path tempDir) {
+    file = tempDir.resolve("store.xml").toFile();
+    journal = ConfigurationEntryJournal.journalOf(file.toPath());
+  }
+
+  @Test
+  void shouldAppendToJournalInsteadOfRewritingStore() throws IOException {
+    JAXBConfigurationEntryStore<StoreObject> store = createStore(100);
+    store.put("a", new StoreObject("one"));
+    byte[] content = Files.readAllBytes(file.toPath());
+
+    store.put("b", new StoreObject("two"));
+    store.remove("a");
+
+    assertThat(Files.readAllBytes(file.toPath())).isEqualTo(content);
+    assertThat(journal).exists();
+  }
+
+  @Test
+  void shouldReplayJournalOnLoad() {
+    JAXBConfigurationEntryStore<StoreObject> store = createStore(100);
+    store.put("a", new StoreObject("one"));
+    store.put("b", new StoreObject("two"));
+    store.put("c", new StoreObject("three"));
+    store.put("b", new StoreObject("two again"));
+    store.remove("c");
+
+    JAXBConfigurationEntryStore<StoreObject> loaded = createStore(100);
+
+    assertThat(loaded.getAll()).containsOnlyKeys("a", "b");
+    assertThat(loaded.get("b").getValue()).isEqualTo("two again");
+  }
+
+  @Test
+  void shouldReplayClear() {
+    JAXBConfigurationEntryStore<StoreObject> store = createStore(100);
+    store.put("a", new StoreObject("one"));
+    store.put("b", new StoreObject("two"));
+    store.clear();
+    store.put("c", new StoreObject("three"));
+
+    JAXBConfigurationEntryStore<StoreObject> loaded = createStore(100);
+
+    assertThat(loaded.getAll()).containsOnlyKeys("c");
+  }
+
+  @Test
+  void shouldCompactJournalIntoStoreFile() {
+    JAXBConfigurationEntryStore<StoreObject> store = createStore(2);
+    store.put("a", new StoreObject("one"));
+    store.put("b", new StoreObject("two"));
+    store.put("c", new StoreObject("three"));
+
+    assertThat(compactions).hasSize(1);
+    compactions.get(0).run();
+
+    assertThat(journal).doesNotExist();
+    JAXBConfigurationEntryStore<StoreObject> loaded = new JAXBConfigurationEntryStore<>(
+      file, new UUIDKeyGenerator(), StoreObject.class, context()
+    );
+    assertThat(loaded.getAll()).containsOnlyKeys("a", "b", "c");
+  }
+
+  @Test
+  void shouldKeepRecordsWrittenDuringCompaction() {
+    JAXBConfigurationEntryStore<StoreObject> store = createStore(2);
+    store.put("a", new StoreObject("one"));
+    store.put("b", new StoreObject("two"));
+    store.put("c", new StoreObject("three"));
+    store.put("d", new StoreObject("four"));
+
+    compactions.get(0).run();
+
+    assertThat(journal).exists();
+    assertThat(createStore(100).getAll()).containsOnlyKeys("a", "b", "c", "d");
+  }
+
+  @Test
+  void shouldRotateJournalAgainAfterFailedCompaction() throws IOException {
+    JAXBConfigurationEntryStore<StoreObject> store = createStore(2);
+    store.put("a", new StoreObject("one"));
+    store.put("b", new StoreObject("two"));
+    store.put("c", new StoreObject("three"));
+
+    // a directory in place of the xml file lets the write fail
+    Path storeFile = file.toPath();
+    Path moved = Files.move(storeFile, storeFile.resolveSibling("moved.xml"));
+    Files.createDirectories(storeFile.resolve("blocker"));
+    compactions.get(0).run();
+    Files.delete(storeFile.resolve("blocker"));
+    Files.delete(storeFile);
+    Files.move(moved, storeFile);
+
+    store.put("d", new StoreObject("four"));
+    store.put("e", new StoreObject("five"));
+
+    assertThat(compactions).hasSize(2);
+    compactions.get(1).run();
+
+    assertThat(journal).doesNotExist();
+    assertThat(file.toPath().resolveSibling("store.xml" + ConfigurationEntryJournal.COMPACTING_SUFFIX)).doesNotExist();
+    assertThat(createStore(100).getAll()).containsOnlyKeys("a", "b", "c", "d", "e");
+  }
+
+  @Test
+  void shouldReplayJournalWithoutJournalMode() {
+    JAXBConfigurationEntryStore<StoreObject> store = createStore(100);
+    store.put("a", new StoreObject("one"));
+    store.put("b", new StoreObject("two"));
+
+    JAXBConfigurationEntryStore<StoreObject> withoutJournal = new JAXBConfigurationEntryStore<>(
+      file, new UUIDKeyGenerator(), StoreObject.class, context()
+    );
+    assertThat(withoutJournal.getAll()).containsOnlyKeys("a", "b");
+
+    withoutJournal.put("c", new StoreObject("three"));
+
+    assertThat(journal).doesNotExist();
+    assertThat(createStore(100).getAll()).containsOnlyKeys("a", "b", "c");
+  }
+
+  @Test
+  void shouldDropIncompleteRecord() throws IOException {
+    JAXBConfigurationEntryStore<StoreObject> store = createStore(100);
+    store.put("a", new StoreObject("one"));
+    store.put("b", new StoreObject("two"));
+    Files.write(journal, new byte[]{1, 0, 0}, StandardOpenOption.APPEND);
+
+    JAXBConfigurationEntryStore<StoreObject> loaded = createStore(100);
+    loaded.put("c", new StoreObject("three"));
+
+    assertThat(createStore(100).getAll()).containsOnlyKeys("a", "b", "c");
+  }
+
+  @Test
+  void shouldExportFoldedStore() throws IOException {
+    JAXBConfigurationEntryStore<StoreObject> store = createStore(100);
+    store.put("a", new StoreObject("one"));
+    store.put("b", new StoreObject("two"));
+    store.put("a", new StoreObject("one again"));
+
+    Exporter exporter = mock(Exporter.class);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    when(exporter.put(eq("store.xml"), anyLong())).thenReturn(output);
+
+    new ExportableConfigEntryFileStore(file.toPath()).export(exporter);
+
+    verify(exporter).put("store.xml", output.size());
+    Path exported = file.toPath().resolveSibling("exported.xml");
+    Files.write(exported, output.toByteArray());
+    JAXBConfigurationEntryStore<StoreObject> imported = new JAXBConfigurationEntryStore<>(
+      exported.toFile(), new UUIDKeyGenerator(), StoreObject.class, context()
+    );
+    assertThat(imported.getAll()).containsOnlyKeys("a", "b");
+    assertThat(imported.get("a").getValue()).isEqualTo("one again");
+    assertThat(output.toString(StandardCharsets.UTF_8.name())).contains("config-entry");
+  }
+
+  @Test
+  void shouldNotTruncateJournalWithIncompleteRecordOnExport() throws IOException {
+    JAXBConfigurationEntryStore<StoreObject> store = createStore(100);
+    store.put("a", new StoreObject("one"));
+    // simulates a record, which is written concurrently to the export
+    Files.write(journal, new byte[]{1, 0, 0}, StandardOpenOption.APPEND);
+    long length = Files.size(journal);
+
+    Exporter exporter = mock(Exporter.class);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    when(exporter.put(eq("store.xml"), anyLong())).thenReturn(output);
+
+    new ExportableConfigEntryFileStore(file.toPath()).export(exporter);
+
+    assertThat(Files.size(journal)).isEqualTo(length);
+    assertThat(output.toString(StandardCharsets.UTF_8.name())).contains("one");
+  }
+
+  private JAXBConfigurationEntryStore<StoreObject> createStore(int compactionThreshold) {
+    return new JAXBConfigurationEntryStore<>(
+      file,
+      new UUIDKeyGenerator(),
+      StoreObject.class,
+      context(),
+      ConfigurationEntryJournal.Settings.enabled(compactionThreshold, compactions::add)
+    );
+  }
+
+  @SuppressWarnings("unchecked")
+  private TypedStoreContext<StoreObject> context() {
+    TypedStoreParameters<StoreObject> params = mock(TypedStoreParameters.class);
+    when(params.getType()).thenReturn(StoreObject.class);
+    return TypedStoreContext.of(params);
+  }
+}
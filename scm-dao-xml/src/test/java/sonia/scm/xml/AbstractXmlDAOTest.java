@@ -0,0 +1,196 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.xml;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sonia.scm.store.ConfigurationStore;
+import sonia.scm.user.User;
+import sonia.scm.user.xml.XmlUserDatabase;
+
+import java.util.Collection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AbstractXmlDAOTest {
+
+  @Mock
+  private ConfigurationStore<XmlUserDatabase> store;
+
+  @Test
+  void shouldWriteEverySingleModification() {
+    UserDAO dao = new UserDAO(store, 0);
+
+    dao.add(new User("trillian"));
+    dao.add(new User("zaphod"));
+    dao.delete(new User("trillian"));
+
+    verify(store, times(3)).set(any());
+    assertThat(dao.contains("zaphod")).isTrue();
+    assertThat(dao.contains("trillian")).isFalse();
+  }
+
+  @Test
+  void shouldWriteBatchOnce() {
+    UserDAO dao = new UserDAO(store, 0);
+    dao.add(new User("trillian"));
+
+    dao.batch(batch -> {
+      batch.add(new User("zaphod"));
+      batch.add(new User("arthur"));
+      batch.modify(new User("trillian", "Tricia McMillan", "tricia@hitchhiker.com"));
+      batch.delete(new User("arthur"));
+    });
+
+    verify(store, times(2)).set(any());
+    assertThat(dao.getAll()).extracting("name").containsExactlyInAnyOrder("trillian", "zaphod");
+    assertThat(dao.get("trillian").getDisplayName()).isEqualTo("Tricia McMillan");
+  }
+
+  @Test
+  void shouldWriteFailedBatch() {
+    UserDAO dao = new UserDAO(store, 0);
+
+    assertThatThrownBy(() -> dao.batch(batch -> {
+      batch.add(new User("zaphod"));
+      throw new IllegalStateException("failed");
+    })).isInstanceOf(IllegalStateException.class);
+
+    verify(store).set(any());
+    assertThat(dao.contains("zaphod")).isTrue();
+  }
+
+  @Test
+  void shouldCoalesceModificationsWithinWindow() {
+    UserDAO dao = new UserDAO(store, 60000);
+
+    dao.add(new User("trillian"));
+    dao.add(new User("zaphod"));
+
+    verify(store, never()).set(any());
+    assertThat(dao.isDirty()).isTrue();
+    assertThat(dao.contains("zaphod")).isTrue();
+
+    dao.flush();
+
+    verify(store).set(any());
+    assertThat(dao.isDirty()).isFalse();
+  }
+
+  @Test
+  void shouldWritePendingModificationsOnClose() {
+    UserDAO dao = new UserDAO(store, 60000);
+    dao.add(new User("trillian"));
+
+    dao.close();
+
+    verify(store).set(any());
+    assertThat(dao.isDirty()).isFalse();
+  }
+
+  @Test
+  void shouldWriteModificationsImmediatelyAfterClose() {
+    UserDAO dao = new UserDAO(store, 60000);
+    dao.close();
+
+    dao.add(new User("trillian"));
+
+    verify(store).set(any());
+    assertThat(dao.isDirty()).isFalse();
+  }
+
+  @Test
+  void shouldWritePendingModificationsWithBatch() {
+    UserDAO dao = new UserDAO(store, 60000);
+    dao.add(new User("trillian"));
+
+    dao.batch(batch -> batch.add(new User("zaphod")));
+
+    verify(store).set(any());
+    assertThat(dao.isDirty()).isFalse();
+
+    dao.flush();
+    verify(store).set(any());
+  }
+
+  @Test
+  void shouldReturnSameSnapshotWithoutModification() {
+    UserDAO dao = new UserDAO(store, 0);
+    dao.add(new User("trillian"));
+
+    assertThat(dao.getAll()).isSameAs(dao.getAll());
+  }
+
+  @Test
+  void shouldNotChangeReturnedSnapshotWithModification() {
+    UserDAO dao = new UserDAO(store, 0);
+    dao.add(new User("trillian"));
+
+    Collection<User> before = dao.getAll();
+    dao.add(new User("zaphod"));
+
+    assertThat(before).extracting("name").containsExactly("trillian");
+    assertThat(dao.getAll()).extracting("name").containsExactly("trillian", "zaphod");
+    assertThat(dao.get("zaphod")).isNotNull();
+  }
+
+  @Test
+  void shouldReadItemsFromStoredDatabase() {
+    XmlUserDatabase database = new XmlUserDatabase();
+    database.add(new User("trillian"));
+    when(store.get()).thenReturn(database);
+
+    UserDAO dao = new UserDAO(store, 0);
+
+    assertThat(dao.contains("trillian")).isTrue();
+    assertThat(dao.getAll()).extracting("name").containsExactly("trillian");
+  }
+
+  private static class UserDAO extends AbstractXmlDAO<User, XmlUserDatabase> {
+
+    UserDAO(ConfigurationStore<XmlUserDatabase> store, long writeCoalescingWindow) {
+      super(store, writeCoalescingWindow);
+    }
+
+    @Override
+    protected User clone(User item) {
+      return item.clone();
+    }
+
+    @Override
+    protected XmlUserDatabase createNewDatabase() {
+      return new XmlUserDatabase();
+    }
+  }
+}
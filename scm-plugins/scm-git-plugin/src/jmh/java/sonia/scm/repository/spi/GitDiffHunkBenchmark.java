@@ -0,0 +1,120 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository.spi;
+
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import sonia.scm.repository.api.DiffLine;
+import sonia.scm.repository.api.Hunk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the creation of hunks by formatting and parsing a textual diff with
+ * the creation of hunks directly from the edit list.
+ * <p>
+ * Run with {@code ./gradlew :scm-plugins:scm-git-plugin:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GitDiffHunkBenchmark {
+
+  @Param({"1000", "50000"})
+  private int lines;
+
+  @Param({"10", "500"})
+  private int changes;
+
+  private RawText oldText;
+  private RawText newText;
+  private EditList edits;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Random random = new Random(42);
+    StringBuilder oldContent = new StringBuilder();
+    StringBuilder newContent = new StringBuilder();
+    for (int i = 0; i < lines; i++) {
+      String line = "line " + i + " of the heart of gold, the infinite improbability drive\n";
+      oldContent.append(line);
+      if (random.nextInt(lines) < changes) {
+        newContent.append("changed ").append(line);
+      } else {
+        newContent.append(line);
+      }
+    }
+    oldText = new RawText(oldContent.toString().getBytes(StandardCharsets.UTF_8));
+    newText = new RawText(newContent.toString().getBytes(StandardCharsets.UTF_8));
+    edits = DiffAlgorithm.getAlgorithm(DiffAlgorithm.SupportedAlgorithm.HISTOGRAM)
+      .diff(RawTextComparator.DEFAULT, oldText, newText);
+  }
+
+  @Benchmark
+  public void formatAndParse(Blackhole blackhole) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (DiffFormatter formatter = new DiffFormatter(baos)) {
+      formatter.format(edits, oldText, newText);
+    }
+    consume(new GitHunkParser().parse(baos.toString()), blackhole);
+  }
+
+  @Benchmark
+  public void buildFromEditList(Blackhole blackhole) {
+    consume(GitHunkBuilder.build(edits, oldText, newText), blackhole);
+  }
+
+  private static void consume(List<Hunk> hunks, Blackhole blackhole) {
+    for (Hunk hunk : hunks) {
+      for (DiffLine line : hunk) {
+        blackhole.consume(line.getContent());
+      }
+    }
+  }
+}
@@ -25,19 +25,18 @@
 package sonia.scm.protocolcommand.git;
 
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.lib.RepositoryCache;
 import org.eclipse.jgit.transport.ReceivePack;
 import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.UploadPack;
 import org.eclipse.jgit.transport.resolver.ServiceNotAuthorizedException;
 import org.eclipse.jgit.transport.resolver.ServiceNotEnabledException;
-import org.eclipse.jgit.util.FS;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sonia.scm.plugin.Extension;
 import sonia.scm.protocolcommand.CommandContext;
 import sonia.scm.protocolcommand.RepositoryContext;
 import sonia.scm.protocolcommand.ScmCommandProtocol;
+import sonia.scm.repository.GitRepositoryPool;
 import sonia.scm.repository.RepositoryPermissions;
 import sonia.scm.web.GitHookEventFacade;
 
@@ -95,8 +94,7 @@ public class GitCommandProtocol implements ScmCommandProtocol {
   }
 
   private Repository open(RepositoryContext repositoryContext) throws IOException {
-    RepositoryCache.FileKey key = RepositoryCache.FileKey.lenient(repositoryContext.getDirectory().toFile(), FS.DETECTED);
-    return key.open(true);
+    return GitRepositoryPool.open(repositoryContext.getDirectory().toFile());
   }
 
 }
@@ -0,0 +1,54 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository;
+
+/**
+ * Maintenance work which is executed on a git repository by the {@link GitMaintenanceScheduler}.
+ *
+ * @since 2.15.0
+ */
+public enum GitMaintenanceAction {
+
+  /**
+   * The repository does not need any maintenance.
+   */
+  NONE,
+
+  /**
+   * Packs loose references into the packed-refs file.
+   */
+  PACK_REFS,
+
+  /**
+   * Packs references and objects into a new pack with bitmap index and removes loose objects which are now packed.
+   * Reflogs and unreachable objects are left untouched.
+   */
+  REPACK,
+
+  /**
+   * Runs a full garbage collection, which includes a repack and the removal of expired unreachable objects.
+   */
+  GC
+}
@@ -0,0 +1,119 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.eclipse.jgit.internal.storage.file.GC;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which kind of maintenance a git repository needs, based on the current object statistics of the repository
+ * and the statistics of the last maintenance run. The thresholds can be configured with system properties:
+ *
+ * <ul>
+ *   <li>{@code scm.git.maintenance.packLimit}: a full gc is executed, if there are more packs (default 50)</li>
+ *   <li>{@code scm.git.maintenance.gcInterval}: a full gc is executed, if the repository was changed and the last gc
+ *   is older than this number of hours (default 168)</li>
+ *   <li>{@code scm.git.maintenance.looseObjectLimit}: a repack is executed, if there are more loose objects
+ *   (default 6700)</li>
+ *   <li>{@code scm.git.maintenance.repackAfterBytes}: a repack is executed, if the repository has grown by more bytes
+ *   since the last run (default 64 MiB)</li>
+ *   <li>{@code scm.git.maintenance.looseRefLimit}: references are packed, if there are more loose references
+ *   (default 100)</li>
+ * </ul>
+ */
+class GitMaintenancePolicy {
+
+  private static final String PROPERTY_PREFIX = "scm.git.maintenance.";
+
+  private final long packLimit;
+  private final long gcInterval;
+  private final long looseObjectLimit;
+  private final long repackAfterBytes;
+  private final long looseRefLimit;
+
+  GitMaintenancePolicy() {
+    this(
+      Long.getLong(PROPERTY_PREFIX + "packLimit", 50L),
+      TimeUnit.HOURS.toMillis(Long.getLong(PROPERTY_PREFIX + "gcInterval", 168L)),
+      Long.getLong(PROPERTY_PREFIX + "looseObjectLimit", 6700L),
+      Long.getLong(PROPERTY_PREFIX + "repackAfterBytes", 64L * 1024 * 1024),
+      Long.getLong(PROPERTY_PREFIX + "looseRefLimit", 100L)
+    );
+  }
+
+  @VisibleForTesting
+  GitMaintenancePolicy(long packLimit, long gcInterval, long looseObjectLimit, long repackAfterBytes, long looseRefLimit) {
+    this.packLimit = packLimit;
+    this.gcInterval = gcInterval;
+    this.looseObjectLimit = looseObjectLimit;
+    this.repackAfterBytes = repackAfterBytes;
+    this.looseRefLimit = looseRefLimit;
+  }
+
+  /**
+   * Returns the maintenance action for the repository.
+   *
+   * @param statistics current statistics of the repository
+   * @param previous statistics of the last maintenance run or {@code null} if there was none
+   * @param now current time in milliseconds
+   *
+   * @return maintenance action
+   */
+  GitMaintenanceAction decide(GC.RepoStatistics statistics, GitMaintenanceStatistics previous, long now) {
+    if (previous == null || statistics.numberOfPackFiles > packLimit) {
+      return GitMaintenanceAction.GC;
+    }
+    long grown = bytesSinceLastRun(statistics, previous);
+    boolean modified = grown > 0 || statistics.numberOfLooseObjects > previous.getLooseObjectsAfter();
+    if (modified && now - previous.getLastGc() >= gcInterval) {
+      return GitMaintenanceAction.GC;
+    }
+    if (statistics.numberOfLooseObjects > looseObjectLimit || grown > repackAfterBytes) {
+      return GitMaintenanceAction.REPACK;
+    }
+    if (statistics.numberOfLooseRefs > looseRefLimit) {
+      return GitMaintenanceAction.PACK_REFS;
+    }
+    return GitMaintenanceAction.NONE;
+  }
+
+  /**
+   * Returns the number of bytes the repository has grown since the last run. Pushed objects end up in new packs or as
+   * loose objects, so the growth of the object storage is used as the amount of pushed data.
+   */
+  static long bytesSinceLastRun(GC.RepoStatistics statistics, GitMaintenanceStatistics previous) {
+    long size = size(statistics);
+    if (previous == null) {
+      return size;
+    }
+    return Math.max(0, size - previous.getSizeAfter());
+  }
+
+  static long size(GC.RepoStatistics statistics) {
+    return statistics.sizeOfLooseObjects + statistics.sizeOfPackedObjects;
+  }
+}
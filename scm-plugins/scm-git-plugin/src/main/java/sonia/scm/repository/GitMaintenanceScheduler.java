@@ -0,0 +1,357 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository;
+
+import com.github.legman.Subscribe;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.EagerSingleton;
+import sonia.scm.HandlerEventType;
+import sonia.scm.plugin.Extension;
+import sonia.scm.repository.spi.SimpleGitWorkingCopyFactory;
+import sonia.scm.repository.work.WorkingCopyPool;
+import sonia.scm.store.DataStore;
+import sonia.scm.store.DataStoreFactory;
+
+import javax.inject.Inject;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Maintains git repositories in parallel. For every repository the {@link GitMaintenancePolicy} decides from the
+ * number of loose objects, the number of packs and the growth since the last run, whether references should be
+ * packed, objects should be repacked or a full gc is required. Repositories which are currently receiving a push are
+ * skipped. The statistics of every run are stored and can be queried with {@link #getStatistics(String)}.
+ * <p>
+ * The scheduler can be configured with the following system properties:
+ *
+ * <ul>
+ *   <li>{@code scm.git.maintenance.threads}: number of repositories which are maintained in parallel (default 2)</li>
+ *   <li>{@code scm.git.maintenance.objectsPerSecond}: maximum number of objects per second which are processed by all
+ *   runs together, {@code 0} disables the throttling (default 0)</li>
+ *   <li>{@code scm.git.maintenance.quietPeriod}: number of seconds without any write to the repository, before it is
+ *   maintained (default 60)</li>
+ * </ul>
+ * <p>
+ * If working copies share the objects of the central repository
+ * ({@link SimpleGitWorkingCopyFactory#PROPERTY_SHARE_OBJECTS}), the pooled working copies of a repository are evicted
+ * before objects are repacked or pruned, because they could reference objects which are removed.
+ *
+ * @since 2.15.0
+ */
+@Extension
+@EagerSingleton
+public class GitMaintenanceScheduler implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(GitMaintenanceScheduler.class);
+
+  private static final String PROPERTY_PREFIX = "scm.git.maintenance.";
+  private static final String STORE_NAME = "gitMaintenance";
+
+  private static final String INCOMING_PACK_PREFIX = "incoming_";
+  private static final String LOCK_SUFFIX = ".lock";
+
+  private final DataStore<GitMaintenanceStatistics> store;
+  private final WorkingCopyPool workingCopyPool;
+  private final boolean shareObjects;
+  private final GitMaintenancePolicy policy;
+  private final ExecutorService executor;
+  private final RateLimiter rateLimiter;
+  private final long quietPeriod;
+  private final LongSupplier clock;
+
+  private final AtomicBoolean running = new AtomicBoolean();
+  private volatile boolean closed = false;
+
+  @Inject
+  public GitMaintenanceScheduler(DataStoreFactory storeFactory, WorkingCopyPool workingCopyPool) {
+    this(
+      storeFactory,
+      workingCopyPool,
+      Boolean.getBoolean(SimpleGitWorkingCopyFactory.PROPERTY_SHARE_OBJECTS),
+      new GitMaintenancePolicy(),
+      createExecutor(Integer.getInteger(PROPERTY_PREFIX + "threads", 2)),
+      Integer.getInteger(PROPERTY_PREFIX + "objectsPerSecond", 0),
+      TimeUnit.SECONDS.toMillis(Long.getLong(PROPERTY_PREFIX + "quietPeriod", 60L)),
+      System::currentTimeMillis
+    );
+  }
+
+  @VisibleForTesting
+  GitMaintenanceScheduler(DataStoreFactory storeFactory, WorkingCopyPool workingCopyPool, boolean shareObjects,
+                          GitMaintenancePolicy policy, ExecutorService executor,
+                          int objectsPerSecond, long quietPeriod, LongSupplier clock) {
+    this.store = storeFactory.withType(GitMaintenanceStatistics.class).withName(STORE_NAME).build();
+    this.workingCopyPool = workingCopyPool;
+    this.shareObjects = shareObjects;
+    this.policy = policy;
+    this.executor = executor;
+    this.rateLimiter = objectsPerSecond > 0 ? RateLimiter.create(objectsPerSecond) : null;
+    this.quietPeriod = quietPeriod;
+    this.clock = clock;
+  }
+
+  private static ExecutorService createExecutor(int threads) {
+    return Executors.newFixedThreadPool(
+      Math.max(1, threads),
+      new ThreadFactoryBuilder().setNameFormat("GitMaintenance-%d").setDaemon(true).build()
+    );
+  }
+
+  /**
+   * Maintains the given repositories and blocks until all of them are done. If another run is still in progress,
+   * the method returns immediately.
+   *
+   * @param repositories repositories with their directories
+   */
+  public void maintain(Map<Repository, File> repositories) {
+    if (!running.compareAndSet(false, true)) {
+      LOG.warn("skip git maintenance, because the previous run has not finished yet");
+      return;
+    }
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (Map.Entry<Repository, File> e : repositories.entrySet()) {
+        futures.add(executor.submit(() -> maintain(e.getKey(), e.getValue())));
+      }
+      for (Future<?> future : futures) {
+        await(future);
+      }
+    } catch (InterruptedException ex) {
+      LOG.warn("git maintenance was interrupted");
+      Thread.currentThread().interrupt();
+    } finally {
+      running.set(false);
+    }
+  }
+
+  private void await(Future<?> future) throws InterruptedException {
+    try {
+      future.get();
+    } catch (ExecutionException ex) {
+      LOG.warn("git maintenance failed", ex.getCause());
+    }
+  }
+
+  /**
+   * Returns the statistics of the last maintenance run of the repository.
+   *
+   * @param repositoryId id of the repository
+   *
+   * @return statistics or empty, if the repository was never maintained
+   */
+  public Optional<GitMaintenanceStatistics> getStatistics(String repositoryId) {
+    return store.getOptional(repositoryId);
+  }
+
+  /**
+   * Returns the statistics of all maintained repositories, mapped by the id of the repository.
+   *
+   * @return statistics of all repositories
+   */
+  public Map<String, GitMaintenanceStatistics> getStatistics() {
+    return store.getAll();
+  }
+
+  @Subscribe
+  public void onEvent(RepositoryEvent event) {
+    if (event.getEventType() == HandlerEventType.DELETE) {
+      store.remove(event.getItem().getId());
+    }
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    executor.shutdownNow();
+  }
+
+  private void maintain(Repository repository, File directory) {
+    if (closed) {
+      return;
+    }
+    if (isBusy(directory)) {
+      LOG.info("skip maintenance of {}, because it is currently modified", repository);
+      return;
+    }
+
+    String id = repository.getId();
+    GitMaintenanceStatistics previous = store.get(id);
+    long now = clock.getAsLong();
+
+    try (FileRepository gitRepository = (FileRepository) GitUtil.open(directory)) {
+      GC gc = new GC(gitRepository);
+      gc.setProgressMonitor(new ThrottlingProgressMonitor());
+
+      GC.RepoStatistics before = gc.getStatistics();
+      GitMaintenanceAction action = policy.decide(before, previous, now);
+      if (action == GitMaintenanceAction.NONE) {
+        LOG.debug("repository {} does not need any maintenance", repository);
+        return;
+      }
+
+      if (shareObjects && action != GitMaintenanceAction.PACK_REFS) {
+        LOG.debug("evict pooled working copies of {}, because they may use objects which are removed", repository);
+        workingCopyPool.evict(id);
+      }
+
+      LOG.info("start {} for repository {}", action, repository);
+      Stopwatch sw = Stopwatch.createStarted();
+      execute(gc, action);
+      sw.stop();
+      LOG.info("{} of repository {} has finished after {}", action, repository, sw);
+
+      store.put(id, statistics(previous, action, before, gc.getStatistics(), now, sw.elapsed(TimeUnit.MILLISECONDS)));
+    } catch (IOException | ParseException ex) {
+      LOG.warn("failed to maintain git repository {}", repository, ex);
+      store.put(id, failure(previous, now));
+    }
+  }
+
+  private void execute(GC gc, GitMaintenanceAction action) throws IOException, ParseException {
+    switch (action) {
+      case GC:
+        gc.gc();
+        break;
+      case REPACK:
+        gc.packRefs();
+        gc.repack();
+        gc.prunePacked();
+        break;
+      case PACK_REFS:
+        gc.packRefs();
+        break;
+      default:
+        throw new IllegalArgumentException("unknown maintenance action " + action);
+    }
+  }
+
+  /**
+   * Returns {@code true} if a push is currently written to the repository or the repository was modified within the
+   * quiet period. JGit writes incoming packs with a temporary name into the object directory and locks references
+   * during the update.
+   */
+  private boolean isBusy(File directory) {
+    File objects = new File(directory, "objects");
+    String[] incoming = objects.list((dir, name) -> name.startsWith(INCOMING_PACK_PREFIX));
+    if (incoming != null && incoming.length > 0) {
+      return true;
+    }
+    if (new File(directory, "packed-refs" + LOCK_SUFFIX).exists()) {
+      return true;
+    }
+    long threshold = clock.getAsLong() - quietPeriod;
+    return new File(objects, "pack").lastModified() > threshold
+      || new File(directory, "refs/heads").lastModified() > threshold
+      || new File(directory, "refs/tags").lastModified() > threshold;
+  }
+
+  private GitMaintenanceStatistics statistics(GitMaintenanceStatistics previous, GitMaintenanceAction action,
+                                              GC.RepoStatistics before, GC.RepoStatistics after,
+                                              long now, long duration) {
+    GitMaintenanceStatistics statistics = new GitMaintenanceStatistics();
+    statistics.setLastAction(action);
+    statistics.setLastRun(now);
+    if (action == GitMaintenanceAction.GC) {
+      statistics.setLastGc(now);
+    } else if (previous != null) {
+      statistics.setLastGc(previous.getLastGc());
+    }
+    statistics.setDuration(duration);
+    statistics.setRuns(previous != null ? previous.getRuns() + 1 : 1);
+    statistics.setFailures(previous != null ? previous.getFailures() : 0);
+    statistics.setLooseObjectsBefore(before.numberOfLooseObjects);
+    statistics.setLooseObjectsAfter(after.numberOfLooseObjects);
+    statistics.setPackFilesBefore(before.numberOfPackFiles);
+    statistics.setPackFilesAfter(after.numberOfPackFiles);
+    statistics.setSizeBefore(GitMaintenancePolicy.size(before));
+    statistics.setSizeAfter(GitMaintenancePolicy.size(after));
+    statistics.setBytesSinceLastRun(GitMaintenancePolicy.bytesSinceLastRun(before, previous));
+    return statistics;
+  }
+
+  private GitMaintenanceStatistics failure(GitMaintenanceStatistics previous, long now) {
+    GitMaintenanceStatistics statistics = previous != null ? previous : new GitMaintenanceStatistics();
+    statistics.setLastRun(now);
+    statistics.setRuns(statistics.getRuns() + 1);
+    statistics.setFailures(statistics.getFailures() + 1);
+    return statistics;
+  }
+
+  /**
+   * Limits the number of objects per second, which are processed by all maintenance runs together. JGit reports its
+   * progress for every object it counts, compresses or writes, so the progress is a good approximation for the io
+   * which is caused by the run.
+   */
+  private class ThrottlingProgressMonitor implements ProgressMonitor {
+
+    @Override
+    public void start(int totalTasks) {
+      // nothing to do
+    }
+
+    @Override
+    public void beginTask(String title, int totalWork) {
+      // nothing to do
+    }
+
+    @Override
+    public void update(int completed) {
+      if (rateLimiter != null && completed > 0) {
+        rateLimiter.acquire(completed);
+      }
+    }
+
+    @Override
+    public void endTask() {
+      // nothing to do
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return closed;
+    }
+  }
+}
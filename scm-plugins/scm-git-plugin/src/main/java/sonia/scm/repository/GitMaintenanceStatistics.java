@@ -0,0 +1,62 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Statistics of the last maintenance run of a git repository. The statistics are stored for each repository and can
+ * be queried with {@link GitMaintenanceScheduler#getStatistics(String)}.
+ *
+ * @since 2.15.0
+ */
+@Getter
+@Setter(AccessLevel.PACKAGE)
+@XmlRootElement(name = "git-maintenance")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class GitMaintenanceStatistics {
+
+  private GitMaintenanceAction lastAction;
+  private long lastRun;
+  private long lastGc;
+  private long duration;
+  private int runs;
+  private int failures;
+
+  private long looseObjectsBefore;
+  private long looseObjectsAfter;
+  private long packFilesBefore;
+  private long packFilesAfter;
+  private long sizeBefore;
+  private long sizeAfter;
+  private long bytesSinceLastRun;
+
+}
@@ -0,0 +1,159 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryCache;
+import org.eclipse.jgit.lib.RepositoryCache.FileKey;
+import org.eclipse.jgit.lib.RepositoryCacheConfig;
+import org.eclipse.jgit.util.FS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process wide pool of open jgit repositories. The pool is based on the {@link RepositoryCache} of jgit, which counts
+ * the references to a repository and keeps unused repositories open until they expire. This allows all users of a
+ * repository (repository services, the git servlet and the ssh commands) to share the ref database, pack indexes and
+ * the configuration, instead of reading them again for every request.
+ * <p>
+ * In addition to the idle expiration of jgit, the pool limits the number of open repositories. If the limit is
+ * exceeded, the least recently used repository is removed from the pool. It is closed as soon as all of its users have
+ * closed it.
+ * <p>
+ * Repositories from the pool must be closed with {@link Repository#close()} after usage, which releases the reference.
+ * The pool can be configured with the system properties {@code scm.git.repositoryPool.maxSize} (default 64) and
+ * {@code scm.git.repositoryPool.expireAfter} (idle time in seconds, default 600). The idle time is applied to the
+ * process wide {@link RepositoryCache} of jgit, when {@link #configure()} is called on startup of the plugin.
+ * Repositories are removed from the pool, if they are modified or deleted (see {@link GitRepositoryPoolListener}).
+ *
+ * @since 2.15.0
+ */
+public final class GitRepositoryPool {
+
+  private static final Logger LOG = LoggerFactory.getLogger(GitRepositoryPool.class);
+
+  private static final int MAX_SIZE = Integer.getInteger("scm.git.repositoryPool.maxSize", 64);
+  private static final long EXPIRE_AFTER = Long.getLong("scm.git.repositoryPool.expireAfter", 600L);
+
+  private static final Map<FileKey, Repository> RECENTLY_USED = new LinkedHashMap<>(16, 0.75f, true);
+
+  private GitRepositoryPool() {
+  }
+
+  /**
+   * Installs the configuration of the pool to the {@link RepositoryCache} of jgit.
+   */
+  public static void configure() {
+    LOG.debug("configure repository pool with max size {} and expiration after {} seconds", MAX_SIZE, EXPIRE_AFTER);
+    RepositoryCacheConfig config = new RepositoryCacheConfig();
+    config.setExpireAfter(TimeUnit.SECONDS.toMillis(EXPIRE_AFTER));
+    config.install();
+  }
+
+  /**
+   * Removes all repositories from the pool. Repositories which are in use, are closed after their last usage.
+   */
+  public static void clear() {
+    evictLeastRecentlyUsed(0);
+  }
+
+  /**
+   * Opens the repository at the given directory from the pool. The returned repository must be closed after usage.
+   *
+   * @param directory git directory of the repository
+   *
+   * @return open repository
+   *
+   * @throws IOException if the repository could not be opened
+   */
+  public static Repository open(File directory) throws IOException {
+    FileKey key = FileKey.lenient(directory, FS.DETECTED);
+    if (!FileKey.isGitRepository(key.getFile(), FS.DETECTED)) {
+      LOG.debug("{} does not look like a git repository, open it without pool", directory);
+      return GitUtil.open(directory);
+    }
+    Repository repository = RepositoryCache.open(key, true);
+    synchronized (RECENTLY_USED) {
+      RECENTLY_USED.put(key, repository);
+      evictLeastRecentlyUsed(MAX_SIZE);
+    }
+    return repository;
+  }
+
+  /**
+   * Removes the repository at the given directory from the pool, e.g. if the repository was deleted.
+   *
+   * @param directory git directory of the repository
+   */
+  public static void evict(File directory) {
+    FileKey key = FileKey.lenient(directory, FS.DETECTED);
+    Repository repository;
+    synchronized (RECENTLY_USED) {
+      repository = RECENTLY_USED.remove(key);
+    }
+    if (repository != null) {
+      release(key, repository);
+    }
+  }
+
+  @VisibleForTesting
+  static void evictLeastRecentlyUsed(int maxSize) {
+    synchronized (RECENTLY_USED) {
+      Iterator<Map.Entry<FileKey, Repository>> iterator = RECENTLY_USED.entrySet().iterator();
+      while (RECENTLY_USED.size() > maxSize && iterator.hasNext()) {
+        Map.Entry<FileKey, Repository> eldest = iterator.next();
+        iterator.remove();
+        LOG.debug("evict repository {} from pool", eldest.getKey().getFile());
+        release(eldest.getKey(), eldest.getValue());
+      }
+    }
+  }
+
+  @VisibleForTesting
+  static boolean isPooled(File directory) {
+    FileKey key = FileKey.lenient(directory, FS.DETECTED);
+    synchronized (RECENTLY_USED) {
+      return RECENTLY_USED.containsKey(key) && RepositoryCache.isCached(RECENTLY_USED.get(key));
+    }
+  }
+
+  private static void release(FileKey key, Repository repository) {
+    if (RepositoryCache.isCached(repository)) {
+      RepositoryCache.unregister(key);
+      // jgit closes a repository, which is not cached, if the last reference is released. If the repository is not
+      // used at the moment, we have to trigger the close by ourselves.
+      repository.incrementOpen();
+      repository.close();
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository;
+
+import com.github.legman.Subscribe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.EagerSingleton;
+import sonia.scm.HandlerEventType;
+import sonia.scm.plugin.Extension;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Removes git repositories from the {@link GitRepositoryPool}, if they are modified or deleted. Otherwise the pool
+ * would keep file handles of deleted repositories open until they expire.
+ *
+ * @since 2.15.0
+ */
+@Extension
+@EagerSingleton
+public class GitRepositoryPoolListener {
+
+  private static final Logger LOG = LoggerFactory.getLogger(GitRepositoryPoolListener.class);
+
+  private final GitRepositoryHandler handler;
+
+  // the location of a deleted repository could not be resolved after the deletion
+  private final Map<String, File> deletedDirectories = new ConcurrentHashMap<>();
+
+  @Inject
+  public GitRepositoryPoolListener(GitRepositoryHandler handler) {
+    this.handler = handler;
+  }
+
+  @Subscribe(async = false)
+  public void onEvent(RepositoryEvent event) {
+    Repository repository = event.getItem();
+    if (!GitRepositoryHandler.TYPE_NAME.equals(repository.getType())) {
+      return;
+    }
+    HandlerEventType type = event.getEventType();
+    if (type == HandlerEventType.BEFORE_DELETE) {
+      File directory = handler.getDirectory(repository.getId());
+      deletedDirectories.put(repository.getId(), directory);
+      evict(directory);
+    } else if (type == HandlerEventType.DELETE) {
+      File directory = deletedDirectories.remove(repository.getId());
+      if (directory != null) {
+        // the repository could have been opened again between the events
+        evict(directory);
+      }
+    } else if (type == HandlerEventType.MODIFY) {
+      evict(handler.getDirectory(repository.getId()));
+    }
+  }
+
+  private void evict(File directory) {
+    LOG.debug("remove repository {} from pool", directory);
+    GitRepositoryPool.evict(directory);
+  }
+}
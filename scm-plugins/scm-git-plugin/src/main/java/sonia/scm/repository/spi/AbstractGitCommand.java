@@ -268,17 +268,18 @@ class AbstractGitCommand {
       return getClone().getRepository().getRefDatabase().findRef("HEAD");
     }
 
-    private Person determineAuthor(Person author) {
-      if (author == null) {
-        Subject subject = SecurityUtils.getSubject();
-        User user = subject.getPrincipals().oneByType(User.class);
-        String name = user.getDisplayName();
-        String email = user.getMail();
-        logger.debug("no author set; using logged in user: {} <{}>", name, email);
-        return new Person(name, email);
-      } else {
-        return author;
-      }
+  }
+
+  static Person determineAuthor(Person author) {
+    if (author == null) {
+      Subject subject = SecurityUtils.getSubject();
+      User user = subject.getPrincipals().oneByType(User.class);
+      String name = user.getDisplayName();
+      String email = user.getMail();
+      logger.debug("no author set; using logged in user: {} <{}>", name, email);
+      return new Person(name, email);
+    } else {
+      return author;
     }
   }
 
@@ -33,6 +33,7 @@ import org.eclipse.jgit.lfs.LfsPointer;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
@@ -108,6 +109,10 @@ public class GitBrowseCommand extends AbstractGitCommand
 
   private ObjectId revId;
 
+  private Map<String, ObjectId> lastCommits = Collections.emptyMap();
+
+  private final Map<ObjectId, RevCommit> lastCommitCache = Maps.newHashMap();
+
   private int resultCount = 0;
 
   @Inject
@@ -131,6 +136,7 @@ public class GitBrowseCommand extends AbstractGitCommand
     revId = computeRevIdToBrowse();
 
     if (revId != null) {
+      lastCommits = lookupLastCommits();
       browserResult = new BrowserResult(revId.getName(), request.getRevision(), getEntry());
       return browserResult;
     } else {
@@ -152,6 +158,29 @@ public class GitBrowseCommand extends AbstractGitCommand
     }
   }
 
+  private Map<String, ObjectId> lookupLastCommits() throws IOException {
+    if (request.isDisableLastCommit() || !GitLastCommitIndex.isEnabled()) {
+      return Collections.emptyMap();
+    }
+    Ref branch = resolveBranchToBrowse();
+    if (branch == null || !revId.equals(branch.getObjectId())) {
+      return Collections.emptyMap();
+    }
+    try {
+      return new GitLastCommitIndex(repo).lookup(branch.getLeaf().getName(), revId).orElse(Collections.emptyMap());
+    } catch (IOException ex) {
+      logger.warn("could not read last commit index of {} in repository {}", branch.getName(), repository, ex);
+      return Collections.emptyMap();
+    }
+  }
+
+  private Ref resolveBranchToBrowse() throws IOException {
+    if (Util.isEmpty(request.getRevision())) {
+      return getBranchOrDefault(repo, null);
+    }
+    return repo.exactRef(Constants.R_HEADS + request.getRevision());
+  }
+
   private FileObject createEmptyRoot() {
     FileObject fileObject = new FileObject();
     fileObject.setName("");
@@ -182,7 +211,7 @@ public class GitBrowseCommand extends AbstractGitCommand
 
       file.setDirectory(loader.getType() == Constants.OBJ_TREE);
 
-      // don't show message and date for directories to improve performance
+      // don't walk the history for directories to improve performance, they are only completed from the index
       if (!file.isDirectory() &&!request.isDisableLastCommit())
       {
         file.setPartialResult(true);
@@ -198,15 +227,42 @@ public class GitBrowseCommand extends AbstractGitCommand
           file.setLength(loader.getSize());
         }
 
-        executor.execute(
-          new CompleteFileInformation(path, file),
-          new AbortFileInformation()
-        );
+        ObjectId lastCommitId = lastCommits.get(path);
+        if (lastCommitId != null) {
+          file.setPartialResult(false);
+          applyValuesFromCommit(file, getLastCommit(lastCommitId));
+        } else {
+          executor.execute(
+            new CompleteFileInformation(path, file),
+            new AbortFileInformation()
+          );
+        }
+      }
+      else if (file.isDirectory() && lastCommits.containsKey(path))
+      {
+        // the last commit index contains directories, so they can be completed without additional costs
+        applyValuesFromCommit(file, getLastCommit(lastCommits.get(path)));
       }
     }
     return file;
   }
 
+  private RevCommit getLastCommit(ObjectId commitId) throws IOException {
+    RevCommit commit = lastCommitCache.get(commitId);
+    if (commit == null) {
+      try (RevWalk walk = new RevWalk(repo)) {
+        commit = walk.parseCommit(commitId);
+      }
+      lastCommitCache.put(commitId, commit);
+    }
+    return commit;
+  }
+
+  private void applyValuesFromCommit(FileObject file, RevCommit commit) {
+    file.setCommitDate(GitUtil.getCommitTime(commit));
+    file.setDescription(commit.getShortMessage());
+  }
+
   private void updateCache() {
     request.updateCache(browserResult);
     logger.info("updated browser result for repository {}", repository);
@@ -427,8 +483,7 @@ public class GitBrowseCommand extends AbstractGitCommand
     }
 
     private void applyValuesFromCommit(SyncAsyncExecutor.ExecutionType executionType, RevCommit commit) {
-      file.setCommitDate(GitUtil.getCommitTime(commit));
-      file.setDescription(commit.getShortMessage());
+      GitBrowseCommand.this.applyValuesFromCommit(file, commit);
       if (executionType == ASYNCHRONOUS && browserResult != null) {
         updateCache();
       }
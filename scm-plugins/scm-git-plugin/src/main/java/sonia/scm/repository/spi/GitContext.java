@@ -29,6 +29,7 @@ import org.slf4j.LoggerFactory;
 import sonia.scm.api.v2.resources.GitRepositoryConfigStoreProvider;
 import sonia.scm.repository.GitConfig;
 import sonia.scm.repository.GitRepositoryConfig;
+import sonia.scm.repository.GitRepositoryPool;
 import sonia.scm.repository.GitUtil;
 import sonia.scm.repository.Repository;
 import sonia.scm.repository.RepositoryProvider;
@@ -87,7 +88,7 @@ public class GitContext implements Closeable, RepositoryProvider
     {
       logger.trace("open git repository {}", directory);
 
-      gitRepository = GitUtil.open(directory);
+      gitRepository = GitRepositoryPool.open(directory);
     }
 
     return gitRepository;
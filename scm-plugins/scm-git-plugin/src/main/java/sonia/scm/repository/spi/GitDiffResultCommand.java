@@ -25,7 +25,7 @@
 package sonia.scm.repository.spi;
 
 import org.eclipse.jgit.diff.DiffEntry;
-import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.lib.ObjectReader;
 import sonia.scm.repository.GitUtil;
 import sonia.scm.repository.InternalRepositoryException;
 import sonia.scm.repository.api.DiffFile;
@@ -33,10 +33,10 @@ import sonia.scm.repository.api.DiffResult;
 import sonia.scm.repository.api.Hunk;
 
 import javax.inject.Inject;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Iterator;
-import java.util.stream.Collectors;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 public class GitDiffResultCommand extends AbstractGitCommand implements DiffResultCommand {
 
@@ -47,17 +47,24 @@ public class GitDiffResultCommand extends AbstractGitCommand implements DiffResu
 
   public DiffResult getDiffResult(DiffCommandRequest diffCommandRequest) throws IOException {
     org.eclipse.jgit.lib.Repository repository = open();
-    return new GitDiffResult(repository, Differ.diff(repository, diffCommandRequest));
+    int offset = diffCommandRequest.getOffset() == null ? 0 : diffCommandRequest.getOffset();
+    // the diff entries are collected up front, because the rename detection has to pair added and deleted files of
+    // the whole tree; the entries hold only paths and object ids, the hunks are built lazily for each returned file
+    return new GitDiffResult(repository, Differ.diff(repository, diffCommandRequest), offset, diffCommandRequest.getLimit());
   }
 
   private class GitDiffResult implements DiffResult {
 
     private final org.eclipse.jgit.lib.Repository repository;
     private final Differ.Diff diff;
+    private final int offset;
+    private final Integer limit;
 
-    private GitDiffResult(org.eclipse.jgit.lib.Repository repository, Differ.Diff diff) {
+    private GitDiffResult(org.eclipse.jgit.lib.Repository repository, Differ.Diff diff, int offset, Integer limit) {
       this.repository = repository;
       this.diff = diff;
+      this.offset = offset;
+      this.limit = limit;
     }
 
     @Override
@@ -70,12 +77,29 @@ public class GitDiffResultCommand extends AbstractGitCommand implements DiffResu
       return GitUtil.getId(diff.getCommit().getId());
     }
 
+    @Override
+    public boolean isPartial() {
+      return limit != null && diff.getEntries().size() > offset + limit;
+    }
+
+    @Override
+    public int getOffset() {
+      return offset;
+    }
+
+    @Override
+    public Optional<Integer> getLimit() {
+      return Optional.ofNullable(limit);
+    }
+
     @Override
     public Iterator<DiffFile> iterator() {
-      return diff.getEntries()
-        .stream()
-        .map(diffEntry -> new GitDiffFile(repository, diffEntry))
-        .collect(Collectors.<DiffFile>toList())
+      Stream<DiffEntry> entries = diff.getEntries().stream().skip(offset);
+      if (limit != null) {
+        entries = entries.limit(limit);
+      }
+      return entries
+        .<DiffFile>map(diffEntry -> new GitDiffFile(repository, diffEntry))
         .iterator();
     }
   }
@@ -130,21 +154,12 @@ public class GitDiffResultCommand extends AbstractGitCommand implements DiffResu
 
     @Override
     public Iterator<Hunk> iterator() {
-      String content = format(repository, diffEntry);
-      GitHunkParser parser = new GitHunkParser();
-      return parser.parse(content).iterator();
-    }
-
-    private String format(org.eclipse.jgit.lib.Repository repository, DiffEntry entry) {
-      try (ByteArrayOutputStream baos = new ByteArrayOutputStream(); DiffFormatter formatter = new DiffFormatter(baos)) {
-        formatter.setRepository(repository);
-        formatter.format(entry);
-        return baos.toString();
+      try (ObjectReader reader = repository.newObjectReader()) {
+        return new GitHunkBuilder(repository, reader).build(diffEntry).iterator();
       } catch (IOException ex) {
-        throw new InternalRepositoryException(GitDiffResultCommand.this.repository, "failed to format diff entry", ex);
+        throw new InternalRepositoryException(GitDiffResultCommand.this.repository, "failed to build hunks of diff entry", ex);
       }
     }
-
   }
 
 }
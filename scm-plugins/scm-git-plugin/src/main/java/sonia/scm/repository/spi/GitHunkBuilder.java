@@ -0,0 +1,194 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository.spi;
+
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.pack.PackConfig;
+import sonia.scm.repository.api.DiffLine;
+import sonia.scm.repository.api.Hunk;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.OptionalInt;
+
+/**
+ * Builds {@link Hunk}s directly from the {@link EditList} of jgit and the raw content of the blobs, without formatting
+ * and parsing a textual diff. The hunks are equal to the hunks of the {@link org.eclipse.jgit.diff.DiffFormatter}
+ * with three lines of context. The content of the lines is decoded from the raw content only, if it is requested.
+ */
+final class GitHunkBuilder {
+
+  private static final int CONTEXT_LINES = 3;
+  private static final int BIG_FILE_THRESHOLD = PackConfig.DEFAULT_BIG_FILE_THRESHOLD;
+
+  private final ObjectReader reader;
+  private final DiffAlgorithm algorithm;
+
+  GitHunkBuilder(Repository repository, ObjectReader reader) {
+    this.reader = reader;
+    this.algorithm = DiffAlgorithm.getAlgorithm(repository.getConfig().getEnum(
+      ConfigConstants.CONFIG_DIFF_SECTION,
+      null,
+      ConfigConstants.CONFIG_KEY_ALGORITHM,
+      DiffAlgorithm.SupportedAlgorithm.HISTOGRAM
+    ));
+  }
+
+  List<Hunk> build(DiffEntry entry) throws IOException {
+    byte[] oldContent = load(entry.getOldMode(), entry.getOldId());
+    byte[] newContent = load(entry.getNewMode(), entry.getNewId());
+    if (oldContent == null || newContent == null || RawText.isBinary(oldContent) || RawText.isBinary(newContent)) {
+      return Collections.emptyList();
+    }
+    RawText oldText = new RawText(oldContent);
+    RawText newText = new RawText(newContent);
+    return build(algorithm.diff(RawTextComparator.DEFAULT, oldText, newText), oldText, newText);
+  }
+
+  static List<Hunk> build(EditList edits, RawText oldText, RawText newText) {
+    List<Hunk> hunks = new ArrayList<>();
+    for (int currentIndex = 0; currentIndex < edits.size(); ) {
+      Edit current = edits.get(currentIndex);
+      int endIndex = findCombinedEnd(edits, currentIndex);
+      Edit end = edits.get(endIndex);
+
+      int oldLine = Math.max(0, current.getBeginA() - CONTEXT_LINES);
+      int newLine = Math.max(0, current.getBeginB() - CONTEXT_LINES);
+      int oldEnd = Math.min(oldText.size(), end.getEndA() + CONTEXT_LINES);
+      int newEnd = Math.min(newText.size(), end.getEndB() + CONTEXT_LINES);
+
+      GitHunk hunk = new GitHunk(createFileRange(oldLine, oldEnd), createFileRange(newLine, newEnd));
+      List<DiffLine> lines = new ArrayList<>((oldEnd - oldLine) + (newEnd - newLine));
+
+      while (oldLine < oldEnd || newLine < newEnd) {
+        if (oldLine < current.getBeginA() || endIndex + 1 < currentIndex) {
+          lines.add(new RawTextDiffLine(oldText, oldLine, oldLine + 1, newLine + 1));
+          oldLine++;
+          newLine++;
+        } else if (oldLine < current.getEndA()) {
+          lines.add(new RawTextDiffLine(oldText, oldLine, oldLine + 1, 0));
+          oldLine++;
+        } else if (newLine < current.getEndB()) {
+          lines.add(new RawTextDiffLine(newText, newLine, 0, newLine + 1));
+          newLine++;
+        }
+
+        if (current.getEndA() <= oldLine && current.getEndB() <= newLine && ++currentIndex < edits.size()) {
+          current = edits.get(currentIndex);
+        }
+      }
+
+      hunk.setLines(lines);
+      hunks.add(hunk);
+    }
+    return hunks;
+  }
+
+  private byte[] load(FileMode mode, AbbreviatedObjectId id) throws IOException {
+    if (mode == FileMode.GITLINK) {
+      return gitLinkText(id);
+    }
+    if (mode == FileMode.MISSING || id == null || id.toObjectId().equals(ObjectId.zeroId())) {
+      return new byte[0];
+    }
+    ObjectLoader loader = reader.open(id.toObjectId(), Constants.OBJ_BLOB);
+    if (loader.getSize() > BIG_FILE_THRESHOLD) {
+      return null;
+    }
+    return loader.getCachedBytes(BIG_FILE_THRESHOLD);
+  }
+
+  private static byte[] gitLinkText(AbbreviatedObjectId id) {
+    if (id == null || id.toObjectId().equals(ObjectId.zeroId())) {
+      return new byte[0];
+    }
+    return ("Subproject commit " + id.name() + "\n").getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static int findCombinedEnd(List<Edit> edits, int index) {
+    int end = index;
+    while (end + 1 < edits.size()
+      && (edits.get(end + 1).getBeginA() - edits.get(end).getEndA() <= 2 * CONTEXT_LINES
+      || edits.get(end + 1).getBeginB() - edits.get(end).getEndB() <= 2 * CONTEXT_LINES)) {
+      end++;
+    }
+    return end;
+  }
+
+  /**
+   * Creates the range in the same way as it is written in the header of a textual hunk: an empty range starts at the
+   * line before the range.
+   */
+  private static FileRange createFileRange(int begin, int end) {
+    int lineCount = end - begin;
+    return new FileRange(lineCount == 0 ? begin : begin + 1, lineCount);
+  }
+
+  private static class RawTextDiffLine implements DiffLine {
+
+    private final RawText text;
+    private final int index;
+    private final int oldLineNumber;
+    private final int newLineNumber;
+
+    private RawTextDiffLine(RawText text, int index, int oldLineNumber, int newLineNumber) {
+      this.text = text;
+      this.index = index;
+      this.oldLineNumber = oldLineNumber;
+      this.newLineNumber = newLineNumber;
+    }
+
+    @Override
+    public OptionalInt getOldLineNumber() {
+      return oldLineNumber > 0 ? OptionalInt.of(oldLineNumber) : OptionalInt.empty();
+    }
+
+    @Override
+    public OptionalInt getNewLineNumber() {
+      return newLineNumber > 0 ? OptionalInt.of(newLineNumber) : OptionalInt.empty();
+    }
+
+    @Override
+    public String getContent() {
+      return text.getString(index);
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository.spi;
+
+import org.eclipse.jgit.api.errors.CanceledException;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.GpgSigner;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.PushResult;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.eclipse.jgit.transport.Transport;
+import org.eclipse.jgit.transport.URIish;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.ConcurrentModificationException;
+import sonia.scm.repository.InternalRepositoryException;
+import sonia.scm.repository.Person;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Collections;
+
+import static sonia.scm.ContextEntry.ContextBuilder.entity;
+import static sonia.scm.repository.spi.AbstractGitCommand.determineAuthor;
+import static sonia.scm.repository.spi.IntegrateChangesFromWorkdirException.forMessage;
+
+/**
+ * Creates commits directly in the bare repository and updates branches without a working copy. Branches are updated
+ * with a push from the repository to itself over the scm transport, so that the repository hooks are triggered in the
+ * same way as for the push of a working copy. The update is rejected, if the branch has been changed in the meantime.
+ */
+class GitInCoreCommitter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(GitInCoreCommitter.class);
+
+  private static final String SIGNING_KEY = "SCM-MANAGER-DEFAULT-KEY";
+
+  private final GitContext context;
+  private final sonia.scm.repository.Repository repository;
+  private final Repository gitRepository;
+
+  GitInCoreCommitter(GitContext context, Repository gitRepository) {
+    this.context = context;
+    this.repository = context.getRepository();
+    this.gitRepository = gitRepository;
+  }
+
+  ObjectId commit(ObjectId tree, Person author, String message, boolean sign, ObjectId... parents) throws IOException {
+    Person authorToUse = determineAuthor(author);
+    PersonIdent committer = new PersonIdent("SCM-Manager", "noreply@scm-manager.org");
+
+    CommitBuilder commit = new CommitBuilder();
+    commit.setTreeId(tree);
+    commit.setParentIds(parents);
+    commit.setAuthor(new PersonIdent(authorToUse.getName(), authorToUse.getMail()));
+    commit.setCommitter(committer);
+    commit.setMessage(message);
+    if (sign) {
+      sign(commit, committer);
+    }
+
+    try (ObjectInserter inserter = gitRepository.newObjectInserter()) {
+      ObjectId id = inserter.insert(commit);
+      inserter.flush();
+      return id;
+    }
+  }
+
+  void updateBranch(String branch, ObjectId oldHead, ObjectId newHead) throws IOException {
+    String targetRef = Constants.R_HEADS + branch;
+    try (Transport transport = Transport.open(gitRepository, createScmTransportProtocolUri())) {
+      RemoteRefUpdate update = new RemoteRefUpdate(gitRepository, null, newHead, targetRef, false, null, oldHead);
+      PushResult pushResult = transport.push(NullProgressMonitor.INSTANCE, Collections.singleton(update));
+      RemoteRefUpdate remoteUpdate = pushResult.getRemoteUpdate(targetRef);
+      RemoteRefUpdate.Status status = remoteUpdate == null ? null : remoteUpdate.getStatus();
+      if (status == RemoteRefUpdate.Status.REJECTED_REMOTE_CHANGED || status == RemoteRefUpdate.Status.REJECTED_NONFASTFORWARD) {
+        LOG.info("branch {} has been changed during update", targetRef);
+        throw new ConcurrentModificationException(entity("Branch", branch).in(repository).build());
+      } else if (status != RemoteRefUpdate.Status.OK) {
+        LOG.info("message for failed update of {}: {}", targetRef, pushResult.getMessages());
+        throw forMessage(repository, pushResult.getMessages());
+      }
+    }
+    LOG.debug("updated branch {} to {}", branch, newHead.name());
+  }
+
+  private void sign(CommitBuilder commit, PersonIdent committer) {
+    GpgSigner signer = GpgSigner.getDefault();
+    if (signer == null) {
+      throw new InternalRepositoryException(repository, "could not sign commit, no signer available");
+    }
+    try {
+      signer.sign(commit, SIGNING_KEY, committer, CredentialsProvider.getDefault());
+    } catch (CanceledException e) {
+      throw new InternalRepositoryException(repository, "could not sign commit", e);
+    }
+  }
+
+  private URIish createScmTransportProtocolUri() {
+    try {
+      return new URIish(SimpleGitWorkingCopyFactory.createScmTransportProtocolUri(context.getDirectory()));
+    } catch (URISyntaxException e) {
+      throw new InternalRepositoryException(repository, "could not create uri for repository", e);
+    }
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository.spi;
+
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.merge.MergeFormatter;
+import org.eclipse.jgit.merge.MergeResult;
+import org.eclipse.jgit.merge.ResolveMerger;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.NoChangesMadeException;
+import sonia.scm.repository.api.MergeCommandResult;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.eclipse.jgit.merge.MergeStrategy.RECURSIVE;
+import static sonia.scm.repository.spi.AbstractGitCommand.resolveRevisionOrThrowNotFound;
+
+/**
+ * Merges branches directly in the bare repository without a working copy. The merge is computed in memory by the
+ * {@link ResolveMerger} of jgit, which writes only the resulting objects into the repository. The target branch is
+ * updated by the {@link GitInCoreCommitter}.
+ * <p>
+ * Merges, which cannot be handled without a working copy, are reported with an empty result and have to be done with
+ * a clone of the repository.
+ */
+class GitInCoreMerge {
+
+  private static final Logger LOG = LoggerFactory.getLogger(GitInCoreMerge.class);
+
+  private final sonia.scm.repository.Repository repository;
+  private final Repository gitRepository;
+  private final GitInCoreCommitter committer;
+  private final MergeCommandRequest request;
+
+  GitInCoreMerge(GitContext context, MergeCommandRequest request) throws IOException {
+    this.repository = context.getRepository();
+    this.gitRepository = context.open();
+    this.committer = new GitInCoreCommitter(context, gitRepository);
+    this.request = request;
+  }
+
+  Optional<MergeCommandResult> merge() throws IOException {
+    Ref targetRef = gitRepository.exactRef(Constants.R_HEADS + request.getTargetBranch());
+    if (targetRef == null) {
+      LOG.debug("target {} is not a branch, merge has to be done in a working copy", request.getTargetBranch());
+      return Optional.empty();
+    }
+    ObjectId revisionToMerge = resolveRevisionOrThrowNotFound(gitRepository, request.getBranchToMerge(), repository);
+    try (RevWalk revWalk = new RevWalk(gitRepository)) {
+      RevCommit target = revWalk.parseCommit(targetRef.getObjectId());
+      RevCommit toMerge = revWalk.parseCommit(revisionToMerge);
+      switch (request.getMergeStrategy()) {
+        case MERGE_COMMIT:
+          return mergeCommit(revWalk, target, toMerge);
+        case FAST_FORWARD_IF_POSSIBLE:
+          return fastForwardIfPossible(revWalk, target, toMerge);
+        case SQUASH:
+          return squash(target, toMerge);
+        default:
+          return Optional.empty();
+      }
+    }
+  }
+
+  Optional<MergeConflictResult> computeConflicts() throws IOException {
+    ObjectId ours = resolveRevisionOrThrowNotFound(gitRepository, request.getTargetBranch(), repository);
+    ObjectId theirs = resolveRevisionOrThrowNotFound(gitRepository, request.getBranchToMerge(), repository);
+    MergeConflictResult result = new MergeConflictResult();
+    try (ObjectReader reader = gitRepository.newObjectReader(); RevWalk revWalk = new RevWalk(reader)) {
+      RevCommit oursCommit = revWalk.parseCommit(ours);
+      RevCommit theirsCommit = revWalk.parseCommit(theirs);
+      ResolveMerger merger = createMerger();
+      if (merger.merge(oursCommit, theirsCommit)) {
+        return Optional.of(result);
+      }
+      RevTree baseTree = findMergeBaseTree(revWalk, oursCommit, theirsCommit);
+      for (String path : merger.getUnmergedPaths()) {
+        if (!computeConflict(reader, result, merger, path, baseTree, oursCommit.getTree(), theirsCommit.getTree())) {
+          LOG.debug("could not compute conflict for path {} without working copy", path);
+          return Optional.empty();
+        }
+      }
+    }
+    return Optional.of(result);
+  }
+
+  private Optional<MergeCommandResult> fastForwardIfPossible(RevWalk revWalk, RevCommit target, RevCommit toMerge) throws IOException {
+    if (revWalk.isMergedInto(toMerge, target)) {
+      LOG.debug("{} is already merged into {}, let the working copy decide", request.getBranchToMerge(), request.getTargetBranch());
+      return Optional.empty();
+    }
+    if (revWalk.isMergedInto(target, toMerge)) {
+      committer.updateBranch(request.getTargetBranch(), target, toMerge);
+      return Optional.of(MergeCommandResult.success(target.name(), toMerge.name(), toMerge.name()));
+    }
+    return mergeCommit(revWalk, target, toMerge);
+  }
+
+  private Optional<MergeCommandResult> mergeCommit(RevWalk revWalk, RevCommit target, RevCommit toMerge) throws IOException {
+    if (revWalk.isMergedInto(toMerge, target)) {
+      throw new NoChangesMadeException(repository);
+    }
+    ResolveMerger merger = createMerger();
+    if (!merger.merge(target, toMerge)) {
+      return failure(merger, target, toMerge);
+    }
+    ObjectId commit = commit(merger.getResultTreeId(), target, toMerge);
+    committer.updateBranch(request.getTargetBranch(), target, commit);
+    LOG.debug("merged branch {} into {} without working copy", request.getBranchToMerge(), request.getTargetBranch());
+    return Optional.of(MergeCommandResult.success(target.name(), toMerge.name(), commit.name()));
+  }
+
+  private Optional<MergeCommandResult> squash(RevCommit target, RevCommit toMerge) throws IOException {
+    ResolveMerger merger = createMerger();
+    if (!merger.merge(target, toMerge)) {
+      return failure(merger, target, toMerge);
+    }
+    if (merger.getResultTreeId().equals(target.getTree())) {
+      throw new NoChangesMadeException(repository);
+    }
+    ObjectId commit = commit(merger.getResultTreeId(), target);
+    committer.updateBranch(request.getTargetBranch(), target, commit);
+    LOG.debug("squashed branch {} into {} without working copy", request.getBranchToMerge(), request.getTargetBranch());
+    return Optional.of(MergeCommandResult.success(target.name(), commit.name(), commit.name()));
+  }
+
+  private Optional<MergeCommandResult> failure(ResolveMerger merger, RevCommit target, RevCommit toMerge) {
+    if (merger.getUnmergedPaths().isEmpty()) {
+      LOG.debug("merge failed without conflicts, merge has to be done in a working copy");
+      return Optional.empty();
+    }
+    LOG.info("could not merge branch {} into {} due to conflicts: {}", request.getBranchToMerge(), request.getTargetBranch(), merger.getUnmergedPaths());
+    return Optional.of(MergeCommandResult.failure(target.name(), toMerge.name(), merger.getUnmergedPaths()));
+  }
+
+  private ObjectId commit(ObjectId tree, ObjectId... parents) throws IOException {
+    return committer.commit(tree, request.getAuthor(), GitMergeStrategy.determineMessage(request), request.isSign(), parents);
+  }
+
+  private ResolveMerger createMerger() {
+    ResolveMerger merger = (ResolveMerger) RECURSIVE.newMerger(gitRepository, true);
+    merger.setCommitNames(new String[]{"BASE", "HEAD", request.getBranchToMerge()});
+    return merger;
+  }
+
+  private RevTree findMergeBaseTree(RevWalk revWalk, RevCommit ours, RevCommit theirs) throws IOException {
+    revWalk.reset();
+    revWalk.setRevFilter(RevFilter.MERGE_BASE);
+    revWalk.markStart(ours);
+    revWalk.markStart(theirs);
+    RevCommit base = revWalk.next();
+    revWalk.setRevFilter(RevFilter.ALL);
+    return base != null ? base.getTree() : null;
+  }
+
+  private boolean computeConflict(ObjectReader reader, MergeConflictResult result, ResolveMerger merger, String path, RevTree base, RevTree ours, RevTree theirs) throws IOException {
+    TreeWalk oursEntry = find(reader, path, ours);
+    TreeWalk theirsEntry = find(reader, path, theirs);
+    if (oursEntry != null && theirsEntry != null) {
+      if (find(reader, path, base) == null) {
+        result.addAddedByBoth(path);
+        return true;
+      }
+      @SuppressWarnings("unchecked")
+      MergeResult<RawText> mergeResult = (MergeResult<RawText>) merger.getMergeResults().get(path);
+      if (mergeResult == null || !oursEntry.getFileMode(0).equals(FileMode.REGULAR_FILE)) {
+        return false;
+      }
+      result.addBothModified(path, diff(reader, path, oursEntry.getObjectId(0), mergeResult));
+      return true;
+    } else if (oursEntry != null) {
+      result.addDeletedByUs(path);
+      return true;
+    } else if (theirsEntry != null) {
+      result.addDeletedByThem(path);
+      return true;
+    }
+    return false;
+  }
+
+  private TreeWalk find(ObjectReader reader, String path, RevTree tree) throws IOException {
+    if (tree == null) {
+      return null;
+    }
+    return TreeWalk.forPath(reader, path, tree);
+  }
+
+  /**
+   * Creates the diff between our version of the file and the file with the conflict markers, in the same format as
+   * the diff of the working copy after a failed merge.
+   */
+  private String diff(ObjectReader reader, String path, ObjectId ours, MergeResult<RawText> mergeResult) throws IOException {
+    ByteArrayOutputStream merged = new ByteArrayOutputStream();
+    new MergeFormatter().formatMerge(merged, mergeResult, Arrays.asList("BASE", "HEAD", request.getBranchToMerge()), StandardCharsets.UTF_8);
+    byte[] mergedContent = merged.toByteArray();
+
+    RawText oursText = new RawText(reader.open(ours, Constants.OBJ_BLOB).getBytes());
+    RawText mergedText = new RawText(mergedContent);
+    EditList edits = DiffAlgorithm.getAlgorithm(DiffAlgorithm.SupportedAlgorithm.HISTOGRAM)
+      .diff(RawTextComparator.DEFAULT, oursText, mergedText);
+
+    ObjectId mergedId;
+    try (ObjectInserter.Formatter formatter = new ObjectInserter.Formatter()) {
+      mergedId = formatter.idFor(Constants.OBJ_BLOB, mergedContent);
+    }
+
+    ByteArrayOutputStream diff = new ByteArrayOutputStream();
+    String header = "diff --git a/" + path + " b/" + path + "\n"
+      + "index " + ours.abbreviate(7).name() + ".." + mergedId.abbreviate(7).name() + " " + FileMode.REGULAR_FILE + "\n"
+      + "--- a/" + path + "\n"
+      + "+++ b/" + path + "\n";
+    diff.write(header.getBytes(StandardCharsets.UTF_8));
+    try (DiffFormatter formatter = new DiffFormatter(diff)) {
+      formatter.format(edits, oursText, mergedText);
+    }
+    return diff.toString();
+  }
+}
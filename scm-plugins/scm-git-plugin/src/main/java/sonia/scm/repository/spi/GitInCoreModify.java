@@ -0,0 +1,283 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository.spi;
+
+import com.google.common.base.Strings;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.CoreConfig;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.ConcurrentModificationException;
+import sonia.scm.ContextEntry;
+import sonia.scm.NoChangesMadeException;
+import sonia.scm.repository.InternalRepositoryException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import static sonia.scm.AlreadyExistsException.alreadyExists;
+import static sonia.scm.ContextEntry.ContextBuilder.entity;
+import static sonia.scm.NotFoundException.notFound;
+
+/**
+ * Applies the modifications of a {@link ModifyCommandRequest} without a working copy. The tree of the new commit is
+ * built from the tree of the parent commit with a {@link DirCacheEditor}, the content of new and modified files is
+ * streamed directly into the object database. The branch is updated by the {@link GitInCoreCommitter}, which rejects
+ * the update if the branch has been changed in the meantime.
+ * <p>
+ * Requests which may need checkin filters (e.g. lfs or line ending conversions) or which create the first commit of a
+ * repository are reported with an empty result and have to be done with a clone of the repository.
+ */
+class GitInCoreModify implements ModifyCommand.Worker {
+
+  private static final Logger LOG = LoggerFactory.getLogger(GitInCoreModify.class);
+
+  private static final String ATTRIBUTES_FILE = Constants.DOT_GIT_ATTRIBUTES;
+  private static final Pattern CONVERSION_ATTRIBUTES = Pattern.compile("\\b(filter|text|eol|crlf|ident)\\b");
+
+  private final sonia.scm.repository.Repository repository;
+  private final Repository gitRepository;
+  private final GitInCoreCommitter committer;
+  private final ModifyCommandRequest request;
+
+  private DirCache dirCache;
+  private ObjectInserter inserter;
+
+  GitInCoreModify(GitContext context, ModifyCommandRequest request) throws IOException {
+    this.repository = context.getRepository();
+    this.gitRepository = context.open();
+    this.committer = new GitInCoreCommitter(context, gitRepository);
+    this.request = request;
+  }
+
+  Optional<String> execute() throws IOException {
+    Optional<String> branch = determineBranch();
+    if (!branch.isPresent()) {
+      LOG.debug("could not find branch for modification, modification has to be done in a working copy");
+      return Optional.empty();
+    }
+    Ref ref = gitRepository.exactRef(Constants.R_HEADS + branch.get());
+    if (ref == null || ref.getObjectId() == null || usesConversionConfig()) {
+      return Optional.empty();
+    }
+    if (!Strings.isNullOrEmpty(request.getExpectedRevision())
+      && !request.getExpectedRevision().equals(ref.getObjectId().getName())) {
+      throw new ConcurrentModificationException(entity("Branch", request.getBranch() == null ? "default" : request.getBranch()).in(repository).build());
+    }
+
+    try (ObjectReader reader = gitRepository.newObjectReader(); RevWalk revWalk = new RevWalk(reader); ObjectInserter objectInserter = gitRepository.newObjectInserter()) {
+      RevCommit parent = revWalk.parseCommit(ref.getObjectId());
+      dirCache = readTree(reader, parent);
+      if (usesConversionAttributes(reader)) {
+        LOG.debug("repository uses checkin filters, modification has to be done in a working copy");
+        return Optional.empty();
+      }
+
+      inserter = objectInserter;
+      for (ModifyCommandRequest.PartialRequest partialRequest : request.getRequests()) {
+        partialRequest.execute(this);
+      }
+      ObjectId tree = dirCache.writeTree(inserter);
+      inserter.flush();
+
+      if (tree.equals(parent.getTree())) {
+        throw new NoChangesMadeException(repository, request.getBranch());
+      }
+
+      ObjectId commit = committer.commit(tree, request.getAuthor(), request.getCommitMessage(), request.isSign(), parent);
+      committer.updateBranch(branch.get(), parent, commit);
+      return Optional.of(commit.name());
+    }
+  }
+
+  @Override
+  public void delete(String toBeDeleted) {
+    String path = normalize(toBeDeleted);
+    if (dirCache.getEntry(path) == null) {
+      if (isDirectory(path)) {
+        throw new InternalRepositoryException(repository, "could not delete directory " + path);
+      }
+      throw notFound(createFileContext(toBeDeleted));
+    }
+    edit(new DirCacheEditor.DeletePath(path));
+  }
+
+  @Override
+  public void create(String toBeCreated, File file, boolean overwrite) throws IOException {
+    String path = normalize(toBeCreated);
+    failIfParentIsFile(path);
+    if (isDirectory(path)) {
+      throw overwrite ? new InternalRepositoryException(repository, "could not overwrite directory " + path) : alreadyExists(createFileContext(toBeCreated));
+    }
+    if (!overwrite && dirCache.getEntry(path) != null) {
+      throw alreadyExists(createFileContext(toBeCreated));
+    }
+    put(path, file, FileMode.REGULAR_FILE);
+  }
+
+  @Override
+  public void modify(String toBeModified, File file) throws IOException {
+    String path = normalize(toBeModified);
+    DirCacheEntry entry = dirCache.getEntry(path);
+    if (entry == null) {
+      if (isDirectory(path)) {
+        throw new InternalRepositoryException(repository, "could not modify directory " + path);
+      }
+      throw notFound(createFileContext(toBeModified));
+    }
+    FileMode mode = FileMode.EXECUTABLE_FILE.equals(entry.getRawMode()) ? FileMode.EXECUTABLE_FILE : FileMode.REGULAR_FILE;
+    put(path, file, mode);
+  }
+
+  private void put(String path, File file, FileMode mode) throws IOException {
+    long length = file.length();
+    ObjectId blob;
+    try (InputStream content = Files.newInputStream(file.toPath())) {
+      blob = inserter.insert(Constants.OBJ_BLOB, length, content);
+    }
+    edit(new DirCacheEditor.PathEdit(path) {
+      @Override
+      public void apply(DirCacheEntry entry) {
+        entry.setFileMode(mode);
+        entry.setLength(length);
+        entry.setObjectId(blob);
+      }
+    });
+  }
+
+  private void edit(DirCacheEditor.PathEdit edit) {
+    // every edit is finished on its own, so that following modifications of the same request see its result
+    DirCacheEditor editor = dirCache.editor();
+    editor.add(edit);
+    editor.finish();
+  }
+
+  private Optional<String> determineBranch() throws IOException {
+    if (!Strings.isNullOrEmpty(request.getBranch())) {
+      return Optional.of(request.getBranch());
+    }
+    Ref head = gitRepository.exactRef(Constants.HEAD);
+    if (head != null && head.isSymbolic()) {
+      return Optional.of(Repository.shortenRefName(head.getTarget().getName()));
+    }
+    return Optional.empty();
+  }
+
+  private DirCache readTree(ObjectReader reader, RevCommit parent) throws IOException {
+    DirCache cache = DirCache.newInCore();
+    DirCacheBuilder builder = cache.builder();
+    builder.addTree(new byte[0], DirCacheEntry.STAGE_0, reader, parent.getTree());
+    builder.finish();
+    return cache;
+  }
+
+  private boolean usesConversionConfig() {
+    CoreConfig.AutoCRLF autoCRLF = gitRepository.getConfig()
+      .getEnum(ConfigConstants.CONFIG_CORE_SECTION, null, ConfigConstants.CONFIG_KEY_AUTOCRLF, CoreConfig.AutoCRLF.FALSE);
+    File infoAttributes = new File(gitRepository.getDirectory(), Constants.INFO_ATTRIBUTES);
+    return autoCRLF != CoreConfig.AutoCRLF.FALSE || infoAttributes.exists();
+  }
+
+  private boolean usesConversionAttributes(ObjectReader reader) throws IOException {
+    for (int i = 0; i < dirCache.getEntryCount(); i++) {
+      DirCacheEntry entry = dirCache.getEntry(i);
+      String path = entry.getPathString();
+      if (path.equals(ATTRIBUTES_FILE) || path.endsWith("/" + ATTRIBUTES_FILE)) {
+        String attributes = new String(reader.open(entry.getObjectId(), Constants.OBJ_BLOB).getBytes(), StandardCharsets.UTF_8);
+        if (CONVERSION_ATTRIBUTES.matcher(attributes).find()) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private boolean isDirectory(String path) {
+    String prefix = path + "/";
+    int position = dirCache.findEntry(prefix);
+    if (position < 0) {
+      position = -(position + 1);
+    }
+    return position < dirCache.getEntryCount() && dirCache.getEntry(position).getPathString().startsWith(prefix);
+  }
+
+  private void failIfParentIsFile(String path) {
+    int separator = path.indexOf('/');
+    while (separator > 0) {
+      String parent = path.substring(0, separator);
+      if (dirCache.getEntry(parent) != null) {
+        throw alreadyExists(createFileContext(parent));
+      }
+      separator = path.indexOf('/', separator + 1);
+    }
+  }
+
+  private String normalize(String path) {
+    Deque<String> segments = new ArrayDeque<>();
+    for (String segment : path.replace('\\', '/').split("/")) {
+      if (segment.equals("..")) {
+        if (segments.isEmpty()) {
+          throw new InternalRepositoryException(repository, "path " + path + " is outside of the repository");
+        }
+        segments.removeLast();
+      } else if (!segment.isEmpty() && !segment.equals(".")) {
+        segments.addLast(segment);
+      }
+    }
+    if (segments.isEmpty()) {
+      throw new InternalRepositoryException(repository, "invalid path " + path);
+    }
+    return String.join("/", segments);
+  }
+
+  private ContextEntry.ContextBuilder createFileContext(String path) {
+    ContextEntry.ContextBuilder contextBuilder = entity("file", path);
+    if (!Strings.isNullOrEmpty(request.getBranch())) {
+      contextBuilder.in("branch", request.getBranch());
+    }
+    contextBuilder.in(repository);
+    return contextBuilder;
+  }
+}
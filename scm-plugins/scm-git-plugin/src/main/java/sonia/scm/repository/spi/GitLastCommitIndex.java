@@ -0,0 +1,494 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository.spi;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.repository.GitUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+
+import static org.eclipse.jgit.lib.Constants.OBJECT_ID_LENGTH;
+
+/**
+ * Persisted index of the last commit, which has modified a file or directory, for every path of a branch. The browse
+ * command uses the index to set the commit information of all entries of a directory with a single lookup, instead of a
+ * path filtered {@link RevWalk} for every entry. The index finds the same commits as the path filtered walk, including
+ * its simplification of merged history.
+ * <p>
+ * The index is stored per branch in the git directory of the repository and records the head it was built for. If
+ * the branch was fast forwarded, only the commits since the indexed head are walked. The initial build walks the
+ * whole history of the branch, so it is executed in the background; requests which are made before the index is
+ * available use the path filtered walk. Loaded indexes are kept in memory for the most recently used branches.
+ * <p>
+ * The index can be disabled with the system property {@code scm.git.lastCommitIndex.disabled}.
+ *
+ * @since 2.15.0
+ */
+public final class GitLastCommitIndex {
+
+  private static final Logger LOG = LoggerFactory.getLogger(GitLastCommitIndex.class);
+
+  @VisibleForTesting
+  static final String DIRECTORY = "scm-last-commit-index";
+
+  private static final String PROPERTY_DISABLED = "scm.git.lastCommitIndex.disabled";
+  private static final String PROPERTY_CACHE_SIZE = "scm.git.lastCommitIndex.cacheSize";
+
+  private static final int MAGIC = 0x53434c43;
+  private static final int VERSION = 2;
+
+  private static final Striped<Lock> LOCKS = Striped.lock(16);
+
+  private static final Cache<File, Snapshot> SNAPSHOTS = CacheBuilder.newBuilder()
+    .maximumSize(Integer.getInteger(PROPERTY_CACHE_SIZE, 8))
+    .build();
+
+  private static final Set<File> PENDING_BUILDS = ConcurrentHashMap.newKeySet();
+
+  private static final ExecutorService BUILD_EXECUTOR = Executors.newSingleThreadExecutor(
+    new ThreadFactoryBuilder().setNameFormat("GitLastCommitIndex-%d").setDaemon(true).build()
+  );
+
+  private final Repository repository;
+
+  public GitLastCommitIndex(Repository repository) {
+    this.repository = repository;
+  }
+
+  /**
+   * Returns {@code true} if the last commit index is enabled.
+   *
+   * @return {@code true} if enabled
+   */
+  public static boolean isEnabled() {
+    return !Boolean.getBoolean(PROPERTY_DISABLED);
+  }
+
+  /**
+   * Returns the ids of the last commits for every file and directory path of the branch. If the index for the branch does not exist
+   * or could not be updated incrementally, a build is started in the background and an empty optional is returned.
+   *
+   * @param branch full name of the branch ref
+   * @param head current head of the branch
+   *
+   * @return ids of the last commits by path or empty
+   *
+   * @throws IOException if the index could not be read or written
+   */
+  public Optional<Map<String, ObjectId>> lookup(String branch, ObjectId head) throws IOException {
+    File file = getFile(branch);
+    Lock lock = LOCKS.get(file);
+    lock.lock();
+    try {
+      Snapshot snapshot = load(file);
+      if (snapshot != null && snapshot.head.equals(head)) {
+        return Optional.of(snapshot.commits);
+      }
+      if (snapshot != null) {
+        Optional<Snapshot> updated = updateIncremental(file, snapshot, head);
+        if (updated.isPresent()) {
+          return Optional.of(updated.get().commits);
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+    scheduleBuild(file, head);
+    return Optional.empty();
+  }
+
+  /**
+   * Updates the index of the branch to the new head, if an index for the branch exists.
+   *
+   * @param branch full name of the branch ref
+   * @param head new head of the branch
+   *
+   * @throws IOException if the index could not be read or written
+   */
+  public void updateIfPresent(String branch, ObjectId head) throws IOException {
+    File file = getFile(branch);
+    Lock lock = LOCKS.get(file);
+    lock.lock();
+    try {
+      Snapshot snapshot = load(file);
+      if (snapshot != null && !snapshot.head.equals(head) && !updateIncremental(file, snapshot, head).isPresent()) {
+        remove(file);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Removes the index of the branch.
+   *
+   * @param branch full name of the branch ref
+   *
+   * @throws IOException if the index could not be removed
+   */
+  public void remove(String branch) throws IOException {
+    File file = getFile(branch);
+    Lock lock = LOCKS.get(file);
+    lock.lock();
+    try {
+      remove(file);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Builds the index of the branch for the given head.
+   *
+   * @param branch full name of the branch ref
+   * @param head head of the branch
+   *
+   * @throws IOException if the index could not be written
+   */
+  @VisibleForTesting
+  void build(String branch, ObjectId head) throws IOException {
+    build(getFile(branch), head);
+  }
+
+  private void build(File file, ObjectId head) throws IOException {
+    Lock lock = LOCKS.get(file);
+    lock.lock();
+    try {
+      Snapshot snapshot = load(file);
+      if (snapshot != null && snapshot.head.equals(head)) {
+        return;
+      }
+      LOG.debug("build last commit index {}", file);
+      Map<String, ObjectId> commits = new HashMap<>();
+      collect(commits, head, null);
+      store(file, new Snapshot(head.copy(), commits));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void scheduleBuild(File file, ObjectId head) {
+    if (!PENDING_BUILDS.add(file)) {
+      return;
+    }
+    File directory = repository.getDirectory();
+    ObjectId id = head.copy();
+    BUILD_EXECUTOR.execute(() -> {
+      try (Repository buildRepository = GitUtil.open(directory)) {
+        new GitLastCommitIndex(buildRepository).build(file, id);
+      } catch (IOException | RuntimeException ex) {
+        LOG.warn("could not build last commit index {}", file, ex);
+      } finally {
+        PENDING_BUILDS.remove(file);
+      }
+    });
+  }
+
+  private Optional<Snapshot> updateIncremental(File file, Snapshot snapshot, ObjectId head) throws IOException {
+    if (!isAncestor(snapshot.head, head)) {
+      return Optional.empty();
+    }
+    LOG.trace("update last commit index {} from {} to {}", file, snapshot.head.name(), head.name());
+    Map<String, ObjectId> commits = new HashMap<>();
+    if (!collect(commits, head, snapshot)) {
+      LOG.debug("could not update last commit index {} incrementally", file);
+      return Optional.empty();
+    }
+    Snapshot updated = new Snapshot(head.copy(), commits);
+    store(file, updated);
+    return Optional.of(updated);
+  }
+
+  private boolean isAncestor(ObjectId ancestor, ObjectId head) throws IOException {
+    try (RevWalk walk = new RevWalk(repository)) {
+      return walk.isMergedInto(walk.parseCommit(ancestor), walk.parseCommit(head));
+    } catch (MissingObjectException ex) {
+      LOG.debug("indexed head {} does no longer exist", ancestor.name());
+      return false;
+    }
+  }
+
+  /**
+   * Searches the last commit for every file and directory path of the head tree, with the same history simplification
+   * as a path filtered {@link RevWalk}: the search for a path stops at the first commit whose content of the path
+   * differs from all of its parents. At a merge the search follows only the first parent with the same content of the
+   * path (TREESAME), so changes of merged branches which were discarded by the merge are never recorded.
+   * <p>
+   * The commits are processed in topological order and every commit carries the paths whose search has reached it. If
+   * a base snapshot is given, only the commits between the head and the base are walked and the search for a path which
+   * reaches the base head takes its commit from the base snapshot. If the search leaves the walked commits somewhere
+   * else, the result would be incomplete and {@code false} is returned.
+   */
+  private boolean collect(Map<String, ObjectId> commits, ObjectId head, Snapshot base) throws IOException {
+    try (RevWalk walk = new RevWalk(repository); TreeWalk treeWalk = new TreeWalk(repository)) {
+      walk.setRetainBody(false);
+      walk.sort(RevSort.TOPO);
+      RevCommit start = walk.parseCommit(head);
+      walk.markStart(start);
+      if (base != null) {
+        walk.markUninteresting(walk.parseCommit(base.head));
+      }
+      List<RevCommit> ordered = new ArrayList<>();
+      for (RevCommit commit : walk) {
+        ordered.add(commit);
+      }
+      Set<ObjectId> walked = new HashSet<>(ordered);
+
+      Map<ObjectId, Set<String>> searching = new HashMap<>();
+      searching.put(start, paths(treeWalk, start));
+      for (RevCommit commit : ordered) {
+        Set<String> paths = searching.remove(commit);
+        if (paths == null) {
+          continue;
+        }
+        RevCommit[] parents = commit.getParents();
+        Set<String> modified = paths;
+        if (parents.length > 0) {
+          // paths which are unchanged compared to the first parent keep the set
+          modified = new HashSet<>();
+          for (String path : diff(treeWalk, walk, commit, parents[0])) {
+            if (paths.remove(path)) {
+              modified.add(path);
+            }
+          }
+          if (!handOver(commits, searching, walked, base, parents[0], paths)) {
+            return false;
+          }
+        }
+        for (int i = 1; i < parents.length && !modified.isEmpty(); i++) {
+          Set<String> differing = diff(treeWalk, walk, commit, parents[i]);
+          Set<String> same = new HashSet<>();
+          for (Iterator<String> it = modified.iterator(); it.hasNext(); ) {
+            String path = it.next();
+            if (!differing.contains(path)) {
+              same.add(path);
+              it.remove();
+            }
+          }
+          if (!handOver(commits, searching, walked, base, parents[i], same)) {
+            return false;
+          }
+        }
+        ObjectId id = commit.copy();
+        for (String path : modified) {
+          commits.put(path, id);
+        }
+        if (searching.isEmpty()) {
+          break;
+        }
+      }
+      return true;
+    }
+  }
+
+  private boolean handOver(Map<String, ObjectId> commits, Map<ObjectId, Set<String>> searching, Set<ObjectId> walked,
+                           Snapshot base, RevCommit parent, Set<String> paths) {
+    if (paths.isEmpty()) {
+      return true;
+    }
+    if (!walked.contains(parent)) {
+      if (base == null || !base.head.equals(parent)) {
+        return false;
+      }
+      for (String path : paths) {
+        ObjectId id = base.commits.get(path);
+        if (id == null) {
+          return false;
+        }
+        commits.put(path, id);
+      }
+      return true;
+    }
+    Set<String> existing = searching.get(parent);
+    if (existing == null) {
+      searching.put(parent, paths);
+    } else if (existing.size() >= paths.size()) {
+      existing.addAll(paths);
+    } else {
+      paths.addAll(existing);
+      searching.put(parent, paths);
+    }
+    return true;
+  }
+
+  private Set<String> paths(TreeWalk treeWalk, RevCommit commit) throws IOException {
+    Set<String> paths = new HashSet<>();
+    treeWalk.reset(commit.getTree());
+    treeWalk.setRecursive(false);
+    treeWalk.setFilter(TreeFilter.ALL);
+    while (treeWalk.next()) {
+      paths.add(treeWalk.getPathString());
+      if (treeWalk.isSubtree()) {
+        treeWalk.enterSubtree();
+      }
+    }
+    return paths;
+  }
+
+  /**
+   * Returns the file and directory paths of the commit, whose content differs from the parent.
+   */
+  private Set<String> diff(TreeWalk treeWalk, RevWalk walk, RevCommit commit, RevCommit parent) throws IOException {
+    walk.parseHeaders(parent);
+    Set<String> paths = new HashSet<>();
+    treeWalk.reset(commit.getTree(), parent.getTree());
+    treeWalk.setRecursive(false);
+    treeWalk.setFilter(TreeFilter.ANY_DIFF);
+    while (treeWalk.next()) {
+      int mode = treeWalk.getRawMode(0);
+      if (mode != FileMode.TYPE_MISSING) {
+        paths.add(treeWalk.getPathString());
+        if ((mode & FileMode.TYPE_MASK) == FileMode.TYPE_TREE) {
+          treeWalk.enterSubtree();
+        }
+      }
+    }
+    return paths;
+  }
+
+  private Snapshot load(File file) throws IOException {
+    Snapshot snapshot = SNAPSHOTS.getIfPresent(file);
+    if (snapshot != null && snapshot.lastModified == file.lastModified()) {
+      return snapshot;
+    }
+    if (!file.exists()) {
+      SNAPSHOTS.invalidate(file);
+      return null;
+    }
+    snapshot = read(file);
+    if (snapshot != null) {
+      SNAPSHOTS.put(file, snapshot);
+    }
+    return snapshot;
+  }
+
+  private Snapshot read(File file) throws IOException {
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+        LOG.warn("found invalid last commit index {}, the index will be rebuilt", file);
+        return null;
+      }
+      byte[] id = new byte[OBJECT_ID_LENGTH];
+      input.readFully(id);
+      ObjectId head = ObjectId.fromRaw(id);
+      int count = input.readInt();
+      Map<String, ObjectId> commits = new HashMap<>(count * 4 / 3 + 1);
+      for (int i = 0; i < count; i++) {
+        String path = input.readUTF();
+        input.readFully(id);
+        commits.put(path, ObjectId.fromRaw(id));
+      }
+      Snapshot snapshot = new Snapshot(head, commits);
+      snapshot.lastModified = file.lastModified();
+      return snapshot;
+    } catch (EOFException ex) {
+      LOG.warn("last commit index {} is truncated, the index will be rebuilt", file);
+      return null;
+    }
+  }
+
+  private void store(File file, Snapshot snapshot) throws IOException {
+    File directory = file.getParentFile();
+    if (!directory.exists() && !directory.mkdirs()) {
+      throw new IOException("could not create directory " + directory);
+    }
+    File temp = new File(directory, file.getName() + ".tmp");
+    try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      snapshot.head.copyRawTo(output);
+      output.writeInt(snapshot.commits.size());
+      for (Map.Entry<String, ObjectId> entry : snapshot.commits.entrySet()) {
+        output.writeUTF(entry.getKey());
+        entry.getValue().copyRawTo(output);
+      }
+    }
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    snapshot.lastModified = file.lastModified();
+    SNAPSHOTS.put(file, snapshot);
+  }
+
+  private void remove(File file) throws IOException {
+    SNAPSHOTS.invalidate(file);
+    Files.deleteIfExists(file.toPath());
+  }
+
+  private File getFile(String branch) {
+    byte[] hash = Constants.newMessageDigest().digest(branch.getBytes(StandardCharsets.UTF_8));
+    return new File(new File(repository.getDirectory(), DIRECTORY), ObjectId.fromRaw(hash).name());
+  }
+
+  private static class Snapshot {
+
+    private final ObjectId head;
+    private final Map<String, ObjectId> commits;
+    private long lastModified;
+
+    private Snapshot(ObjectId head, Map<String, ObjectId> commits) {
+      this.head = head;
+      this.commits = Collections.unmodifiableMap(commits);
+    }
+  }
+}
@@ -147,7 +147,6 @@ public class GitLogCommand extends AbstractGitCommand implements LogCommand
     {
       IOUtil.close(converter);
       GitUtil.release(revWalk);
-      GitUtil.close(gr);
     }
 
     return changeset;
@@ -178,7 +177,9 @@ public class GitLogCommand extends AbstractGitCommand implements LogCommand
   @Override
   @SuppressWarnings("unchecked")
   public ChangesetPagingResult getChangesets(LogCommandRequest request) {
-    try (org.eclipse.jgit.lib.Repository gitRepository = open()) {
+    try {
+      // the repository is shared with the other commands and is closed with the context
+      org.eclipse.jgit.lib.Repository gitRepository = open();
       if (Strings.isNullOrEmpty(request.getBranch())) {
         request.setBranch(context.getConfig().getDefaultBranch());
       }
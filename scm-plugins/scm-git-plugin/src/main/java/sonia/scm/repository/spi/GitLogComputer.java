@@ -47,9 +47,11 @@ import sonia.scm.repository.GitUtil;
 import sonia.scm.repository.InternalRepositoryException;
 import sonia.scm.util.IOUtil;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
 
 import static sonia.scm.ContextEntry.ContextBuilder.entity;
 import static sonia.scm.NotFoundException.notFound;
@@ -128,6 +130,16 @@ public class GitLogComputer {
 
         converter = converterFactory.create(gitRepository, revWalk);
 
+        if (branch != null && isIndexable(request)) {
+          Optional<GitLogIndex.Page> page = readIndex(branch, start, limit);
+          if (page.isPresent()) {
+            for (ObjectId commitId : page.get().getCommitIds()) {
+              changesetList.add(converter.createChangeset(revWalk.parseCommit(commitId)));
+            }
+            return new ChangesetPagingResult(page.get().getTotal(), changesetList, GitUtil.getBranch(branch.getName()));
+          }
+        }
+
         if (!Strings.isNullOrEmpty(request.getPath())) {
           revWalk.setTreeFilter(
             AndTreeFilter.create(
@@ -186,4 +198,21 @@ public class GitLogComputer {
       GitUtil.release(revWalk);
     }
   }
+
+  private boolean isIndexable(LogCommandRequest request) {
+    return GitLogIndex.isEnabled()
+      && Strings.isNullOrEmpty(request.getPath())
+      && Strings.isNullOrEmpty(request.getStartChangeset())
+      && Strings.isNullOrEmpty(request.getEndChangeset())
+      && Strings.isNullOrEmpty(request.getAncestorChangeset());
+  }
+
+  private Optional<GitLogIndex.Page> readIndex(Ref branch, int start, int limit) {
+    try {
+      return Optional.of(new GitLogIndex(gitRepository).read(branch.getName(), branch.getObjectId(), start, limit));
+    } catch (IOException ex) {
+      LOG.warn("could not read log index of branch {} in repository {}, falling back to rev walk", branch.getName(), repositoryId, ex);
+      return Optional.empty();
+    }
+  }
 }
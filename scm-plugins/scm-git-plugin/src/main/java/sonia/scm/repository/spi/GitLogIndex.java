@@ -0,0 +1,347 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository.spi;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.Striped;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+import static org.eclipse.jgit.lib.Constants.OBJECT_ID_LENGTH;
+
+/**
+ * Persisted index of the commits reachable from a branch, in the order of an unsorted {@link RevWalk}. The index
+ * answers paged log requests and the total count of commits without walking the whole history of the branch.
+ * <p>
+ * The index is stored per branch in the git directory of the repository. The commit ids are stored from the oldest to
+ * the newest commit, so that new commits of a fast forward update can be appended. The header of the file contains
+ * the head of the branch, for which the index was built. If the head of the branch has changed, the index is updated
+ * with the new commits. If the branch was not fast forwarded or if the new commits are older than the indexed ones
+ * (which would change the order of the walk), the index is rebuilt.
+ * <p>
+ * The index can be disabled with the system property {@code scm.git.logIndex.disabled}.
+ *
+ * @since 2.15.0
+ */
+public final class GitLogIndex {
+
+  private static final Logger LOG = LoggerFactory.getLogger(GitLogIndex.class);
+
+  @VisibleForTesting
+  static final String DIRECTORY = "scm-log-index";
+
+  private static final String PROPERTY_DISABLED = "scm.git.logIndex.disabled";
+
+  private static final int MAGIC = 0x53434c49;
+  private static final int VERSION = 1;
+  private static final int HEADER_LENGTH = 4 + 4 + OBJECT_ID_LENGTH + 4 + 4;
+
+  private static final Striped<Lock> LOCKS = Striped.lock(16);
+
+  private final Repository repository;
+
+  public GitLogIndex(Repository repository) {
+    this.repository = repository;
+  }
+
+  /**
+   * Returns {@code true} if the log index is enabled.
+   *
+   * @return {@code true} if enabled
+   */
+  public static boolean isEnabled() {
+    return !Boolean.getBoolean(PROPERTY_DISABLED);
+  }
+
+  /**
+   * Returns the ids of the commits with the given range, starting with the newest commit of the branch. The index is
+   * updated before, if the head of the branch is not indexed yet.
+   *
+   * @param branch full name of the branch ref
+   * @param head current head of the branch
+   * @param start index of the first commit
+   * @param limit maximum number of commits, or a negative value for all commits
+   *
+   * @return page of commit ids with the total number of commits
+   *
+   * @throws IOException if the index could not be read or written
+   */
+  public Page read(String branch, ObjectId head, int start, int limit) throws IOException {
+    File file = getFile(branch);
+    Lock lock = LOCKS.get(file);
+    lock.lock();
+    try {
+      Header header = update(file, head);
+      return readPage(file, header, start, limit);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Updates the index of the branch to the new head, if an index for the branch exists.
+   *
+   * @param branch full name of the branch ref
+   * @param head new head of the branch
+   *
+   * @throws IOException if the index could not be read or written
+   */
+  public void updateIfPresent(String branch, ObjectId head) throws IOException {
+    File file = getFile(branch);
+    Lock lock = LOCKS.get(file);
+    lock.lock();
+    try {
+      if (file.exists()) {
+        update(file, head);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Removes the index of the branch.
+   *
+   * @param branch full name of the branch ref
+   *
+   * @throws IOException if the index could not be removed
+   */
+  public void remove(String branch) throws IOException {
+    File file = getFile(branch);
+    Lock lock = LOCKS.get(file);
+    lock.lock();
+    try {
+      Files.deleteIfExists(file.toPath());
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Header update(File file, ObjectId head) throws IOException {
+    Header header = readHeader(file);
+    if (header != null && header.head.equals(head)) {
+      return header;
+    }
+    try (RevWalk walk = new RevWalk(repository)) {
+      walk.setRetainBody(false);
+      if (header != null && isAncestor(walk, header.head, head)) {
+        walk.reset();
+        List<RevCommit> commits = collect(walk, head, header.head);
+        if (getMinCommitTime(commits) >= header.maxCommitTime) {
+          LOG.trace("append {} commits to log index of {}", commits.size(), file);
+          return append(file, header, head, commits);
+        }
+        LOG.debug("new commits are older than the indexed commits, rebuild log index {}", file);
+        walk.reset();
+      }
+      LOG.debug("build log index {}", file);
+      return rebuild(file, head, collect(walk, head, null));
+    }
+  }
+
+  private boolean isAncestor(RevWalk walk, ObjectId ancestor, ObjectId head) throws IOException {
+    try {
+      return walk.isMergedInto(walk.parseCommit(ancestor), walk.parseCommit(head));
+    } catch (MissingObjectException ex) {
+      LOG.debug("indexed head {} does no longer exist", ancestor.name());
+      return false;
+    }
+  }
+
+  private List<RevCommit> collect(RevWalk walk, ObjectId head, ObjectId uninteresting) throws IOException {
+    walk.markStart(walk.parseCommit(head));
+    if (uninteresting != null) {
+      walk.markUninteresting(walk.parseCommit(uninteresting));
+    }
+    List<RevCommit> commits = new ArrayList<>();
+    for (RevCommit commit : walk) {
+      commits.add(commit);
+    }
+    return commits;
+  }
+
+  private int getMinCommitTime(List<RevCommit> commits) {
+    int min = Integer.MAX_VALUE;
+    for (RevCommit commit : commits) {
+      min = Math.min(min, commit.getCommitTime());
+    }
+    return min;
+  }
+
+  private int getMaxCommitTime(List<RevCommit> commits, int max) {
+    for (RevCommit commit : commits) {
+      max = Math.max(max, commit.getCommitTime());
+    }
+    return max;
+  }
+
+  private Header rebuild(File file, ObjectId head, List<RevCommit> commits) throws IOException {
+    Header header = new Header(head, getMaxCommitTime(commits, 0), commits.size());
+    File directory = file.getParentFile();
+    if (!directory.exists() && !directory.mkdirs()) {
+      throw new IOException("could not create directory " + directory);
+    }
+    File temp = new File(directory, file.getName() + ".tmp");
+    try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+      writeHeader(output, header);
+      for (int i = commits.size() - 1; i >= 0; i--) {
+        commits.get(i).copyRawTo(output);
+      }
+    }
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return header;
+  }
+
+  private Header append(File file, Header header, ObjectId head, List<RevCommit> commits) throws IOException {
+    Header updated = new Header(
+      head, getMaxCommitTime(commits, header.maxCommitTime), header.count + commits.size()
+    );
+    byte[] ids = new byte[commits.size() * OBJECT_ID_LENGTH];
+    for (int i = 0; i < commits.size(); i++) {
+      commits.get(commits.size() - 1 - i).copyRawTo(ids, i * OBJECT_ID_LENGTH);
+    }
+    try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+      // drop entries of an interrupted append, the header is written after the entries
+      long end = HEADER_LENGTH + (long) header.count * OBJECT_ID_LENGTH;
+      output.setLength(end);
+      output.seek(end);
+      output.write(ids);
+      output.seek(0);
+      writeHeader(output, updated);
+    }
+    return updated;
+  }
+
+  private Header readHeader(File file) throws IOException {
+    if (!file.exists()) {
+      return null;
+    }
+    try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+      if (input.length() < HEADER_LENGTH || input.readInt() != MAGIC || input.readInt() != VERSION) {
+        LOG.warn("found invalid log index {}, the index will be rebuilt", file);
+        return null;
+      }
+      byte[] head = new byte[OBJECT_ID_LENGTH];
+      input.readFully(head);
+      Header header = new Header(ObjectId.fromRaw(head), input.readInt(), input.readInt());
+      if (input.length() < HEADER_LENGTH + (long) header.count * OBJECT_ID_LENGTH) {
+        LOG.warn("log index {} is truncated, the index will be rebuilt", file);
+        return null;
+      }
+      return header;
+    }
+  }
+
+  private void writeHeader(DataOutput output, Header header) throws IOException {
+    output.writeInt(MAGIC);
+    output.writeInt(VERSION);
+    byte[] head = new byte[OBJECT_ID_LENGTH];
+    header.head.copyRawTo(head, 0);
+    output.write(head);
+    output.writeInt(header.maxCommitTime);
+    output.writeInt(header.count);
+  }
+
+  private Page readPage(File file, Header header, int start, int limit) throws IOException {
+    int end = limit < 0 ? header.count : (int) Math.min(header.count, (long) start + limit);
+    if (start >= end) {
+      return new Page(Collections.emptyList(), header.count);
+    }
+    // the entries are stored from the oldest to the newest commit
+    int first = header.count - end;
+    int length = end - start;
+    byte[] buffer = new byte[length * OBJECT_ID_LENGTH];
+    try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+      input.seek(HEADER_LENGTH + (long) first * OBJECT_ID_LENGTH);
+      input.readFully(buffer);
+    }
+    List<ObjectId> ids = new ArrayList<>(length);
+    for (int i = length - 1; i >= 0; i--) {
+      ids.add(ObjectId.fromRaw(buffer, i * OBJECT_ID_LENGTH));
+    }
+    return new Page(ids, header.count);
+  }
+
+  private File getFile(String branch) {
+    byte[] hash = Constants.newMessageDigest().digest(branch.getBytes(StandardCharsets.UTF_8));
+    return new File(new File(repository.getDirectory(), DIRECTORY), ObjectId.fromRaw(hash).name());
+  }
+
+  private static class Header {
+
+    private final ObjectId head;
+    private final int maxCommitTime;
+    private final int count;
+
+    private Header(ObjectId head, int maxCommitTime, int count) {
+      this.head = head;
+      this.maxCommitTime = maxCommitTime;
+      this.count = count;
+    }
+  }
+
+  /**
+   * Commit ids of a requested range, starting with the newest commit.
+   */
+  public static final class Page {
+
+    private final List<ObjectId> commitIds;
+    private final int total;
+
+    private Page(List<ObjectId> commitIds, int total) {
+      this.commitIds = commitIds;
+      this.total = total;
+    }
+
+    public List<ObjectId> getCommitIds() {
+      return commitIds;
+    }
+
+    public int getTotal() {
+      return total;
+    }
+  }
+}
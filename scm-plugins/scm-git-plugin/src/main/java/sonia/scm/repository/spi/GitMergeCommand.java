@@ -36,6 +36,8 @@ import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.merge.ResolveMerger;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
 import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import sonia.scm.repository.GitRepositoryHandler;
 import sonia.scm.repository.GitWorkingCopyFactory;
 import sonia.scm.repository.InternalRepositoryException;
@@ -47,6 +49,7 @@ import sonia.scm.repository.api.MergeStrategyNotSupportedException;
 import javax.inject.Inject;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Optional;
 import java.util.Set;
 
 import static org.eclipse.jgit.merge.MergeStrategy.RECURSIVE;
@@ -55,7 +58,15 @@ import static sonia.scm.NotFoundException.notFound;
 
 public class GitMergeCommand extends AbstractGitCommand implements MergeCommand {
 
+  private static final Logger LOG = LoggerFactory.getLogger(GitMergeCommand.class);
+
+  /**
+   * Name of the system property, which disables merges without a working copy.
+   */
+  static final String PROPERTY_IN_CORE_DISABLED = "scm.git.merge.inCore.disabled";
+
   private final GitWorkingCopyFactory workingCopyFactory;
+  private final boolean inCoreEnabled;
 
   private static final Set<MergeStrategy> STRATEGIES = ImmutableSet.of(
     MergeStrategy.MERGE_COMMIT,
@@ -70,20 +81,49 @@ public class GitMergeCommand extends AbstractGitCommand implements MergeCommand
   }
 
   GitMergeCommand(GitContext context, GitWorkingCopyFactory workingCopyFactory) {
+    this(context, workingCopyFactory, !Boolean.getBoolean(PROPERTY_IN_CORE_DISABLED));
+  }
+
+  GitMergeCommand(GitContext context, GitWorkingCopyFactory workingCopyFactory, boolean inCoreEnabled) {
     super(context);
     this.workingCopyFactory = workingCopyFactory;
+    this.inCoreEnabled = inCoreEnabled;
   }
 
   @Override
   public MergeCommandResult merge(MergeCommandRequest request) {
+    if (inCoreEnabled) {
+      Optional<MergeCommandResult> result = inCore(GitInCoreMerge::merge, request);
+      if (result.isPresent()) {
+        return result.get();
+      }
+    }
     return mergeWithStrategy(request);
   }
 
   @Override
   public MergeConflictResult computeConflicts(MergeCommandRequest request) {
+    if (inCoreEnabled) {
+      Optional<MergeConflictResult> result = inCore(GitInCoreMerge::computeConflicts, request);
+      if (result.isPresent()) {
+        return result.get();
+      }
+    }
     return inClone(git -> new ConflictWorker(git, request), workingCopyFactory, request.getTargetBranch());
   }
 
+  private <R> Optional<R> inCore(InCoreWorker<R> worker, MergeCommandRequest request) {
+    try {
+      Optional<R> result = worker.run(new GitInCoreMerge(context, request));
+      if (!result.isPresent()) {
+        LOG.debug("could not merge {} into {} without working copy, falling back to clone", request.getBranchToMerge(), request.getTargetBranch());
+      }
+      return result;
+    } catch (IOException e) {
+      throw new InternalRepositoryException(context.getRepository(), "could not merge branch " + request.getBranchToMerge() + " into " + request.getTargetBranch(), e);
+    }
+  }
+
   private MergeCommandResult mergeWithStrategy(MergeCommandRequest request) {
     switch(request.getMergeStrategy()) {
       case SQUASH:
@@ -127,6 +167,11 @@ public class GitMergeCommand extends AbstractGitCommand implements MergeCommand
     return STRATEGIES;
   }
 
+  @FunctionalInterface
+  private interface InCoreWorker<R> {
+    Optional<R> run(GitInCoreMerge merge) throws IOException;
+  }
+
   private class ConflictWorker extends GitCloneWorker<MergeConflictResult> {
     private final String theirs;
     private final String ours;
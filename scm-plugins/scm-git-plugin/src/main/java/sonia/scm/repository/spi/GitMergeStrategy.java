@@ -108,6 +108,14 @@ abstract class GitMergeStrategy extends AbstractGitCommand.GitCloneWorker<MergeC
   }
 
   private String determineMessage() {
+    return determineMessage(message, messageTemplate, branchToMerge, targetBranch);
+  }
+
+  static String determineMessage(MergeCommandRequest request) {
+    return determineMessage(request.getMessage(), request.getMessageTemplate(), request.getBranchToMerge(), request.getTargetBranch());
+  }
+
+  private static String determineMessage(String message, String messageTemplate, String branchToMerge, String targetBranch) {
     if (!Strings.isNullOrEmpty(message)) {
       return message;
     } else if (!Strings.isNullOrEmpty(messageTemplate)) {
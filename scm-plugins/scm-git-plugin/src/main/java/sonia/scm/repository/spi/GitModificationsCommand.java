@@ -110,7 +110,6 @@ public class GitModificationsCommand extends AbstractGitCommand implements Modif
       throw new InternalRepositoryException(entity(repository), "could not open repository", ex);
     } finally {
       GitUtil.release(revWalk);
-      GitUtil.close(gitRepository);
     }
     return null;
   }
@@ -53,9 +53,15 @@ public class GitModifyCommand extends AbstractGitCommand implements ModifyComman
 
   private static final Striped<Lock> REGISTER_LOCKS = Striped.lock(5);
 
+  /**
+   * Name of the system property, which disables modifications without a working copy.
+   */
+  static final String PROPERTY_IN_CORE_DISABLED = "scm.git.modify.inCore.disabled";
+
   private final GitWorkingCopyFactory workingCopyFactory;
   private final LfsBlobStoreFactory lfsBlobStoreFactory;
   private final GitRepositoryConfigStoreProvider gitRepositoryConfigStoreProvider;
+  private final boolean inCoreEnabled;
 
   @Inject
   GitModifyCommand(GitContext context, GitRepositoryHandler repositoryHandler, LfsBlobStoreFactory lfsBlobStoreFactory, GitRepositoryConfigStoreProvider gitRepositoryConfigStoreProvider) {
@@ -63,17 +69,36 @@ public class GitModifyCommand extends AbstractGitCommand implements ModifyComman
   }
 
   GitModifyCommand(GitContext context, GitWorkingCopyFactory workingCopyFactory, LfsBlobStoreFactory lfsBlobStoreFactory, GitRepositoryConfigStoreProvider gitRepositoryConfigStoreProvider) {
+    this(context, workingCopyFactory, lfsBlobStoreFactory, gitRepositoryConfigStoreProvider, !Boolean.getBoolean(PROPERTY_IN_CORE_DISABLED));
+  }
+
+  GitModifyCommand(GitContext context, GitWorkingCopyFactory workingCopyFactory, LfsBlobStoreFactory lfsBlobStoreFactory, GitRepositoryConfigStoreProvider gitRepositoryConfigStoreProvider, boolean inCoreEnabled) {
     super(context);
     this.workingCopyFactory = workingCopyFactory;
     this.lfsBlobStoreFactory = lfsBlobStoreFactory;
     this.gitRepositoryConfigStoreProvider = gitRepositoryConfigStoreProvider;
+    this.inCoreEnabled = inCoreEnabled;
   }
 
   @Override
   public String execute(ModifyCommandRequest request) {
+    if (inCoreEnabled) {
+      Optional<String> revision = executeInCore(request);
+      if (revision.isPresent()) {
+        return revision.get();
+      }
+    }
     return inClone(clone -> new ModifyWorker(clone, request), workingCopyFactory, request.getBranch());
   }
 
+  private Optional<String> executeInCore(ModifyCommandRequest request) {
+    try {
+      return new GitInCoreModify(context, request).execute();
+    } catch (IOException e) {
+      throw new InternalRepositoryException(context.getRepository(), "could not modify repository", e);
+    }
+  }
+
   private class ModifyWorker extends GitCloneWorker<String> implements ModifyWorkerHelper {
 
     private final File workDir;
@@ -25,18 +25,33 @@
 package sonia.scm.repository.spi;
 
 import com.google.common.base.Stopwatch;
+import org.eclipse.jgit.api.CreateBranchCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.BatchRefUpdate;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteConfig;
+import org.eclipse.jgit.transport.URIish;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sonia.scm.repository.GitUtil;
 import sonia.scm.repository.InternalRepositoryException;
 import sonia.scm.repository.work.SimpleWorkingCopyFactory.ParentAndClone;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
 
 import static sonia.scm.ContextEntry.ContextBuilder.entity;
 import static sonia.scm.NotFoundException.notFound;
@@ -45,6 +60,8 @@ class GitWorkingCopyInitializer {
 
   private static final Logger LOG = LoggerFactory.getLogger(GitWorkingCopyInitializer.class);
 
+  private static final String REMOTE = "origin";
+
   private final SimpleGitWorkingCopyFactory simpleGitWorkingCopyFactory;
   private final GitContext context;
 
@@ -54,6 +71,9 @@ class GitWorkingCopyInitializer {
   }
 
   public ParentAndClone<Repository, Repository> initialize(File target, String initialBranch) {
+    if (simpleGitWorkingCopyFactory.isShareObjects()) {
+      return initializeWithAlternates(target, initialBranch);
+    }
     LOG.trace("clone repository {}", context.getRepository());
     Stopwatch stopwatch = Stopwatch.createStarted();
     try {
@@ -81,4 +101,99 @@ class GitWorkingCopyInitializer {
       LOG.trace("took {} to clone repository {}", stopwatch.stop(), context.getRepository());
     }
   }
+
+  /**
+   * Creates a working copy, which uses the object database of the central repository as alternate object database.
+   * Instead of copying all objects, only the refs of the central repository are copied to the remote tracking refs of
+   * the working copy. New objects are stored in the working copy and are pushed to the central repository as usual.
+   */
+  private ParentAndClone<Repository, Repository> initializeWithAlternates(File target, String initialBranch) {
+    LOG.trace("create working copy with alternates for repository {}", context.getRepository());
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    try {
+      Repository central = context.open();
+      Git.init().setDirectory(target).call().close();
+      File gitDirectory = new File(target, Constants.DOT_GIT);
+      writeAlternates(gitDirectory, new File(central.getDirectory(), Constants.OBJECTS));
+
+      Repository clone = GitUtil.open(target);
+      configureRemote(clone);
+      List<Ref> branches = central.getRefDatabase().getRefsByPrefix(Constants.R_HEADS);
+      copyRefs(central, clone);
+
+      String branch = initialBranch != null ? initialBranch : defaultBranch(central);
+      if (branch != null && clone.exactRef(Constants.R_REMOTES + REMOTE + "/" + branch) != null) {
+        try (Git git = new Git(clone)) {
+          git.checkout()
+            .setCreateBranch(true)
+            .setName(branch)
+            .setStartPoint(REMOTE + "/" + branch)
+            .setUpstreamMode(CreateBranchCommand.SetupUpstreamMode.TRACK)
+            .call();
+        }
+      } else if (branches.isEmpty()) {
+        LOG.warn("could not initialize empty clone with given branch {}; this has to be handled later on", initialBranch);
+      } else {
+        throw notFound(entity("Branch", initialBranch).in(context.getRepository()));
+      }
+
+      return new ParentAndClone<>(null, clone, target);
+    } catch (GitAPIException | IOException | URISyntaxException e) {
+      throw new InternalRepositoryException(context.getRepository(), "could not create working copy of repository", e);
+    } finally {
+      LOG.trace("took {} to create working copy with alternates for repository {}", stopwatch.stop(), context.getRepository());
+    }
+  }
+
+  private void writeAlternates(File gitDirectory, File centralObjects) throws IOException {
+    File info = new File(new File(gitDirectory, Constants.OBJECTS), "info");
+    Files.createDirectories(info.toPath());
+    String alternates = centralObjects.getAbsolutePath() + "\n";
+    Files.write(new File(info, "alternates").toPath(), alternates.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void configureRemote(Repository clone) throws IOException, URISyntaxException {
+    StoredConfig config = clone.getConfig();
+    RemoteConfig remote = new RemoteConfig(config, REMOTE);
+    remote.addURI(new URIish(simpleGitWorkingCopyFactory.createScmTransportProtocolUri(context.getDirectory())));
+    remote.addFetchRefSpec(new RefSpec("+" + Constants.R_HEADS + "*:" + Constants.R_REMOTES + REMOTE + "/*"));
+    remote.update(config);
+    config.save();
+  }
+
+  private void copyRefs(Repository central, Repository clone) throws IOException {
+    BatchRefUpdate update = clone.getRefDatabase().newBatchUpdate();
+    for (Ref ref : central.getRefDatabase().getRefsByPrefix(Constants.R_HEADS)) {
+      String name = Constants.R_REMOTES + REMOTE + "/" + ref.getName().substring(Constants.R_HEADS.length());
+      addCreate(update, ref, name);
+    }
+    for (Ref ref : central.getRefDatabase().getRefsByPrefix(Constants.R_TAGS)) {
+      addCreate(update, ref, ref.getName());
+    }
+    if (!update.getCommands().isEmpty()) {
+      try (RevWalk walk = new RevWalk(clone)) {
+        update.execute(walk, NullProgressMonitor.INSTANCE);
+      }
+      for (ReceiveCommand command : update.getCommands()) {
+        if (command.getResult() != ReceiveCommand.Result.OK) {
+          throw new IOException("could not create ref " + command.getRefName() + ": " + command.getResult());
+        }
+      }
+    }
+  }
+
+  private void addCreate(BatchRefUpdate update, Ref ref, String name) {
+    ObjectId objectId = ref.getObjectId();
+    if (objectId != null) {
+      update.addCommand(new ReceiveCommand(ObjectId.zeroId(), objectId, name, ReceiveCommand.Type.CREATE));
+    }
+  }
+
+  private String defaultBranch(Repository central) throws IOException {
+    Ref head = central.exactRef(Constants.HEAD);
+    if (head != null && head.isSymbolic() && head.getTarget().getName().startsWith(Constants.R_HEADS)) {
+      return head.getTarget().getName().substring(Constants.R_HEADS.length());
+    }
+    return null;
+  }
 }
@@ -36,9 +36,35 @@ import java.io.File;
 
 public class SimpleGitWorkingCopyFactory extends SimpleWorkingCopyFactory<Repository, Repository, GitContext> implements GitWorkingCopyFactory {
 
+  /**
+   * System property to create working copies, which share the objects of the central repository through git
+   * alternates instead of cloning them.
+   * <p>
+   * Pooled working copies may then reference objects which are only stored in the central repository. If such objects
+   * become unreachable in the central repository (e.g. after a force push), a gc or repack removes them and the
+   * working copy would be corrupt. Therefore the {@link sonia.scm.repository.GitMaintenanceScheduler} evicts the
+   * pooled working copies of a repository, before it removes objects from the repository. Working copies which are in
+   * use during the maintenance are not affected, because the maintenance skips repositories with recently changed
+   * references.
+   *
+   * @since 2.15.0
+   */
+  public static final String PROPERTY_SHARE_OBJECTS = "scm.git.workingCopy.shareObjects";
+
+  private final boolean shareObjects;
+
   @Inject
   public SimpleGitWorkingCopyFactory(WorkingCopyPool workdirProvider) {
+    this(workdirProvider, Boolean.getBoolean(PROPERTY_SHARE_OBJECTS));
+  }
+
+  SimpleGitWorkingCopyFactory(WorkingCopyPool workdirProvider, boolean shareObjects) {
     super(workdirProvider);
+    this.shareObjects = shareObjects;
+  }
+
+  boolean isShareObjects() {
+    return shareObjects;
   }
 
   @Override
@@ -51,7 +77,7 @@ public class SimpleGitWorkingCopyFactory extends SimpleWorkingCopyFactory<Reposi
     return new GitWorkingCopyReclaimer(context).reclaim(target, initialBranch);
   }
 
-  String createScmTransportProtocolUri(File bareRepository) {
+  static String createScmTransportProtocolUri(File bareRepository) {
     if (SystemUtil.isWindows()) {
       return ScmTransportProtocol.NAME + ":///" + bareRepository.getAbsolutePath().replaceAll("\\\\", "/");
     } else {
@@ -35,6 +35,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import sonia.scm.plugin.Extension;
+import sonia.scm.repository.GitRepositoryPool;
 
 //~--- JDK imports ------------------------------------------------------------
 
@@ -80,8 +81,8 @@ public class GitContextListener implements ServletContextListener
   @Override
   public void contextDestroyed(ServletContextEvent sce)
   {
-
-    // do nothing
+    logger.debug("close pooled git repositories");
+    GitRepositoryPool.clear();
   }
 
   /**
@@ -95,6 +96,7 @@ public class GitContextListener implements ServletContextListener
   {
     logger.debug("register scm transport protocol");
     Transport.register(transportProtocol);
+    GitRepositoryPool.configure();
   }
 
   //~--- fields ---------------------------------------------------------------
@@ -36,8 +36,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sonia.scm.repository.GitChangesetConverterFactory;
 import sonia.scm.repository.GitRepositoryHandler;
+import sonia.scm.repository.GitUtil;
 import sonia.scm.repository.RepositoryHookType;
 import sonia.scm.repository.spi.GitHookContextProvider;
+import sonia.scm.repository.spi.GitLastCommitIndex;
+import sonia.scm.repository.spi.GitLogIndex;
 
 import java.io.IOException;
 import java.util.Collection;
@@ -73,6 +76,7 @@ public class GitReceiveHook implements PreReceiveHook, PostReceiveHook
     Collection<ReceiveCommand> receiveCommands)
   {
     onReceive(rpack, receiveCommands, RepositoryHookType.POST_RECEIVE);
+    updateIndexes(rpack.getRepository(), receiveCommands);
   }
 
   @Override
@@ -135,6 +139,56 @@ public class GitReceiveHook implements PreReceiveHook, PostReceiveHook
     }
   }
 
+  /**
+   * Updates the log and last commit indexes of the branches, which were changed by the push.
+   *
+   * @param repository git repository
+   * @param receiveCommands received commands
+   */
+  private void updateIndexes(Repository repository, Collection<ReceiveCommand> receiveCommands)
+  {
+    GitLogIndex logIndex = GitLogIndex.isEnabled() ? new GitLogIndex(repository) : null;
+    GitLastCommitIndex lastCommitIndex = GitLastCommitIndex.isEnabled() ? new GitLastCommitIndex(repository) : null;
+
+    for (ReceiveCommand rc : receiveCommands)
+    {
+      if (rc.getResult() != ReceiveCommand.Result.OK || !GitUtil.isBranch(rc.getRefName()))
+      {
+        continue;
+      }
+
+      try
+      {
+        if (rc.getType() == ReceiveCommand.Type.DELETE)
+        {
+          if (logIndex != null)
+          {
+            logIndex.remove(rc.getRefName());
+          }
+          if (lastCommitIndex != null)
+          {
+            lastCommitIndex.remove(rc.getRefName());
+          }
+        }
+        else
+        {
+          if (logIndex != null)
+          {
+            logIndex.updateIfPresent(rc.getRefName(), rc.getNewId());
+          }
+          if (lastCommitIndex != null)
+          {
+            lastCommitIndex.updateIfPresent(rc.getRefName(), rc.getNewId());
+          }
+        }
+      }
+      catch (IOException ex)
+      {
+        logger.warn("could not update indexes of {}", rc.getRefName(), ex);
+      }
+    }
+  }
+
   /**
    * Resolve the name of the repository.
    * This method was introduced to fix issue #415.
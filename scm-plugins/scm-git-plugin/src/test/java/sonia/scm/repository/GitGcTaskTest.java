@@ -25,20 +25,18 @@
 package sonia.scm.repository;
 
 import com.google.common.collect.Lists;
-import org.eclipse.jgit.api.GarbageCollectCommand;
-import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.errors.GitAPIException;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.List;
-import java.util.Properties;
+import java.util.Map;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -59,54 +57,43 @@ public class GitGcTaskTest
   private RepositoryDirectoryHandler handler;
   
   @Mock
-  private GarbageCollectCommand gcc;
-  
-  @Mock
-  private Git git;
+  private GitMaintenanceScheduler scheduler;
 
   private GitGcTask task;
   
   /**
    * Setup mocks for tests.
-   * 
-   * @throws GitAPIException 
    */
   @Before
-  public void setUp() throws GitAPIException
+  public void setUp()
   {
-    when(git.gc()).thenReturn(gcc);
-    when(gcc.getStatistics()).thenReturn(new Properties());
-    when(gcc.call()).thenReturn(new Properties());
     when(manager.getHandler(GitRepositoryHandler.TYPE_NAME)).thenReturn(handler);
-    task = new GitGcTask(manager){
-      
-      @Override
-      protected Git open(File file) throws IOException
-      {
-        return git;
-      }
-      
-    };
+    task = new GitGcTask(manager, scheduler);
   }
 
   /**
    * Tests {@link GitGcTask#run()}.
-   * 
-   * @throws GitAPIException 
    */
   @Test
-  public void testRun() throws GitAPIException
+  @SuppressWarnings("unchecked")
+  public void testRun()
   {
     // prepare repositories for task
+    Repository puzzle = RepositoryTestData.create42Puzzle("git");
+    File directory = new File("puzzle");
+    when(handler.getDirectory(puzzle.getId())).thenReturn(directory);
+
     Repository unhealthy = mock(Repository.class);
     when(unhealthy.getType()).thenReturn("git");
+    when(unhealthy.isValid()).thenReturn(Boolean.TRUE);
+    when(unhealthy.isHealthy()).thenReturn(Boolean.FALSE);
 
     Repository invalid = mock(Repository.class);
-    when(unhealthy.getType()).thenReturn("git");
-    when(unhealthy.isValid()).thenReturn(Boolean.FALSE);
+    when(invalid.getType()).thenReturn("git");
+    when(invalid.isValid()).thenReturn(Boolean.FALSE);
     
     List<Repository> repositories = Lists.newArrayList(
-        RepositoryTestData.create42Puzzle("git"),
+        puzzle,
         RepositoryTestData.createHeartOfGold("hg"),
         unhealthy,
         invalid
@@ -116,9 +103,10 @@ public class GitGcTaskTest
     // run
     task.run();
     
-    // gc command should only be called once
-    verify(gcc).getStatistics();
-    verify(gcc).call();
+    // only the valid and healthy git repository should be maintained
+    ArgumentCaptor<Map<Repository, File>> captor = ArgumentCaptor.forClass(Map.class);
+    verify(scheduler).maintain(captor.capture());
+    assertThat(captor.getValue()).containsOnlyKeys(puzzle).containsEntry(puzzle, directory);
   }
 
 }
@@ -0,0 +1,100 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository;
+
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GitMaintenancePolicyTest {
+
+  private static final long DAY = 24L * 60 * 60 * 1000;
+
+  private final GitMaintenancePolicy policy = new GitMaintenancePolicy(10, 7 * DAY, 100, 1000, 20);
+
+  @Test
+  void shouldRunGcIfThereIsNoPreviousRun() {
+    assertThat(policy.decide(statistics(0, 1, 0, 100), null, DAY)).isEqualTo(GitMaintenanceAction.GC);
+  }
+
+  @Test
+  void shouldRunGcIfThereAreTooManyPacks() {
+    assertThat(policy.decide(statistics(0, 11, 0, 100), previous(100, DAY), DAY)).isEqualTo(GitMaintenanceAction.GC);
+  }
+
+  @Test
+  void shouldRunGcIfModifiedAndLastGcIsTooOld() {
+    assertThat(policy.decide(statistics(1, 2, 0, 150), previous(100, 0), 8 * DAY)).isEqualTo(GitMaintenanceAction.GC);
+  }
+
+  @Test
+  void shouldNotRunGcIfLastGcIsTooOldButNothingHasChanged() {
+    assertThat(policy.decide(statistics(0, 1, 0, 100), previous(100, 0), 8 * DAY)).isEqualTo(GitMaintenanceAction.NONE);
+  }
+
+  @Test
+  void shouldRepackIfThereAreTooManyLooseObjects() {
+    assertThat(policy.decide(statistics(101, 1, 0, 150), previous(100, DAY), 2 * DAY)).isEqualTo(GitMaintenanceAction.REPACK);
+  }
+
+  @Test
+  void shouldRepackIfTooManyBytesWerePushed() {
+    assertThat(policy.decide(statistics(0, 3, 0, 1200), previous(100, DAY), 2 * DAY)).isEqualTo(GitMaintenanceAction.REPACK);
+  }
+
+  @Test
+  void shouldPackRefsIfThereAreTooManyLooseRefs() {
+    assertThat(policy.decide(statistics(0, 1, 21, 100), previous(100, DAY), 2 * DAY)).isEqualTo(GitMaintenanceAction.PACK_REFS);
+  }
+
+  @Test
+  void shouldDoNothingForSmallChanges() {
+    assertThat(policy.decide(statistics(5, 2, 1, 300), previous(100, DAY), 2 * DAY)).isEqualTo(GitMaintenanceAction.NONE);
+  }
+
+  @Test
+  void shouldCalculateBytesSinceLastRun() {
+    assertThat(GitMaintenancePolicy.bytesSinceLastRun(statistics(0, 1, 0, 300), previous(100, DAY))).isEqualTo(200);
+    assertThat(GitMaintenancePolicy.bytesSinceLastRun(statistics(0, 1, 0, 50), previous(100, DAY))).isZero();
+    assertThat(GitMaintenancePolicy.bytesSinceLastRun(statistics(0, 1, 0, 50), null)).isEqualTo(50);
+  }
+
+  private GC.RepoStatistics statistics(long looseObjects, long packFiles, long looseRefs, long size) {
+    GC.RepoStatistics statistics = new GC.RepoStatistics();
+    statistics.numberOfLooseObjects = looseObjects;
+    statistics.numberOfPackFiles = packFiles;
+    statistics.numberOfLooseRefs = looseRefs;
+    statistics.sizeOfPackedObjects = size;
+    return statistics;
+  }
+
+  private GitMaintenanceStatistics previous(long sizeAfter, long lastGc) {
+    GitMaintenanceStatistics previous = new GitMaintenanceStatistics();
+    previous.setSizeAfter(sizeAfter);
+    previous.setLastGc(lastGc);
+    return previous;
+  }
+}
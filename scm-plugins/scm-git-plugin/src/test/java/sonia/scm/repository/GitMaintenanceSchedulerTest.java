@@ -0,0 +1,190 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sonia.scm.HandlerEventType;
+import sonia.scm.repository.work.WorkingCopyPool;
+import sonia.scm.store.InMemoryDataStore;
+import sonia.scm.store.InMemoryDataStoreFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class GitMaintenanceSchedulerTest {
+
+  private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+  private final Repository repository = RepositoryTestData.create42Puzzle("git");
+  private final WorkingCopyPool workingCopyPool = mock(WorkingCopyPool.class);
+
+  private long now;
+  private Git git;
+  private File directory;
+
+  @BeforeEach
+  void createRepository(@TempDir Path temp) throws GitAPIException, IOException {
+    git = Git.init().setDirectory(temp.toFile()).call();
+    directory = git.getRepository().getDirectory();
+    commit(temp, "a.txt");
+    commit(temp, "b.txt");
+    now = System.currentTimeMillis() + DAY;
+  }
+
+  @AfterEach
+  void closeRepository() {
+    git.close();
+  }
+
+  @Test
+  void shouldRunGcOnFirstRun() {
+    GitMaintenanceScheduler scheduler = scheduler(new GitMaintenancePolicy(), 0);
+
+    scheduler.maintain(ImmutableMap.of(repository, directory));
+
+    GitMaintenanceStatistics statistics = scheduler.getStatistics(repository.getId()).get();
+    assertThat(statistics.getLastAction()).isEqualTo(GitMaintenanceAction.GC);
+    assertThat(statistics.getLastGc()).isEqualTo(now);
+    assertThat(statistics.getRuns()).isEqualTo(1);
+    assertThat(statistics.getLooseObjectsBefore()).isPositive();
+    assertThat(statistics.getLooseObjectsAfter()).isZero();
+    assertThat(statistics.getPackFilesAfter()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldSkipUnchangedRepository() {
+    GitMaintenanceScheduler scheduler = scheduler(new GitMaintenancePolicy(), 0);
+
+    scheduler.maintain(ImmutableMap.of(repository, directory));
+    now += DAY;
+    scheduler.maintain(ImmutableMap.of(repository, directory));
+
+    GitMaintenanceStatistics statistics = scheduler.getStatistics(repository.getId()).get();
+    assertThat(statistics.getRuns()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldRepackChangedRepository() throws GitAPIException, IOException {
+    GitMaintenanceScheduler scheduler = scheduler(new GitMaintenancePolicy(50, 7 * DAY, 0, Long.MAX_VALUE, 100), 0);
+
+    scheduler.maintain(ImmutableMap.of(repository, directory));
+    commit(git.getRepository().getWorkTree().toPath(), "c.txt");
+    now += DAY;
+    scheduler.maintain(ImmutableMap.of(repository, directory));
+
+    GitMaintenanceStatistics statistics = scheduler.getStatistics(repository.getId()).get();
+    assertThat(statistics.getLastAction()).isEqualTo(GitMaintenanceAction.REPACK);
+    assertThat(statistics.getRuns()).isEqualTo(2);
+    assertThat(statistics.getLastGc()).isEqualTo(now - DAY);
+    assertThat(statistics.getLooseObjectsBefore()).isPositive();
+    assertThat(statistics.getLooseObjectsAfter()).isZero();
+  }
+
+  @Test
+  void shouldEvictPooledWorkingCopiesBeforeGcIfObjectsAreShared() {
+    GitMaintenanceScheduler scheduler = scheduler(true, new GitMaintenancePolicy(), 0);
+
+    scheduler.maintain(ImmutableMap.of(repository, directory));
+
+    verify(workingCopyPool).evict(repository.getId());
+  }
+
+  @Test
+  void shouldNotEvictPooledWorkingCopiesIfObjectsAreNotShared() {
+    GitMaintenanceScheduler scheduler = scheduler(new GitMaintenancePolicy(), 0);
+
+    scheduler.maintain(ImmutableMap.of(repository, directory));
+
+    verify(workingCopyPool, never()).evict(anyString());
+  }
+
+  @Test
+  void shouldNotEvictPooledWorkingCopiesWithoutMaintenance() {
+    GitMaintenanceScheduler scheduler = scheduler(true, new GitMaintenancePolicy(), 2 * DAY);
+
+    scheduler.maintain(ImmutableMap.of(repository, directory));
+
+    verify(workingCopyPool, never()).evict(anyString());
+  }
+
+  @Test
+  void shouldSkipRecentlyModifiedRepository() {
+    GitMaintenanceScheduler scheduler = scheduler(new GitMaintenancePolicy(), 2 * DAY);
+
+    scheduler.maintain(ImmutableMap.of(repository, directory));
+
+    assertThat(scheduler.getStatistics(repository.getId())).isEmpty();
+  }
+
+  @Test
+  void shouldRemoveStatisticsOfDeletedRepository() {
+    GitMaintenanceScheduler scheduler = scheduler(new GitMaintenancePolicy(), 0);
+    scheduler.maintain(ImmutableMap.of(repository, directory));
+
+    scheduler.onEvent(new RepositoryEvent(HandlerEventType.DELETE, repository));
+
+    assertThat(scheduler.getStatistics()).isEmpty();
+  }
+
+  private GitMaintenanceScheduler scheduler(GitMaintenancePolicy policy, long quietPeriod) {
+    return scheduler(false, policy, quietPeriod);
+  }
+
+  private GitMaintenanceScheduler scheduler(boolean shareObjects, GitMaintenancePolicy policy, long quietPeriod) {
+    return new GitMaintenanceScheduler(
+      new InMemoryDataStoreFactory(new InMemoryDataStore<GitMaintenanceStatistics>()),
+      workingCopyPool,
+      shareObjects,
+      policy,
+      MoreExecutors.newDirectExecutorService(),
+      0,
+      quietPeriod,
+      () -> now
+    );
+  }
+
+  private void commit(Path workTree, String name) throws IOException, GitAPIException {
+    Files.write(workTree.resolve(name), name.getBytes(StandardCharsets.UTF_8));
+    git.add().addFilepattern(name).call();
+    git.commit().setMessage("added " + name).setAuthor("Trillian", "trillian@hitchhiker.com").call();
+  }
+}
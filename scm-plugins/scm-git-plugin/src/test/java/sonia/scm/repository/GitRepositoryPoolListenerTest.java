@@ -0,0 +1,97 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sonia.scm.HandlerEventType;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class GitRepositoryPoolListenerTest {
+
+  @Mock
+  private GitRepositoryHandler handler;
+
+  private File directory;
+  private sonia.scm.repository.Repository repository;
+
+  private GitRepositoryPoolListener listener;
+
+  @BeforeEach
+  void setUpListener(@TempDir Path tempDir) throws GitAPIException {
+    directory = tempDir.toFile();
+    Git.init().setBare(true).setDirectory(directory).call().close();
+    repository = RepositoryTestData.createHeartOfGold("git");
+    listener = new GitRepositoryPoolListener(handler);
+  }
+
+  @Test
+  void shouldEvictDeletedRepository() throws IOException {
+    when(handler.getDirectory(repository.getId())).thenReturn(directory);
+    open();
+
+    listener.onEvent(new RepositoryEvent(HandlerEventType.BEFORE_DELETE, repository));
+    assertThat(GitRepositoryPool.isPooled(directory)).isFalse();
+
+    open();
+    listener.onEvent(new RepositoryEvent(HandlerEventType.DELETE, repository));
+    assertThat(GitRepositoryPool.isPooled(directory)).isFalse();
+  }
+
+  @Test
+  void shouldEvictModifiedRepository() throws IOException {
+    when(handler.getDirectory(repository.getId())).thenReturn(directory);
+    open();
+
+    listener.onEvent(new RepositoryEvent(HandlerEventType.MODIFY, repository, repository));
+
+    assertThat(GitRepositoryPool.isPooled(directory)).isFalse();
+  }
+
+  @Test
+  void shouldIgnoreOtherRepositoryTypes() {
+    listener.onEvent(new RepositoryEvent(HandlerEventType.DELETE, RepositoryTestData.createHeartOfGold("hg")));
+  }
+
+  private void open() throws IOException {
+    Repository gitRepository = GitRepositoryPool.open(directory);
+    gitRepository.close();
+    assertThat(GitRepositoryPool.isPooled(directory)).isTrue();
+  }
+}
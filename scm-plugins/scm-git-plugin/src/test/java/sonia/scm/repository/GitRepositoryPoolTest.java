@@ -0,0 +1,90 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GitRepositoryPoolTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void shouldReturnSameRepositoryForSameDirectory() throws IOException, GitAPIException {
+    File directory = createRepository();
+
+    try (Repository first = GitRepositoryPool.open(directory); Repository second = GitRepositoryPool.open(directory)) {
+      assertSame(first, second);
+      assertTrue(GitRepositoryPool.isPooled(directory));
+    }
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedRepository() throws IOException, GitAPIException {
+    File directory = createRepository();
+
+    Repository repository = GitRepositoryPool.open(directory);
+    repository.close();
+    GitRepositoryPool.evictLeastRecentlyUsed(0);
+
+    assertFalse(GitRepositoryPool.isPooled(directory));
+    try (Repository reopened = GitRepositoryPool.open(directory)) {
+      assertNotSame(repository, reopened);
+    }
+  }
+
+  @Test
+  public void shouldKeepEvictedRepositoryUsableUntilClosed() throws IOException, GitAPIException {
+    File directory = createRepository();
+
+    try (Repository repository = GitRepositoryPool.open(directory)) {
+      GitRepositoryPool.evict(directory);
+
+      assertFalse(GitRepositoryPool.isPooled(directory));
+      assertNotNull(repository.getConfig());
+      assertNotNull(repository.getRefDatabase().getRefs());
+    }
+  }
+
+  private File createRepository() throws IOException, GitAPIException {
+    File directory = temporaryFolder.newFolder();
+    Git.init().setBare(true).setDirectory(directory).call().close();
+    return directory;
+  }
+}
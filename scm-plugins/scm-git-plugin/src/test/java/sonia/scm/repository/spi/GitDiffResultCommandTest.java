@@ -119,10 +119,39 @@ public class GitDiffResultCommandTest extends AbstractGitCommandTestBase {
     assertThat(renameB.iterator().hasNext()).isFalse();
   }
 
+  @Test
+  public void shouldLimitFiles() throws IOException {
+    DiffResult diffResult = createDiffResult("3f76a12f08a6ba0dc988c68b7f0b2cd190efc3c4", null, 1);
+
+    Iterator<DiffFile> iterator = diffResult.iterator();
+    assertThat(iterator.next().getOldPath()).isEqualTo("a.txt");
+    assertThat(iterator.hasNext()).isFalse();
+    assertThat(diffResult.isPartial()).isTrue();
+    assertThat(diffResult.getOffset()).isZero();
+    assertThat(diffResult.getLimit()).contains(1);
+  }
+
+  @Test
+  public void shouldSkipFilesBeforeOffset() throws IOException {
+    DiffResult diffResult = createDiffResult("3f76a12f08a6ba0dc988c68b7f0b2cd190efc3c4", 1, 1);
+
+    Iterator<DiffFile> iterator = diffResult.iterator();
+    assertThat(iterator.next().getOldPath()).isEqualTo("b.txt");
+    assertThat(iterator.hasNext()).isFalse();
+    assertThat(diffResult.isPartial()).isFalse();
+    assertThat(diffResult.getOffset()).isEqualTo(1);
+  }
+
   private DiffResult createDiffResult(String s) throws IOException {
+    return createDiffResult(s, null, null);
+  }
+
+  private DiffResult createDiffResult(String s, Integer offset, Integer limit) throws IOException {
     GitDiffResultCommand gitDiffResultCommand = new GitDiffResultCommand(createContext());
     DiffCommandRequest diffCommandRequest = new DiffCommandRequest();
     diffCommandRequest.setRevision(s);
+    diffCommandRequest.setOffset(offset);
+    diffCommandRequest.setLimit(limit);
 
     return gitDiffResultCommand.getDiffResult(diffCommandRequest);
   }
@@ -0,0 +1,126 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository.spi;
+
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.junit.jupiter.api.Test;
+import sonia.scm.repository.api.DiffLine;
+import sonia.scm.repository.api.Hunk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GitHunkBuilderTest {
+
+  @Test
+  void shouldBuildSingleHunk() throws IOException {
+    assertSameAsParsed("a\n", "a\nadded line\n");
+  }
+
+  @Test
+  void shouldBuildHunkForAddedFile() throws IOException {
+    assertSameAsParsed("", "1\n2\n3\n");
+  }
+
+  @Test
+  void shouldBuildHunkForDeletedFile() throws IOException {
+    assertSameAsParsed("1\n2\n3\n", "");
+  }
+
+  @Test
+  void shouldBuildNoHunksForEqualContent() throws IOException {
+    assertSameAsParsed("1\n2\n3\n", "1\n2\n3\n");
+  }
+
+  @Test
+  void shouldHandleMissingNewlineAtEndOfFile() throws IOException {
+    assertSameAsParsed("1\n2\n3", "1\n2\n3\n4");
+  }
+
+  @Test
+  void shouldCombineCloseEditsAndSplitDistantEdits() throws IOException {
+    StringBuilder oldContent = new StringBuilder();
+    StringBuilder newContent = new StringBuilder();
+    for (int i = 1; i <= 100; i++) {
+      oldContent.append(i).append('\n');
+      if (i == 2 || i == 8 || i == 50 || i == 99) {
+        newContent.append("changed ").append(i).append('\n');
+      } else if (i == 30) {
+        newContent.append(i).append('\n').append("inserted\n");
+      } else if (i != 70) {
+        newContent.append(i).append('\n');
+      }
+    }
+    assertSameAsParsed(oldContent.toString(), newContent.toString());
+  }
+
+  @Test
+  void shouldKeepCarriageReturns() throws IOException {
+    assertSameAsParsed("a\r\nb\r\n", "a\r\nc\r\n");
+  }
+
+  private void assertSameAsParsed(String oldContent, String newContent) throws IOException {
+    RawText oldText = new RawText(oldContent.getBytes(StandardCharsets.UTF_8));
+    RawText newText = new RawText(newContent.getBytes(StandardCharsets.UTF_8));
+    EditList edits = DiffAlgorithm.getAlgorithm(DiffAlgorithm.SupportedAlgorithm.HISTOGRAM)
+      .diff(RawTextComparator.DEFAULT, oldText, newText);
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (DiffFormatter formatter = new DiffFormatter(baos)) {
+      formatter.format(edits, oldText, newText);
+    }
+    List<Hunk> expected = new GitHunkParser().parse(baos.toString());
+
+    List<Hunk> hunks = GitHunkBuilder.build(edits, oldText, newText);
+
+    assertThat(hunks).hasSameSizeAs(expected);
+    for (int i = 0; i < hunks.size(); i++) {
+      Hunk hunk = hunks.get(i);
+      Hunk expectedHunk = expected.get(i);
+      assertThat(hunk.getOldStart()).isEqualTo(expectedHunk.getOldStart());
+      assertThat(hunk.getOldLineCount()).isEqualTo(expectedHunk.getOldLineCount());
+      assertThat(hunk.getNewStart()).isEqualTo(expectedHunk.getNewStart());
+      assertThat(hunk.getNewLineCount()).isEqualTo(expectedHunk.getNewLineCount());
+      assertThat(lines(hunk)).containsExactlyElementsOf(lines(expectedHunk));
+    }
+  }
+
+  private List<String> lines(Hunk hunk) {
+    List<String> lines = new ArrayList<>();
+    for (DiffLine line : hunk) {
+      lines.add(line.getOldLineNumber() + " " + line.getNewLineNumber() + " " + line.getContent());
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository.spi;
+
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.junit.Before;
+import org.junit.Test;
+import sonia.scm.repository.FileObject;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static sonia.scm.repository.spi.SyncAsyncExecutors.stepperAsynchronousExecutor;
+
+public class GitLastCommitIndexTest extends AbstractGitCommandTestBase {
+
+  private static final String MASTER = "refs/heads/master";
+
+  private static final ObjectId HEAD = ObjectId.fromString("fcd0ef1831e4002ac43ea539f4094334c79ea9ec");
+  private static final ObjectId PREVIOUS = ObjectId.fromString("592d797cd36432e591416e8b2b98154f4f163411");
+
+  private Repository repository;
+  private GitLastCommitIndex index;
+
+  @Before
+  public void createIndex() throws IOException {
+    repository = createContext().open();
+    index = new GitLastCommitIndex(repository);
+  }
+
+  @Test
+  public void shouldFindSameCommitsAsPathFilteredWalk() throws IOException {
+    index.build(MASTER, HEAD);
+
+    Optional<Map<String, ObjectId>> commits = index.lookup(MASTER, HEAD);
+
+    assertThat(commits).isPresent();
+    assertThat(commits.get()).containsKeys("a.txt", "c/d.txt", "c/e.txt");
+    for (Map.Entry<String, ObjectId> entry : commits.get().entrySet()) {
+      if (exists(entry.getKey())) {
+        assertThat(entry.getValue()).as(entry.getKey()).isEqualTo(walk(entry.getKey()));
+      }
+    }
+  }
+
+  @Test
+  public void shouldUpdateIncrementally() throws IOException {
+    index.build(MASTER, PREVIOUS);
+
+    Optional<Map<String, ObjectId>> commits = index.lookup(MASTER, HEAD);
+
+    assertThat(commits).isPresent();
+    assertThat(commits.get()).containsEntry("a.txt", walk("a.txt"));
+  }
+
+  @Test
+  public void shouldIndexDirectories() throws IOException {
+    index.build(MASTER, HEAD);
+
+    Optional<Map<String, ObjectId>> commits = index.lookup(MASTER, HEAD);
+
+    assertThat(commits).isPresent();
+    assertThat(commits.get()).containsEntry("c", walk("c"));
+  }
+
+  @Test
+  public void shouldNotFindChangesOfSideBranchDiscardedByMerge() throws IOException {
+    ObjectId side = commit(tree(HEAD, "a.txt", "changed on side branch"), HEAD);
+    ObjectId mainline = commit(tree(HEAD, "b.txt", "changed on mainline"), HEAD);
+    ObjectId merge = commit(tree(mainline, "b.txt", "changed on mainline"), mainline, side);
+
+    index.build(MASTER, merge);
+
+    Optional<Map<String, ObjectId>> commits = index.lookup(MASTER, merge);
+
+    assertThat(commits).isPresent();
+    assertThat(commits.get())
+      .containsEntry("a.txt", walk("a.txt", merge))
+      .containsEntry("a.txt", walk("a.txt"))
+      .containsEntry("b.txt", mainline)
+      .containsEntry("c", walk("c", merge));
+  }
+
+  @Test
+  public void shouldUpdateIncrementallyOverMerge() throws IOException {
+    ObjectId side = commit(tree(HEAD, "a.txt", "changed on side branch"), HEAD);
+    ObjectId mainline = commit(tree(HEAD, "b.txt", "changed on mainline"), HEAD);
+    ObjectId merge = commit(tree(side, "b.txt", "changed on mainline"), mainline, side);
+    index.build(MASTER, HEAD);
+
+    Optional<Map<String, ObjectId>> commits = index.lookup(MASTER, merge);
+
+    assertThat(commits).isPresent();
+    assertThat(commits.get())
+      .containsEntry("a.txt", side)
+      .containsEntry("b.txt", mainline)
+      .containsEntry("c/d.txt", walk("c/d.txt"));
+  }
+
+  @Test
+  public void shouldNotReturnCommitsWithoutIndex() throws IOException {
+    index.remove(MASTER);
+
+    assertThat(index.lookup("refs/heads/unknown", HEAD)).isEmpty();
+  }
+
+  @Test
+  public void shouldCompleteBrowseResultFromIndex() throws IOException {
+    index.build(MASTER, HEAD);
+
+    try (SyncAsyncExecutors.AsyncExecutorStepper executor = stepperAsynchronousExecutor()) {
+      GitBrowseCommand command = new GitBrowseCommand(createContext(), null, executor);
+      FileObject root = command.getBrowserResult(new BrowseCommandRequest()).getFile();
+
+      FileObject a = root.getChildren().stream().filter(f -> f.getName().equals("a.txt")).findFirst().get();
+      assertThat(a.isPartialResult()).isFalse();
+      assertThat(a.getDescription()).contains("added new line for blame");
+      assertThat(a.getCommitDate()).isPresent();
+
+      FileObject c = root.getChildren().stream().filter(f -> f.getName().equals("c")).findFirst().get();
+      assertThat(c.getDescription()).contains("added file d and e in folder c");
+    }
+  }
+
+  private boolean exists(String path) throws IOException {
+    try (RevWalk walk = new RevWalk(repository)) {
+      return TreeWalk.forPath(repository, path, walk.parseTree(HEAD)) != null;
+    }
+  }
+
+  private ObjectId walk(String path) throws IOException {
+    return walk(path, HEAD);
+  }
+
+  private ObjectId walk(String path, ObjectId head) throws IOException {
+    try (RevWalk walk = new RevWalk(repository)) {
+      walk.setTreeFilter(AndTreeFilter.create(TreeFilter.ANY_DIFF, PathFilter.create(path)));
+      walk.markStart(walk.parseCommit(head));
+      return walk.next().copy();
+    }
+  }
+
+  private ObjectId tree(ObjectId commit, String name, String content) throws IOException {
+    try (RevWalk walk = new RevWalk(repository); TreeWalk treeWalk = new TreeWalk(repository);
+         ObjectInserter inserter = repository.newObjectInserter()) {
+      treeWalk.addTree(walk.parseTree(commit));
+      TreeFormatter formatter = new TreeFormatter();
+      while (treeWalk.next()) {
+        if (treeWalk.getNameString().equals(name)) {
+          ObjectId blob = inserter.insert(Constants.OBJ_BLOB, content.getBytes(UTF_8));
+          formatter.append(name, FileMode.REGULAR_FILE, blob);
+        } else {
+          formatter.append(treeWalk.getNameString(), treeWalk.getFileMode(0), treeWalk.getObjectId(0));
+        }
+      }
+      ObjectId tree = inserter.insert(formatter);
+      inserter.flush();
+      return tree;
+    }
+  }
+
+  private ObjectId commit(ObjectId tree, ObjectId... parents) throws IOException {
+    try (ObjectInserter inserter = repository.newObjectInserter()) {
+      PersonIdent trillian = new PersonIdent("Trillian Astra", "trillian@hitchhiker.com");
+      CommitBuilder commit = new CommitBuilder();
+      commit.setTreeId(tree);
+      commit.setParentIds(parents);
+      commit.setAuthor(trillian);
+      commit.setCommitter(trillian);
+      commit.setMessage("commit with " + parents.length + " parents");
+      ObjectId id = inserter.insert(commit);
+      inserter.flush();
+      return id;
+    }
+  }
+}
@@ -39,6 +39,8 @@ import sonia.scm.repository.Person;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.nio.charset.Charset.defaultCharset;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -295,6 +297,28 @@ public class GitLogCommandTest extends AbstractGitCommandTestBase
     return new File(repositoryDirectory, "HEAD");
   }
 
+  @Test
+  public void shouldNotCloseRepositoryOfContext() throws IOException, ReflectiveOperationException {
+    GitContext context = createContext();
+    org.eclipse.jgit.lib.Repository repository = context.open();
+    int openCount = openCount(repository);
+
+    createCommand().getChangesets(new LogCommandRequest());
+    createCommand().getChangeset("435df2f061add3589cb3", null);
+    new GitModificationsCommand(context).getModifications("435df2f061add3589cb326cc64be9b9c3897ceca");
+
+    assertEquals(openCount, openCount(repository));
+    context.close();
+    assertEquals(openCount - 1, openCount(repository));
+  }
+
+  private int openCount(org.eclipse.jgit.lib.Repository repository) throws ReflectiveOperationException {
+    // jgit does not expose the use count of a repository
+    Field useCount = org.eclipse.jgit.lib.Repository.class.getDeclaredField("useCnt");
+    useCount.setAccessible(true);
+    return ((AtomicInteger) useCount.get(repository)).get();
+  }
+
   private GitLogCommand createCommand() {
     return new GitLogCommand(createContext(), GitTestHelper.createConverterFactory());
   }
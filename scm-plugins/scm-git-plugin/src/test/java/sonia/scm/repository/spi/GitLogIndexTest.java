@@ -0,0 +1,143 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository.spi;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GitLogIndexTest extends AbstractGitCommandTestBase {
+
+  private static final String MASTER = "refs/heads/master";
+
+  private Repository repository;
+  private GitLogIndex index;
+
+  @Before
+  public void createIndex() throws IOException {
+    repository = createContext().open();
+    index = new GitLogIndex(repository);
+  }
+
+  @Test
+  public void shouldReadAllCommits() throws IOException {
+    GitLogIndex.Page page = index.read(MASTER, id("fcd0ef1831e4002ac43ea539f4094334c79ea9ec"), 0, -1);
+
+    assertThat(page.getTotal()).isEqualTo(4);
+    assertThat(names(page)).containsExactly(
+      "fcd0ef1831e4002ac43ea539f4094334c79ea9ec",
+      "86a6645eceefe8b9a247db5eb16e3d89a7e6e6d1",
+      "592d797cd36432e591416e8b2b98154f4f163411",
+      "435df2f061add3589cb326cc64be9b9c3897ceca"
+    );
+  }
+
+  @Test
+  public void shouldReadPage() throws IOException {
+    GitLogIndex.Page page = index.read(MASTER, id("fcd0ef1831e4002ac43ea539f4094334c79ea9ec"), 1, 2);
+
+    assertThat(page.getTotal()).isEqualTo(4);
+    assertThat(names(page)).containsExactly(
+      "86a6645eceefe8b9a247db5eb16e3d89a7e6e6d1",
+      "592d797cd36432e591416e8b2b98154f4f163411"
+    );
+  }
+
+  @Test
+  public void shouldReturnEmptyPageBehindLastCommit() throws IOException {
+    GitLogIndex.Page page = index.read(MASTER, id("fcd0ef1831e4002ac43ea539f4094334c79ea9ec"), 4, 10);
+
+    assertThat(page.getTotal()).isEqualTo(4);
+    assertThat(page.getCommitIds()).isEmpty();
+  }
+
+  @Test
+  public void shouldAppendNewCommits() throws IOException {
+    index.read(MASTER, id("592d797cd36432e591416e8b2b98154f4f163411"), 0, -1);
+
+    GitLogIndex.Page page = index.read(MASTER, id("fcd0ef1831e4002ac43ea539f4094334c79ea9ec"), 0, 3);
+
+    assertThat(page.getTotal()).isEqualTo(4);
+    assertThat(names(page)).containsExactly(
+      "fcd0ef1831e4002ac43ea539f4094334c79ea9ec",
+      "86a6645eceefe8b9a247db5eb16e3d89a7e6e6d1",
+      "592d797cd36432e591416e8b2b98154f4f163411"
+    );
+  }
+
+  @Test
+  public void shouldRebuildIfBranchWasNotFastForwarded() throws IOException {
+    index.read(MASTER, id("fcd0ef1831e4002ac43ea539f4094334c79ea9ec"), 0, -1);
+
+    GitLogIndex.Page page = index.read(MASTER, id("3f76a12f08a6ba0dc988c68b7f0b2cd190efc3c4"), 0, -1);
+
+    assertThat(page.getTotal()).isEqualTo(3);
+    assertThat(names(page)).containsExactly(
+      "3f76a12f08a6ba0dc988c68b7f0b2cd190efc3c4",
+      "592d797cd36432e591416e8b2b98154f4f163411",
+      "435df2f061add3589cb326cc64be9b9c3897ceca"
+    );
+  }
+
+  @Test
+  public void shouldNotCreateIndexOnUpdate() throws IOException {
+    index.updateIfPresent(MASTER, id("fcd0ef1831e4002ac43ea539f4094334c79ea9ec"));
+
+    assertThat(new File(repository.getDirectory(), GitLogIndex.DIRECTORY)).doesNotExist();
+  }
+
+  @Test
+  public void shouldUpdateExistingIndex() throws IOException {
+    index.read(MASTER, id("592d797cd36432e591416e8b2b98154f4f163411"), 0, -1);
+    index.updateIfPresent(MASTER, id("fcd0ef1831e4002ac43ea539f4094334c79ea9ec"));
+
+    assertThat(index.read(MASTER, id("fcd0ef1831e4002ac43ea539f4094334c79ea9ec"), 0, -1).getTotal()).isEqualTo(4);
+  }
+
+  @Test
+  public void shouldRemoveIndex() throws IOException {
+    index.read(MASTER, id("fcd0ef1831e4002ac43ea539f4094334c79ea9ec"), 0, -1);
+    index.remove(MASTER);
+    index.updateIfPresent(MASTER, id("592d797cd36432e591416e8b2b98154f4f163411"));
+
+    assertThat(new File(repository.getDirectory(), GitLogIndex.DIRECTORY).list()).isEmpty();
+  }
+
+  private ObjectId id(String name) {
+    return ObjectId.fromString(name);
+  }
+
+  private List<String> names(GitLogIndex.Page page) {
+    return page.getCommitIds().stream().map(ObjectId::name).collect(Collectors.toList());
+  }
+}
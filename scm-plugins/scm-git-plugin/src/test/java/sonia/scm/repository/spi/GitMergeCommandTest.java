@@ -510,13 +510,72 @@ public class GitMergeCommandTest extends AbstractGitCommandTestBase {
 
   }
 
+  @Test
+  public void shouldMergeWithoutWorkingCopy() throws IOException, GitAPIException {
+    GitMergeCommand command = createCommand(git -> {
+      throw new AssertionError("merge should not use a working copy");
+    }, true);
+    MergeCommandRequest request = new MergeCommandRequest();
+    request.setTargetBranch("master");
+    request.setBranchToMerge("mergeable");
+    request.setMergeStrategy(MergeStrategy.MERGE_COMMIT);
+    request.setAuthor(new Person("Dirk Gently", "dirk@holistic.det"));
+
+    MergeCommandResult mergeCommandResult = command.merge(request);
+
+    assertThat(mergeCommandResult.isSuccess()).isTrue();
+    Repository repository = createContext().open();
+    RevCommit mergeCommit = new Git(repository).log().add(repository.resolve("master")).setMaxCount(1).call().iterator().next();
+    assertThat(mergeCommit.getName()).isEqualTo(mergeCommandResult.getNewHeadRevision());
+    assertThat(mergeCommit.getParentCount()).isEqualTo(2);
+    assertThat(mergeCommit.getParent(0).name()).isEqualTo("fcd0ef1831e4002ac43ea539f4094334c79ea9ec");
+    assertThat(mergeCommit.getParent(1).name()).isEqualTo("91b99de908fcd04772798a31c308a64aea1a5523");
+  }
+
+  @Test
+  public void shouldMergeInWorkingCopyIfInCoreMergeIsDisabled() throws IOException, GitAPIException {
+    GitMergeCommand command = createCommand(git -> {
+    }, false);
+    MergeCommandRequest request = new MergeCommandRequest();
+    request.setTargetBranch("master");
+    request.setBranchToMerge("mergeable");
+    request.setMergeStrategy(MergeStrategy.MERGE_COMMIT);
+    request.setAuthor(new Person("Dirk Gently", "dirk@holistic.det"));
+
+    MergeCommandResult mergeCommandResult = command.merge(request);
+
+    assertThat(mergeCommandResult.isSuccess()).isTrue();
+    Repository repository = createContext().open();
+    RevCommit mergeCommit = new Git(repository).log().add(repository.resolve("master")).setMaxCount(1).call().iterator().next();
+    assertThat(mergeCommit.getParentCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldReportConflictsWithoutWorkingCopy() {
+    GitMergeCommand command = createCommand(git -> {
+      throw new AssertionError("merge should not use a working copy");
+    }, true);
+    MergeCommandRequest request = new MergeCommandRequest();
+    request.setBranchToMerge("test-branch");
+    request.setTargetBranch("master");
+    request.setMergeStrategy(MergeStrategy.SQUASH);
+
+    MergeCommandResult mergeCommandResult = command.merge(request);
+
+    assertThat(mergeCommandResult.isSuccess()).isFalse();
+    assertThat(mergeCommandResult.getFilesWithConflict()).containsExactly("a.txt");
+  }
+
   private GitMergeCommand createCommand() {
-    return createCommand(git -> {
-    });
+    return new GitMergeCommand(createContext(), new SimpleGitWorkingCopyFactory(new NoneCachingWorkingCopyPool(new WorkdirProvider(repositoryLocationResolver))));
   }
 
   private GitMergeCommand createCommand(Consumer<Git> interceptor) {
-    return new GitMergeCommand(createContext(), new SimpleGitWorkingCopyFactory(new NoneCachingWorkingCopyPool(new WorkdirProvider(repositoryLocationResolver)))) {
+    return createCommand(interceptor, false);
+  }
+
+  private GitMergeCommand createCommand(Consumer<Git> interceptor, boolean inCore) {
+    return new GitMergeCommand(createContext(), new SimpleGitWorkingCopyFactory(new NoneCachingWorkingCopyPool(new WorkdirProvider(repositoryLocationResolver))), inCore) {
       @Override
       <R, W extends GitCloneWorker<R>> R inClone(Function<Git, W> workerSupplier, GitWorkingCopyFactory workingCopyFactory, String initialBranch) {
         Function<Git, W> interceptedWorkerSupplier = git -> {
@@ -29,14 +29,18 @@ import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.junit.Test;
 import sonia.scm.AlreadyExistsException;
 import sonia.scm.BadRequestException;
 import sonia.scm.ConcurrentModificationException;
 import sonia.scm.NotFoundException;
 import sonia.scm.repository.GitTestHelper;
+import sonia.scm.repository.GitWorkingCopyFactory;
 import sonia.scm.repository.Person;
 import sonia.scm.repository.RepositoryHookType;
+import sonia.scm.repository.work.NoneCachingWorkingCopyPool;
+import sonia.scm.repository.work.WorkdirProvider;
 
 import java.io.File;
 import java.io.IOException;
@@ -46,8 +50,11 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.description;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 public class GitModifyCommandTest extends GitModifyCommandTestBase {
@@ -355,4 +362,55 @@ public class GitModifyCommandTest extends GitModifyCommandTestBase {
         .fireHookEvent(argThat(argument -> argument.getType() == RepositoryHookType.POST_RECEIVE))
     );
   }
+
+  @Test
+  public void shouldModifyWithoutWorkingCopy() throws IOException, GitAPIException {
+    File newFile = Files.write(temporaryFolder.newFile().toPath(), "new content".getBytes()).toFile();
+    File modifiedFile = Files.write(temporaryFolder.newFile().toPath(), "modified content".getBytes()).toFile();
+    GitWorkingCopyFactory workingCopyFactory = mock(GitWorkingCopyFactory.class);
+
+    GitModifyCommand command = createCommand(workingCopyFactory, true);
+
+    ModifyCommandRequest request = new ModifyCommandRequest();
+    request.setCommitMessage("test commit");
+    request.addRequest(new ModifyCommandRequest.CreateFileRequest("/some/new_file", newFile, false));
+    request.addRequest(new ModifyCommandRequest.ModifyFileRequest("some/new_file", modifiedFile));
+    request.addRequest(new ModifyCommandRequest.DeleteFileRequest("a.txt"));
+    request.setAuthor(new Person("Dirk Gently", "dirk@holistic.det"));
+
+    String newRef = command.execute(request);
+
+    verify(workingCopyFactory, never()).createWorkingCopy(any(), any());
+    try (Git git = new Git(createContext().open())) {
+      RevCommit lastCommit = getLastCommit(git);
+      assertThat(newRef).isEqualTo(lastCommit.name());
+      assertThat(lastCommit.getParent(0).name()).isEqualTo("fcd0ef1831e4002ac43ea539f4094334c79ea9ec");
+      try (TreeWalk treeWalk = TreeWalk.forPath(git.getRepository(), "some/new_file", lastCommit.getTree())) {
+        assertThat(new String(git.getRepository().open(treeWalk.getObjectId(0)).getBytes())).isEqualTo("modified content");
+      }
+      assertThat(TreeWalk.forPath(git.getRepository(), "a.txt", lastCommit.getTree())).isNull();
+    }
+  }
+
+  @Test
+  public void shouldModifyInWorkingCopyIfInCoreIsDisabled() throws IOException, GitAPIException {
+    File newFile = Files.write(temporaryFolder.newFile().toPath(), "new content".getBytes()).toFile();
+
+    GitModifyCommand command = createCommand(
+      new SimpleGitWorkingCopyFactory(new NoneCachingWorkingCopyPool(new WorkdirProvider(repositoryLocationResolver))),
+      false
+    );
+
+    ModifyCommandRequest request = new ModifyCommandRequest();
+    request.setCommitMessage("test commit");
+    request.addRequest(new ModifyCommandRequest.CreateFileRequest("new_file", newFile, false));
+    request.setAuthor(new Person("Dirk Gently", "dirk@holistic.det"));
+
+    String newRef = command.execute(request);
+
+    try (Git git = new Git(createContext().open())) {
+      assertThat(newRef).isEqualTo(getLastCommit(git).name());
+    }
+    assertInTree(canonicalTreeParser -> assertThat(canonicalTreeParser.findFile("new_file")).isTrue());
+  }
 }
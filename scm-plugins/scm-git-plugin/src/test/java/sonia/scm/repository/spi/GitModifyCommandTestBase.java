@@ -39,6 +39,7 @@ import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.rules.TemporaryFolder;
 import sonia.scm.repository.GitTestHelper;
+import sonia.scm.repository.GitWorkingCopyFactory;
 import sonia.scm.repository.work.NoneCachingWorkingCopyPool;
 import sonia.scm.repository.work.WorkdirProvider;
 import sonia.scm.web.lfs.LfsBlobStoreFactory;
@@ -77,6 +78,15 @@ class GitModifyCommandTestBase extends AbstractGitCommandTestBase {
       createGitRepositoryConfigStoreProvider());
   }
 
+  GitModifyCommand createCommand(GitWorkingCopyFactory workingCopyFactory, boolean inCore) {
+    return new GitModifyCommand(
+      createContext(),
+      workingCopyFactory,
+      lfsBlobStoreFactory,
+      createGitRepositoryConfigStoreProvider(),
+      inCore);
+  }
+
   void assertInTree(TreeAssertions assertions) throws IOException, GitAPIException {
     try (Git git = new Git(createContext().open())) {
       RevCommit lastCommit = getLastCommit(git);
@@ -35,6 +35,7 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import sonia.scm.NotFoundException;
 import sonia.scm.repository.GitRepositoryHandler;
 import sonia.scm.repository.GitTestHelper;
 import sonia.scm.repository.PreProcessorUtil;
@@ -121,6 +122,44 @@ public class SimpleGitWorkingCopyFactoryTest extends AbstractGitCommandTestBase
     }
   }
 
+  @Test
+  public void shouldShareObjectsOfCentralRepository() throws IOException {
+    SimpleGitWorkingCopyFactory factory = new SimpleGitWorkingCopyFactory(new NoneCachingWorkingCopyPool(workdirProvider), true);
+
+    try (WorkingCopy<Repository, Repository> workingCopy = factory.createWorkingCopy(createContext(), "test-branch")) {
+      File alternates = new File(workingCopy.getWorkingRepository().getDirectory(), "objects/info/alternates");
+      assertThat(alternates).exists();
+      assertThat(Files.readAllLines(alternates.toPath()))
+        .containsExactly(new File(repositoryDirectory, "objects").getAbsolutePath());
+      assertThat(workingCopy.getWorkingRepository().getBranch()).isEqualTo("test-branch");
+      assertThat(new File(workingCopy.getWorkingRepository().getWorkTree(), "a.txt"))
+        .exists()
+        .isFile()
+        .hasContent("a and b");
+    }
+  }
+
+  @Test
+  public void shouldCheckoutDefaultBranchWithSharedObjects() throws Exception {
+    SimpleGitWorkingCopyFactory factory = new SimpleGitWorkingCopyFactory(new NoneCachingWorkingCopyPool(workdirProvider), true);
+
+    try (WorkingCopy<Repository, Repository> workingCopy = factory.createWorkingCopy(createContext(), null)) {
+      assertThat(new File(workingCopy.getWorkingRepository().getWorkTree(), "a.txt"))
+        .exists()
+        .isFile()
+        .hasContent("a\nline for blame");
+      assertThat(workingCopy.getWorkingRepository().exactRef("refs/remotes/origin/test-branch")).isNotNull();
+      assertStatusClean(Git.wrap(workingCopy.getWorkingRepository()).status().call());
+    }
+  }
+
+  @Test(expected = NotFoundException.class)
+  public void shouldFailForUnknownBranchWithSharedObjects() {
+    SimpleGitWorkingCopyFactory factory = new SimpleGitWorkingCopyFactory(new NoneCachingWorkingCopyPool(workdirProvider), true);
+
+    factory.createWorkingCopy(createContext(), "no-such-branch");
+  }
+
   @Test
   public void cloneFromPoolShouldNotBeReused() {
     SimpleGitWorkingCopyFactory factory = new SimpleGitWorkingCopyFactory(new NoneCachingWorkingCopyPool(workdirProvider));
@@ -0,0 +1,424 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository;
+
+import com.aragost.javahg.internals.AbstractCommand;
+import com.github.legman.Subscribe;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.EagerSingleton;
+import sonia.scm.HandlerEventType;
+import sonia.scm.plugin.Extension;
+
+import javax.inject.Inject;
+import java.io.Closeable;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Pool of warm mercurial command servers. Opening a javahg repository starts a new {@code hg serve --cmdserver}
+ * process, which takes at least a few hundred milliseconds for the startup of the python interpreter. The pool keeps
+ * the command servers of released repositories alive, so that the next request for the same repository can reuse them.
+ * <p>
+ * Command servers are only shared between users with the same environment and configuration. Idle servers are stopped
+ * after {@code scm.hg.commandServerPool.expireAfter} seconds (default 300). At most
+ * {@code scm.hg.commandServerPool.maxIdlePerRepository} (default 2) idle servers are kept per repository and
+ * {@code scm.hg.commandServerPool.maxIdle} (default 16) in total. Every server is checked before it is reused. All
+ * servers of a repository are discarded after a push and if the repository is deleted. The pool can be disabled with
+ * the system property {@code scm.hg.commandServerPool.disabled}. On {@link #close()} all idle servers are stopped and
+ * servers, which are in use, are stopped on release.
+ *
+ * @since 2.15.0
+ */
+@Extension
+@EagerSingleton
+public class HgCommandServerPool implements Closeable {
+
+  static final String PROPERTY_DISABLED = "scm.hg.commandServerPool.disabled";
+  static final String PROPERTY_MAX_IDLE_PER_REPOSITORY = "scm.hg.commandServerPool.maxIdlePerRepository";
+  static final String PROPERTY_MAX_IDLE = "scm.hg.commandServerPool.maxIdle";
+  static final String PROPERTY_EXPIRE_AFTER = "scm.hg.commandServerPool.expireAfter";
+
+  private static final Logger LOG = LoggerFactory.getLogger(HgCommandServerPool.class);
+
+  private final int maxIdlePerRepository;
+  private final int maxIdle;
+  private final long expireAfter;
+  private final LongSupplier clock;
+  private final Predicate<com.aragost.javahg.Repository> healthCheck;
+
+  private final Map<Key, Deque<IdleServer>> idleServers = new HashMap<>();
+  private final Map<com.aragost.javahg.Repository, Lease> leases = new IdentityHashMap<>();
+  private final Map<String, Integer> generations = new HashMap<>();
+  private int idleCount = 0;
+  private boolean closed = false;
+
+  private ScheduledExecutorService executor;
+
+  @Inject
+  public HgCommandServerPool() {
+    this(
+      Boolean.getBoolean(PROPERTY_DISABLED) ? 0 : Integer.getInteger(PROPERTY_MAX_IDLE_PER_REPOSITORY, 2),
+      Integer.getInteger(PROPERTY_MAX_IDLE, 16),
+      TimeUnit.SECONDS.toMillis(Long.getLong(PROPERTY_EXPIRE_AFTER, 300L)),
+      System::currentTimeMillis,
+      HgCommandServerPool::isHealthy
+    );
+    if (isEnabled()) {
+      scheduleExpiration();
+    }
+  }
+
+  @VisibleForTesting
+  HgCommandServerPool(int maxIdlePerRepository, int maxIdle, long expireAfter, LongSupplier clock, Predicate<com.aragost.javahg.Repository> healthCheck) {
+    this.maxIdlePerRepository = maxIdlePerRepository;
+    this.maxIdle = maxIdle;
+    this.expireAfter = expireAfter;
+    this.clock = clock;
+    this.healthCheck = healthCheck;
+  }
+
+  /**
+   * Returns a pool, which does not keep any command server. Every borrowed repository is closed on release.
+   */
+  static HgCommandServerPool disabled() {
+    return new HgCommandServerPool(0, 0, 0, System::currentTimeMillis, repository -> false);
+  }
+
+  private boolean isEnabled() {
+    return maxIdlePerRepository > 0 && maxIdle > 0;
+  }
+
+  private void scheduleExpiration() {
+    executor = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder()
+        .setNameFormat("HgCommandServerPoolExpiration-%d")
+        .setDaemon(true)
+        .build()
+    );
+    long period = Math.max(1000L, Math.min(expireAfter, TimeUnit.MINUTES.toMillis(1)));
+    executor.scheduleWithFixedDelay(this::evictExpired, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns an idle command server for the given key or opens a new one with the given opener. The returned repository
+   * must be passed to {@link #release(com.aragost.javahg.Repository)} after usage.
+   */
+  com.aragost.javahg.Repository borrow(Key key, Supplier<com.aragost.javahg.Repository> opener) {
+    if (!isEnabled()) {
+      return opener.get();
+    }
+    com.aragost.javahg.Repository repository = pollHealthy(key);
+    if (repository == null) {
+      LOG.trace("no idle command server for {}, start a new one", key.repositoryId);
+      repository = opener.get();
+    }
+    synchronized (this) {
+      leases.put(repository, new Lease(key, generation(key.repositoryId)));
+    }
+    return repository;
+  }
+
+  /**
+   * Returns the command server of the repository to the pool or stops it, if it can not be reused.
+   */
+  void release(com.aragost.javahg.Repository repository) {
+    List<com.aragost.javahg.Repository> stale = new ArrayList<>();
+    synchronized (this) {
+      Lease lease = leases.remove(repository);
+      if (!closed && lease != null && lease.generation == generation(lease.key.repositoryId)) {
+        Deque<IdleServer> servers = idleServers.computeIfAbsent(lease.key, k -> new ArrayDeque<>());
+        if (servers.size() < maxIdlePerRepository) {
+          servers.push(new IdleServer(repository, clock.getAsLong()));
+          idleCount++;
+          evictOverflow(stale);
+        } else {
+          stale.add(repository);
+        }
+      } else {
+        stale.add(repository);
+      }
+    }
+    closeAll(stale);
+  }
+
+  /**
+   * Stops all idle command servers of the repository. Servers, which are currently in use, are stopped on release.
+   */
+  void invalidate(String repositoryId) {
+    List<com.aragost.javahg.Repository> stale = new ArrayList<>();
+    synchronized (this) {
+      generations.put(repositoryId, generation(repositoryId) + 1);
+      Iterator<Map.Entry<Key, Deque<IdleServer>>> iterator = idleServers.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<Key, Deque<IdleServer>> entry = iterator.next();
+        if (entry.getKey().repositoryId.equals(repositoryId)) {
+          removeAll(entry.getValue(), stale);
+          iterator.remove();
+        }
+      }
+    }
+    if (!stale.isEmpty()) {
+      LOG.debug("stop {} idle command servers of repository {}", stale.size(), repositoryId);
+    }
+    closeAll(stale);
+  }
+
+  @Subscribe(async = false)
+  public void onPostReceive(PostReceiveRepositoryHookEvent event) {
+    invalidate(event.getRepository().getId());
+  }
+
+  @Subscribe(async = false)
+  public void onDelete(RepositoryEvent event) {
+    if (event.getEventType() == HandlerEventType.DELETE) {
+      invalidate(event.getItem().getId());
+    }
+  }
+
+  /**
+   * Stops all idle command servers and the expiration of idle servers. Servers, which are currently in use, are stopped
+   * on release.
+   */
+  @Override
+  public void close() {
+    List<com.aragost.javahg.Repository> stale = new ArrayList<>();
+    synchronized (this) {
+      closed = true;
+      for (Deque<IdleServer> servers : idleServers.values()) {
+        removeAll(servers, stale);
+      }
+      idleServers.clear();
+    }
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    if (!stale.isEmpty()) {
+      LOG.debug("stop {} idle command servers", stale.size());
+    }
+    closeAll(stale);
+  }
+
+  @VisibleForTesting
+  void evictExpired() {
+    List<com.aragost.javahg.Repository> stale = new ArrayList<>();
+    long expired = clock.getAsLong() - expireAfter;
+    synchronized (this) {
+      Iterator<Deque<IdleServer>> iterator = idleServers.values().iterator();
+      while (iterator.hasNext()) {
+        Deque<IdleServer> servers = iterator.next();
+        // the deque is ordered from the most to the least recently used server
+        while (!servers.isEmpty() && servers.peekLast().releasedAt <= expired) {
+          stale.add(servers.removeLast().repository);
+          idleCount--;
+        }
+        if (servers.isEmpty()) {
+          iterator.remove();
+        }
+      }
+    }
+    closeAll(stale);
+  }
+
+  @VisibleForTesting
+  synchronized int getIdleCount() {
+    return idleCount;
+  }
+
+  private com.aragost.javahg.Repository pollHealthy(Key key) {
+    while (true) {
+      IdleServer server;
+      synchronized (this) {
+        Deque<IdleServer> servers = idleServers.get(key);
+        if (servers == null || servers.isEmpty()) {
+          return null;
+        }
+        server = servers.pop();
+        idleCount--;
+      }
+      if (healthCheck.test(server.repository)) {
+        return server.repository;
+      }
+      LOG.debug("discard unhealthy command server of repository {}", key.repositoryId);
+      close(server.repository);
+    }
+  }
+
+  private void evictOverflow(Collection<com.aragost.javahg.Repository> stale) {
+    while (idleCount > maxIdle) {
+      Deque<IdleServer> oldest = null;
+      for (Deque<IdleServer> servers : idleServers.values()) {
+        if (!servers.isEmpty() && (oldest == null || servers.peekLast().releasedAt < oldest.peekLast().releasedAt)) {
+          oldest = servers;
+        }
+      }
+      if (oldest == null) {
+        return;
+      }
+      stale.add(oldest.removeLast().repository);
+      idleCount--;
+    }
+  }
+
+  private void removeAll(Deque<IdleServer> servers, Collection<com.aragost.javahg.Repository> stale) {
+    for (IdleServer server : servers) {
+      stale.add(server.repository);
+      idleCount--;
+    }
+    servers.clear();
+  }
+
+  private int generation(String repositoryId) {
+    return generations.getOrDefault(repositoryId, 0);
+  }
+
+  private static boolean isHealthy(com.aragost.javahg.Repository repository) {
+    try {
+      RootCommand.on(repository).execute();
+      return true;
+    } catch (RuntimeException ex) {
+      LOG.trace("health check of command server failed", ex);
+      return false;
+    }
+  }
+
+  private static void closeAll(Collection<com.aragost.javahg.Repository> repositories) {
+    for (com.aragost.javahg.Repository repository : repositories) {
+      close(repository);
+    }
+  }
+
+  private static void close(com.aragost.javahg.Repository repository) {
+    try {
+      repository.close();
+    } catch (RuntimeException ex) {
+      LOG.warn("failed to stop command server", ex);
+    }
+  }
+
+  /**
+   * Identifies command servers, which can be shared. Servers are only shared, if they are started with the same
+   * environment and configuration.
+   */
+  static final class Key {
+
+    private final String repositoryId;
+    private final Map<String, String> environment;
+    private final String hgBinary;
+    private final Charset encoding;
+
+    Key(String repositoryId, Map<String, String> environment, String hgBinary, Charset encoding) {
+      this.repositoryId = repositoryId;
+      this.environment = ImmutableMap.copyOf(environment);
+      this.hgBinary = hgBinary;
+      this.encoding = encoding;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key key = (Key) o;
+      return repositoryId.equals(key.repositoryId)
+        && environment.equals(key.environment)
+        && Objects.equals(hgBinary, key.hgBinary)
+        && Objects.equals(encoding, key.encoding);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(repositoryId, environment, hgBinary, encoding);
+    }
+  }
+
+  private static final class Lease {
+
+    private final Key key;
+    private final int generation;
+
+    private Lease(Key key, int generation) {
+      this.key = key;
+      this.generation = generation;
+    }
+  }
+
+  private static final class IdleServer {
+
+    private final com.aragost.javahg.Repository repository;
+    private final long releasedAt;
+
+    private IdleServer(com.aragost.javahg.Repository repository, long releasedAt) {
+      this.repository = repository;
+      this.releasedAt = releasedAt;
+    }
+  }
+
+  /**
+   * Cheap command, which is used to check if a command server is still responsive.
+   */
+  private static final class RootCommand extends AbstractCommand {
+
+    private static final String NAME = "root";
+
+    private RootCommand(com.aragost.javahg.Repository repository) {
+      super(repository, NAME);
+    }
+
+    static RootCommand on(com.aragost.javahg.Repository repository) {
+      return new RootCommand(repository);
+    }
+
+    String execute() {
+      return launchString();
+    }
+
+    @Override
+    public String getCommandName() {
+      return NAME;
+    }
+  }
+}
@@ -49,27 +49,70 @@ public class HgRepositoryFactory {
   private final HookEnvironment hookEnvironment;
   private final HgEnvironmentBuilder environmentBuilder;
   private final Function<Repository, File> directoryResolver;
+  private final HgCommandServerPool pool;
 
   @Inject
-  public HgRepositoryFactory(HgRepositoryHandler handler, HookEnvironment hookEnvironment, HgEnvironmentBuilder environmentBuilder) {
+  public HgRepositoryFactory(HgRepositoryHandler handler, HookEnvironment hookEnvironment, HgEnvironmentBuilder environmentBuilder, HgCommandServerPool pool) {
     this(
       handler, hookEnvironment, environmentBuilder,
-      repository -> handler.getDirectory(repository.getId())
+      repository -> handler.getDirectory(repository.getId()),
+      pool
     );
   }
 
+  public HgRepositoryFactory(HgRepositoryHandler handler, HookEnvironment hookEnvironment, HgEnvironmentBuilder environmentBuilder) {
+    this(handler, hookEnvironment, environmentBuilder, HgCommandServerPool.disabled());
+  }
+
   @VisibleForTesting
   public HgRepositoryFactory(HgRepositoryHandler handler, HookEnvironment hookEnvironment, HgEnvironmentBuilder environmentBuilder, Function<Repository, File> directoryResolver) {
+    this(handler, hookEnvironment, environmentBuilder, directoryResolver, HgCommandServerPool.disabled());
+  }
+
+  @VisibleForTesting
+  HgRepositoryFactory(HgRepositoryHandler handler, HookEnvironment hookEnvironment, HgEnvironmentBuilder environmentBuilder, Function<Repository, File> directoryResolver, HgCommandServerPool pool) {
     this.handler = handler;
     this.hookEnvironment = hookEnvironment;
     this.environmentBuilder = environmentBuilder;
     this.directoryResolver = directoryResolver;
+    this.pool = pool;
   }
 
   public com.aragost.javahg.Repository openForRead(Repository repository) {
     return open(repository, environmentBuilder.read(repository));
   }
 
+  /**
+   * Opens the repository for read with a command server from the {@link HgCommandServerPool}. The returned repository
+   * must be passed to {@link #release(com.aragost.javahg.Repository)} instead of being closed. Repositories with
+   * pending changesets are never pooled.
+   *
+   * @since 2.15.0
+   */
+  public com.aragost.javahg.Repository openPooledForRead(Repository repository) {
+    if (hookEnvironment.isPending()) {
+      return openForRead(repository);
+    }
+    Map<String, String> environment = environmentBuilder.read(repository);
+    HgCommandServerPool.Key key = new HgCommandServerPool.Key(
+      repository.getId(), environment, handler.getConfig().getHgBinary(), encoding()
+    );
+    return pool.borrow(key, () -> open(repository, environment));
+  }
+
+  /**
+   * Releases a repository, which was opened with {@link #openPooledForRead(Repository)}.
+   *
+   * @since 2.15.0
+   */
+  public void release(com.aragost.javahg.Repository repository) {
+    pool.release(repository);
+  }
+
+  /**
+   * Opens the repository for write. The write environment contains the credentials of the current user for the hooks,
+   * so the command server of the returned repository is never shared and must be closed after usage.
+   */
   public com.aragost.javahg.Repository openForWrite(Repository repository) {
     return open(repository, environmentBuilder.write(repository));
   }
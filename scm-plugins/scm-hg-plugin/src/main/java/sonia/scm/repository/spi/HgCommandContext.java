@@ -57,7 +57,7 @@ public class HgCommandContext implements Closeable, RepositoryProvider {
 
   public Repository open() {
     if (repository == null) {
-      repository = factory.openForRead(scmRepository);
+      repository = factory.openPooledForRead(scmRepository);
     }
     return repository;
   }
@@ -89,7 +89,8 @@ public class HgCommandContext implements Closeable, RepositoryProvider {
   @Override
   public void close() {
     if (repository != null) {
-      repository.close();
+      factory.release(repository);
+      repository = null;
     }
   }
 
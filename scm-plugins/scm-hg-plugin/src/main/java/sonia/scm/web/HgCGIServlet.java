@@ -25,6 +25,7 @@
 package sonia.scm.web;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Strings;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.slf4j.Logger;
@@ -38,6 +39,7 @@ import sonia.scm.repository.HgRepositoryHandler;
 import sonia.scm.repository.Repository;
 import sonia.scm.repository.RepositoryRequestListenerUtil;
 import sonia.scm.repository.spi.ScmProviderHttpServlet;
+import sonia.scm.util.HttpUtil;
 import sonia.scm.web.cgi.CGIExecutor;
 import sonia.scm.web.cgi.CGIExecutorFactory;
 
@@ -51,7 +53,30 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import static sonia.scm.web.cgi.CGIExecutor.ENV_AUTH_TYPE;
+import static sonia.scm.web.cgi.CGIExecutor.ENV_CONTENT_LENGTH;
+import static sonia.scm.web.cgi.CGIExecutor.ENV_CONTENT_TYPE;
+import static sonia.scm.web.cgi.CGIExecutor.ENV_GATEWAY_INTERFACE;
+import static sonia.scm.web.cgi.CGIExecutor.ENV_HTTPS;
+import static sonia.scm.web.cgi.CGIExecutor.ENV_HTTPS_VALUE_OFF;
+import static sonia.scm.web.cgi.CGIExecutor.ENV_HTTPS_VALUE_ON;
+import static sonia.scm.web.cgi.CGIExecutor.ENV_HTTP_HEADER_PREFIX;
+import static sonia.scm.web.cgi.CGIExecutor.ENV_PATH_INFO;
+import static sonia.scm.web.cgi.CGIExecutor.ENV_QUERY_STRING;
+import static sonia.scm.web.cgi.CGIExecutor.ENV_REMOTE_ADDR;
+import static sonia.scm.web.cgi.CGIExecutor.ENV_REMOTE_HOST;
+import static sonia.scm.web.cgi.CGIExecutor.ENV_REMOTE_USER;
+import static sonia.scm.web.cgi.CGIExecutor.ENV_REQUEST_METHOD;
+import static sonia.scm.web.cgi.CGIExecutor.ENV_SCRIPT_NAME;
+import static sonia.scm.web.cgi.CGIExecutor.ENV_SERVER_NAME;
+import static sonia.scm.web.cgi.CGIExecutor.ENV_SERVER_PORT;
+import static sonia.scm.web.cgi.CGIExecutor.ENV_SERVER_PROTOCOL;
+import static sonia.scm.web.cgi.CGIExecutor.ENV_SERVER_SOFTWARE;
 
 /**
  *
@@ -74,15 +99,18 @@ public class HgCGIServlet extends HttpServlet implements ScmProviderHttpServlet
                       ScmConfiguration configuration,
                       HgRepositoryHandler handler,
                       RepositoryRequestListenerUtil requestListenerUtil,
-                      HgEnvironmentBuilder environmentBuilder)
+                      HgEnvironmentBuilder environmentBuilder,
+                      HgWorkerPool workerPool)
   {
     this.cgiExecutorFactory = cgiExecutorFactory;
     this.configuration = configuration;
     this.handler = handler;
     this.requestListenerUtil = requestListenerUtil;
     this.environmentBuilder = environmentBuilder;
+    this.workerPool = workerPool;
     this.exceptionHandler = new HgCGIExceptionHandler();
     this.extension = HgExtensions.CGISERVE.getFile(SCMContext.getContext());
+    this.workerExtension = HgExtensions.WSGIWORKER.getFile(SCMContext.getContext());
   }
 
   //~--- methods --------------------------------------------------------------
@@ -129,6 +157,12 @@ public class HgCGIServlet extends HttpServlet implements ScmProviderHttpServlet
     HttpServletResponse response, Repository repository)
     throws IOException, ServletException
   {
+    if (workerPool.isEnabled())
+    {
+      processWithWorker(request, response, repository);
+      return;
+    }
+
     CGIExecutor executor = cgiExecutorFactory.createExecutor(configuration,
                              getServletContext(), request, response);
 
@@ -145,14 +179,108 @@ public class HgCGIServlet extends HttpServlet implements ScmProviderHttpServlet
     executor.setWorkDirectory(directory);
 
     HgConfig config = handler.getConfig();
-    executor.setArgs(createArgs(config));
+    executor.setArgs(createArgs(config, extension, "cgiserve"));
     executor.execute(config.getHgBinary());
   }
 
+  private void processWithWorker(HttpServletRequest request,
+    HttpServletResponse response, Repository repository)
+  {
+    File directory = handler.getDirectory(repository.getId());
+    HgConfig config = handler.getConfig();
+
+    List<String> command = new ArrayList<>();
+    command.add(config.getHgBinary());
+    command.addAll(createArgs(config, workerExtension, "wsgiworker"));
+
+    HgWorkerPool.Key key = new HgWorkerPool.Key(repository.getId(), command);
+    try
+    {
+      HgWorker worker = workerPool.borrow(
+        key, () -> HgWorker.start(command, directory, environmentBuilder.read(repository))
+      );
+      try
+      {
+        worker.handle(response, createEnviron(request), environmentBuilder.write(repository), request.getInputStream());
+      }
+      finally
+      {
+        workerPool.release(key, worker);
+      }
+    }
+    catch (IOException | RuntimeException ex)
+    {
+      // send the same error to the client as the cgi executor does
+      exceptionHandler.handleException(request, response, ex);
+    }
+  }
+
+  /**
+   * Creates the wsgi environ of the request in the same way as the cgi executor creates the environment of the cgi
+   * process.
+   */
+  private Map<String, String> createEnviron(HttpServletRequest request) {
+    // remove ;jsessionid
+    String pathInfo = HttpUtil.removeMatrixParameter(Strings.nullToEmpty(request.getPathInfo()));
+    String uri = HttpUtil.removeMatrixParameter(request.getRequestURI());
+    String scriptName = uri.substring(0, uri.length() - pathInfo.length());
+
+    Map<String, String> environ = new HashMap<>();
+    put(environ, ENV_AUTH_TYPE, request.getAuthType());
+    put(environ, ENV_CONTENT_LENGTH, createContentLength(request));
+    put(environ, ENV_CONTENT_TYPE, Strings.nullToEmpty(request.getContentType()));
+    put(environ, ENV_GATEWAY_INTERFACE, "CGI/1.1");
+    put(environ, ENV_PATH_INFO, pathInfo.isEmpty() ? pathInfo : HttpUtil.decode(pathInfo));
+    put(environ, ENV_QUERY_STRING, request.getQueryString());
+    put(environ, ENV_REMOTE_ADDR, request.getRemoteAddr());
+    put(environ, ENV_REMOTE_HOST, request.getRemoteHost());
+    put(environ, ENV_REMOTE_USER, request.getRemoteUser());
+    put(environ, ENV_REQUEST_METHOD, request.getMethod());
+    put(environ, ENV_SCRIPT_NAME, scriptName);
+    put(environ, ENV_SERVER_NAME, Strings.nullToEmpty(request.getServerName()));
+    put(environ, ENV_SERVER_PORT, Integer.toString(HttpUtil.getServerPort(configuration, request)));
+    put(environ, ENV_SERVER_PROTOCOL, Strings.nullToEmpty(request.getProtocol()));
+    put(environ, ENV_SERVER_SOFTWARE, "scm-manager/".concat(SCMContext.getContext().getVersion()));
+
+    Enumeration<String> names = request.getHeaderNames();
+    while (names.hasMoreElements()) {
+      String name = names.nextElement();
+      put(environ, ENV_HTTP_HEADER_PREFIX + name.toUpperCase().replace('-', '_'), request.getHeader(name));
+    }
+
+    put(environ, ENV_HTTPS, request.isSecure() ? ENV_HTTPS_VALUE_ON : ENV_HTTPS_VALUE_OFF);
+    return environ;
+  }
+
+  private void put(Map<String, String> environ, String key, String value) {
+    if (value != null) {
+      environ.put(key, value);
+    }
+  }
+
+  /**
+   * Mercurial requires a content length, so we use -1 instead of an empty value like the content length workaround of
+   * the cgi executor.
+   */
+  private String createContentLength(HttpServletRequest request) {
+    String contentLength = request.getHeader("Content-Length");
+    if (!Strings.isNullOrEmpty(contentLength)) {
+      try {
+        long length = Long.parseLong(contentLength);
+        if (length > 0) {
+          return String.valueOf(length);
+        }
+      } catch (NumberFormatException ex) {
+        logger.warn("received request with invalid content-length header value: {}", contentLength);
+      }
+    }
+    return "-1";
+  }
+
   @Nonnull
-  private List<String> createArgs(HgConfig config) {
+  private List<String> createArgs(HgConfig config, File extensionFile, String commandName) {
     List<String> args = new ArrayList<>();
-    config(args, "extensions.cgiserve", extension.getAbsolutePath());
+    config(args, "extensions." + commandName, extensionFile.getAbsolutePath());
 
     String hooks = HgExtensions.HOOK.getFile().getAbsolutePath();
     config(args, "hooks.pretxnchangegroup.scm", String.format("python:%s:pre_hook", hooks));
@@ -166,7 +294,7 @@ public class HgCGIServlet extends HttpServlet implements ScmProviderHttpServlet
     // Issue 970: https://goo.gl/poascp
     config(args, "experimental.httppostargs", String.valueOf(config.isEnableHttpPostArgs()));
 
-    args.add("cgiserve");
+    args.add(commandName);
     return args;
   }
 
@@ -196,4 +324,8 @@ public class HgCGIServlet extends HttpServlet implements ScmProviderHttpServlet
   private final RepositoryRequestListenerUtil requestListenerUtil;
 
   private final HgEnvironmentBuilder environmentBuilder;
+
+  private final HgWorkerPool workerPool;
+
+  private final File workerExtension;
 }
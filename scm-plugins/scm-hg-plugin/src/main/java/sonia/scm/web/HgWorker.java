@@ -0,0 +1,262 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.web;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static sonia.scm.web.cgi.CGIExecutor.RESPONSE_HEADER_LOCATION;
+
+/**
+ * Long living mercurial process, which serves the wire protocol for one request after another. The requests and the
+ * responses are streamed through stdin and stdout of the process as length prefixed frames, see {@code wsgiworker.py}
+ * for the protocol.
+ * <p>
+ * The request is written by a separate thread while the response is read, because the worker may start to respond
+ * before it has consumed the whole request. Writing the whole request first could block both processes, as soon as
+ * the pipes are full.
+ * <p>
+ * A worker, which failed during a request, is marked as broken and must not be used again, because the frames of the
+ * next request would not be in sync.
+ *
+ * @since 2.15.0
+ */
+class HgWorker {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HgWorker.class);
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+  private static final int BUFFER_SIZE = 8192;
+
+  private static final ExecutorService requestWriter = Executors.newCachedThreadPool(
+    new ThreadFactoryBuilder()
+      .setNameFormat("HgWorkerRequestWriter-%d")
+      .setDaemon(true)
+      .build()
+  );
+
+  private final DataOutputStream toWorker;
+  private final DataInputStream fromWorker;
+  private final Process process;
+
+  private volatile boolean broken = false;
+
+  @VisibleForTesting
+  HgWorker(OutputStream toWorker, InputStream fromWorker, Process process) {
+    this.toWorker = new DataOutputStream(toWorker);
+    this.fromWorker = new DataInputStream(fromWorker);
+    this.process = process;
+  }
+
+  static HgWorker start(List<String> command, File directory, Map<String, String> environment) throws IOException {
+    LOG.debug("start mercurial worker in {}", directory);
+    ProcessBuilder builder = new ProcessBuilder(command);
+    builder.directory(directory);
+    builder.environment().putAll(environment);
+    Process process = builder.start();
+    logErrorStream(process, Charset.defaultCharset());
+    return new HgWorker(process.getOutputStream(), process.getInputStream(), process);
+  }
+
+  private static void logErrorStream(Process process, Charset charset) {
+    Thread thread = new Thread(() -> {
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream(), charset))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          LOG.warn(line);
+        }
+      } catch (IOException ex) {
+        LOG.debug("could not read error stream of mercurial worker", ex);
+      }
+    }, "HgWorkerErrorStream");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Sends the request to the worker and streams the response of the worker to the servlet response.
+   *
+   * @param response servlet response
+   * @param environ wsgi environ of the request
+   * @param environment process environment, which is set during the request (e.g. for the hooks)
+   * @param body body of the request
+   */
+  void handle(HttpServletResponse response, Map<String, String> environ, Map<String, String> environment, InputStream body) throws IOException {
+    Future<?> request = requestWriter.submit(() -> {
+      writeRequest(environ, environment, body);
+      return null;
+    });
+    try {
+      OutputStream output = readHeader(response) ? response.getOutputStream() : ByteStreams.nullOutputStream();
+      readBody(output);
+      awaitRequest(request);
+    } catch (IOException | RuntimeException ex) {
+      // the worker could still wait for the request or we could still wait for the worker,
+      // so we have to stop it to release the writing thread
+      request.cancel(true);
+      destroy();
+      throw ex;
+    }
+  }
+
+  private void awaitRequest(Future<?> request) throws IOException {
+    try {
+      request.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while writing request to mercurial worker");
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException("failed to write request to mercurial worker", cause);
+    }
+  }
+
+  boolean isUsable() {
+    return !broken && (process == null || process.isAlive());
+  }
+
+  void destroy() {
+    broken = true;
+    try {
+      toWorker.close();
+    } catch (IOException ex) {
+      LOG.debug("failed to close input of mercurial worker", ex);
+    }
+    if (process != null) {
+      process.destroy();
+    }
+  }
+
+  private void writeRequest(Map<String, String> environ, Map<String, String> environment, InputStream body) throws IOException {
+    try {
+      writeFrames(environ, environment, body);
+    } catch (IOException | RuntimeException ex) {
+      // the worker waits for the rest of the request and would never respond,
+      // so we have to stop it to release the reading thread
+      destroy();
+      throw ex;
+    }
+  }
+
+  private void writeFrames(Map<String, String> environ, Map<String, String> environment, InputStream body) throws IOException {
+    byte[] header = mapper.writeValueAsBytes(ImmutableMap.of("environ", environ, "environment", environment));
+    writeFrame(header, header.length);
+
+    byte[] buffer = new byte[BUFFER_SIZE];
+    int read;
+    while ((read = body.read(buffer)) > 0) {
+      writeFrame(buffer, read);
+    }
+    writeFrame(buffer, 0);
+    toWorker.flush();
+  }
+
+  private void writeFrame(byte[] data, int length) throws IOException {
+    toWorker.writeInt(length);
+    toWorker.write(data, 0, length);
+  }
+
+  /**
+   * Reads the status and the headers of the response and applies them to the servlet response in the same way as the
+   * cgi executor does.
+   *
+   * @return {@code true} if the body should be written to the servlet response
+   */
+  private boolean readHeader(HttpServletResponse response) throws IOException {
+    JsonNode header = mapper.readTree(readFrame());
+    boolean writeBody = true;
+    for (JsonNode entry : header.get("headers")) {
+      String name = entry.get(0).asText();
+      String value = entry.get(1).asText();
+      if (RESPONSE_HEADER_LOCATION.equalsIgnoreCase(name)) {
+        response.sendRedirect(response.encodeRedirectURL(value));
+      } else {
+        response.addHeader(name, value);
+      }
+    }
+
+    String status = header.get("status").asText();
+    int statusCode = Integer.parseInt(status.split(" ")[0]);
+    LOG.debug("mercurial worker returned with status {}", statusCode);
+    if (statusCode < 304) {
+      response.setStatus(statusCode);
+    } else {
+      response.sendError(statusCode);
+      writeBody = false;
+    }
+    return writeBody;
+  }
+
+  private void readBody(OutputStream output) throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    int length;
+    while ((length = fromWorker.readInt()) > 0) {
+      while (length > 0) {
+        int read = fromWorker.read(buffer, 0, Math.min(buffer.length, length));
+        if (read < 0) {
+          throw new IOException("unexpected end of mercurial worker response");
+        }
+        output.write(buffer, 0, read);
+        length -= read;
+      }
+      output.flush();
+    }
+  }
+
+  private byte[] readFrame() throws IOException {
+    byte[] frame = new byte[fromWorker.readInt()];
+    fromWorker.readFully(frame);
+    return frame;
+  }
+}
@@ -0,0 +1,365 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.web;
+
+import com.github.legman.Subscribe;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.EagerSingleton;
+import sonia.scm.HandlerEventType;
+import sonia.scm.plugin.Extension;
+import sonia.scm.repository.RepositoryEvent;
+
+import javax.inject.Inject;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Pool of long living mercurial workers, which serve the wire protocol without starting a new python interpreter for
+ * every request. The pool is disabled by default and can be enabled with the system property
+ * {@code scm.hg.workers.enabled}. Without the pool every request is served by a new cgi process.
+ * <p>
+ * A worker serves only one repository and only one request at a time. At most
+ * {@code scm.hg.workers.maxIdlePerRepository} (default 4) idle workers are kept per repository, idle workers are
+ * stopped after {@code scm.hg.workers.expireAfter} seconds (default 300) and if the repository is deleted.
+ * <p>
+ * The number of all running workers, idle and busy, is limited by {@code scm.hg.workers.maxTotal} (default 32). If the
+ * limit is reached, the least recently used idle worker of any repository is stopped to start a new one. If all
+ * workers are busy, the request waits until one of them is released. On {@link #close()} all idle workers are stopped
+ * and busy workers are stopped on release.
+ *
+ * @since 2.15.0
+ */
+@Extension
+@EagerSingleton
+public class HgWorkerPool implements Closeable {
+
+  static final String PROPERTY_ENABLED = "scm.hg.workers.enabled";
+  static final String PROPERTY_MAX_IDLE_PER_REPOSITORY = "scm.hg.workers.maxIdlePerRepository";
+  static final String PROPERTY_EXPIRE_AFTER = "scm.hg.workers.expireAfter";
+  static final String PROPERTY_MAX_TOTAL = "scm.hg.workers.maxTotal";
+
+  private static final Logger LOG = LoggerFactory.getLogger(HgWorkerPool.class);
+
+  private final int maxIdlePerRepository;
+  private final int maxTotal;
+  private final long expireAfter;
+  private final LongSupplier clock;
+
+  private final Map<Key, Deque<IdleWorker>> idleWorkers = new HashMap<>();
+  private int running = 0;
+  private boolean closed = false;
+
+  private ScheduledExecutorService executor;
+
+  @Inject
+  public HgWorkerPool() {
+    this(
+      Boolean.getBoolean(PROPERTY_ENABLED) ? Integer.getInteger(PROPERTY_MAX_IDLE_PER_REPOSITORY, 4) : 0,
+      Integer.getInteger(PROPERTY_MAX_TOTAL, 32),
+      TimeUnit.SECONDS.toMillis(Long.getLong(PROPERTY_EXPIRE_AFTER, 300L)),
+      System::currentTimeMillis
+    );
+    if (isEnabled()) {
+      scheduleExpiration();
+    }
+  }
+
+  @VisibleForTesting
+  HgWorkerPool(int maxIdlePerRepository, int maxTotal, long expireAfter, LongSupplier clock) {
+    this.maxIdlePerRepository = maxIdlePerRepository;
+    this.maxTotal = Math.max(1, maxTotal);
+    this.expireAfter = expireAfter;
+    this.clock = clock;
+  }
+
+  boolean isEnabled() {
+    return maxIdlePerRepository > 0;
+  }
+
+  private void scheduleExpiration() {
+    executor = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder()
+        .setNameFormat("HgWorkerPoolExpiration-%d")
+        .setDaemon(true)
+        .build()
+    );
+    long period = Math.max(1000L, Math.min(expireAfter, TimeUnit.MINUTES.toMillis(1)));
+    executor.scheduleWithFixedDelay(this::evictExpired, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns an idle worker for the given key or starts a new one. The returned worker must be passed to
+   * {@link #release(Key, HgWorker)} after the request.
+   */
+  HgWorker borrow(Key key, Starter starter) throws IOException {
+    while (true) {
+      IdleWorker idle;
+      synchronized (this) {
+        Deque<IdleWorker> workers = idleWorkers.get(key);
+        if (workers == null || workers.isEmpty()) {
+          break;
+        }
+        idle = workers.pop();
+      }
+      if (idle.worker.isUsable()) {
+        return idle.worker;
+      }
+      LOG.debug("discard dead mercurial worker of repository {}", key.repositoryId);
+      destroy(idle.worker);
+    }
+    LOG.trace("no idle mercurial worker for {}, start a new one", key.repositoryId);
+    reserve();
+    try {
+      return starter.start();
+    } catch (IOException | RuntimeException ex) {
+      free(1);
+      throw ex;
+    }
+  }
+
+  /**
+   * Reserves a slot for a new worker. Idle workers of other repositories are stopped, if the limit of running workers
+   * is reached. If there is no idle worker, we wait until a busy one is released.
+   */
+  private void reserve() throws InterruptedIOException {
+    List<HgWorker> stale = new ArrayList<>();
+    synchronized (this) {
+      while (running >= maxTotal) {
+        HgWorker leastRecentlyUsed = removeLeastRecentlyUsed();
+        if (leastRecentlyUsed != null) {
+          stale.add(leastRecentlyUsed);
+          running--;
+        } else {
+          LOG.debug("all {} mercurial workers are busy, wait for a released one", maxTotal);
+          awaitRelease();
+        }
+      }
+      running++;
+    }
+    destroyAll(stale);
+  }
+
+  private void awaitRelease() throws InterruptedIOException {
+    try {
+      wait();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while waiting for a mercurial worker");
+    }
+  }
+
+  private HgWorker removeLeastRecentlyUsed() {
+    Deque<IdleWorker> leastRecentlyUsed = null;
+    for (Deque<IdleWorker> workers : idleWorkers.values()) {
+      if (!workers.isEmpty()
+        && (leastRecentlyUsed == null || workers.peekLast().releasedAt < leastRecentlyUsed.peekLast().releasedAt)) {
+        leastRecentlyUsed = workers;
+      }
+    }
+    if (leastRecentlyUsed == null) {
+      return null;
+    }
+    return leastRecentlyUsed.removeLast().worker;
+  }
+
+  private synchronized void free(int count) {
+    running -= count;
+    notifyAll();
+  }
+
+  @VisibleForTesting
+  synchronized int getRunning() {
+    return running;
+  }
+
+  /**
+   * Returns the worker to the pool or stops it, if it can not be reused.
+   */
+  void release(Key key, HgWorker worker) {
+    if (worker.isUsable() && offer(key, worker)) {
+      return;
+    }
+    destroy(worker);
+  }
+
+  private synchronized boolean offer(Key key, HgWorker worker) {
+    if (closed) {
+      return false;
+    }
+    Deque<IdleWorker> workers = idleWorkers.computeIfAbsent(key, k -> new ArrayDeque<>());
+    if (workers.size() < maxIdlePerRepository) {
+      workers.push(new IdleWorker(worker, clock.getAsLong()));
+      notifyAll();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Stops all idle workers and the expiration of idle workers. Busy workers are stopped on release.
+   */
+  @Override
+  public void close() {
+    List<HgWorker> stale = new ArrayList<>();
+    synchronized (this) {
+      closed = true;
+      for (Deque<IdleWorker> workers : idleWorkers.values()) {
+        workers.forEach(idle -> stale.add(idle.worker));
+      }
+      idleWorkers.clear();
+    }
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    if (!stale.isEmpty()) {
+      LOG.debug("stop {} idle mercurial workers", stale.size());
+    }
+    destroyAllAndFree(stale);
+  }
+
+  @Subscribe(async = false)
+  public void onDelete(RepositoryEvent event) {
+    if (event.getEventType() == HandlerEventType.DELETE) {
+      invalidate(event.getItem().getId());
+    }
+  }
+
+  private void invalidate(String repositoryId) {
+    List<HgWorker> stale = new ArrayList<>();
+    synchronized (this) {
+      Iterator<Map.Entry<Key, Deque<IdleWorker>>> iterator = idleWorkers.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<Key, Deque<IdleWorker>> entry = iterator.next();
+        if (entry.getKey().repositoryId.equals(repositoryId)) {
+          entry.getValue().forEach(idle -> stale.add(idle.worker));
+          iterator.remove();
+        }
+      }
+    }
+    destroyAllAndFree(stale);
+  }
+
+  @VisibleForTesting
+  void evictExpired() {
+    List<HgWorker> stale = new ArrayList<>();
+    long expired = clock.getAsLong() - expireAfter;
+    synchronized (this) {
+      Iterator<Deque<IdleWorker>> iterator = idleWorkers.values().iterator();
+      while (iterator.hasNext()) {
+        Deque<IdleWorker> workers = iterator.next();
+        // the deque is ordered from the most to the least recently used worker
+        while (!workers.isEmpty() && workers.peekLast().releasedAt <= expired) {
+          stale.add(workers.removeLast().worker);
+        }
+        if (workers.isEmpty()) {
+          iterator.remove();
+        }
+      }
+    }
+    destroyAllAndFree(stale);
+  }
+
+  private void destroy(HgWorker worker) {
+    worker.destroy();
+    free(1);
+  }
+
+  private void destroyAllAndFree(Collection<HgWorker> workers) {
+    destroyAll(workers);
+    free(workers.size());
+  }
+
+  private static void destroyAll(Collection<HgWorker> workers) {
+    for (HgWorker worker : workers) {
+      worker.destroy();
+    }
+  }
+
+  @FunctionalInterface
+  interface Starter {
+    HgWorker start() throws IOException;
+  }
+
+  /**
+   * Identifies workers, which can be shared. Workers are only shared, if they are started with the same command.
+   */
+  static final class Key {
+
+    private final String repositoryId;
+    private final List<String> command;
+
+    Key(String repositoryId, List<String> command) {
+      this.repositoryId = repositoryId;
+      this.command = ImmutableList.copyOf(command);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key key = (Key) o;
+      return repositoryId.equals(key.repositoryId)
+        && command.equals(key.command);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(repositoryId, command);
+    }
+  }
+
+  private static final class IdleWorker {
+
+    private final HgWorker worker;
+    private final long releasedAt;
+
+    private IdleWorker(HgWorker worker, long releasedAt) {
+      this.worker = worker;
+      this.releasedAt = releasedAt;
+    }
+  }
+}
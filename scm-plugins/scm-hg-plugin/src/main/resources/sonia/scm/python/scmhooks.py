@@ -31,12 +31,10 @@
 
 import os, sys, json, socket, struct
 
-# read environment
-port = os.environ['SCM_HOOK_PORT']
-challenge = os.environ['SCM_CHALLENGE']
-token = os.environ['SCM_BEARER_TOKEN']
-repositoryId = os.environ['SCM_REPOSITORY_ID']
-transactionId = os.environ['SCM_TRANSACTION_ID']
+# the environment is read on every hook call, because long living processes
+# like the wsgi worker change it for each request
+def env(name, default=None):
+  return os.environ.get(name, default)
 
 def print_messages(ui, messages):
   for message in messages:
@@ -62,9 +60,9 @@ def fire_hook(ui, repo, hooktype, node):
   ui.debug( b"send scm-hook for " + node + b"\n" )
   connection = socket.socket(socket.AF_INET, socket.SOCK_STREAM)
   try:
-    values = {'token': token, 'type': hooktype, 'repositoryId': repositoryId, 'transactionId': transactionId, 'challenge': challenge, 'node': node.decode('utf8') }
+    values = {'token': env('SCM_BEARER_TOKEN'), 'type': hooktype, 'repositoryId': env('SCM_REPOSITORY_ID'), 'transactionId': env('SCM_TRANSACTION_ID'), 'challenge': env('SCM_CHALLENGE'), 'node': node.decode('utf8') }
 
-    connection.connect(("127.0.0.1", int(port)))
+    connection.connect(("127.0.0.1", int(env('SCM_HOOK_PORT'))))
 
     data = json.dumps(values).encode('utf-8')
     connection.send(struct.pack('>i', len(data)))
@@ -91,7 +89,7 @@ def fire_hook(ui, repo, hooktype, node):
 def callback(ui, repo, hooktype, node=None):
   abort = True
   if node != None:
-    if len(port) > 0:
+    if len(env('SCM_HOOK_PORT', '')) > 0:
       abort = fire_hook(ui, repo, hooktype, node)
     else:
       ui.warn(b"ERROR: scm-manager hooks are disabled, please check your configuration and the scm-manager log for details\n")
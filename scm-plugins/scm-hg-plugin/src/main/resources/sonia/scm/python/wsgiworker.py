@@ -0,0 +1,213 @@
+#
+# MIT License
+#
+# Copyright (c) 2020-present Cloudogu GmbH and Contributors
+#
+# Permission is hereby granted, free of charge, to any person obtaining a copy
+# of this software and associated documentation files (the "Software"), to deal
+# in the Software without restriction, including without limitation the rights
+# to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+# copies of the Software, and to permit persons to whom the Software is
+# furnished to do so, subject to the following conditions:
+#
+# The above copyright notice and this permission notice shall be included in all
+# copies or substantial portions of the Software.
+#
+# THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+# IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+# FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+# AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+# LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+# OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+# SOFTWARE.
+#
+
+#
+# Long living worker, which serves the mercurial wire protocol for many requests. The requests are read from stdin
+# and the responses are written to stdout. Every message starts with a 4 byte big endian length.
+#
+# request:  json header {"environ": {...}, "environment": {...}}, body frames, empty frame
+# response: json header {"status": "200 OK", "headers": [[name, value], ...]}, body frames, empty frame
+#
+# The "environ" of the request is passed to the wsgi application, the "environment" is set as process environment
+# during the request, because it is used by the scm hooks.
+#
+
+import json, os, struct, sys
+
+from mercurial.hgweb import hgweb
+
+cmdtable = {}
+
+try:
+    from mercurial import registrar
+    command = registrar.command(cmdtable)
+except (AttributeError, ImportError):
+    # Fallback to hg < 4.3 support
+    from mercurial import cmdutil
+    command = cmdutil.command(cmdtable)
+
+def native(value):
+  if sys.version_info[0] < 3 and not isinstance(value, str):
+    return value.encode('utf-8')
+  return value
+
+def text(value):
+  if isinstance(value, bytes) and not isinstance(value, str):
+    return value.decode('latin-1')
+  return value
+
+def read_bytes(stream, length):
+  data = stream.read(length)
+  if data is None or len(data) < length:
+    raise EOFError()
+  return data
+
+def read_frame(stream):
+  length = struct.unpack('>i', read_bytes(stream, 4))[0]
+  if length == 0:
+    return b''
+  return read_bytes(stream, length)
+
+def write_frame(stream, data):
+  stream.write(struct.pack('>i', len(data)))
+  if len(data) > 0:
+    stream.write(data)
+
+class FrameReader(object):
+  """Reads the body of a request, which is sent as frames and is terminated by an empty frame."""
+
+  def __init__(self, stream):
+    self.stream = stream
+    self.buffer = b''
+    self.eof = False
+
+  def _fill(self):
+    if not self.eof and len(self.buffer) == 0:
+      self.buffer = read_frame(self.stream)
+      if len(self.buffer) == 0:
+        self.eof = True
+
+  def read(self, size=-1):
+    chunks = []
+    while size != 0:
+      self._fill()
+      if len(self.buffer) == 0:
+        break
+      if size < 0 or size >= len(self.buffer):
+        chunk = self.buffer
+        self.buffer = b''
+      else:
+        chunk = self.buffer[:size]
+        self.buffer = self.buffer[size:]
+      chunks.append(chunk)
+      if size > 0:
+        size -= len(chunk)
+    return b''.join(chunks)
+
+  def readline(self, size=-1):
+    chunks = []
+    while size != 0:
+      self._fill()
+      if len(self.buffer) == 0:
+        break
+      end = self.buffer.find(b'\n') + 1
+      if end == 0:
+        end = len(self.buffer)
+      if size > 0:
+        end = min(end, size)
+        size -= end
+      chunk = self.buffer[:end]
+      self.buffer = self.buffer[end:]
+      chunks.append(chunk)
+      if chunk.endswith(b'\n'):
+        break
+    return b''.join(chunks)
+
+  def drain(self):
+    while not self.eof:
+      self.buffer = b''
+      self._fill()
+
+def create_environ(request, body):
+  environ = dict((native(k), native(v)) for k, v in request['environ'].items())
+  environ.setdefault('PATH_INFO', '')
+  environ['wsgi.input'] = body
+  environ['wsgi.errors'] = sys.stderr
+  environ['wsgi.version'] = (1, 0)
+  environ['wsgi.multithread'] = False
+  environ['wsgi.multiprocess'] = True
+  environ['wsgi.run_once'] = False
+  if environ.get('HTTPS', 'off').lower() in ('on', '1', 'yes'):
+    environ['wsgi.url_scheme'] = 'https'
+  else:
+    environ['wsgi.url_scheme'] = 'http'
+  return environ
+
+def handle(ui, application, request, input, output):
+  environment = dict((native(k), native(v)) for k, v in request['environment'].items())
+  previous = dict((k, os.environ.get(k)) for k in environment)
+  os.environ.update(environment)
+
+  body = FrameReader(input)
+  state = {'response': None, 'sent': False}
+
+  def send_headers():
+    if not state['sent']:
+      status, headers = state['response']
+      header = {'status': text(status), 'headers': [[text(k), text(v)] for k, v in headers]}
+      write_frame(output, json.dumps(header).encode('utf-8'))
+      state['sent'] = True
+
+  def write(data):
+    send_headers()
+    if len(data) > 0:
+      write_frame(output, data)
+      output.flush()
+
+  def start_response(status, headers, exc_info=None):
+    if exc_info and state['sent']:
+      raise exc_info[1]
+    state['response'] = (status, headers)
+    return write
+
+  try:
+    content = application(create_environ(request, body), start_response)
+    try:
+      for chunk in content:
+        write(chunk)
+    finally:
+      getattr(content, 'close', lambda: None)()
+    send_headers()
+  except Exception:
+    ui.traceback()
+    if not state['sent']:
+      state['response'] = ('500 Internal Server Error', [('Content-Type', 'text/plain')])
+      send_headers()
+  finally:
+    body.drain()
+    write_frame(output, b'')
+    output.flush()
+    for k, v in previous.items():
+      if v is None:
+        os.environ.pop(k, None)
+      else:
+        os.environ[k] = v
+
+@command(b'wsgiworker')
+def wsgiworker(ui, repo, **opts):
+  # keep the original streams for the protocol and redirect everything else, which mercurial or a hook might write
+  # to stdout, to stderr
+  input = os.fdopen(os.dup(0), 'rb')
+  output = os.fdopen(os.dup(1), 'wb')
+  devnull = os.open(os.devnull, os.O_RDONLY)
+  os.dup2(devnull, 0)
+  os.dup2(2, 1)
+
+  application = hgweb(repo)
+  while True:
+    try:
+      request = json.loads(read_frame(input).decode('utf-8'))
+    except EOFError:
+      return
+    handle(ui, application, request, input, output)
@@ -0,0 +1,209 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import sonia.scm.HandlerEventType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class HgCommandServerPoolTest {
+
+  private static final HgCommandServerPool.Key HEART_OF_GOLD = key("42", "read");
+
+  private final AtomicLong clock = new AtomicLong();
+  private final Set<com.aragost.javahg.Repository> unhealthy = new HashSet<>();
+
+  private HgCommandServerPool pool;
+
+  @BeforeEach
+  void createPool() {
+    pool = new HgCommandServerPool(2, 3, 1000L, clock::get, repository -> !unhealthy.contains(repository));
+  }
+
+  @Test
+  void shouldReuseReleasedCommandServer() {
+    com.aragost.javahg.Repository repository = mock(com.aragost.javahg.Repository.class);
+
+    pool.release(pool.borrow(HEART_OF_GOLD, () -> repository));
+
+    assertThat(pool.borrow(HEART_OF_GOLD, this::failToOpen)).isSameAs(repository);
+    verify(repository, never()).close();
+  }
+
+  @Test
+  void shouldNotShareCommandServersWithDifferentEnvironment() {
+    com.aragost.javahg.Repository repository = mock(com.aragost.javahg.Repository.class);
+    com.aragost.javahg.Repository other = mock(com.aragost.javahg.Repository.class);
+
+    pool.release(pool.borrow(HEART_OF_GOLD, () -> repository));
+
+    assertThat(pool.borrow(key("42", "write"), () -> other)).isSameAs(other);
+  }
+
+  @Test
+  void shouldStopUnhealthyCommandServer() {
+    com.aragost.javahg.Repository repository = mock(com.aragost.javahg.Repository.class);
+    com.aragost.javahg.Repository fresh = mock(com.aragost.javahg.Repository.class);
+    pool.release(pool.borrow(HEART_OF_GOLD, () -> repository));
+    unhealthy.add(repository);
+
+    assertThat(pool.borrow(HEART_OF_GOLD, () -> fresh)).isSameAs(fresh);
+    verify(repository).close();
+  }
+
+  @Test
+  void shouldLimitIdleCommandServersPerRepository() {
+    com.aragost.javahg.Repository one = mock(com.aragost.javahg.Repository.class);
+    com.aragost.javahg.Repository two = mock(com.aragost.javahg.Repository.class);
+    com.aragost.javahg.Repository three = mock(com.aragost.javahg.Repository.class);
+    pool.borrow(HEART_OF_GOLD, () -> one);
+    pool.borrow(HEART_OF_GOLD, () -> two);
+    pool.borrow(HEART_OF_GOLD, () -> three);
+
+    pool.release(one);
+    pool.release(two);
+    pool.release(three);
+
+    assertThat(pool.getIdleCount()).isEqualTo(2);
+    verify(three).close();
+  }
+
+  @Test
+  void shouldEvictLeastRecentlyReleasedCommandServer() {
+    com.aragost.javahg.Repository one = mock(com.aragost.javahg.Repository.class);
+    com.aragost.javahg.Repository two = mock(com.aragost.javahg.Repository.class);
+    com.aragost.javahg.Repository three = mock(com.aragost.javahg.Repository.class);
+    com.aragost.javahg.Repository four = mock(com.aragost.javahg.Repository.class);
+
+    release(key("1", "read"), one);
+    release(key("2", "read"), two);
+    release(key("3", "read"), three);
+    release(key("4", "read"), four);
+
+    assertThat(pool.getIdleCount()).isEqualTo(3);
+    verify(one).close();
+    verify(two, never()).close();
+  }
+
+  @Test
+  void shouldStopExpiredCommandServers() {
+    com.aragost.javahg.Repository repository = mock(com.aragost.javahg.Repository.class);
+    pool.release(pool.borrow(HEART_OF_GOLD, () -> repository));
+
+    clock.set(1000L);
+    pool.evictExpired();
+
+    assertThat(pool.getIdleCount()).isZero();
+    verify(repository).close();
+  }
+
+  @Test
+  void shouldStopCommandServersAfterPush() {
+    com.aragost.javahg.Repository idle = mock(com.aragost.javahg.Repository.class);
+    com.aragost.javahg.Repository inUse = mock(com.aragost.javahg.Repository.class);
+    com.aragost.javahg.Repository borrowed = pool.borrow(HEART_OF_GOLD, () -> inUse);
+    pool.release(pool.borrow(HEART_OF_GOLD, () -> idle));
+
+    pool.onPostReceive(postReceive("42"));
+    pool.release(borrowed);
+
+    verify(idle).close();
+    verify(inUse).close();
+    assertThat(pool.getIdleCount()).isZero();
+  }
+
+  @Test
+  void shouldStopCommandServersOfDeletedRepository() {
+    com.aragost.javahg.Repository repository = mock(com.aragost.javahg.Repository.class);
+    pool.release(pool.borrow(HEART_OF_GOLD, () -> repository));
+
+    Repository heartOfGold = RepositoryTestData.createHeartOfGold("hg");
+    heartOfGold.setId("42");
+    pool.onDelete(new RepositoryEvent(HandlerEventType.DELETE, heartOfGold));
+
+    verify(repository).close();
+    assertThat(pool.getIdleCount()).isZero();
+  }
+
+  @Test
+  void shouldStopIdleAndReturnedCommandServersOnClose() {
+    com.aragost.javahg.Repository idle = mock(com.aragost.javahg.Repository.class);
+    com.aragost.javahg.Repository inUse = mock(com.aragost.javahg.Repository.class);
+    com.aragost.javahg.Repository borrowed = pool.borrow(HEART_OF_GOLD, () -> inUse);
+    pool.release(pool.borrow(HEART_OF_GOLD, () -> idle));
+
+    pool.close();
+
+    verify(idle).close();
+    verify(inUse, never()).close();
+
+    pool.release(borrowed);
+
+    verify(inUse).close();
+    assertThat(pool.getIdleCount()).isZero();
+  }
+
+  @Test
+  void shouldCloseEveryRepositoryIfDisabled() {
+    HgCommandServerPool disabled = HgCommandServerPool.disabled();
+    com.aragost.javahg.Repository repository = mock(com.aragost.javahg.Repository.class);
+
+    disabled.release(disabled.borrow(HEART_OF_GOLD, () -> repository));
+
+    verify(repository).close();
+  }
+
+  private void release(HgCommandServerPool.Key key, com.aragost.javahg.Repository repository) {
+    pool.release(pool.borrow(key, () -> repository));
+    clock.incrementAndGet();
+  }
+
+  private PostReceiveRepositoryHookEvent postReceive(String repositoryId) {
+    Repository repository = RepositoryTestData.createHeartOfGold("hg");
+    repository.setId(repositoryId);
+    return new PostReceiveRepositoryHookEvent(
+      new RepositoryHookEvent(null, repository, RepositoryHookType.POST_RECEIVE)
+    );
+  }
+
+  private com.aragost.javahg.Repository failToOpen() {
+    throw new AssertionError("expected a pooled command server");
+  }
+
+  private static HgCommandServerPool.Key key(String repositoryId, String mode) {
+    return new HgCommandServerPool.Key(repositoryId, ImmutableMap.of("mode", mode), "hg", StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package sonia.scm.web;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class HgWorkerPoolTest {
+
+  private final AtomicLong clock = new AtomicLong(1000L);
+
+  private final HgWorkerPool.Key one = key("1");
+  private final HgWorkerPool.Key two = key("2");
+
+  @Test
+  void shouldReuseReleasedWorker() throws IOException {
+    HgWorkerPool pool = new HgWorkerPool(4, 8, 1000L, clock::get);
+
+    HgWorker worker = pool.borrow(one, HgWorkerPoolTest::worker);
+    pool.release(one, worker);
+
+    assertThat(pool.borrow(one, HgWorkerPoolTest::worker)).isSameAs(worker);
+    assertThat(pool.getRunning()).isOne();
+  }
+
+  @Test
+  void shouldStopExpiredWorkers() throws IOException {
+    HgWorkerPool pool = new HgWorkerPool(4, 8, 1000L, clock::get);
+    HgWorker worker = pool.borrow(one, HgWorkerPoolTest::worker);
+    pool.release(one, worker);
+
+    clock.addAndGet(1000L);
+    pool.evictExpired();
+
+    assertThat(worker.isUsable()).isFalse();
+    assertThat(pool.getRunning()).isZero();
+  }
+
+  @Test
+  void shouldStopLeastRecentlyUsedWorkerOfOtherRepositoryIfLimitIsReached() throws IOException {
+    HgWorkerPool pool = new HgWorkerPool(4, 2, 1000L, clock::get);
+    HgWorker first = pool.borrow(one, HgWorkerPoolTest::worker);
+    HgWorker second = pool.borrow(one, HgWorkerPoolTest::worker);
+    pool.release(one, first);
+    clock.incrementAndGet();
+    pool.release(one, second);
+
+    HgWorker third = pool.borrow(two, HgWorkerPoolTest::worker);
+
+    assertThat(third).isNotSameAs(first).isNotSameAs(second);
+    assertThat(first.isUsable()).isFalse();
+    assertThat(second.isUsable()).isTrue();
+    assertThat(pool.getRunning()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldWaitForReleasedWorkerIfLimitIsReached() throws Exception {
+    HgWorkerPool pool = new HgWorkerPool(4, 1, 1000L, clock::get);
+    HgWorker busy = pool.borrow(one, HgWorkerPoolTest::worker);
+
+    CompletableFuture<HgWorker> waiting = CompletableFuture.supplyAsync(() -> {
+      try {
+        return pool.borrow(two, HgWorkerPoolTest::worker);
+      } catch (IOException ex) {
+        throw new IllegalStateException(ex);
+      }
+    });
+
+    Thread.sleep(100L);
+    assertThat(waiting).isNotDone();
+
+    pool.release(one, busy);
+
+    HgWorker started = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> waiting.get());
+    assertThat(started).isNotSameAs(busy);
+    assertThat(busy.isUsable()).isFalse();
+    assertThat(pool.getRunning()).isOne();
+  }
+
+  @Test
+  void shouldFreeSlotIfWorkerCouldNotBeStarted() {
+    HgWorkerPool pool = new HgWorkerPool(4, 1, 1000L, clock::get);
+
+    assertThatThrownBy(() -> pool.borrow(one, () -> {
+      throw new IOException("no hg");
+    })).isInstanceOf(IOException.class);
+
+    assertThat(pool.getRunning()).isZero();
+  }
+
+  @Test
+  void shouldStopIdleAndReleasedWorkersOnClose() throws IOException {
+    HgWorkerPool pool = new HgWorkerPool(4, 8, 1000L, clock::get);
+    HgWorker idle = pool.borrow(one, HgWorkerPoolTest::worker);
+    HgWorker busy = pool.borrow(one, HgWorkerPoolTest::worker);
+    pool.release(one, idle);
+
+    pool.close();
+
+    assertThat(idle.isUsable()).isFalse();
+    assertThat(busy.isUsable()).isTrue();
+    assertThat(pool.getRunning()).isOne();
+
+    pool.release(one, busy);
+
+    assertThat(busy.isUsable()).isFalse();
+    assertThat(pool.getRunning()).isZero();
+  }
+
+  private static HgWorker worker() {
+    return new HgWorker(new ByteArrayOutputStream(), new ByteArrayInputStream(new byte[0]), null);
+  }
+
+  private static HgWorkerPool.Key key(String repositoryId) {
+    return new HgWorkerPool.Key(repositoryId, ImmutableList.of("hg", "serve"));
+  }
+}
@@ -0,0 +1,245 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.web;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class HgWorkerTest {
+
+  @Mock
+  private HttpServletResponse response;
+
+  private final ByteArrayOutputStream toWorker = new ByteArrayOutputStream();
+
+  @Test
+  void shouldSendRequestAsFrames() throws IOException {
+    HgWorker worker = worker(response("200 Script output follows"));
+    when(response.getOutputStream()).thenReturn(new CapturingOutputStream());
+
+    worker.handle(
+      response,
+      ImmutableMap.of("REQUEST_METHOD", "POST"),
+      ImmutableMap.of("SCM_REPOSITORY_ID", "42"),
+      new ByteArrayInputStream("cmd=heads".getBytes(StandardCharsets.UTF_8))
+    );
+
+    DataInputStream request = new DataInputStream(new ByteArrayInputStream(toWorker.toByteArray()));
+    JsonNode header = new ObjectMapper().readTree(readFrame(request));
+    assertThat(header.get("environ").get("REQUEST_METHOD").asText()).isEqualTo("POST");
+    assertThat(header.get("environment").get("SCM_REPOSITORY_ID").asText()).isEqualTo("42");
+    assertThat(new String(readFrame(request), StandardCharsets.UTF_8)).isEqualTo("cmd=heads");
+    assertThat(readFrame(request)).isEmpty();
+    assertThat(request.available()).isZero();
+  }
+
+  @Test
+  void shouldWriteResponse() throws IOException {
+    HgWorker worker = worker(response("200 Script output follows", "Content-Type", "application/mercurial-0.1"), "abc", "def");
+    CapturingOutputStream output = new CapturingOutputStream();
+    when(response.getOutputStream()).thenReturn(output);
+
+    worker.handle(response, ImmutableMap.of(), ImmutableMap.of(), new ByteArrayInputStream(new byte[0]));
+
+    verify(response).addHeader("Content-Type", "application/mercurial-0.1");
+    verify(response).setStatus(200);
+    assertThat(output.content()).isEqualTo("abcdef");
+    assertThat(worker.isUsable()).isTrue();
+  }
+
+  @Test
+  void shouldSendErrorAndSkipBody() throws IOException {
+    HgWorker worker = worker(response("500 Internal Server Error"), "boom");
+
+    worker.handle(response, ImmutableMap.of(), ImmutableMap.of(), new ByteArrayInputStream(new byte[0]));
+
+    verify(response).sendError(500);
+    verify(response, never()).getOutputStream();
+    assertThat(worker.isUsable()).isTrue();
+  }
+
+  @Test
+  void shouldRedirect() throws IOException {
+    HgWorker worker = worker(response("302 Found", "Location", "/repo/hg/42"));
+    when(response.encodeRedirectURL("/repo/hg/42")).thenReturn("/repo/hg/42");
+    when(response.getOutputStream()).thenReturn(new CapturingOutputStream());
+
+    worker.handle(response, ImmutableMap.of(), ImmutableMap.of(), new ByteArrayInputStream(new byte[0]));
+
+    verify(response).sendRedirect("/repo/hg/42");
+  }
+
+  @Test
+  void shouldMarkWorkerAsBrokenOnIncompleteResponse() throws IOException {
+    ByteArrayOutputStream frames = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(frames);
+    byte[] header = response("200 OK");
+    output.writeInt(header.length);
+    output.write(header);
+    output.writeInt(42);
+    HgWorker worker = new HgWorker(toWorker, new ByteArrayInputStream(frames.toByteArray()), null);
+    when(response.getOutputStream()).thenReturn(new CapturingOutputStream());
+
+    assertThatThrownBy(
+      () -> worker.handle(response, ImmutableMap.of(), ImmutableMap.of(), new ByteArrayInputStream(new byte[0]))
+    ).isInstanceOf(IOException.class);
+
+    assertThat(worker.isUsable()).isFalse();
+  }
+
+  @Test
+  void shouldReadResponseWhileRequestIsWritten() throws IOException {
+    CountDownLatch responseWritten = new CountDownLatch(1);
+    OutputStream blockingToWorker = new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        try {
+          // simulates a worker, which does not consume the request until its response is read
+          responseWritten.await();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new IOException(ex);
+        }
+      }
+    };
+    HgWorker worker = new HgWorker(blockingToWorker, responseFrames(response("200 OK"), "abc"), null);
+    CapturingOutputStream output = new CapturingOutputStream() {
+      @Override
+      public void write(int b) {
+        super.write(b);
+        responseWritten.countDown();
+      }
+    };
+    when(response.getOutputStream()).thenReturn(output);
+
+    assertTimeoutPreemptively(Duration.ofSeconds(10), () -> worker.handle(
+      response, ImmutableMap.of(), ImmutableMap.of(), new ByteArrayInputStream(new byte[]{1, 2, 3})
+    ));
+
+    assertThat(output.content()).isEqualTo("abc");
+    assertThat(worker.isUsable()).isTrue();
+  }
+
+  @Test
+  void shouldMarkWorkerAsBrokenIfRequestCouldNotBeWritten() throws IOException {
+    HgWorker worker = worker(response("200 OK"));
+    lenient().when(response.getOutputStream()).thenReturn(new CapturingOutputStream());
+    InputStream failingBody = new InputStream() {
+      @Override
+      public int read() throws IOException {
+        throw new IOException("client gone");
+      }
+    };
+
+    assertThatThrownBy(
+      () -> worker.handle(response, ImmutableMap.of(), ImmutableMap.of(), failingBody)
+    ).isInstanceOf(IOException.class).hasMessage("client gone");
+
+    assertThat(worker.isUsable()).isFalse();
+  }
+
+  private HgWorker worker(byte[] header, String... chunks) throws IOException {
+    return new HgWorker(toWorker, responseFrames(header, chunks), null);
+  }
+
+  private InputStream responseFrames(byte[] header, String... chunks) throws IOException {
+    ByteArrayOutputStream frames = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(frames);
+    output.writeInt(header.length);
+    output.write(header);
+    for (String chunk : chunks) {
+      byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+    output.writeInt(0);
+    return new ByteArrayInputStream(frames.toByteArray());
+  }
+
+  private byte[] response(String status, String... headers) throws IOException {
+    String[][] pairs = new String[headers.length / 2][];
+    for (int i = 0; i < headers.length; i += 2) {
+      pairs[i / 2] = new String[]{headers[i], headers[i + 1]};
+    }
+    return new ObjectMapper().writeValueAsBytes(ImmutableMap.of("status", status, "headers", pairs));
+  }
+
+  private byte[] readFrame(DataInputStream input) throws IOException {
+    byte[] frame = new byte[input.readInt()];
+    input.readFully(frame);
+    return frame;
+  }
+
+  private static class CapturingOutputStream extends ServletOutputStream {
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+    }
+
+    @Override
+    public void write(int b) {
+      buffer.write(b);
+    }
+
+    String content() {
+      return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+}
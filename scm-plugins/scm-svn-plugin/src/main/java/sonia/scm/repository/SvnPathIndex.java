@@ -0,0 +1,432 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.Striped;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Index of the revisions which touched a path or one of its descendants. The index allows paging through the history
+ * of a path without walking the whole log of the repository and counts the history without loading it.
+ * <p>
+ * The index is persisted as an append only file in the repository directory, which stores the changed paths of every
+ * revision. The lookup structures are rebuilt from this file, when the index is loaded. Loading and appending are
+ * serialized per file, and before an instance appends revisions it applies the records which were appended by other
+ * instances of the same index (e.g. an instance, which was evicted from the cache during an update).
+ *
+ * @since 2.15.0
+ */
+public final class SvnPathIndex {
+
+  static final String FILE_NAME = "scm-path-index";
+
+  private static final Logger LOG = LoggerFactory.getLogger(SvnPathIndex.class);
+
+  private static final int MAGIC = 0x53504958;
+  private static final int VERSION = 1;
+
+  /**
+   * Estimated memory of a path in the lookup maps (map entry, string and revision list).
+   */
+  private static final int PATH_SIZE = 128;
+
+  private static final Striped<Lock> LOCKS = Striped.lock(16);
+
+  private final File file;
+  private final String uuid;
+
+  private final Map<String, Revisions> revisions = new HashMap<>();
+  private final Map<String, Revisions> origins = new HashMap<>();
+  private volatile long indexedRevision = 0;
+  private volatile long estimatedSize = 0;
+  private long length = 0;
+
+  private SvnPathIndex(File file, String uuid) {
+    this.file = file;
+    this.uuid = uuid;
+  }
+
+  /**
+   * Loads the index of the repository in the given directory. If the index does not exist or belongs to another
+   * repository, an empty index is returned.
+   *
+   * @param directory directory of the svn repository
+   * @param uuid uuid of the svn repository
+   */
+  static SvnPathIndex load(File directory, String uuid) throws IOException {
+    SvnPathIndex index = new SvnPathIndex(new File(directory, FILE_NAME), uuid);
+    Lock lock = LOCKS.get(index.file);
+    lock.lock();
+    try {
+      if (index.file.exists()) {
+        index.read(0);
+      }
+    } finally {
+      lock.unlock();
+    }
+    return index;
+  }
+
+  public long getIndexedRevision() {
+    return indexedRevision;
+  }
+
+  /**
+   * Returns the estimated memory in bytes, which is used by the lookup structures of the index.
+   */
+  long getEstimatedSize() {
+    return estimatedSize;
+  }
+
+  /**
+   * Adds all revisions of the repository up to the given revision, which are not yet indexed.
+   */
+  synchronized void update(SVNRepository repository, long latestRevision) throws SVNException, IOException {
+    Lock lock = LOCKS.get(file);
+    lock.lock();
+    try {
+      catchUp();
+      if (latestRevision > indexedRevision) {
+        append(repository, latestRevision);
+        length = file.length();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void append(SVNRepository repository, long latestRevision) throws SVNException, IOException {
+    LOG.debug("index revisions {} to {} of {}", indexedRevision + 1, latestRevision, file.getParentFile());
+    try (DataOutputStream output = openForAppend()) {
+      repository.log(new String[]{""}, indexedRevision + 1, latestRevision, true, false, 0, entry -> {
+        try {
+          Map<String, SVNLogEntryPath> changedPaths = entry.getChangedPaths() != null ? entry.getChangedPaths() : Collections.emptyMap();
+          output.writeInt((int) entry.getRevision());
+          output.writeInt(changedPaths.size());
+          for (SVNLogEntryPath changedPath : changedPaths.values()) {
+            output.writeByte(changedPath.getType());
+            output.writeUTF(changedPath.getPath());
+            add((int) entry.getRevision(), changedPath.getType(), changedPath.getPath());
+          }
+        } catch (IOException ex) {
+          throw new UncheckedIOException(ex);
+        }
+        indexedRevision = entry.getRevision();
+      });
+      if (indexedRevision < latestRevision) {
+        // revisions without changes, e.g. revision property only changes
+        output.writeInt((int) latestRevision);
+        output.writeInt(0);
+        indexedRevision = latestRevision;
+      }
+    } catch (UncheckedIOException ex) {
+      throw ex.getCause();
+    }
+  }
+
+  /**
+   * Returns a page of the history of the given path, which starts at the start revision and does not cross the copy
+   * or the creation of the path or one of its parents (like {@code svn log --stop-on-copy}).
+   *
+   * @param path path in the repository
+   * @param startRevision newest revision of the history (inclusive)
+   * @param endRevision oldest revision of the history (inclusive)
+   * @param start index of the first revision of the page
+   * @param limit maximum number of revisions of the page or a negative number for all revisions
+   */
+  public synchronized Page getPage(String path, long startRevision, long endRevision, int start, int limit) {
+    String normalized = normalize(path);
+
+    int origin = -1;
+    for (String current = normalized; current != null; current = parent(current)) {
+      Revisions created = origins.get(current);
+      if (created != null) {
+        int index = created.upperBound(startRevision) - 1;
+        if (index >= 0) {
+          origin = Math.max(origin, created.get(index));
+        }
+      }
+    }
+
+    long lower = Math.max(endRevision, origin);
+    Revisions touched = revisions.getOrDefault(normalized, Revisions.EMPTY);
+    int from = touched.upperBound(lower - 1);
+    int to = touched.upperBound(startRevision);
+    // the creation of a parent directory (e.g. the copy of a branch) is part of the history, but is not stored for the
+    // descendants of the directory
+    boolean includeOrigin = origin >= 0 && origin >= endRevision && (from == to || touched.get(from) != origin);
+
+    int total = (to - from) + (includeOrigin ? 1 : 0);
+    int pageStart = Math.max(start, 0);
+    int pageEnd = limit < 0 ? total : (int) Math.min(total, (long) pageStart + limit);
+
+    long[] page = new long[Math.max(pageEnd - pageStart, 0)];
+    for (int i = 0; i < page.length; i++) {
+      int position = pageStart + i;
+      page[i] = position < to - from ? touched.get(to - 1 - position) : origin;
+    }
+    return new Page(total, page);
+  }
+
+  @VisibleForTesting
+  synchronized void add(int revision, char type, String path) {
+    String normalized = normalize(path);
+    if (type == SVNLogEntryPath.TYPE_ADDED || type == SVNLogEntryPath.TYPE_REPLACED) {
+      add(origins, normalized, revision);
+    }
+    for (String current = normalized; current != null; current = parent(current)) {
+      add(revisions, current, revision);
+    }
+  }
+
+  private void add(Map<String, Revisions> map, String path, int revision) {
+    Revisions list = map.get(path);
+    if (list == null) {
+      list = new Revisions();
+      map.put(path, list);
+      estimatedSize += PATH_SIZE + 2L * path.length();
+    }
+    if (list.add(revision)) {
+      // the revision lists grow by doubling, so every revision uses two ints on average
+      estimatedSize += 2L * Integer.BYTES;
+    }
+  }
+
+  /**
+   * Applies the records, which were appended to the file by other instances of the index.
+   */
+  private void catchUp() throws IOException {
+    long fileLength = file.exists() ? file.length() : 0;
+    if (fileLength == length) {
+      return;
+    }
+    if (fileLength < length) {
+      LOG.debug("path index {} was replaced, reload index", file);
+      reset();
+      if (fileLength > 0) {
+        read(0);
+      }
+    } else {
+      LOG.trace("apply records of path index {} appended by another instance", file);
+      read(length);
+    }
+  }
+
+  private void read(long offset) throws IOException {
+    long validLength = readRecords(offset);
+    if (validLength <= 0) {
+      LOG.info("discard path index of other repository or version: {}", file);
+      clear();
+      return;
+    }
+    if (validLength < file.length()) {
+      LOG.warn("truncate incomplete path index {} to {} bytes", file, validLength);
+      truncate(validLength);
+    }
+    length = validLength;
+  }
+
+  /**
+   * Reads all complete records of the index file, which start at the given offset, and returns the length of the
+   * complete records or zero, if the file has no valid header. Records of revisions, which are already indexed, are
+   * skipped.
+   */
+  private long readRecords(long offset) throws IOException {
+    long validLength = offset;
+    try (CountingInputStream counting = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+         DataInputStream input = new DataInputStream(counting)) {
+      if (offset > 0) {
+        ByteStreams.skipFully(input, offset);
+      } else if (input.readInt() != MAGIC || input.readInt() != VERSION || !uuid.equals(input.readUTF())) {
+        return 0;
+      } else {
+        validLength = counting.getCount();
+      }
+      while (true) {
+        int revision = input.readInt();
+        int count = input.readInt();
+        // read the whole record before it is applied, because the last record could be incomplete
+        char[] types = new char[count];
+        String[] paths = new String[count];
+        for (int i = 0; i < count; i++) {
+          types[i] = (char) input.readByte();
+          paths[i] = input.readUTF();
+        }
+        if (revision > indexedRevision) {
+          for (int i = 0; i < count; i++) {
+            add(revision, types[i], paths[i]);
+          }
+          indexedRevision = revision;
+        }
+        validLength = counting.getCount();
+      }
+    } catch (EOFException ex) {
+      return validLength;
+    }
+  }
+
+  private void truncate(long length) throws IOException {
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      randomAccessFile.setLength(length);
+    }
+  }
+
+  private void reset() {
+    revisions.clear();
+    origins.clear();
+    indexedRevision = 0;
+    estimatedSize = 0;
+    length = 0;
+  }
+
+  private void clear() throws IOException {
+    reset();
+    if (file.exists() && !file.delete()) {
+      throw new IOException("could not delete path index " + file);
+    }
+  }
+
+  private DataOutputStream openForAppend() throws IOException {
+    boolean exists = file.exists();
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+    if (!exists) {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeUTF(uuid);
+    }
+    return output;
+  }
+
+  private static String normalize(String path) {
+    String normalized = path.startsWith("/") ? path : "/".concat(path);
+    while (normalized.length() > 1 && normalized.endsWith("/")) {
+      normalized = normalized.substring(0, normalized.length() - 1);
+    }
+    return normalized;
+  }
+
+  private static String parent(String path) {
+    if ("/".equals(path)) {
+      return null;
+    }
+    int index = path.lastIndexOf('/');
+    return index == 0 ? "/" : path.substring(0, index);
+  }
+
+  /**
+   * Page of the history of a path.
+   */
+  public static final class Page {
+
+    private final int total;
+    private final long[] revisions;
+
+    private Page(int total, long[] revisions) {
+      this.total = total;
+      this.revisions = revisions;
+    }
+
+    /**
+     * Returns the number of all revisions of the history.
+     */
+    public int getTotal() {
+      return total;
+    }
+
+    /**
+     * Returns the revisions of the page, starting with the newest.
+     */
+    public long[] getRevisions() {
+      return revisions.clone();
+    }
+  }
+
+  /**
+   * Ascending list of revisions, which is stored as plain int array to keep the index small.
+   */
+  private static final class Revisions {
+
+    private static final Revisions EMPTY = new Revisions();
+
+    private int[] values = new int[2];
+    private int size = 0;
+
+    boolean add(int revision) {
+      if (size > 0 && values[size - 1] == revision) {
+        return false;
+      }
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = revision;
+      return true;
+    }
+
+    int get(int index) {
+      return values[index];
+    }
+
+    /**
+     * Returns the index of the first revision, which is greater than the given one.
+     */
+    int upperBound(long revision) {
+      int low = 0;
+      int high = size;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (values[middle] <= revision) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      return low;
+    }
+  }
+}
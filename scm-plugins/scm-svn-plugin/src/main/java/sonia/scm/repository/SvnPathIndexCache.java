@@ -0,0 +1,176 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the recently used {@link SvnPathIndex} instances in memory and keeps them up to date. Small updates are
+ * applied directly, large updates (e.g. the first creation of the index for a repository with a long history) are
+ * applied in the background. The index can be disabled with the system property {@code scm.svn.pathIndex.disabled}.
+ * <p>
+ * The cache is limited by the estimated memory of the indexes, which can be configured in megabytes with the system
+ * property {@code scm.svn.pathIndex.maxMemory} (default 64). Indexes which are larger than the limit are not kept in
+ * memory and are loaded from disk for every request.
+ *
+ * @since 2.15.0
+ */
+public final class SvnPathIndexCache {
+
+  static final String PROPERTY_DISABLED = "scm.svn.pathIndex.disabled";
+  static final String PROPERTY_MAX_MEMORY = "scm.svn.pathIndex.maxMemory";
+
+  private static final Logger LOG = LoggerFactory.getLogger(SvnPathIndexCache.class);
+
+  /**
+   * Maximum number of revisions, which are indexed directly during a request.
+   */
+  private static final long MAX_DIRECT_UPDATE = 1000;
+
+  private final boolean enabled;
+  private final Cache<File, SvnPathIndex> cache;
+  private final Set<File> pendingUpdates = ConcurrentHashMap.newKeySet();
+  private final ExecutorService executor;
+
+  public SvnPathIndexCache() {
+    this(!Boolean.getBoolean(PROPERTY_DISABLED), Long.getLong(PROPERTY_MAX_MEMORY, 64));
+  }
+
+  SvnPathIndexCache(boolean enabled, long maxMemoryInMegabytes) {
+    this.enabled = enabled;
+    this.cache = CacheBuilder.newBuilder()
+      .maximumWeight(maxMemoryInMegabytes * 1024)
+      .weigher(SvnPathIndexCache::weigh)
+      .build();
+    this.executor = Executors.newSingleThreadExecutor(
+      new ThreadFactoryBuilder()
+        .setNameFormat("SvnPathIndex-%d")
+        .setDaemon(true)
+        .build()
+    );
+  }
+
+  /**
+   * Returns the index of the repository, if the index is up to date. If the index could not be updated directly, an
+   * update is started in the background and an empty optional is returned.
+   *
+   * @param directory directory of the svn repository
+   * @param repository opened svn repository
+   */
+  public Optional<SvnPathIndex> get(File directory, SVNRepository repository) {
+    if (!enabled || pendingUpdates.contains(directory)) {
+      return Optional.empty();
+    }
+    try {
+      SvnPathIndex index = load(directory, repository);
+      long latestRevision = repository.getLatestRevision();
+      if (latestRevision - index.getIndexedRevision() > MAX_DIRECT_UPDATE) {
+        updateInBackground(directory);
+        return Optional.empty();
+      }
+      index.update(repository, latestRevision);
+      reweigh(directory, index);
+      return Optional.of(index);
+    } catch (IOException | SVNException | ExecutionException ex) {
+      LOG.warn("could not update path index of {}", directory, ex);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Updates the index of the repository after a commit.
+   *
+   * @param directory directory of the svn repository
+   */
+  void update(File directory) {
+    if (!enabled) {
+      return;
+    }
+    SVNRepository repository = null;
+    try {
+      repository = SVNRepositoryFactory.create(SVNURL.fromFile(directory));
+      get(directory, repository);
+    } catch (SVNException ex) {
+      LOG.warn("could not open repository {} to update path index", directory, ex);
+    } finally {
+      SvnUtil.closeSession(repository);
+    }
+  }
+
+  /**
+   * Returns the estimated memory of the index in kilobytes.
+   */
+  private static int weigh(File directory, SvnPathIndex index) {
+    return (int) Math.min(Integer.MAX_VALUE, index.getEstimatedSize() / 1024 + 1);
+  }
+
+  /**
+   * The weight of a cache entry is only computed on insertion, so the index is reinserted after it has grown.
+   */
+  private void reweigh(File directory, SvnPathIndex index) {
+    cache.asMap().replace(directory, index, index);
+  }
+
+  private SvnPathIndex load(File directory, SVNRepository repository) throws ExecutionException {
+    return cache.get(directory, () -> SvnPathIndex.load(directory, repository.getRepositoryUUID(true)));
+  }
+
+  private void updateInBackground(File directory) {
+    if (pendingUpdates.add(directory)) {
+      LOG.info("path index of {} is outdated, start update in background", directory);
+      executor.execute(() -> {
+        SVNRepository repository = null;
+        try {
+          repository = SVNRepositoryFactory.create(SVNURL.fromFile(directory));
+          SvnPathIndex index = load(directory, repository);
+          index.update(repository, repository.getLatestRevision());
+          reweigh(directory, index);
+        } catch (IOException | SVNException | ExecutionException ex) {
+          LOG.warn("could not update path index of {}", directory, ex);
+        } finally {
+          SvnUtil.closeSession(repository);
+          pendingUpdates.remove(directory);
+        }
+      });
+    }
+  }
+}
@@ -78,6 +78,8 @@ public class SvnRepositoryHandler
     LoggerFactory.getLogger(SvnRepositoryHandler.class);
   private SvnRepositoryHook hook;
 
+  private final SvnPathIndexCache pathIndexCache = new SvnPathIndexCache();
+
   @Inject
   public SvnRepositoryHandler(ConfigurationStoreFactory storeFactory,
                               HookEventFacade eventFacade,
@@ -211,6 +213,15 @@ public class SvnRepositoryHandler
     new SvnConfigHelper().writeRepositoryId(repository, directory);
   }
 
+  /**
+   * Returns the cache of the path indexes, which are used to page through the history of a path.
+   *
+   * @since 2.15.0
+   */
+  public SvnPathIndexCache getPathIndexCache() {
+    return pathIndexCache;
+  }
+
   String getRepositoryId(File directory) {
     return new SvnConfigHelper().getRepositoryId(directory);
   }
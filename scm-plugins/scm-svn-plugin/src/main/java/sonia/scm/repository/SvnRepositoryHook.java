@@ -92,6 +92,7 @@ public class SvnRepositoryHook implements FSHook
         {
           long revision = Long.parseLong(args[0]);
 
+          handler.getPathIndexCache().update(directory);
           fireHook(directory,
             new SvnPostReceiveHookChangesetProvier(directory, revision));
         }
@@ -32,10 +32,13 @@ import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
 import sonia.scm.repository.Repository;
 import sonia.scm.repository.RepositoryProvider;
+import sonia.scm.repository.SvnPathIndex;
+import sonia.scm.repository.SvnPathIndexCache;
 import sonia.scm.repository.SvnUtil;
 
 import java.io.Closeable;
 import java.io.File;
+import java.util.Optional;
 
 /**
  *
@@ -47,12 +50,18 @@ public class SvnContext implements Closeable, RepositoryProvider {
 
   private final Repository repository;
   private final File directory;
+  private final SvnPathIndexCache pathIndexCache;
 
   private SVNRepository svnRepository;
 
   public SvnContext(Repository repository, File directory) {
+    this(repository, directory, null);
+  }
+
+  public SvnContext(Repository repository, File directory, SvnPathIndexCache pathIndexCache) {
     this.repository = repository;
     this.directory = directory;
+    this.pathIndexCache = pathIndexCache;
   }
 
   public Repository getRepository() {
@@ -81,6 +90,18 @@ public class SvnContext implements Closeable, RepositoryProvider {
     return svnRepository;
   }
 
+  /**
+   * Returns the up to date path index of the repository or an empty optional, if the index is not available.
+   *
+   * @since 2.15.0
+   */
+  public Optional<SvnPathIndex> getPathIndex() throws SVNException {
+    if (pathIndexCache == null) {
+      return Optional.empty();
+    }
+    return pathIndexCache.get(directory, open());
+  }
+
   @Override
   public void close() {
     LOG.trace("close svn repository {}", directory);
@@ -32,15 +32,18 @@ import org.slf4j.LoggerFactory;
 import org.tmatesoft.svn.core.ISVNLogEntryHandler;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNNodeKind;
 import org.tmatesoft.svn.core.io.SVNRepository;
 import sonia.scm.repository.Changeset;
 import sonia.scm.repository.ChangesetPagingResult;
 import sonia.scm.repository.InternalRepositoryException;
+import sonia.scm.repository.SvnPathIndex;
 import sonia.scm.repository.SvnUtil;
 import sonia.scm.util.Util;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 import static sonia.scm.repository.SvnUtil.parseRevision;
 
@@ -48,6 +51,11 @@ public class SvnLogCommand extends AbstractSvnCommand implements LogCommand {
 
   private static final Logger LOG = LoggerFactory.getLogger(SvnLogCommand.class);
 
+  /**
+   * The changed paths of the log entries are not used to create changesets, so we skip the expensive discovery.
+   */
+  private static final boolean DISCOVER_CHANGED_PATHS = false;
+
   SvnLogCommand(SvnContext context) {
     super(context);
   }
@@ -66,7 +74,7 @@ public class SvnLogCommand extends AbstractSvnCommand implements LogCommand {
       Preconditions.checkArgument(revisioNumber > 0, "revision must be greater than zero: %d", revisioNumber);
       SVNRepository repo = open();
       Collection<SVNLogEntry> entries = repo.log(null, null, revisioNumber,
-        revisioNumber, true, true);
+        revisioNumber, DISCOVER_CHANGED_PATHS, true);
 
       if (Util.isNotEmpty(entries)) {
         changeset = SvnUtil.createChangeset(entries.iterator().next());
@@ -123,14 +131,13 @@ public class SvnLogCommand extends AbstractSvnCommand implements LogCommand {
 
     if (startRev > 0) {
       LOG.debug("fetch changeset from {} to {}", startRev, endRev);
-      repo.log(null, startRev, endRev, true, true,
+      repo.log(null, startRev, endRev, DISCOVER_CHANGED_PATHS, true,
         new ChangesetCollector(changesets));
     }
 
     return new ChangesetPagingResult((int) latest, changesets);
   }
 
-  @SuppressWarnings("unchecked")
   private ChangesetPagingResult getChangesets(SVNRepository repo,
                                               long startRevision, long endRevision, int start, int limit, String[] path)
     throws SVNException {
@@ -144,40 +151,71 @@ public class SvnLogCommand extends AbstractSvnCommand implements LogCommand {
       startRev = maxRev;
     }
 
-    List<SVNLogEntry> changesetList = Lists.newArrayList();
+    if (path != null && !isRoot(path[0]) && startRev <= maxRev) {
+      Optional<SvnPathIndex> index = context.getPathIndex();
+      if (index.isPresent() && repo.checkPath(path[0], startRev) != SVNNodeKind.NONE) {
+        return getChangesetsFromIndex(repo, index.get(), path, startRev, endRev, start, limit);
+      }
+    }
 
     LOG.debug("fetch changeset from {} to {} for path {}", startRev, endRev,
       path);
 
-    Collection<SVNLogEntry> entries = repo.log(path, null, startRev, endRev,
-      true, true);
+    ChangesetPager pager = new ChangesetPager(start, limit, maxRev);
+    repo.log(path, startRev, endRev, DISCOVER_CHANGED_PATHS, true, pager);
 
-    for (SVNLogEntry entry : entries) {
-      if (entry.getRevision() <= maxRev) {
-        changesetList.add(entry);
-      }
-    }
+    LOG.trace("collected {} of total {} changesets", pager.changesets.size(), pager.total);
 
-    int total = changesetList.size();
-    int max = limit + start;
-    int end = total;
+    return new ChangesetPagingResult(pager.total, pager.changesets);
+  }
 
-    if ((max > 0) && (end > max)) {
-      end = max;
-    }
+  private ChangesetPagingResult getChangesetsFromIndex(SVNRepository repo, SvnPathIndex index, String[] path,
+                                                       long startRev, long endRev, int start, int limit)
+    throws SVNException {
+    SvnPathIndex.Page page = index.getPage(path[0], startRev, endRev, start, limit);
+    long[] revisions = page.getRevisions();
+
+    LOG.debug("fetch {} of {} changesets for path {} from path index", revisions.length, page.getTotal(), path);
 
-    if (start < 0) {
-      start = 0;
+    List<Changeset> changesets = Lists.newArrayList();
+    if (revisions.length > 0) {
+      repo.log(path, revisions[0], revisions[revisions.length - 1], DISCOVER_CHANGED_PATHS, true,
+        new ChangesetCollector(changesets));
     }
+    return new ChangesetPagingResult(page.getTotal(), changesets);
+  }
+
+  private boolean isRoot(String path) {
+    return Strings.isNullOrEmpty(path) || "/".equals(path);
+  }
+
+  /**
+   * Counts all log entries, but converts and keeps only the entries of the requested page.
+   */
+  private static class ChangesetPager implements ISVNLogEntryHandler {
 
-    LOG.trace(
-      "create sublist from {} to {} of total {} collected changesets", start,
-      end, total);
+    private final int start;
+    private final int end;
+    private final long maxRevision;
 
-    changesetList = changesetList.subList(start, end);
+    private final List<Changeset> changesets = Lists.newArrayList();
+    private int total = 0;
 
-    return new ChangesetPagingResult(total,
-      SvnUtil.createChangesets(changesetList));
+    ChangesetPager(int start, int limit, long maxRevision) {
+      this.start = Math.max(start, 0);
+      this.end = limit < 0 ? Integer.MAX_VALUE : (int) Math.min(Integer.MAX_VALUE, (long) this.start + limit);
+      this.maxRevision = maxRevision;
+    }
+
+    @Override
+    public void handleLogEntry(SVNLogEntry logEntry) {
+      if (logEntry.getRevision() <= maxRevision) {
+        if (total >= start && total < end) {
+          changesets.add(SvnUtil.createChangeset(logEntry));
+        }
+        total++;
+      }
+    }
   }
 
   /**
@@ -56,7 +56,7 @@ public class SvnRepositoryServiceProvider extends RepositoryServiceProvider {
                                Repository repository,
                                SvnWorkingCopyFactory workingCopyFactory,
                                HookContextFactory hookContextFactory) {
-    this.context = new SvnContext(repository, handler.getDirectory(repository.getId()));
+    this.context = new SvnContext(repository, handler.getDirectory(repository.getId()), handler.getPathIndexCache());
     this.workingCopyFactory = workingCopyFactory;
     this.hookContextFactory = hookContextFactory;
   }
@@ -0,0 +1,185 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class SvnPathIndexTest {
+
+  private SVNRepository repository;
+  private File directory;
+
+  @BeforeEach
+  void createRepository(@TempDir Path temp) throws SVNException {
+    directory = temp.toFile();
+    repository = mock(SVNRepository.class);
+    doAnswer(invocation -> {
+      ISVNLogEntryHandler handler = invocation.getArgument(6);
+      long from = invocation.getArgument(1);
+      long to = invocation.getArgument(2);
+      for (SVNLogEntry entry : new SVNLogEntry[]{
+        entry(1, "A /trunk", "A /trunk/a.txt"),
+        entry(2, "M /trunk/a.txt"),
+        entry(3, "A /branches/feature"),
+        entry(4, "M /branches/feature/a.txt"),
+        entry(5, "M /trunk/a.txt")
+      }) {
+        if (entry.getRevision() >= from && entry.getRevision() <= to) {
+          handler.handleLogEntry(entry);
+        }
+      }
+      return 0L;
+    }).when(repository).log(any(String[].class), anyLong(), anyLong(), eq(true), anyBoolean(), anyLong(), any(ISVNLogEntryHandler.class));
+  }
+
+  @Test
+  void shouldReturnHistoryOfPath() throws IOException, SVNException {
+    SvnPathIndex index = update(SvnPathIndex.load(directory, "42"));
+
+    assertThat(index.getIndexedRevision()).isEqualTo(5);
+    assertPage(index.getPage("trunk/a.txt", 5, 0, 0, -1), 3, 5, 2, 1);
+    assertPage(index.getPage("/trunk/", 5, 0, 0, -1), 3, 5, 2, 1);
+  }
+
+  @Test
+  void shouldStopAtCopyOfParent() throws IOException, SVNException {
+    SvnPathIndex index = update(SvnPathIndex.load(directory, "42"));
+
+    assertPage(index.getPage("branches/feature/a.txt", 5, 0, 0, -1), 2, 4, 3);
+  }
+
+  @Test
+  void shouldReturnPageWithinRange() throws IOException, SVNException {
+    SvnPathIndex index = update(SvnPathIndex.load(directory, "42"));
+
+    assertPage(index.getPage("trunk/a.txt", 5, 0, 1, 1), 3, 2);
+    assertPage(index.getPage("trunk/a.txt", 4, 0, 0, 20), 2, 2, 1);
+    assertPage(index.getPage("trunk/a.txt", 5, 2, 0, 20), 2, 5, 2);
+    assertPage(index.getPage("trunk/a.txt", 5, 0, 3, 20), 3);
+  }
+
+  @Test
+  void shouldLoadPersistedIndex() throws IOException, SVNException {
+    update(SvnPathIndex.load(directory, "42"));
+
+    SvnPathIndex index = SvnPathIndex.load(directory, "42");
+
+    assertThat(index.getIndexedRevision()).isEqualTo(5);
+    assertPage(index.getPage("branches/feature/a.txt", 5, 0, 0, -1), 2, 4, 3);
+  }
+
+  @Test
+  void shouldDiscardIndexOfOtherRepository() throws IOException, SVNException {
+    update(SvnPathIndex.load(directory, "42"));
+
+    SvnPathIndex index = SvnPathIndex.load(directory, "21");
+
+    assertThat(index.getIndexedRevision()).isZero();
+    assertThat(new File(directory, SvnPathIndex.FILE_NAME)).doesNotExist();
+  }
+
+  @Test
+  void shouldRecoverFromIncompleteRecord() throws IOException, SVNException {
+    update(SvnPathIndex.load(directory, "42"));
+    File file = new File(directory, SvnPathIndex.FILE_NAME);
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      randomAccessFile.setLength(file.length() - 2);
+    }
+
+    SvnPathIndex index = update(SvnPathIndex.load(directory, "42"));
+
+    assertThat(index.getIndexedRevision()).isEqualTo(5);
+    assertPage(index.getPage("trunk/a.txt", 5, 0, 0, -1), 3, 5, 2, 1);
+    assertPage(SvnPathIndex.load(directory, "42").getPage("trunk/a.txt", 5, 0, 0, -1), 3, 5, 2, 1);
+  }
+
+  @Test
+  void shouldApplyRecordsAppendedByOtherInstance() throws IOException, SVNException {
+    SvnPathIndex evicted = SvnPathIndex.load(directory, "42");
+    SvnPathIndex reloaded = SvnPathIndex.load(directory, "42");
+    evicted.update(repository, 3);
+
+    reloaded.update(repository, 5);
+
+    assertPage(reloaded.getPage("trunk/a.txt", 5, 0, 0, -1), 3, 5, 2, 1);
+    SvnPathIndex index = SvnPathIndex.load(directory, "42");
+    assertThat(index.getIndexedRevision()).isEqualTo(5);
+    assertPage(index.getPage("trunk/a.txt", 5, 0, 0, -1), 3, 5, 2, 1);
+    assertPage(index.getPage("branches/feature/a.txt", 5, 0, 0, -1), 2, 4, 3);
+  }
+
+  @Test
+  void shouldEstimateSize() throws IOException, SVNException {
+    SvnPathIndex index = SvnPathIndex.load(directory, "42");
+    long empty = index.getEstimatedSize();
+
+    update(index);
+
+    assertThat(index.getEstimatedSize()).isGreaterThan(empty);
+    assertThat(SvnPathIndex.load(directory, "42").getEstimatedSize()).isEqualTo(index.getEstimatedSize());
+  }
+
+  private SvnPathIndex update(SvnPathIndex index) throws IOException, SVNException {
+    index.update(repository, 5);
+    return index;
+  }
+
+  private void assertPage(SvnPathIndex.Page page, int total, long... revisions) {
+    assertThat(page.getTotal()).isEqualTo(total);
+    assertThat(page.getRevisions()).containsExactly(revisions);
+  }
+
+  private SVNLogEntry entry(long revision, String... changes) {
+    Map<String, SVNLogEntryPath> changedPaths = new LinkedHashMap<>();
+    for (String change : changes) {
+      String path = change.substring(2);
+      changedPaths.put(path, new SVNLogEntryPath(path, change.charAt(0), null, -1));
+    }
+    return new SVNLogEntry(changedPaths, revision, "trillian", new Date(), "change " + revision);
+  }
+}
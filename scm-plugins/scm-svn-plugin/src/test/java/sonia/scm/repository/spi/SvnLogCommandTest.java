@@ -31,6 +31,7 @@ import org.junit.Test;
 import sonia.scm.repository.Changeset;
 import sonia.scm.repository.ChangesetPagingResult;
 import sonia.scm.repository.Modifications;
+import sonia.scm.repository.SvnPathIndexCache;
 
 import java.util.stream.StreamSupport;
 
@@ -103,6 +104,51 @@ public class SvnLogCommandTest extends AbstractSvnCommandTestBase
     assertEquals("1", result.getChangesets().get(2).getId());
   }
 
+  @Test
+  public void testGetAllByPathFromPathIndex() {
+    LogCommandRequest request = new LogCommandRequest();
+
+    request.setPath("a.txt");
+
+    ChangesetPagingResult result = createIndexedCommand().getChangesets(request);
+
+    assertEquals(3, result.getTotal());
+    assertEquals(3, result.getChangesets().size());
+    assertEquals("5", result.getChangesets().get(0).getId());
+    assertEquals("3", result.getChangesets().get(1).getId());
+    assertEquals("1", result.getChangesets().get(2).getId());
+  }
+
+  @Test
+  public void testGetByPathWithPagingFromPathIndex() {
+    LogCommandRequest request = new LogCommandRequest();
+
+    request.setPath("a.txt");
+    request.setPagingStart(1);
+    request.setPagingLimit(1);
+
+    ChangesetPagingResult result = createIndexedCommand().getChangesets(request);
+
+    assertEquals(3, result.getTotal());
+    assertEquals(1, result.getChangesets().size());
+    assertEquals("3", result.getChangesets().get(0).getId());
+  }
+
+  @Test
+  public void testGetByPathWithPaging() {
+    LogCommandRequest request = new LogCommandRequest();
+
+    request.setPath("a.txt");
+    request.setPagingStart(1);
+    request.setPagingLimit(1);
+
+    ChangesetPagingResult result = createCommand().getChangesets(request);
+
+    assertEquals(3, result.getTotal());
+    assertEquals(1, result.getChangesets().size());
+    assertEquals("3", result.getChangesets().get(0).getId());
+  }
+
   @Test
   public void testGetAllWithLimit() {
     LogCommandRequest request = new LogCommandRequest();
@@ -203,4 +249,9 @@ public class SvnLogCommandTest extends AbstractSvnCommandTestBase
   {
     return new SvnLogCommand(createContext());
   }
+
+  private SvnLogCommand createIndexedCommand()
+  {
+    return new SvnLogCommand(new SvnContext(repository, repositoryDirectory, new SvnPathIndexCache()));
+  }
 }
@@ -0,0 +1,113 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sonia.scm.io.DeepCopy;
+import sonia.scm.repository.BlameLine;
+import sonia.scm.repository.BlameResult;
+import sonia.scm.repository.Changeset;
+import sonia.scm.repository.ChangesetPagingResult;
+import sonia.scm.repository.Person;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * Compares the structural copy of cached repository model types with the
+ * serialization based deep copy.
+ * <p>
+ * Run with {@code ./gradlew :scm-webapp:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CopyStrategyBenchmark {
+
+  @Param({"20", "100"})
+  private int size;
+
+  private ChangesetPagingResult changesets;
+  private BlameResult blame;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    List<Changeset> changesetList = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      Changeset changeset = new Changeset(
+        "changeset-" + i, System.currentTimeMillis(), new Person("trillian", "trillian@hitchhiker.com"),
+        "Change number " + i + " of the heart of gold"
+      );
+      changeset.setParents(singletonList("changeset-" + (i - 1)));
+      changeset.setBranches(singletonList("main"));
+      changesetList.add(changeset);
+    }
+    changesets = new ChangesetPagingResult(size, changesetList, "main");
+
+    List<BlameLine> lines = new ArrayList<>(size * 10);
+    for (int i = 0; i < size * 10; i++) {
+      lines.add(new BlameLine(i + 1, "changeset-" + i, System.currentTimeMillis(), new Person("dent"), "Change " + i, "line " + i));
+    }
+    blame = new BlameResult(lines);
+  }
+
+  @Benchmark
+  public ChangesetPagingResult structuralChangesets() {
+    return StructuralCopy.copy(changesets);
+  }
+
+  @Benchmark
+  public ChangesetPagingResult serializationChangesets() throws IOException {
+    return DeepCopy.copy(changesets);
+  }
+
+  @Benchmark
+  public BlameResult structuralBlame() {
+    return StructuralCopy.copy(blame);
+  }
+
+  @Benchmark
+  public BlameResult serializationBlame() throws IOException {
+    return DeepCopy.copy(blame);
+  }
+}
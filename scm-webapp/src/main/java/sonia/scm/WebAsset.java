@@ -0,0 +1,98 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * A static web resource, which is backed by a file. The asset holds the hash of its content and the precompressed
+ * variants of the file.
+ */
+final class WebAsset {
+
+  private final Path file;
+  private final String hash;
+  private final long length;
+  private final long lastModified;
+  private final String contentType;
+  private final Path gzip;
+  private final Path brotli;
+
+  @SuppressWarnings("java:S107") // a builder would be overkill for this internal class
+  WebAsset(Path file, String hash, long length, long lastModified, String contentType, Path gzip, Path brotli) {
+    this.file = file;
+    this.hash = hash;
+    this.length = length;
+    this.lastModified = lastModified;
+    this.contentType = contentType;
+    this.gzip = gzip;
+    this.brotli = brotli;
+  }
+
+  Path getFile() {
+    return file;
+  }
+
+  /**
+   * Returns the hash of the uncompressed content.
+   *
+   * @return hash of content
+   */
+  String getHash() {
+    return hash;
+  }
+
+  long getLength() {
+    return length;
+  }
+
+  long getLastModified() {
+    return lastModified;
+  }
+
+  String getContentType() {
+    return contentType;
+  }
+
+  Optional<Path> getGzip() {
+    return Optional.ofNullable(gzip);
+  }
+
+  Optional<Path> getBrotli() {
+    return Optional.ofNullable(brotli);
+  }
+
+  boolean isCompressed() {
+    return gzip != null || brotli != null;
+  }
+
+  /**
+   * Returns {@code true} if the asset was build from the file with the given length and modification time.
+   */
+  boolean isUpToDate(long length, long lastModified) {
+    return this.length == length && this.lastModified == lastModified;
+  }
+}
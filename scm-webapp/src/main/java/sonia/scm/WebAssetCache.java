@@ -0,0 +1,386 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.plugin.PluginLoader;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache for static web resources, which are backed by files. The cache computes the hash of the content and
+ * compresses the resource with gzip on the first access. The compressed files are stored by the hash of their content
+ * in the cache directory, so they survive restarts and are shared between equal resources. Precompressed files, which
+ * are placed beside the resource ({@code .gz} or {@code .br}), are used instead.
+ * <p>
+ * A compressed file is removed, if the last asset which references it is replaced. Compressed files of older versions,
+ * which have not been used for 30 days, are removed on startup.
+ *
+ * @since 2.15.0
+ */
+@Singleton
+public class WebAssetCache {
+
+  /**
+   * Name of the query parameter, which is used to version resources by their hash.
+   */
+  public static final String VERSION_PARAMETER = "v";
+
+  private static final Logger LOG = LoggerFactory.getLogger(WebAssetCache.class);
+
+  private static final int MIN_COMPRESSION_LENGTH = 512;
+  private static final int HASH_LENGTH = 20;
+  private static final long UNUSED_RETENTION = TimeUnit.DAYS.toMillis(30);
+
+  private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+  private static final Map<String, String> CONTENT_TYPES = ImmutableMap.<String, String>builder()
+    .put("js", "application/javascript")
+    .put("mjs", "application/javascript")
+    .put("map", "application/json")
+    .put("json", "application/json")
+    .put("css", "text/css")
+    .put("html", "text/html")
+    .put("txt", "text/plain")
+    .put("xml", "application/xml")
+    .put("svg", "image/svg+xml")
+    .put("ico", "image/x-icon")
+    .put("png", "image/png")
+    .put("jpg", "image/jpeg")
+    .put("jpeg", "image/jpeg")
+    .put("gif", "image/gif")
+    .put("woff", "font/woff")
+    .put("woff2", "font/woff2")
+    .put("ttf", "font/ttf")
+    .put("eot", "application/vnd.ms-fontobject")
+    .build();
+
+  private final ConcurrentMap<String, WebAsset> assets = new ConcurrentHashMap<>();
+  // number of assets, which reference a compressed file of the cache directory
+  private final Map<Path, Integer> references = new HashMap<>();
+
+  private final PluginLoader pluginLoader;
+  private final Path directory;
+
+  @Inject
+  public WebAssetCache(SCMContextProvider context, PluginLoader pluginLoader) {
+    this(pluginLoader, context.resolve(Paths.get("cache", "web-resources")));
+  }
+
+  @VisibleForTesting
+  WebAssetCache(PluginLoader pluginLoader, Path directory) {
+    this.pluginLoader = pluginLoader;
+    this.directory = directory;
+    prune();
+  }
+
+  private void prune() {
+    if (!Files.isDirectory(directory)) {
+      return;
+    }
+    long expired = System.currentTimeMillis() - UNUSED_RETENTION;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(".tmp") || (name.endsWith(".gz") && Files.getLastModifiedTime(file).toMillis() < expired)) {
+          LOG.debug("remove unused compressed web resource {}", file);
+          Files.deleteIfExists(file);
+        }
+      }
+    } catch (IOException ex) {
+      LOG.warn("failed to remove unused compressed web resources from {}", directory, ex);
+    }
+  }
+
+  /**
+   * Returns the path of the web resource with the hash of its content as version parameter. Resources with a version
+   * parameter, which matches the current content, are cached by the browser without revalidation. The path is
+   * returned unmodified, if the resource could not be found or is not backed by a file.
+   *
+   * @param path path of the web resource, relative to the context path
+   *
+   * @return versioned path
+   */
+  public String versioned(String path) {
+    String resourcePath = path.startsWith("/") ? path : "/" + path;
+    URL url = pluginLoader.getUberWebResourceLoader().getResource(resourcePath);
+    if (url != null) {
+      Optional<WebAsset> asset = get(url);
+      if (asset.isPresent()) {
+        return path + "?" + VERSION_PARAMETER + "=" + asset.get().getHash();
+      }
+    }
+    return path;
+  }
+
+  /**
+   * Returns the asset for the given url. An empty optional is returned, if the url is not backed by a regular file or
+   * the asset could not be created.
+   *
+   * @param url url of resource
+   *
+   * @return asset for url
+   */
+  Optional<WebAsset> get(URL url) {
+    Optional<Path> file = toFile(url);
+    if (!file.isPresent()) {
+      return Optional.empty();
+    }
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(file.get(), BasicFileAttributes.class);
+      if (!attributes.isRegularFile()) {
+        return Optional.empty();
+      }
+      long length = attributes.size();
+      long lastModified = attributes.lastModifiedTime().toMillis();
+
+      WebAsset asset = assets.get(url.toString());
+      if (asset == null || !asset.isUpToDate(length, lastModified)) {
+        asset = update(url.toString(), file.get(), length, lastModified);
+      }
+      return Optional.ofNullable(asset);
+    } catch (IOException ex) {
+      LOG.debug("could not read attributes of web resource {}", url, ex);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Creates the asset outside of the map, because hashing and compressing could take a while and would block other
+   * updates of the map. If the asset is created concurrently by another request, the first one wins.
+   */
+  private WebAsset update(String key, Path file, long length, long lastModified) {
+    WebAsset created = create(file, length, lastModified);
+    WebAsset[] replaced = new WebAsset[1];
+    WebAsset asset = assets.compute(key, (k, current) -> {
+      if (current != null && current.isUpToDate(length, lastModified)) {
+        return current;
+      }
+      replaced[0] = current;
+      return created;
+    });
+    if (asset != created) {
+      release(created);
+    }
+    release(replaced[0]);
+    return asset;
+  }
+
+  private Optional<Path> toFile(URL url) {
+    if (!"file".equals(url.getProtocol())) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(Paths.get(url.toURI()));
+    } catch (URISyntaxException | IllegalArgumentException ex) {
+      LOG.debug("could not convert url {} to path", url, ex);
+      return Optional.empty();
+    }
+  }
+
+  private WebAsset create(Path file, long length, long lastModified) {
+    try {
+      long start = System.nanoTime();
+      String hash = hash(file);
+      String contentType = contentType(file);
+
+      Path gzip = null;
+      Path brotli = null;
+      if (isCompressible(contentType) && length >= MIN_COMPRESSION_LENGTH) {
+        gzip = precompressed(file, ".gz", lastModified).orElseGet(() -> gzip(file, hash));
+        brotli = precompressed(file, ".br", lastModified).orElse(null);
+      }
+
+      LOG.debug("created web asset for {} in {}ms", file, (System.nanoTime() - start) / 1_000_000);
+      return new WebAsset(file, hash, length, lastModified, contentType, gzip, brotli);
+    } catch (IOException ex) {
+      LOG.warn("failed to create web asset for {}", file, ex);
+      return null;
+    }
+  }
+
+  @SuppressWarnings("UnstableApiUsage")
+  private String hash(Path file) throws IOException {
+    return com.google.common.io.Files.asByteSource(file.toFile())
+      .hash(Hashing.sha256())
+      .toString()
+      .substring(0, HASH_LENGTH);
+  }
+
+  private Optional<Path> precompressed(Path file, String extension, long lastModified) {
+    Path precompressed = file.resolveSibling(file.getFileName().toString() + extension);
+    try {
+      if (Files.isRegularFile(precompressed) && Files.getLastModifiedTime(precompressed).toMillis() >= lastModified) {
+        LOG.trace("use precompressed file {}", precompressed);
+        return Optional.of(precompressed);
+      }
+    } catch (IOException ex) {
+      LOG.debug("could not read precompressed file {}", precompressed, ex);
+    }
+    return Optional.empty();
+  }
+
+  private Path gzip(Path file, String hash) {
+    Path gzip = directory.resolve(hash + ".gz");
+    if (acquire(gzip)) {
+      return gzip;
+    }
+    try {
+      Files.createDirectories(directory);
+      Path temp = Files.createTempFile(directory, hash, ".tmp");
+      try {
+        try (OutputStream output = new BestCompressionGZIPOutputStream(Files.newOutputStream(temp))) {
+          Files.copy(file, output);
+        }
+        synchronized (references) {
+          Files.move(temp, gzip, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+          references.merge(gzip, 1, Integer::sum);
+        }
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+      LOG.debug("compressed {} from {} to {} bytes", file, Files.size(file), Files.size(gzip));
+      return gzip;
+    } catch (IOException ex) {
+      LOG.warn("failed to compress web resource {}", file, ex);
+      return null;
+    }
+  }
+
+  /**
+   * Adds a reference to an existing compressed file. The modification time of files from a previous run is updated, to
+   * mark them as used for the pruning on startup.
+   *
+   * @return {@code true} if the file exists
+   */
+  private boolean acquire(Path gzip) {
+    synchronized (references) {
+      Integer count = references.get(gzip);
+      if (count == null) {
+        if (!Files.exists(gzip)) {
+          return false;
+        }
+        touch(gzip);
+        count = 0;
+      }
+      references.put(gzip, count + 1);
+      return true;
+    }
+  }
+
+  private void touch(Path gzip) {
+    try {
+      Files.setLastModifiedTime(gzip, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (IOException ex) {
+      LOG.debug("could not update modification time of {}", gzip, ex);
+    }
+  }
+
+  /**
+   * Removes the reference of the asset to its compressed file and deletes the file, if it is no longer referenced.
+   */
+  private void release(WebAsset asset) {
+    if (asset == null || !asset.getGzip().isPresent() || !asset.getGzip().get().startsWith(directory)) {
+      return;
+    }
+    Path gzip = asset.getGzip().get();
+    synchronized (references) {
+      Integer count = references.get(gzip);
+      if (count == null) {
+        return;
+      }
+      if (count > 1) {
+        references.put(gzip, count - 1);
+      } else {
+        references.remove(gzip);
+        try {
+          LOG.debug("remove compressed web resource {}, which is no longer used", gzip);
+          Files.deleteIfExists(gzip);
+        } catch (IOException ex) {
+          LOG.debug("could not remove compressed web resource {}", gzip, ex);
+        }
+      }
+    }
+  }
+
+  private String contentType(Path file) {
+    String name = file.getFileName().toString();
+    int index = name.lastIndexOf('.');
+    if (index >= 0) {
+      String contentType = CONTENT_TYPES.get(name.substring(index + 1).toLowerCase(Locale.ENGLISH));
+      if (contentType != null) {
+        return contentType;
+      }
+    }
+    String contentType = URLConnection.getFileNameMap().getContentTypeFor(name);
+    return contentType != null ? contentType : DEFAULT_CONTENT_TYPE;
+  }
+
+  private boolean isCompressible(String contentType) {
+    return contentType.startsWith("text/")
+      || contentType.equals("application/javascript")
+      || contentType.equals("application/json")
+      || contentType.equals("application/xml")
+      || contentType.equals("image/svg+xml")
+      || contentType.equals("image/x-icon")
+      || contentType.equals("font/ttf")
+      || contentType.equals("application/vnd.ms-fontobject");
+  }
+
+  private static class BestCompressionGZIPOutputStream extends GZIPOutputStream {
+
+    // the resource is only compressed once, so we can afford the best compression
+    BestCompressionGZIPOutputStream(OutputStream out) throws IOException {
+      super(out, 65536);
+      def.setLevel(Deflater.BEST_COMPRESSION);
+    }
+  }
+}
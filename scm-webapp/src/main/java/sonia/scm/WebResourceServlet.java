@@ -40,10 +40,20 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
 
 /**
- * WebResourceServlet serves resources from the {@link UberWebResourceLoader}.
+ * WebResourceServlet serves resources from the {@link UberWebResourceLoader}. Resources which are backed by files are
+ * served from the {@link WebAssetCache} with their precompressed variants and strong etags. Resources which are
+ * requested with the hash of their content as version parameter, are cached by the browser without revalidation.
  *
  * @since 2.0.0
  */
@@ -66,6 +76,12 @@ public class WebResourceServlet extends HttpServlet {
 
   private static final Logger LOG = LoggerFactory.getLogger(WebResourceServlet.class);
 
+  private static final String CACHE_CONTROL_IMMUTABLE = "public, max-age=31536000, immutable";
+  private static final String CACHE_CONTROL_NO_CACHE = "no-cache";
+
+  private static final String ENCODING_GZIP = "gzip";
+  private static final String ENCODING_BROTLI = "br";
+
   private final WebResourceSender sender = WebResourceSender.create()
     .withGZIP()
     .withGZIPMinLength(512)
@@ -74,11 +90,13 @@ public class WebResourceServlet extends HttpServlet {
 
   private final UberWebResourceLoader webResourceLoader;
   private final PushStateDispatcher pushStateDispatcher;
+  private final WebAssetCache assetCache;
 
   @Inject
-  public WebResourceServlet(PluginLoader pluginLoader, PushStateDispatcher dispatcher) {
+  public WebResourceServlet(PluginLoader pluginLoader, PushStateDispatcher dispatcher, WebAssetCache assetCache) {
     this.webResourceLoader = pluginLoader.getUberWebResourceLoader();
     this.pushStateDispatcher = dispatcher;
+    this.assetCache = assetCache;
   }
 
   @Override
@@ -111,12 +129,127 @@ public class WebResourceServlet extends HttpServlet {
 
   private void serveResource(HttpServletRequest request, HttpServletResponse response, URL url) {
     try {
-      LOG.debug("using sender to serve {}", request.getRequestURI());
-      sender.resource(url).send(request, response);
+      Optional<WebAsset> asset = assetCache.get(url);
+      if (asset.isPresent()) {
+        LOG.debug("serve {} as asset", request.getRequestURI());
+        serveAsset(request, response, asset.get());
+      } else {
+        LOG.debug("using sender to serve {}", request.getRequestURI());
+        sender.resource(url).send(request, response);
+      }
     } catch (IOException ex) {
       LOG.warn("failed to serve resource: {}", url);
       response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
     }
   }
 
+  private void serveAsset(HttpServletRequest request, HttpServletResponse response, WebAsset asset) throws IOException {
+    String acceptEncoding = request.getHeader("Accept-Encoding");
+    Path file = asset.getFile();
+    String encoding = null;
+    if (asset.getBrotli().isPresent() && accepts(acceptEncoding, ENCODING_BROTLI)) {
+      file = asset.getBrotli().get();
+      encoding = ENCODING_BROTLI;
+    } else if (asset.getGzip().isPresent() && accepts(acceptEncoding, ENCODING_GZIP)) {
+      file = asset.getGzip().get();
+      encoding = ENCODING_GZIP;
+    }
+
+    FileChannel channel;
+    try {
+      channel = FileChannel.open(file, StandardOpenOption.READ);
+    } catch (NoSuchFileException ex) {
+      if (encoding == null) {
+        throw ex;
+      }
+      // the compressed file could be removed by the cache, because the asset was replaced after we got it
+      LOG.debug("compressed file {} was removed, serve uncompressed file", file);
+      encoding = null;
+      channel = FileChannel.open(asset.getFile(), StandardOpenOption.READ);
+    }
+
+    try (FileChannel opened = channel) {
+      sendAsset(request, response, asset, opened, encoding);
+    }
+  }
+
+  private void sendAsset(HttpServletRequest request, HttpServletResponse response, WebAsset asset, FileChannel channel, String encoding) throws IOException {
+    // every representation needs its own strong etag
+    String etag = "\"" + asset.getHash() + (encoding != null ? "-" + encoding : "") + "\"";
+    response.setHeader("ETag", etag);
+    response.setDateHeader("Last-Modified", asset.getLastModified());
+    response.setHeader("Cache-Control", isVersioned(request, asset) ? CACHE_CONTROL_IMMUTABLE : CACHE_CONTROL_NO_CACHE);
+    if (asset.isCompressed()) {
+      response.setHeader("Vary", "Accept-Encoding");
+    }
+
+    if (isNotModified(request, asset, etag)) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    response.setContentType(asset.getContentType());
+    if (encoding != null) {
+      response.setHeader("Content-Encoding", encoding);
+    }
+    long size = channel.size();
+    response.setContentLengthLong(size);
+    transfer(channel, size, response.getOutputStream());
+  }
+
+  private void transfer(FileChannel channel, long size, OutputStream output) throws IOException {
+    WritableByteChannel target = Channels.newChannel(output);
+    long position = 0;
+    while (position < size) {
+      position += channel.transferTo(position, size - position, target);
+    }
+  }
+
+  private boolean isVersioned(HttpServletRequest request, WebAsset asset) {
+    return asset.getHash().equals(request.getParameter(WebAssetCache.VERSION_PARAMETER));
+  }
+
+  private boolean isNotModified(HttpServletRequest request, WebAsset asset, String etag) {
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {
+      for (String tag : ifNoneMatch.split(",")) {
+        // if-none-match uses the weak comparison, proxies could have marked our etag as weak
+        String trimmed = tag.trim().replaceFirst("^W/", "");
+        if (trimmed.equals("*") || trimmed.equals(etag)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+    return ifModifiedSince >= 0 && asset.getLastModified() / 1000 <= ifModifiedSince / 1000;
+  }
+
+  private boolean accepts(String acceptEncoding, String encoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String part : acceptEncoding.split(",")) {
+      String[] values = part.trim().split(";");
+      if (values[0].trim().equalsIgnoreCase(encoding)) {
+        return !isDisabled(values);
+      }
+    }
+    return false;
+  }
+
+  private boolean isDisabled(String[] values) {
+    for (int i = 1; i < values.length; i++) {
+      String parameter = values[i].trim().replace(" ", "");
+      if (parameter.startsWith("q=")) {
+        try {
+          return Double.parseDouble(parameter.substring(2)) <= 0;
+        } catch (NumberFormatException ex) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
 }
@@ -42,6 +42,8 @@ public class DiffResultDto extends HalRepresentation {
   }
 
   private List<FileDto> files;
+  private boolean partial;
+  private boolean truncated;
 
   @Data
   @EqualsAndHashCode(callSuper = false)
@@ -63,6 +65,7 @@ public class DiffResultDto extends HalRepresentation {
     private String type;
     private String language;
     private List<HunkDto> hunks;
+    private boolean truncated;
 
   }
 
@@ -24,7 +24,10 @@
 
 package sonia.scm.api.v2.resources;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.sdorra.spotter.Language;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.inject.Inject;
 import de.otto.edison.hal.Links;
 import sonia.scm.api.v2.ContentTypeResolver;
@@ -34,124 +37,269 @@ import sonia.scm.repository.api.DiffLine;
 import sonia.scm.repository.api.DiffResult;
 import sonia.scm.repository.api.Hunk;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.OptionalInt;
 
+import static de.otto.edison.hal.Link.link;
 import static de.otto.edison.hal.Link.linkBuilder;
 import static de.otto.edison.hal.Links.linkingTo;
 
 /**
+ * Maps a {@link DiffResult} to a {@link DiffResultDto}. The number of mapped lines is limited per file
+ * ({@value #PROPERTY_MAX_LINES_PER_FILE}) and for the whole result ({@value #PROPERTY_MAX_LINES}). Files which exceed
+ * the limit are marked as truncated. If the limit of the whole result is reached, the remaining files are omitted and
+ * can be fetched with the "next" link.
+ *
  * TODO conflicts
  */
 class DiffResultToDiffResultDtoMapper {
 
+  static final String PROPERTY_MAX_LINES_PER_FILE = "scm.diff.maxLinesPerFile";
+  static final String PROPERTY_MAX_LINES = "scm.diff.maxLines";
+
+  private static final int DEFAULT_MAX_LINES_PER_FILE = 10000;
+  private static final int DEFAULT_MAX_LINES = 100000;
+
   private final ResourceLinks resourceLinks;
+  private final int maxLinesPerFile;
+  private final int maxLines;
 
   @Inject
   DiffResultToDiffResultDtoMapper(ResourceLinks resourceLinks) {
+    this(
+      resourceLinks,
+      Integer.getInteger(PROPERTY_MAX_LINES_PER_FILE, DEFAULT_MAX_LINES_PER_FILE),
+      Integer.getInteger(PROPERTY_MAX_LINES, DEFAULT_MAX_LINES)
+    );
+  }
+
+  @VisibleForTesting
+  DiffResultToDiffResultDtoMapper(ResourceLinks resourceLinks, int maxLinesPerFile, int maxLines) {
     this.resourceLinks = resourceLinks;
+    this.maxLinesPerFile = maxLinesPerFile;
+    this.maxLines = maxLines;
   }
 
   public DiffResultDto mapForIncoming(Repository repository, DiffResult result, String source, String target) {
-    DiffResultDto dto = new DiffResultDto(linkingTo().self(resourceLinks.incoming().diffParsed(repository.getNamespace(), repository.getName(), source, target)).build());
-    setFiles(result, dto, repository, source);
-    return dto;
+    return streamForIncoming(repository, result, source, target).toDto();
   }
 
   public DiffResultDto mapForRevision(Repository repository, DiffResult result, String revision) {
-    DiffResultDto dto = new DiffResultDto(linkingTo().self(resourceLinks.diff().parsed(repository.getNamespace(), repository.getName(), revision)).build());
-    setFiles(result, dto, repository, revision);
-    return dto;
+    return streamForRevision(repository, result, revision).toDto();
   }
 
-  private void setFiles(DiffResult result, DiffResultDto dto, Repository repository, String revision) {
-    List<DiffResultDto.FileDto> files = new ArrayList<>();
-    for (DiffFile file : result) {
-      files.add(mapFile(file, repository, revision));
-    }
-    dto.setFiles(files);
+  /**
+   * Returns a mapping of the result for the incoming diff, which maps the files only while they are written.
+   */
+  public MappedDiffResult streamForIncoming(Repository repository, DiffResult result, String source, String target) {
+    String self = resourceLinks.incoming().diffParsed(repository.getNamespace(), repository.getName(), source, target);
+    return new MappedDiffResult(repository, result, source, self);
+  }
+
+  /**
+   * Returns a mapping of the result for the diff of a revision, which maps the files only while they are written.
+   */
+  public MappedDiffResult streamForRevision(Repository repository, DiffResult result, String revision) {
+    String self = resourceLinks.diff().parsed(repository.getNamespace(), repository.getName(), revision);
+    return new MappedDiffResult(repository, result, revision, self);
+  }
+
+  private interface FileConsumer {
+    void accept(DiffResultDto.FileDto file) throws IOException;
   }
 
-  private DiffResultDto.FileDto mapFile(DiffFile file, Repository repository, String revision) {
-    Links.Builder links = linkingTo();
-    if (file.iterator().hasNext()) {
-      links.single(linkBuilder("lines", resourceLinks.source().content(repository.getNamespace(), repository.getName(), revision, file.getNewPath()) + "?start={start}&end={end}").build());
+  /**
+   * A diff result, which is mapped file by file. The files can either be collected into a {@link DiffResultDto} or
+   * written one after another as json, so that only a single file has to be kept in memory. The files of the result
+   * can only be iterated once.
+   */
+  class MappedDiffResult {
+
+    private final Repository repository;
+    private final DiffResult result;
+    private final String revision;
+    private final String self;
+
+    private int remainingLines = maxLines;
+    private int fileCount = 0;
+    private boolean partial = false;
+    private boolean truncated = false;
+
+    private MappedDiffResult(Repository repository, DiffResult result, String revision, String self) {
+      this.repository = repository;
+      this.result = result;
+      this.revision = revision;
+      this.self = self;
     }
-    DiffResultDto.FileDto dto = new DiffResultDto.FileDto(links.build());
-    // ???
-    dto.setOldEndingNewLine(true);
-    dto.setNewEndingNewLine(true);
-
-    String newPath = file.getNewPath();
-    String oldPath = file.getOldPath();
-
-    String path;
-    switch (file.getChangeType()) {
-      case ADD:
-        path = newPath;
-        dto.setType("add");
-        break;
-      case DELETE:
-        path = oldPath;
-        dto.setType("delete");
-        break;
-      case RENAME:
-        path = newPath;
-        dto.setType("rename");
-        break;
-      case MODIFY:
-        path = newPath;
-        dto.setType("modify");
-        break;
-      case COPY:
-        path = newPath;
-        dto.setType("copy");
-        break;
-      default:
-        throw new IllegalArgumentException("unknown change type: " + file.getChangeType());
+
+    DiffResultDto toDto() {
+      List<DiffResultDto.FileDto> files = new ArrayList<>();
+      try {
+        forEachFile(files::add);
+      } catch (IOException ex) {
+        throw new IllegalStateException("collecting files should not fail", ex);
+      }
+      DiffResultDto dto = new DiffResultDto(createLinks());
+      dto.setFiles(files);
+      dto.setPartial(partial);
+      dto.setTruncated(truncated);
+      return dto;
     }
 
-    dto.setNewPath(newPath);
-    dto.setNewRevision(file.getNewRevision());
+    void write(ObjectMapper objectMapper, OutputStream output) throws IOException {
+      try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("files");
+        forEachFile(file -> {
+          generator.writeObject(file);
+          generator.flush();
+        });
+        generator.writeEndArray();
+        generator.writeBooleanField("partial", partial);
+        generator.writeBooleanField("truncated", truncated);
+        generator.writeObjectField("_links", createLinks());
+        generator.writeEndObject();
+      }
+    }
 
-    dto.setOldPath(oldPath);
-    dto.setOldRevision(file.getOldRevision());
+    private void forEachFile(FileConsumer consumer) throws IOException {
+      Iterator<DiffFile> files = result.iterator();
+      while (files.hasNext()) {
+        if (remainingLines <= 0) {
+          partial = true;
+          return;
+        }
+        consumer.accept(mapFile(files.next()));
+        fileCount++;
+      }
+      partial = result.isPartial();
+    }
 
+    private Links createLinks() {
+      Links.Builder links = linkingTo().self(self);
+      if (partial) {
+        int nextOffset = result.getOffset() + fileCount;
+        String limit = result.getLimit().map(value -> "&limit=" + value).orElse("");
+        links.single(link("next", self + "?offset=" + nextOffset + limit));
+      }
+      return links.build();
+    }
+
+    private DiffResultDto.FileDto mapFile(DiffFile file) {
+      Iterator<Hunk> hunks = file.iterator();
+      Links.Builder links = linkingTo();
+      if (hunks.hasNext()) {
+        links.single(linkBuilder("lines", resourceLinks.source().content(repository.getNamespace(), repository.getName(), revision, file.getNewPath()) + "?start={start}&end={end}").build());
+      }
+      DiffResultDto.FileDto dto = new DiffResultDto.FileDto(links.build());
+      // ???
+      dto.setOldEndingNewLine(true);
+      dto.setNewEndingNewLine(true);
+
+      String newPath = file.getNewPath();
+      String oldPath = file.getOldPath();
+
+      String path;
+      switch (file.getChangeType()) {
+        case ADD:
+          path = newPath;
+          dto.setType("add");
+          break;
+        case DELETE:
+          path = oldPath;
+          dto.setType("delete");
+          break;
+        case RENAME:
+          path = newPath;
+          dto.setType("rename");
+          break;
+        case MODIFY:
+          path = newPath;
+          dto.setType("modify");
+          break;
+        case COPY:
+          path = newPath;
+          dto.setType("copy");
+          break;
+        default:
+          throw new IllegalArgumentException("unknown change type: " + file.getChangeType());
+      }
+
+      dto.setNewPath(newPath);
+      dto.setNewRevision(file.getNewRevision());
 
-    Optional<Language> language = ContentTypeResolver.resolve(path).getLanguage();
-    language.ifPresent(value -> dto.setLanguage(ProgrammingLanguages.getValue(value)));
+      dto.setOldPath(oldPath);
+      dto.setOldRevision(file.getOldRevision());
 
-    List<DiffResultDto.HunkDto> hunks = new ArrayList<>();
-    for (Hunk hunk : file) {
-      hunks.add(mapHunk(hunk));
+
+      Optional<Language> language = ContentTypeResolver.resolve(path).getLanguage();
+      language.ifPresent(value -> dto.setLanguage(ProgrammingLanguages.getValue(value)));
+
+      LineBudget budget = new LineBudget();
+      List<DiffResultDto.HunkDto> hunkDtos = new ArrayList<>();
+      while (hunks.hasNext()) {
+        if (budget.isExhausted()) {
+          markTruncated(dto);
+          break;
+        }
+        hunkDtos.add(mapHunk(hunks.next(), budget, dto));
+      }
+      dto.setHunks(hunkDtos);
+
+      return dto;
     }
-    dto.setHunks(hunks);
 
-    return dto;
-  }
+    private DiffResultDto.HunkDto mapHunk(Hunk hunk, LineBudget budget, DiffResultDto.FileDto file) {
+      DiffResultDto.HunkDto dto = new DiffResultDto.HunkDto();
+      dto.setContent(hunk.getRawHeader());
 
-  private DiffResultDto.HunkDto mapHunk(Hunk hunk) {
-    DiffResultDto.HunkDto dto = new DiffResultDto.HunkDto();
-    dto.setContent(hunk.getRawHeader());
+      dto.setNewStart(hunk.getNewStart());
+      dto.setNewLines(hunk.getNewLineCount());
 
-    dto.setNewStart(hunk.getNewStart());
-    dto.setNewLines(hunk.getNewLineCount());
+      dto.setOldStart(hunk.getOldStart());
+      dto.setOldLines(hunk.getOldLineCount());
 
-    dto.setOldStart(hunk.getOldStart());
-    dto.setOldLines(hunk.getOldLineCount());
+      List<DiffResultDto.ChangeDto> changes = new ArrayList<>();
+      for (DiffLine line : hunk) {
+        if (budget.isExhausted()) {
+          markTruncated(file);
+          break;
+        }
+        changes.add(mapLine(line));
+        budget.consume();
+      }
 
-    List<DiffResultDto.ChangeDto> changes = new ArrayList<>();
-    for (DiffLine line : hunk) {
-      changes.add(mapLine(line));
+      dto.setChanges(changes);
+      return dto;
     }
 
-    dto.setChanges(changes);
-    return dto;
+    private void markTruncated(DiffResultDto.FileDto file) {
+      file.setTruncated(true);
+      truncated = true;
+    }
+
+    private class LineBudget {
+
+      private int fileLines = 0;
+
+      boolean isExhausted() {
+        return fileLines >= maxLinesPerFile || remainingLines <= 0;
+      }
+
+      void consume() {
+        fileLines++;
+        remainingLines--;
+      }
+    }
   }
 
-  private DiffResultDto.ChangeDto mapLine(DiffLine line) {
+  private static DiffResultDto.ChangeDto mapLine(DiffLine line) {
     DiffResultDto.ChangeDto dto = new DiffResultDto.ChangeDto();
     dto.setContent(line.getContent());
 
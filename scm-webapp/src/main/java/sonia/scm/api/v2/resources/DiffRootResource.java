@@ -24,6 +24,7 @@
     
 package sonia.scm.api.v2.resources;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -39,6 +40,7 @@ import sonia.scm.util.HttpUtil;
 import sonia.scm.web.VndMediaType;
 
 import javax.inject.Inject;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.Pattern;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
@@ -58,11 +60,13 @@ public class DiffRootResource {
 
   private final RepositoryServiceFactory serviceFactory;
   private final DiffResultToDiffResultDtoMapper parsedDiffMapper;
+  private final ObjectMapper objectMapper;
 
   @Inject
-  public DiffRootResource(RepositoryServiceFactory serviceFactory, DiffResultToDiffResultDtoMapper parsedDiffMapper) {
+  public DiffRootResource(RepositoryServiceFactory serviceFactory, DiffResultToDiffResultDtoMapper parsedDiffMapper, ObjectMapper objectMapper) {
     this.serviceFactory = serviceFactory;
     this.parsedDiffMapper = parsedDiffMapper;
+    this.objectMapper = objectMapper;
   }
 
 
@@ -115,7 +119,7 @@ public class DiffRootResource {
   @GET
   @Path("{revision}/parsed")
   @Produces(VndMediaType.DIFF_PARSED)
-  @Operation(summary = "Parsed diff by revision", description = "Get the parsed repository diff of a revision.", tags = "Repository")
+  @Operation(summary = "Parsed diff by revision", description = "Get the parsed repository diff of a revision. Large diffs are truncated and can be fetched page by page with offset and limit.", tags = "Repository")
   @ApiResponse(
     responseCode = "200",
     description = "success",
@@ -142,11 +146,32 @@ public class DiffRootResource {
       schema = @Schema(implementation = ErrorDto.class)
     )
   )
-  public DiffResultDto getParsed(@PathParam("namespace") String namespace, @PathParam("name") String name, @PathParam("revision") String revision) throws IOException {
+  public Response getParsed(@PathParam("namespace") String namespace,
+                            @PathParam("name") String name,
+                            @PathParam("revision") String revision,
+                            @Min(0) @DefaultValue("0") @QueryParam("offset") int offset,
+                            @Min(1) @QueryParam("limit") Integer limit) throws IOException {
     HttpUtil.checkForCRLFInjection(revision);
-    try (RepositoryService repositoryService = serviceFactory.create(new NamespaceAndName(namespace, name))) {
-      DiffResult diffResult = repositoryService.getDiffResultCommand().setRevision(revision).getDiffResult();
-      return parsedDiffMapper.mapForRevision(repositoryService.getRepository(), diffResult, revision);
+    RepositoryService repositoryService = serviceFactory.create(new NamespaceAndName(namespace, name));
+    try {
+      DiffResult diffResult = repositoryService.getDiffResultCommand()
+        .setRevision(revision)
+        .setOffset(offset)
+        .setLimit(limit)
+        .getDiffResult();
+      DiffResultToDiffResultDtoMapper.MappedDiffResult mappedDiffResult =
+        parsedDiffMapper.streamForRevision(repositoryService.getRepository(), diffResult, revision);
+      // the files are mapped while they are written, so the repository service is closed after the response is written
+      return Response.ok((StreamingOutput) output -> {
+        try {
+          mappedDiffResult.write(objectMapper, output);
+        } finally {
+          repositoryService.close();
+        }
+      }).build();
+    } catch (IOException | RuntimeException ex) {
+      repositoryService.close();
+      throw ex;
     }
   }
 }
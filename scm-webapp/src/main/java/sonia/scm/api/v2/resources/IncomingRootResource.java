@@ -24,6 +24,7 @@
     
 package sonia.scm.api.v2.resources;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -43,6 +44,7 @@ import sonia.scm.repository.api.RepositoryServiceFactory;
 import sonia.scm.util.HttpUtil;
 import sonia.scm.web.VndMediaType;
 
+import javax.validation.constraints.Min;
 import javax.validation.constraints.Pattern;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
@@ -63,12 +65,14 @@ public class IncomingRootResource {
 
   private final IncomingChangesetCollectionToDtoMapper changesetMapper;
   private final DiffResultToDiffResultDtoMapper parsedDiffMapper;
+  private final ObjectMapper objectMapper;
 
   @Inject
-  public IncomingRootResource(RepositoryServiceFactory serviceFactory, IncomingChangesetCollectionToDtoMapper incomingChangesetCollectionToDtoMapper, DiffResultToDiffResultDtoMapper parsedDiffMapper) {
+  public IncomingRootResource(RepositoryServiceFactory serviceFactory, IncomingChangesetCollectionToDtoMapper incomingChangesetCollectionToDtoMapper, DiffResultToDiffResultDtoMapper parsedDiffMapper, ObjectMapper objectMapper) {
     this.serviceFactory = serviceFactory;
     this.changesetMapper = incomingChangesetCollectionToDtoMapper;
     this.parsedDiffMapper = parsedDiffMapper;
+    this.objectMapper = objectMapper;
   }
 
   /**
@@ -242,15 +246,32 @@ public class IncomingRootResource {
   public Response incomingDiffParsed(@PathParam("namespace") String namespace,
                             @PathParam("name") String name,
                             @PathParam("source") String source,
-                            @PathParam("target") String target) throws IOException {
+                            @PathParam("target") String target,
+                            @Min(0) @DefaultValue("0") @QueryParam("offset") int offset,
+                            @Min(1) @QueryParam("limit") Integer limit) throws IOException {
     HttpUtil.checkForCRLFInjection(source);
     HttpUtil.checkForCRLFInjection(target);
-    try (RepositoryService repositoryService = serviceFactory.create(new NamespaceAndName(namespace, name))) {
+    RepositoryService repositoryService = serviceFactory.create(new NamespaceAndName(namespace, name));
+    try {
       DiffResult diffResult = repositoryService.getDiffResultCommand()
         .setRevision(source)
         .setAncestorChangeset(target)
+        .setOffset(offset)
+        .setLimit(limit)
         .getDiffResult();
-      return Response.ok(parsedDiffMapper.mapForIncoming(repositoryService.getRepository(), diffResult, source, target)).build();
+      DiffResultToDiffResultDtoMapper.MappedDiffResult mappedDiffResult =
+        parsedDiffMapper.streamForIncoming(repositoryService.getRepository(), diffResult, source, target);
+      // the files are mapped while they are written, so the repository service is closed after the response is written
+      return Response.ok((StreamingOutput) output -> {
+        try {
+          mappedDiffResult.write(objectMapper, output);
+        } finally {
+          repositoryService.close();
+        }
+      }).build();
+    } catch (IOException | RuntimeException ex) {
+      repositoryService.close();
+      throw ex;
     }
   }
 }
@@ -45,6 +45,8 @@ public class RepositoryExportInformationDto extends HalRepresentation {
   private boolean compressed;
   private boolean encrypted;
   private ExportStatus status;
+  private long bytesWritten;
+  private long throughput;
 
   RepositoryExportInformationDto(Links links) {
     super(links);
@@ -34,7 +34,6 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
 import sonia.scm.BadRequestException;
 import sonia.scm.ConcurrentModificationException;
 import sonia.scm.NotFoundException;
@@ -43,6 +42,7 @@ import sonia.scm.importexport.ExportFileExtensionResolver;
 import sonia.scm.importexport.ExportService;
 import sonia.scm.importexport.FullScmRepositoryExporter;
 import sonia.scm.importexport.RepositoryImportExportEncryption;
+import sonia.scm.io.ParallelGzipOutputStream;
 import sonia.scm.repository.NamespaceAndName;
 import sonia.scm.repository.Repository;
 import sonia.scm.repository.RepositoryManager;
@@ -486,9 +486,9 @@ public class RepositoryExportResource {
 
   private void bundleRepository(OutputStream os, boolean compressed, BundleCommandBuilder bundleCommand) throws IOException {
     if (compressed) {
-      GzipCompressorOutputStream gzipCompressorOutputStream = new GzipCompressorOutputStream(os);
-      bundleCommand.bundle(gzipCompressorOutputStream);
-      gzipCompressorOutputStream.finish();
+      ParallelGzipOutputStream gzipOutputStream = new ParallelGzipOutputStream(os);
+      bundleCommand.bundle(gzipOutputStream);
+      gzipOutputStream.finish();
     } else {
       bundleCommand.bundle(os);
     }
@@ -26,6 +26,7 @@ package sonia.scm.api.v2.resources;
 
 import com.google.common.base.Strings;
 import de.otto.edison.hal.Links;
+import sonia.scm.WebAssetCache;
 import sonia.scm.plugin.InstalledPlugin;
 import sonia.scm.util.HttpUtil;
 
@@ -42,11 +43,13 @@ public class UIPluginDtoMapper {
 
   private final ResourceLinks resourceLinks;
   private final HttpServletRequest request;
+  private final WebAssetCache assetCache;
 
   @Inject
-  public UIPluginDtoMapper(ResourceLinks resourceLinks, HttpServletRequest request) {
+  public UIPluginDtoMapper(ResourceLinks resourceLinks, HttpServletRequest request, WebAssetCache assetCache) {
     this.resourceLinks = resourceLinks;
     this.request = request;
+    this.assetCache = assetCache;
   }
 
   public UIPluginDto map(InstalledPlugin plugin) {
@@ -68,6 +71,7 @@ public class UIPluginDtoMapper {
     Set<String> scriptResources = wrapper.getDescriptor().getResources().getScriptResources();
     if (scriptResources != null) {
       return scriptResources.stream()
+        .map(assetCache::versioned)
         .map(this::addContextPath)
         .collect(Collectors.toSet());
     }
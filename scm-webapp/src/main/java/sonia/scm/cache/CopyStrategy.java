@@ -124,7 +124,9 @@ public enum CopyStrategy
   //~--- methods --------------------------------------------------------------
 
   /**
-   * Method description
+   * Creates a copy of the given object. Known repository model types are
+   * copied structurally, all other objects are copied with a serialization
+   * round trip.
    *
    *
    * @param object
@@ -134,6 +136,11 @@ public enum CopyStrategy
    */
   private <T> T deepCopy(T object)
   {
+    if (StructuralCopy.isSupported(object))
+    {
+      return StructuralCopy.copy(object);
+    }
+
     T copy = null;
 
     try
@@ -0,0 +1,172 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.cache;
+
+import sonia.scm.repository.BlameLine;
+import sonia.scm.repository.BlameResult;
+import sonia.scm.repository.BrowserResult;
+import sonia.scm.repository.Changeset;
+import sonia.scm.repository.ChangesetPagingResult;
+import sonia.scm.repository.Contributor;
+import sonia.scm.repository.FileObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates copies of the repository model types, which are stored in the repository api caches, without a
+ * serialization round trip. Only the mutable parts of the object graph are copied, immutable parts like
+ * {@link sonia.scm.repository.Person} or {@link sonia.scm.repository.Signature} are shared between the copies.
+ * Subclasses of the supported types are not supported, because we could lose their state.
+ *
+ */
+final class StructuralCopy {
+
+  private StructuralCopy() {
+  }
+
+  /**
+   * Returns {@code true} if the object can be copied with {@link #copy(Object)}.
+   *
+   * @param object object to copy
+   *
+   * @return {@code true} if the object is supported
+   */
+  static boolean isSupported(Object object) {
+    Class<?> type = object.getClass();
+    return type == ChangesetPagingResult.class
+      || type == Changeset.class
+      || type == BrowserResult.class
+      || type == FileObject.class
+      || type == BlameResult.class;
+  }
+
+  /**
+   * Returns a copy of the given object.
+   *
+   * @param object object to copy
+   * @param <T> type of object
+   *
+   * @return copy of object
+   */
+  @SuppressWarnings("unchecked")
+  static <T> T copy(T object) {
+    Object copy;
+    if (object instanceof ChangesetPagingResult) {
+      copy = copy((ChangesetPagingResult) object);
+    } else if (object instanceof Changeset) {
+      copy = copy((Changeset) object);
+    } else if (object instanceof BrowserResult) {
+      copy = copy((BrowserResult) object);
+    } else if (object instanceof FileObject) {
+      copy = copy((FileObject) object);
+    } else if (object instanceof BlameResult) {
+      copy = copy((BlameResult) object);
+    } else {
+      throw new IllegalArgumentException("unsupported type ".concat(object.getClass().getName()));
+    }
+    return (T) copy;
+  }
+
+  private static ChangesetPagingResult copy(ChangesetPagingResult result) {
+    List<Changeset> changesets = null;
+    if (result.getChangesets() != null) {
+      changesets = new ArrayList<>(result.getChangesets().size());
+      for (Changeset changeset : result.getChangesets()) {
+        changesets.add(copy(changeset));
+      }
+    }
+    return new ChangesetPagingResult(result.getTotal(), changesets, result.getBranchName());
+  }
+
+  private static Changeset copy(Changeset changeset) {
+    Changeset copy = new Changeset(changeset.getId(), changeset.getDate(), changeset.getAuthor(), changeset.getDescription());
+    copy.setBranches(copyList(changeset.getBranches()));
+    copy.setParents(copyList(changeset.getParents()));
+    copy.setTags(copyList(changeset.getTags()));
+    if (changeset.getContributors() != null) {
+      List<Contributor> contributors = new ArrayList<>(changeset.getContributors().size());
+      for (Contributor contributor : changeset.getContributors()) {
+        contributors.add(new Contributor(contributor.getType(), contributor.getPerson()));
+      }
+      copy.setContributors(contributors);
+    }
+    copy.setSignatures(changeset.getSignatures());
+    copy.setProperties(copyMap(changeset.getProperties()));
+    return copy;
+  }
+
+  private static BrowserResult copy(BrowserResult result) {
+    FileObject file = result.getFile() != null ? copy(result.getFile()) : null;
+    return new BrowserResult(result.getRevision(), result.getRequestedRevision(), file);
+  }
+
+  private static FileObject copy(FileObject file) {
+    FileObject copy = new FileObject();
+    copy.setName(file.getName());
+    copy.setPath(file.getPath());
+    copy.setDirectory(file.isDirectory());
+    copy.setDescription(file.getDescription().orElse(null));
+    copy.setCommitDate(file.getCommitDate().isPresent() ? file.getCommitDate().getAsLong() : null);
+    copy.setLength(file.getLength().isPresent() ? file.getLength().getAsLong() : null);
+    copy.setSubRepository(file.getSubRepository());
+    copy.setPartialResult(file.isPartialResult());
+    copy.setComputationAborted(file.isComputationAborted());
+    copy.setTruncated(file.isTruncated());
+    Collection<FileObject> children = file.getChildren();
+    if (children != null) {
+      List<FileObject> copiedChildren = new ArrayList<>(children.size());
+      for (FileObject child : children) {
+        copiedChildren.add(copy(child));
+      }
+      copy.setChildren(copiedChildren);
+    }
+    return copy;
+  }
+
+  private static BlameResult copy(BlameResult result) {
+    List<BlameLine> lines = null;
+    if (result.getBlameLines() != null) {
+      lines = new ArrayList<>(result.getBlameLines().size());
+      for (BlameLine line : result.getBlameLines()) {
+        lines.add(new BlameLine(
+          line.getLineNumber(), line.getRevision(), line.getWhen(), line.getAuthor(), line.getDescription(), line.getCode()
+        ));
+      }
+    }
+    return new BlameResult(result.getTotal(), lines);
+  }
+
+  private static <T> List<T> copyList(List<T> list) {
+    return list != null ? new ArrayList<>(list) : null;
+  }
+
+  private static Map<String, String> copyMap(Map<String, String> map) {
+    return map != null ? new HashMap<>(map) : null;
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.importexport;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the content of a tar entry, which was written by {@link SplittingTarEntryOutputStream}. If the current entry
+ * is marked as continued, the stream moves on to the next entry of the archive, as soon as the current entry is
+ * exhausted. Entries without the mark are read as they are, which keeps archives of older versions readable.
+ */
+class ContinuedTarEntryInputStream extends InputStream {
+
+  private final TarArchiveInputStream tais;
+  private TarArchiveEntry entry;
+
+  ContinuedTarEntryInputStream(TarArchiveInputStream tais, TarArchiveEntry entry) {
+    this.tais = tais;
+    this.entry = entry;
+  }
+
+  static boolean isContinued(TarArchiveEntry entry) {
+    return "true".equals(entry.getExtraPaxHeader(SplittingTarEntryOutputStream.CONTINUED_HEADER));
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    int n = read(b, 0, 1);
+    return n < 0 ? -1 : b[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    int n = tais.read(b, off, len);
+    while (n < 0 && nextPart()) {
+      n = tais.read(b, off, len);
+    }
+    return n;
+  }
+
+  /**
+   * Does not close the archive, because it is owned by the importer.
+   */
+  @Override
+  public void close() {
+    // do not close the archive
+  }
+
+  private boolean nextPart() throws IOException {
+    if (entry == null || !isContinued(entry)) {
+      entry = null;
+      return false;
+    }
+    entry = tais.getNextTarEntry();
+    if (entry == null) {
+      throw new IOException("archive ends before the last part of the repository");
+    }
+    return true;
+  }
+}
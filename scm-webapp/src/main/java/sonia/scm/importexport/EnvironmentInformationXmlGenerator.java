@@ -70,6 +70,7 @@ class EnvironmentInformationXmlGenerator {
     scmEnvironment.setCoreVersion(contextProvider.getVersion());
     scmEnvironment.setArch(SystemUtil.getArch());
     scmEnvironment.setOs(SystemUtil.getOS());
+    scmEnvironment.setExportFormatVersion(FullScmRepositoryExporter.EXPORT_FORMAT_VERSION);
   }
 
   private void writePluginInformation(ScmEnvironment scmEnvironment) {
@@ -40,6 +40,7 @@ import javax.inject.Inject;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
@@ -119,6 +120,12 @@ public class ExportService {
     DataStore<RepositoryExportInformation> dataStore = createDataStore();
     RepositoryExportInformation info = dataStore.get(repository.getId());
     info.setStatus(ExportStatus.FINISHED);
+    Blob blob = getBlob(repository.getId());
+    if (blob != null && info.getCreated() != null) {
+      long millis = Math.max(1, Duration.between(info.getCreated(), Instant.now()).toMillis());
+      info.setBytesWritten(blob.getSize());
+      info.setThroughput(blob.getSize() * 1000 / millis);
+    }
     dataStore.put(repository.getId(), info);
   }
 
@@ -24,10 +24,14 @@
 
 package sonia.scm.importexport;
 
+import com.google.common.base.Stopwatch;
+import com.google.common.io.CountingOutputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import sonia.scm.ContextEntry;
+import sonia.scm.io.ParallelGzipOutputStream;
 import sonia.scm.repository.Repository;
 import sonia.scm.repository.RepositoryExportingCheck;
 import sonia.scm.repository.api.ExportFailedException;
@@ -45,10 +49,25 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 
 
 public class FullScmRepositoryExporter {
 
+  private static final Logger LOG = LoggerFactory.getLogger(FullScmRepositoryExporter.class);
+
+  /**
+   * Size of the tar entries, into which the repository bundle is split.
+   */
+  private static final int PART_SIZE = Integer.getInteger("scm.export.partSize", 8 * 1024 * 1024);
+
+  /**
+   * Version of the archive format, which is written to the environment description. Version 2 may split the
+   * repository bundle into multiple entries (see {@link SplittingTarEntryOutputStream}). Importers refuse archives
+   * with a newer format version than they support.
+   */
+  static final int EXPORT_FORMAT_VERSION = 2;
+
   static final String SCM_ENVIRONMENT_FILE_NAME = "scm-environment.xml";
   static final String METADATA_FILE_NAME = "metadata.xml";
   static final String STORE_DATA_FILE_NAME = "store-data.tar";
@@ -85,17 +104,19 @@ public class FullScmRepositoryExporter {
   }
 
   private void exportInLock(Repository repository, OutputStream outputStream, String password) {
+    Stopwatch sw = Stopwatch.createStarted();
+    CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(outputStream));
+    long repositorySize;
     try (
       RepositoryService service = serviceFactory.create(repository);
-      BufferedOutputStream bos = new BufferedOutputStream(outputStream);
-      OutputStream cos = repositoryImportExportEncryption.optionallyEncrypt(bos, password);
-      GzipCompressorOutputStream gzos = new GzipCompressorOutputStream(cos);
+      OutputStream cos = repositoryImportExportEncryption.optionallyEncrypt(counter, password);
+      ParallelGzipOutputStream gzos = new ParallelGzipOutputStream(cos);
       TarArchiveOutputStream taos = Archives.createTarOutputStream(gzos);
     ) {
       writeEnvironmentData(taos);
       writeMetadata(repository, taos);
       writeStoreData(repository, taos);
-      writeRepository(service, taos);
+      repositorySize = writeRepository(service, taos);
       taos.finish();
     } catch (IOException e) {
       throw new ExportFailedException(
@@ -104,6 +125,11 @@ public class FullScmRepositoryExporter {
         e
       );
     }
+    long millis = Math.max(1, sw.elapsed(TimeUnit.MILLISECONDS));
+    LOG.info(
+      "exported repository {} with {} bytes of repository data into {} bytes in {} ms ({} bytes/s)",
+      repository, repositorySize, counter.getCount(), millis, counter.getCount() * 1000 / millis
+    );
   }
 
   private void writeEnvironmentData(TarArchiveOutputStream taos) throws IOException {
@@ -124,21 +150,13 @@ public class FullScmRepositoryExporter {
     taos.closeArchiveEntry();
   }
 
-  private void writeRepository(RepositoryService service, TarArchiveOutputStream taos) throws IOException {
-    File newWorkdir = workdirProvider.createNewWorkdir(service.getRepository().getId());
-    try {
-      File repositoryFile = Files.createFile(Paths.get(newWorkdir.getPath(), "repository")).toFile();
-      try (FileOutputStream repositoryFos = new FileOutputStream(repositoryFile)) {
-        service.getBundleCommand().bundle(repositoryFos);
-      }
-      TarArchiveEntry entry = new TarArchiveEntry(createRepositoryEntryName(service));
-      entry.setSize(repositoryFile.length());
-      taos.putArchiveEntry(entry);
-      Files.copy(repositoryFile.toPath(), taos);
-      taos.closeArchiveEntry();
-    } finally {
-      IOUtil.deleteSilently(newWorkdir);
+  private long writeRepository(RepositoryService service, TarArchiveOutputStream taos) throws IOException {
+    // the bundle is streamed directly into the archive, because its size is unknown it is split into multiple entries
+    SplittingTarEntryOutputStream entries = new SplittingTarEntryOutputStream(taos, createRepositoryEntryName(service), PART_SIZE);
+    try (OutputStream os = entries) {
+      service.getBundleCommand().bundle(os);
     }
+    return entries.getSize();
   }
 
   private String createRepositoryEntryName(RepositoryService service) {
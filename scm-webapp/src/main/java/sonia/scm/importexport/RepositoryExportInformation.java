@@ -24,7 +24,6 @@
 
 package sonia.scm.importexport;
 
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -38,7 +37,6 @@ import java.time.Instant;
 
 
 @NoArgsConstructor
-@AllArgsConstructor
 @Getter
 @Setter
 @XmlRootElement
@@ -52,4 +50,23 @@ public class RepositoryExportInformation {
   private boolean compressed;
   private boolean encrypted;
   private ExportStatus status;
+  /**
+   * Number of bytes written by a finished export.
+   * @since 2.15.0
+   */
+  private long bytesWritten;
+  /**
+   * Average number of bytes per second written by a finished export.
+   * @since 2.15.0
+   */
+  private long throughput;
+
+  public RepositoryExportInformation(String exporterName, Instant created, boolean withMetadata, boolean compressed, boolean encrypted, ExportStatus status) {
+    this.exporterName = exporterName;
+    this.created = created;
+    this.withMetadata = withMetadata;
+    this.compressed = compressed;
+    this.encrypted = encrypted;
+    this.status = status;
+  }
 }
@@ -24,7 +24,9 @@
 
 package sonia.scm.importexport;
 
+import com.google.common.io.ByteStreams;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sonia.scm.ContextEntry;
@@ -63,14 +65,16 @@ class RepositoryImportStep implements ImportStep {
   @Override
   public boolean handle(TarArchiveEntry currentEntry, ImportState state, InputStream inputStream) {
     if (!currentEntry.isDirectory() && !currentEntry.getName().contains("/")) {
+      InputStream repositoryStream = joinParts(currentEntry, inputStream);
       if (state.isStoreImported()) {
         LOG.trace("Importing directly from tar stream (entry '{}')", currentEntry.getName());
         state.getLogger().step("directly importing repository data");
-        unbundleRepository(state, inputStream);
+        unbundleRepository(state, repositoryStream);
+        skipRemainingParts(state, repositoryStream);
       } else {
         LOG.debug("Temporarily storing tar entry '{}' in work dir", currentEntry.getName());
         state.getLogger().step("temporarily storing repository data for later import");
-        Path path = saveRepositoryDataFromTarArchiveEntry(state.getRepository(), inputStream);
+        Path path = saveRepositoryDataFromTarArchiveEntry(state.getRepository(), repositoryStream);
         state.setTemporaryRepositoryBundle(path);
       }
       return true;
@@ -78,6 +82,29 @@ class RepositoryImportStep implements ImportStep {
     return false;
   }
 
+  private InputStream joinParts(TarArchiveEntry currentEntry, InputStream inputStream) {
+    // newer exports split the repository into multiple entries, see SplittingTarEntryOutputStream
+    if (inputStream instanceof TarArchiveInputStream && ContinuedTarEntryInputStream.isContinued(currentEntry)) {
+      LOG.trace("Joining continued tar entries starting with '{}'", currentEntry.getName());
+      return new ContinuedTarEntryInputStream((TarArchiveInputStream) inputStream, currentEntry);
+    }
+    return inputStream;
+  }
+
+  private void skipRemainingParts(ImportState state, InputStream repositoryStream) {
+    if (repositoryStream instanceof ContinuedTarEntryInputStream) {
+      try {
+        ByteStreams.exhaust(repositoryStream);
+      } catch (IOException e) {
+        throw new ImportFailedException(
+          entity(state.getRepository()).build(),
+          "Repository import failed. Could not read remaining parts of repository.",
+          e
+        );
+      }
+    }
+  }
+
   @Override
   public void finish(ImportState state) {
     state.getTemporaryRepositoryBundle()
@@ -39,5 +39,9 @@ class ScmEnvironment {
   private String coreVersion;
   private String os;
   private String arch;
+  /**
+   * Version of the archive format, missing for archives created before 2.15.0.
+   */
+  private int exportFormatVersion;
 }
 
@@ -49,10 +49,23 @@ public class ScmEnvironmentCompatibilityChecker {
   }
 
   boolean check(ScmEnvironment environment) {
-    return isCoreVersionCompatible(scmContextProvider.getVersion(), environment.getCoreVersion())
+    return isExportFormatCompatible(environment.getExportFormatVersion())
+      && isCoreVersionCompatible(scmContextProvider.getVersion(), environment.getCoreVersion())
       && arePluginsCompatible(environment);
   }
 
+  private boolean isExportFormatCompatible(int exportFormatVersion) {
+    boolean compatible = exportFormatVersion <= FullScmRepositoryExporter.EXPORT_FORMAT_VERSION;
+    if (!compatible) {
+      LOG.info(
+        "Export format version {} of dump is not supported; this SCM-Manager supports export format versions up to {}.",
+        exportFormatVersion,
+        FullScmRepositoryExporter.EXPORT_FORMAT_VERSION
+      );
+    }
+    return compatible;
+  }
+
   private boolean isCoreVersionCompatible(String currentCoreVersion, String coreVersionFromImport) {
     boolean compatible = Version.parse(currentCoreVersion).isNewerOrEqual(coreVersionFromImport);
     if (!compatible) {
@@ -0,0 +1,117 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.importexport;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a stream of unknown length into a tar archive. Tar needs the size of an entry before its content, so the
+ * data is split into entries of a fixed size. Every entry but the last one is marked with the pax header
+ * {@link #CONTINUED_HEADER}, so that the importer can join the entries with {@link ContinuedTarEntryInputStream}.
+ * The first entry has the given name, the following entries get the part number as suffix.
+ * <p>
+ * Data which fits into a single part is written as one plain entry, which can be imported by every version. Split
+ * entries can only be imported by versions which support the export format version
+ * {@link FullScmRepositoryExporter#EXPORT_FORMAT_VERSION} 2, which was introduced with 2.15.0. Older versions would
+ * only import the first part, but they refuse the archive before, because its environment description has a newer
+ * core version.
+ */
+class SplittingTarEntryOutputStream extends OutputStream {
+
+  static final String CONTINUED_HEADER = "SCM.continued";
+
+  private final TarArchiveOutputStream taos;
+  private final String name;
+  private final byte[] buffer;
+
+  private int count;
+  private int part;
+  private long size;
+  private boolean closed;
+
+  SplittingTarEntryOutputStream(TarArchiveOutputStream taos, String name, int partSize) {
+    this.taos = taos;
+    this.name = name;
+    this.buffer = new byte[partSize];
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[]{(byte) b}, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      if (count == buffer.length) {
+        // the part is only written if more data follows, because the last part must not be marked as continued
+        writePart(true);
+      }
+      int n = Math.min(len, buffer.length - count);
+      System.arraycopy(b, off, buffer, count, n);
+      count += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  /**
+   * Returns the number of bytes written so far.
+   *
+   * @return number of bytes
+   */
+  long getSize() {
+    return size;
+  }
+
+  /**
+   * Writes the last part to the archive. The underlying archive is not closed.
+   */
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      writePart(false);
+      closed = true;
+    }
+  }
+
+  private void writePart(boolean continued) throws IOException {
+    TarArchiveEntry entry = new TarArchiveEntry(part == 0 ? name : name + "." + part);
+    entry.setSize(count);
+    if (continued) {
+      entry.addPaxHeader(CONTINUED_HEADER, "true");
+    }
+    taos.putArchiveEntry(entry);
+    taos.write(buffer, 0, count);
+    taos.closeArchiveEntry();
+    size += count;
+    count = 0;
+    part++;
+  }
+}
@@ -31,6 +31,8 @@ import sonia.scm.net.ChildFirstURLClassLoader;
 //~--- JDK imports ------------------------------------------------------------
 
 import java.net.URL;
+import java.util.Optional;
+import java.util.Set;
 
 /**
  * Child first {@link ClassLoader} for SCM-Manager plugins.
@@ -42,6 +44,7 @@ public class ChildFirstPluginClassLoader extends ChildFirstURLClassLoader
 {
 
   private final String plugin;
+  private final Optional<Set<String>> packages;
 
   /**
    * Constructs ...
@@ -54,6 +57,12 @@ public class ChildFirstPluginClassLoader extends ChildFirstURLClassLoader
   {
     super(urls, parent);
     this.plugin = plugin;
+    this.packages = PluginPackages.scan(urls, plugin);
+  }
+
+  @Override
+  public Optional<Set<String>> getIndexedPackages() {
+    return packages;
   }
 
   @Override
@@ -28,6 +28,8 @@ package sonia.scm.plugin;
 
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.Optional;
+import java.util.Set;
 
 /**
  * Default {@link ClassLoader} for SCM-Manager plugins. This {@link ClassLoader}
@@ -40,6 +42,7 @@ public class DefaultPluginClassLoader extends URLClassLoader
 {
 
   private final String plugin;
+  private final Optional<Set<String>> packages;
 
   /**
    * Constructs ...
@@ -52,6 +55,12 @@ public class DefaultPluginClassLoader extends URLClassLoader
   {
     super(urls, parent);
     this.plugin = plugin;
+    this.packages = PluginPackages.scan(urls, plugin);
+  }
+
+  @Override
+  public Optional<Set<String>> getIndexedPackages() {
+    return packages;
   }
 
   @Override
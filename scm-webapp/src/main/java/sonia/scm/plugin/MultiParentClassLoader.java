@@ -40,7 +40,9 @@ import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
- * TODO add caching
+ * {@link ClassLoader} which delegates to multiple parents. Only the parents
+ * which contain the package of the class or resource are asked, classes and
+ * resources which could not be found are remembered.
  *
  * @author Sebastian Sdorra
  */
@@ -68,10 +70,22 @@ public class MultiParentClassLoader extends ClassLoader
   {
     super(null);
     this.parents = new CopyOnWriteArrayList<>(parents);
+    this.index = PluginPackageIndex.forParents(this.parents);
   }
 
   //~--- get methods ----------------------------------------------------------
 
+  /**
+   * Returns the parents of the class loader.
+   *
+   *
+   * @return parent class loaders
+   */
+  List<ClassLoader> getParents()
+  {
+    return parents;
+  }
+
   /**
    * Method description
    *
@@ -83,7 +97,12 @@ public class MultiParentClassLoader extends ClassLoader
   @Override
   public URL getResource(String name)
   {
-    for (ClassLoader parent : parents)
+    if (index.isMissingResource(name))
+    {
+      return null;
+    }
+
+    for (ClassLoader parent : index.forResource(name))
     {
       URL resource = parent.getResource(name);
 
@@ -93,6 +112,8 @@ public class MultiParentClassLoader extends ClassLoader
       }
     }
 
+    index.markMissingResource(name);
+
     return null;
   }
 
@@ -111,7 +132,7 @@ public class MultiParentClassLoader extends ClassLoader
   {
     Set<URL> resources = new LinkedHashSet<>();
 
-    for (ClassLoader parent : parents)
+    for (ClassLoader parent : index.forResource(name))
     {
       Enumeration<URL> parentResources = parent.getResources(name);
 
@@ -141,17 +162,22 @@ public class MultiParentClassLoader extends ClassLoader
   protected Class<?> loadClass(String name, boolean resolve)
     throws ClassNotFoundException
   {
-    for (ClassLoader parent : parents)
+    if (!index.isMissingClass(name))
     {
-      try
+      for (ClassLoader parent : index.forClass(name))
       {
-        return parent.loadClass(name);
+        try
+        {
+          return parent.loadClass(name);
+        }
+        catch (ClassNotFoundException e)
+        {
+
+          // Expected
+        }
       }
-      catch (ClassNotFoundException e)
-      {
 
-        // Expected
-      }
+      index.markMissingClass(name);
     }
 
     throw new ClassNotFoundException(String.format("%s not found.", name));
@@ -161,4 +187,7 @@ public class MultiParentClassLoader extends ClassLoader
 
   /** Field description */
   private final List<ClassLoader> parents;
+
+  /** index of parent packages */
+  private final PluginPackageIndex index;
 }
@@ -24,10 +24,26 @@
     
 package sonia.scm.plugin;
 
+import java.util.Optional;
+import java.util.Set;
+
 /**
  * The PluginClassLoader interface is mainly a marker to find the class loader
  * in a memory dump. This should make it easier to find class loader leaks.
  *
  * @author Sebastian Sdorra
  */
-public interface PluginClassLoader {}
+public interface PluginClassLoader {
+
+  /**
+   * Returns the packages of the plugin class path in resource notation (e.g. {@code sonia/scm/plugin}). The packages
+   * of parent class loaders are not included. The packages are collected, when the class loader is created. An empty
+   * optional is returned, if the class path could not be indexed or if the class loader does not support indexing.
+   *
+   * @return packages of the plugin class path
+   * @since 2.15.0
+   */
+  default Optional<Set<String>> getIndexedPackages() {
+    return Optional.empty();
+  }
+}
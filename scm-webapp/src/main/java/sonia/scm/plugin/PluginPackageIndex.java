@@ -0,0 +1,200 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.plugin;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Index from packages to the plugin class loaders which are able to load classes or resources of the package. The
+ * index is build from the packages of the {@link PluginClassLoader}s and their parents, so that a lookup does not have
+ * to ask every class loader and lookups for unknown packages can be answered without asking any class loader.
+ * Class loaders which could not be indexed are returned for every package.
+ * The index does also remember classes and resources, which could not be found.
+ */
+final class PluginPackageIndex {
+
+  private static final int MISS_CACHE_SIZE = Integer.getInteger("scm.plugin.classLoader.missCacheSize", 10000);
+
+  private final Map<String, List<ClassLoader>> index;
+  private final List<ClassLoader> fallback;
+
+  private final Cache<String, Boolean> missingClasses = createMissCache();
+  private final Cache<String, Boolean> missingResources = createMissCache();
+
+  private PluginPackageIndex(Map<String, List<ClassLoader>> index, List<ClassLoader> fallback) {
+    this.index = index;
+    this.fallback = fallback;
+  }
+
+  /**
+   * Creates an index for the class loaders of all plugins. Classes and resources of the common root class loader are
+   * not part of the index, they have to be loaded from the root class loader before the index is used.
+   *
+   * @param classLoaders plugin class loaders
+   *
+   * @return index for plugin class loaders
+   */
+  static PluginPackageIndex forPlugins(Iterable<? extends ClassLoader> classLoaders) {
+    return create(classLoaders, false);
+  }
+
+  /**
+   * Creates an index for the parent class loaders of a plugin. The first class loader is returned for every package,
+   * because it delegates to the common root class loader.
+   *
+   * @param classLoaders parent class loaders
+   *
+   * @return index for parent class loaders
+   */
+  static PluginPackageIndex forParents(Iterable<? extends ClassLoader> classLoaders) {
+    return create(classLoaders, true);
+  }
+
+  private static PluginPackageIndex create(Iterable<? extends ClassLoader> classLoaders, boolean includeFirst) {
+    Map<ClassLoader, Optional<Set<String>>> reachable = new IdentityHashMap<>();
+    Map<String, List<ClassLoader>> candidates = new LinkedHashMap<>();
+    List<ClassLoader> unindexed = new ArrayList<>();
+
+    boolean first = true;
+    for (ClassLoader classLoader : classLoaders) {
+      // the first parent is handled like an unindexed class loader, because it is asked for classes of the root
+      Optional<Set<String>> packages = first && includeFirst ? Optional.empty() : packages(reachable, classLoader);
+      first = false;
+      if (packages.isPresent()) {
+        for (String pkg : packages.get()) {
+          candidates.computeIfAbsent(pkg, p -> new ArrayList<>(unindexed)).add(classLoader);
+        }
+      } else {
+        // unindexed class loaders are candidates for every package
+        unindexed.add(classLoader);
+        candidates.values().forEach(list -> list.add(classLoader));
+      }
+    }
+
+    ImmutableMap.Builder<String, List<ClassLoader>> index = ImmutableMap.builder();
+    candidates.forEach((pkg, list) -> index.put(pkg, ImmutableList.copyOf(list)));
+    return new PluginPackageIndex(index.build(), ImmutableList.copyOf(unindexed));
+  }
+
+  private static Optional<Set<String>> packages(Map<ClassLoader, Optional<Set<String>>> reachable, ClassLoader classLoader) {
+    if (classLoader instanceof PluginClassLoader || classLoader instanceof MultiParentClassLoader) {
+      return reachablePackages(reachable, classLoader);
+    }
+    return Optional.empty();
+  }
+
+  private static Optional<Set<String>> reachablePackages(Map<ClassLoader, Optional<Set<String>>> reachable, ClassLoader classLoader) {
+    Optional<Set<String>> packages = reachable.get(classLoader);
+    if (packages == null) {
+      packages = collectReachablePackages(reachable, classLoader);
+      reachable.put(classLoader, packages);
+    }
+    return packages;
+  }
+
+  private static Optional<Set<String>> collectReachablePackages(Map<ClassLoader, Optional<Set<String>>> reachable, ClassLoader classLoader) {
+    if (classLoader instanceof PluginClassLoader) {
+      Optional<Set<String>> own = ((PluginClassLoader) classLoader).getIndexedPackages();
+      Optional<Set<String>> parent = reachablePackages(reachable, classLoader.getParent());
+      if (own.isPresent() && parent.isPresent()) {
+        Set<String> packages = new HashSet<>(own.get());
+        packages.addAll(parent.get());
+        return Optional.of(packages);
+      }
+      return Optional.empty();
+    } else if (classLoader instanceof MultiParentClassLoader) {
+      Set<String> packages = new HashSet<>();
+      for (ClassLoader parent : ((MultiParentClassLoader) classLoader).getParents()) {
+        Optional<Set<String>> parentPackages = reachablePackages(reachable, parent);
+        if (!parentPackages.isPresent()) {
+          return Optional.empty();
+        }
+        packages.addAll(parentPackages.get());
+      }
+      return Optional.of(packages);
+    }
+    // the root class loader, which is shared by all plugins
+    return Optional.of(Collections.emptySet());
+  }
+
+  private static Cache<String, Boolean> createMissCache() {
+    return CacheBuilder.newBuilder().maximumSize(MISS_CACHE_SIZE).build();
+  }
+
+  /**
+   * Returns the class loaders which could be able to load the class, in the order of the original class loaders.
+   *
+   * @param className fully qualified name of class
+   *
+   * @return candidate class loaders
+   */
+  List<ClassLoader> forClass(String className) {
+    return forPackage(PluginPackages.packageOfClass(className));
+  }
+
+  /**
+   * Returns the class loaders which could be able to find the resource, in the order of the original class loaders.
+   *
+   * @param resource name of resource
+   *
+   * @return candidate class loaders
+   */
+  List<ClassLoader> forResource(String resource) {
+    return forPackage(PluginPackages.packageOf(resource));
+  }
+
+  private List<ClassLoader> forPackage(String pkg) {
+    return index.getOrDefault(pkg, fallback);
+  }
+
+  boolean isMissingClass(String className) {
+    return missingClasses.getIfPresent(className) != null;
+  }
+
+  void markMissingClass(String className) {
+    missingClasses.put(className, Boolean.TRUE);
+  }
+
+  boolean isMissingResource(String resource) {
+    return missingResources.getIfPresent(resource) != null;
+  }
+
+  void markMissingResource(String resource) {
+    missingResources.put(resource, Boolean.TRUE);
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.plugin;
+
+import com.google.common.collect.ImmutableSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Enumeration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * Collects the packages of a plugin class path, which consists of the exploded {@code classes} directory and the jars
+ * of the {@code lib} directory. Packages are returned in resource notation (e.g. {@code sonia/scm/plugin}), so that
+ * they can be used for the lookup of classes and resources. The parents of every package are collected as well,
+ * because directories can be looked up as resources.
+ */
+final class PluginPackages {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PluginPackages.class);
+
+  private static final String VERSIONS_DIRECTORY = "META-INF/versions/";
+
+  private PluginPackages() {
+  }
+
+  /**
+   * Returns the packages of the given class path. An empty optional is returned, if the class path contains urls which
+   * could not be indexed.
+   *
+   * @param urls class path of plugin
+   * @param plugin name of the plugin, for logging
+   *
+   * @return packages of the class path
+   */
+  static Optional<Set<String>> scan(URL[] urls, String plugin) {
+    long start = System.nanoTime();
+    ImmutableSet.Builder<String> packages = ImmutableSet.builder();
+    for (URL url : urls) {
+      if (!"file".equals(url.getProtocol())) {
+        LOG.debug("could not index url {} of plugin {}, because it is not a file", url, plugin);
+        return Optional.empty();
+      }
+      try {
+        scan(packages, Paths.get(url.toURI()));
+      } catch (IOException | URISyntaxException ex) {
+        LOG.warn("could not index url {} of plugin {}", url, plugin, ex);
+        return Optional.empty();
+      }
+    }
+    Set<String> result = packages.build();
+    LOG.debug("indexed {} packages of plugin {} in {}ms", result.size(), plugin, (System.nanoTime() - start) / 1_000_000);
+    return Optional.of(result);
+  }
+
+  private static void scan(ImmutableSet.Builder<String> packages, Path path) throws IOException {
+    if (Files.isDirectory(path)) {
+      scanDirectory(packages, path);
+    } else if (Files.isRegularFile(path)) {
+      scanJar(packages, path.toFile());
+    }
+  }
+
+  private static void scanDirectory(ImmutableSet.Builder<String> packages, Path directory) throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.filter(Files::isRegularFile)
+        .map(file -> directory.relativize(file).toString().replace(File.separatorChar, '/'))
+        .forEach(name -> add(packages, name));
+    }
+  }
+
+  private static void scanJar(ImmutableSet.Builder<String> packages, File file) throws IOException {
+    try (JarFile jar = new JarFile(file)) {
+      Enumeration<JarEntry> entries = jar.entries();
+      while (entries.hasMoreElements()) {
+        JarEntry entry = entries.nextElement();
+        if (!entry.isDirectory()) {
+          add(packages, entry.getName());
+        }
+      }
+    }
+  }
+
+  private static void add(ImmutableSet.Builder<String> packages, String resource) {
+    String pkg = packageOf(resource);
+    addWithParents(packages, pkg);
+    if (pkg.startsWith(VERSIONS_DIRECTORY)) {
+      // classes of multi release jars are loaded by their unversioned name
+      int index = pkg.indexOf('/', VERSIONS_DIRECTORY.length());
+      if (index > 0) {
+        addWithParents(packages, pkg.substring(index + 1));
+      }
+    }
+  }
+
+  /**
+   * Adds the package and all of its parents. Directories can be looked up as resources (e.g.
+   * {@code getResources("sonia/scm")}), so every directory of the class path must be found in the index, even if it
+   * contains only other directories.
+   */
+  private static void addWithParents(ImmutableSet.Builder<String> packages, String pkg) {
+    String current = pkg;
+    while (!current.isEmpty()) {
+      packages.add(current);
+      current = packageOf(current);
+    }
+    packages.add("");
+  }
+
+  /**
+   * Returns the package of the resource in resource notation.
+   *
+   * @param resource name of resource
+   *
+   * @return package of resource
+   */
+  static String packageOf(String resource) {
+    int index = resource.lastIndexOf('/');
+    if (index < 0) {
+      return "";
+    }
+    return resource.substring(0, index);
+  }
+
+  /**
+   * Returns the package of the class in resource notation.
+   *
+   * @param className fully qualified name of class
+   *
+   * @return package of class
+   */
+  static String packageOfClass(String className) {
+    int index = className.lastIndexOf('.');
+    if (index < 0) {
+      return "";
+    }
+    return className.substring(0, index).replace('.', '/');
+  }
+}
@@ -43,13 +43,14 @@ import java.util.concurrent.ConcurrentMap;
 
 /**
  * {@link ClassLoader} which is able to load classes and resources from all
- * plugins.
+ * plugins. Only the plugins which contain the package of the class or resource
+ * are asked, classes and resources which could not be found are remembered.
  *
  * @author Sebastian Sdorra
  */
 public final class UberClassLoader extends ClassLoader {
 
-  private final Set<ClassLoader> pluginClassLoaders;
+  private final PluginPackageIndex index;
   private final ConcurrentMap<String, WeakReference<Class<?>>> cache = Maps.newConcurrentMap();
 
   public UberClassLoader(ClassLoader parent, Iterable<InstalledPlugin> plugins) {
@@ -65,7 +66,7 @@ public final class UberClassLoader extends ClassLoader {
   @VisibleForTesting
   UberClassLoader(ClassLoader parent, Set<ClassLoader> pluginClassLoaders) {
     super(parent);
-    this.pluginClassLoaders = pluginClassLoaders;
+    this.index = PluginPackageIndex.forPlugins(pluginClassLoaders);
   }
 
   @Override
@@ -81,11 +82,14 @@ public final class UberClassLoader extends ClassLoader {
   }
 
   private Class<?> findClassInPlugins(String name) throws ClassNotFoundException {
-    for (ClassLoader pluginClassLoader : pluginClassLoaders) {
-      Class<?> clazz = findClass(pluginClassLoader, name);
-      if (clazz != null) {
-        return clazz;
+    if (!index.isMissingClass(name)) {
+      for (ClassLoader pluginClassLoader : index.forClass(name)) {
+        Class<?> clazz = findClass(pluginClassLoader, name);
+        if (clazz != null) {
+          return clazz;
+        }
       }
+      index.markMissingClass(name);
     }
     throw new ClassNotFoundException("could not find class " + name + " in any of the installed plugins");
   }
@@ -102,17 +106,20 @@ public final class UberClassLoader extends ClassLoader {
 
   @Override
   protected URL findResource(String name) {
-    URL url = null;
+    if (index.isMissingResource(name)) {
+      return null;
+    }
 
-    for (ClassLoader pluginClassLoader : pluginClassLoaders) {
-      url = pluginClassLoader.getResource(name);
+    for (ClassLoader pluginClassLoader : index.forResource(name)) {
+      URL url = pluginClassLoader.getResource(name);
 
       if (url != null) {
-        break;
+        return url;
       }
     }
 
-    return url;
+    index.markMissingResource(name);
+    return null;
   }
 
   @Override
@@ -120,7 +127,7 @@ public final class UberClassLoader extends ClassLoader {
   protected Enumeration<URL> findResources(String name) throws IOException {
     Set<URL> urls = new LinkedHashSet<>();
 
-    for (ClassLoader pluginClassLoader : pluginClassLoaders) {
+    for (ClassLoader pluginClassLoader : index.forResource(name)) {
       urls.addAll(Collections.list(pluginClassLoader.getResources(name)));
     }
 
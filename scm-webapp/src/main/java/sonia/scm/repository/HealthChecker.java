@@ -24,30 +24,106 @@
 
 package sonia.scm.repository;
 
-import com.github.sdorra.ssp.PermissionActionCheck;
+import com.github.legman.Subscribe;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
+import org.apache.shiro.SecurityUtils;
+import org.apache.shiro.subject.Subject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sonia.scm.EagerSingleton;
+import sonia.scm.HandlerEventType;
 import sonia.scm.NotFoundException;
+import sonia.scm.event.ScmEventBus;
+import sonia.scm.plugin.Extension;
+import sonia.scm.store.DataStore;
+import sonia.scm.store.DataStoreFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
 
+import static java.util.stream.Collectors.toList;
 
+/**
+ * Executes the registered {@link HealthCheck}s for repositories. A check of all repositories runs in parallel
+ * ({@code scm.healthCheck.threads}, default 4). Healthy repositories whose directory has not changed since their last
+ * check are skipped. The results are written in batches ({@code scm.healthCheck.batchSize}, default 50) and after
+ * every batch a {@link HealthCheckProgressEvent} is fired. The fingerprint of a repository is removed, when the
+ * repository is deleted.
+ */
+@Extension
+@EagerSingleton
 public final class HealthChecker {
 
   private static final Logger logger =
     LoggerFactory.getLogger(HealthChecker.class);
 
+  private static final String STORE_NAME = "healthCheckFingerprints";
+
+  /**
+   * Depth of the repository directory, which is used for the fingerprint. It is deep enough to cover the references
+   * and packs of git, the store of mercurial and the revision database of subversion.
+   */
+  private static final int FINGERPRINT_DEPTH = 4;
+
   private final Set<HealthCheck> checks;
 
   private final RepositoryManager repositoryManager;
 
+  private final RepositoryLocationResolver locationResolver;
+
+  private final DataStore<HealthCheckFingerprint> fingerprints;
+
+  private final ScmEventBus eventBus;
+
+  private final int threads;
+
+  private final int batchSize;
+
   @Inject
   public HealthChecker(Set<HealthCheck> checks,
-                       RepositoryManager repositoryManager) {
+                       RepositoryManager repositoryManager,
+                       RepositoryLocationResolver locationResolver,
+                       DataStoreFactory storeFactory,
+                       ScmEventBus eventBus) {
+    this(checks, repositoryManager, locationResolver, storeFactory, eventBus,
+      Integer.getInteger("scm.healthCheck.threads", 4),
+      Integer.getInteger("scm.healthCheck.batchSize", 50));
+  }
+
+  @VisibleForTesting
+  HealthChecker(Set<HealthCheck> checks,
+                RepositoryManager repositoryManager,
+                RepositoryLocationResolver locationResolver,
+                DataStoreFactory storeFactory,
+                ScmEventBus eventBus,
+                int threads,
+                int batchSize) {
     this.checks = checks;
     this.repositoryManager = repositoryManager;
+    this.locationResolver = locationResolver;
+    this.fingerprints = storeFactory.withType(HealthCheckFingerprint.class).withName(STORE_NAME).build();
+    this.eventBus = eventBus;
+    this.threads = Math.max(1, threads);
+    this.batchSize = Math.max(1, batchSize);
   }
 
   public void check(String id){
@@ -72,22 +148,109 @@ public final class HealthChecker {
   public void checkAll() {
     logger.debug("check health of all repositories");
 
+    List<Repository> repositories = new ArrayList<>();
     for (Repository repository : repositoryManager.getAll()) {
       if (RepositoryPermissions.healthCheck().isPermitted(repository)) {
-        try {
-          check(repository);
-        } catch (NotFoundException ex) {
-          logger.error("health check ends with exception", ex);
-        }
+        repositories.add(repository);
       } else {
         logger.debug(
           "no permissions to execute health check for repository {}",
           repository);
       }
     }
+
+    ExecutorService executor = Executors.newFixedThreadPool(
+      threads, new ThreadFactoryBuilder().setNameFormat("HealthChecker-%d").setDaemon(true).build()
+    );
+    try {
+      checkAll(executor, repositories);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void checkAll(ExecutorService executor, List<Repository> repositories) {
+    Subject subject = SecurityUtils.getSubject();
+    CompletionService<Outcome> completionService = new ExecutorCompletionService<>(executor);
+    for (Repository repository : repositories) {
+      Callable<Outcome> task = () -> checkIfChanged(repository);
+      completionService.submit(subject.associateWith(task));
+    }
+
+    Progress progress = new Progress(repositories.size());
+    List<Outcome> batch = new ArrayList<>(batchSize);
+    try {
+      for (int i = 0; i < repositories.size(); i++) {
+        Outcome outcome = take(completionService);
+        if (outcome != null) {
+          progress.count(outcome);
+          batch.add(outcome);
+        }
+        if (batch.size() >= batchSize) {
+          store(batch);
+          eventBus.post(progress.event(false));
+        }
+      }
+    } catch (InterruptedException ex) {
+      logger.warn("health check was interrupted");
+      Thread.currentThread().interrupt();
+    } finally {
+      store(batch);
+      eventBus.post(progress.event(true));
+    }
+    logger.info("health check of {} repositories finished, {} skipped, {} unhealthy",
+      progress.total, progress.skipped, progress.unhealthy);
+  }
+
+  @Subscribe(async = false)
+  public void onEvent(RepositoryEvent event) {
+    if (event.getEventType() == HandlerEventType.DELETE) {
+      fingerprints.remove(event.getItem().getId());
+    }
+  }
+
+  private Outcome take(CompletionService<Outcome> completionService) throws InterruptedException {
+    try {
+      return completionService.take().get();
+    } catch (ExecutionException ex) {
+      logger.error("health check ends with exception", ex.getCause());
+      return null;
+    }
+  }
+
+  private Outcome checkIfChanged(Repository repository) {
+    String fingerprint = fingerprint(repository);
+    if (fingerprint != null && repository.isHealthy()) {
+      HealthCheckFingerprint previous = fingerprints.get(repository.getId());
+      if (previous != null && fingerprint.equals(previous.getValue())) {
+        logger.debug("skip health check for unchanged repository {}", repository);
+        return new Outcome(repository, null, fingerprint);
+      }
+    }
+    return new Outcome(repository, runChecks(repository), fingerprint);
+  }
+
+  private void store(List<Outcome> batch) {
+    for (Outcome outcome : batch) {
+      if (!outcome.isSkipped()) {
+        store(outcome.repository, outcome.result);
+        if (outcome.fingerprint != null) {
+          fingerprints.put(outcome.repository.getId(), new HealthCheckFingerprint(outcome.fingerprint));
+        }
+      }
+    }
+    batch.clear();
   }
 
   private void doCheck(Repository repository){
+    String fingerprint = fingerprint(repository);
+    store(repository, runChecks(repository));
+    if (fingerprint != null) {
+      fingerprints.put(repository.getId(), new HealthCheckFingerprint(fingerprint));
+    }
+  }
+
+  private HealthCheckResult runChecks(Repository repository) {
     logger.info("start health check for repository {}", repository);
 
     HealthCheckResult result = HealthCheckResult.healthy();
@@ -104,7 +267,10 @@ public final class HealthChecker {
     } else {
       logger.info("repository {} is healthy", repository);
     }
+    return result;
+  }
 
+  private void store(Repository repository, HealthCheckResult result) {
     if (!(repository.isHealthy() && result.isHealthy())) {
       logger.trace("store health check results for repository {}",
         repository);
@@ -114,5 +280,83 @@ public final class HealthChecker {
     }
   }
 
+  /**
+   * Creates a fingerprint from the names, sizes and modification times of the files in the native repository
+   * directory and from the registered health checks. Returns {@code null}, if no fingerprint could be created.
+   */
+  private String fingerprint(Repository repository) {
+    try {
+      Path directory = locationResolver.forClass(Path.class)
+        .getLocation(repository.getId())
+        .resolve(RepositoryDirectoryHandler.REPOSITORIES_NATIVE_DIRECTORY);
+      if (!Files.isDirectory(directory)) {
+        return null;
+      }
+
+      Hasher hasher = Hashing.sha256().newHasher();
+      checks.stream()
+        .map(check -> check.getClass().getName())
+        .sorted()
+        .forEach(name -> hasher.putString(name, StandardCharsets.UTF_8));
+
+      List<Path> paths;
+      try (Stream<Path> stream = Files.walk(directory, FINGERPRINT_DEPTH)) {
+        paths = stream.sorted().collect(toList());
+      }
+      for (Path path : paths) {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        hasher.putString(directory.relativize(path).toString(), StandardCharsets.UTF_8)
+          .putLong(attributes.size())
+          .putLong(attributes.lastModifiedTime().toMillis());
+      }
+      return hasher.hash().toString();
+    } catch (IOException | UncheckedIOException | IllegalStateException ex) {
+      logger.debug("could not create fingerprint for repository {}", repository, ex);
+      return null;
+    }
+  }
+
+  private static final class Outcome {
+
+    private final Repository repository;
+    private final HealthCheckResult result;
+    private final String fingerprint;
+
+    private Outcome(Repository repository, HealthCheckResult result, String fingerprint) {
+      this.repository = repository;
+      this.result = result;
+      this.fingerprint = fingerprint;
+    }
+
+    private boolean isSkipped() {
+      return result == null;
+    }
+  }
+
+  private static final class Progress {
+
+    private final int total;
+    private int checked;
+    private int skipped;
+    private int unhealthy;
+
+    private Progress(int total) {
+      this.total = total;
+    }
+
+    private void count(Outcome outcome) {
+      if (outcome.isSkipped()) {
+        skipped++;
+      } else {
+        checked++;
+        if (outcome.result.isUnhealthy()) {
+          unhealthy++;
+        }
+      }
+    }
 
+    private HealthCheckProgressEvent event(boolean finished) {
+      return new HealthCheckProgressEvent(total, checked, skipped, unhealthy, finished);
+    }
+  }
 }
@@ -63,19 +63,21 @@ public class ApiKeyService {
   private final KeyGenerator keyGenerator;
   private final Supplier<String> passphraseGenerator;
   private final ApiKeyTokenHandler tokenHandler;
+  private final VerifiedCredentialCache credentialCache;
 
   private final Striped<ReadWriteLock> locks = Striped.readWriteLock(10);
 
   @Inject
-  ApiKeyService(DataStoreFactory storeFactory, KeyGenerator keyGenerator, PasswordService passwordService, ApiKeyTokenHandler tokenHandler) {
-    this(storeFactory, passwordService, keyGenerator, tokenHandler, () -> random(PASSPHRASE_LENGTH, 0, 0, true, true, null, new SecureRandom()));
+  ApiKeyService(DataStoreFactory storeFactory, KeyGenerator keyGenerator, PasswordService passwordService, ApiKeyTokenHandler tokenHandler, VerifiedCredentialCache credentialCache) {
+    this(storeFactory, passwordService, keyGenerator, tokenHandler, credentialCache, () -> random(PASSPHRASE_LENGTH, 0, 0, true, true, null, new SecureRandom()));
   }
 
-  ApiKeyService(DataStoreFactory storeFactory, PasswordService passwordService, KeyGenerator keyGenerator, ApiKeyTokenHandler tokenHandler, Supplier<String> passphraseGenerator) {
+  ApiKeyService(DataStoreFactory storeFactory, PasswordService passwordService, KeyGenerator keyGenerator, ApiKeyTokenHandler tokenHandler, VerifiedCredentialCache credentialCache, Supplier<String> passphraseGenerator) {
     this.store = storeFactory.withType(ApiKeyCollection.class).withName("apiKeys").build();
     this.passwordService = passwordService;
     this.keyGenerator = keyGenerator;
     this.tokenHandler = tokenHandler;
+    this.credentialCache = credentialCache;
     this.passphraseGenerator = passphraseGenerator;
   }
 
@@ -113,6 +115,7 @@ public class ApiKeyService {
         apiKeyCollection -> {
           ApiKeyCollection newApiKeyCollection = apiKeyCollection.remove(key -> id.equals(key.getId()));
           store.put(username, newApiKeyCollection);
+          credentialCache.invalidate(username);
           LOG.info("removed api key for user {}", username);
         }
       );
@@ -143,7 +146,9 @@ public class ApiKeyService {
   }
 
   private boolean passwordsMatch(String user, String passphrase, ApiKeyWithPassphrase key) {
-    boolean result = passwordService.passwordsMatch(passphrase, key.getPassphrase());
+    boolean result = credentialCache.verify(
+      user, passphrase, key.getPassphrase(), () -> passwordService.passwordsMatch(passphrase, key.getPassphrase())
+    );
     if (!result) {
       // this can only happen with a forged api key, so it may be relevant enough to issue a warning
       LOG.warn("got invalid api key for user {} with key id {}", user, key.getId());
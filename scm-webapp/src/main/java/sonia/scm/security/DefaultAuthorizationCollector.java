@@ -41,23 +41,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sonia.scm.cache.Cache;
 import sonia.scm.cache.CacheManager;
+import sonia.scm.HandlerEventType;
 import sonia.scm.group.GroupCollector;
 import sonia.scm.group.GroupPermissions;
 import sonia.scm.plugin.Extension;
-import sonia.scm.repository.Namespace;
 import sonia.scm.repository.NamespaceDao;
-import sonia.scm.repository.Repository;
+import sonia.scm.repository.NamespaceEvent;
 import sonia.scm.repository.RepositoryDAO;
-import sonia.scm.repository.RepositoryPermission;
+import sonia.scm.repository.RepositoryEvent;
+import sonia.scm.repository.RepositoryRoleEvent;
 import sonia.scm.user.User;
 import sonia.scm.user.UserPermissions;
 
 import java.util.Collection;
-import java.util.Optional;
+import java.util.HashSet;
 import java.util.Set;
 
-import static java.util.Collections.emptySet;
-
 /**
  *
  * @author Sebastian Sdorra
@@ -92,11 +91,9 @@ public class DefaultAuthorizationCollector implements AuthorizationCollector
                                        RepositoryDAO repositoryDAO, SecuritySystem securitySystem, RepositoryPermissionProvider repositoryPermissionProvider, GroupCollector groupCollector, NamespaceDao namespaceDao)
   {
     this.cache = cacheManager.getCache(CACHE_NAME);
-    this.repositoryDAO = repositoryDAO;
     this.securitySystem = securitySystem;
-    this.repositoryPermissionProvider = repositoryPermissionProvider;
     this.groupCollector = groupCollector;
-    this.namespaceDao = namespaceDao;
+    this.repositoryPermissionIndex = new RepositoryPermissionIndex(repositoryDAO, namespaceDao, repositoryPermissionProvider);
   }
 
   //~--- methods --------------------------------------------------------------
@@ -158,7 +155,23 @@ public class DefaultAuthorizationCollector implements AuthorizationCollector
       logger.trace("retrieve AuthorizationInfo for user {} from cache", user.getName());
     }
 
-    return info;
+    return withRepositoryPermissions(info, user, groups);
+  }
+
+  /**
+   * The repository permissions are not part of the cached {@link AuthorizationInfo}, they are resolved against the
+   * {@link RepositoryPermissionIndex} which is shared by all users.
+   */
+  private AuthorizationInfo withRepositoryPermissions(AuthorizationInfo info, User user, Set<String> groups) {
+    // build the index now, so that broken repository permissions fail the collection and not a later permission check
+    repositoryPermissionIndex.load();
+    SimpleAuthorizationInfo result = new SimpleAuthorizationInfo(info.getRoles());
+    result.setStringPermissions(info.getStringPermissions());
+    if (info.getObjectPermissions() != null) {
+      result.setObjectPermissions(new HashSet<>(info.getObjectPermissions()));
+    }
+    result.addObjectPermission(new IndexedRepositoryPermission(repositoryPermissionIndex, user.getName(), groups));
+    return result;
   }
 
   private void collectGlobalPermissions(Builder<String> builder,
@@ -176,75 +189,10 @@ public class DefaultAuthorizationCollector implements AuthorizationCollector
     }
   }
 
-  private void collectRepositoryPermissions(Builder<String> builder, User user,
-    Set<String> groups)
-  {
-    for (Repository repository : repositoryDAO.getAll())
-    {
-      collectRepositoryPermissions(builder, repository, user, groups);
-    }
-  }
-
-  private void collectRepositoryPermissions(Builder<String> builder,
-    Repository repository, User user, Set<String> groups)
-  {
-    Optional<Namespace> namespace = namespaceDao.get(repository.getNamespace());
-
-    boolean hasPermission = false;
-    for (RepositoryPermission permission : repository.getPermissions())
-    {
-      hasPermission = isUserPermitted(user, groups, permission);
-      if (hasPermission) {
-        addRepositoryPermission(builder, repository, user, permission);
-      }
-    }
-    for (RepositoryPermission permission : namespace.map(Namespace::getPermissions).orElse(emptySet()))
-    {
-      hasPermission = isUserPermitted(user, groups, permission);
-      if (hasPermission) {
-        addRepositoryPermission(builder, repository, user, permission);
-      }
-    }
-
-    if (!hasPermission && logger.isTraceEnabled())
-    {
-      logger.trace("no permission for user {} defined at repository {}", user.getName(), repository);
-    }
-  }
-
-  private void addRepositoryPermission(Builder<String> builder, Repository repository, User user, RepositoryPermission permission) {
-    Collection<String> verbs = getVerbs(permission);
-    if (!verbs.isEmpty())
-    {
-      String perm = "repository:" + String.join(",", verbs) + ":" + repository.getId();
-      if (logger.isTraceEnabled())
-      {
-        logger.trace("add repository permission {} for user {} at repository {}",
-          perm, user.getName(), repository.getName());
-      }
-
-      builder.add(perm);
-    }
-  }
-
-  private Collection<String> getVerbs(RepositoryPermission permission) {
-    return permission.getRole() == null? permission.getVerbs(): getVerbsForRole(permission.getRole());
-  }
-
-  private Collection<String> getVerbsForRole(String roleName) {
-    return repositoryPermissionProvider.availableRoles()
-      .stream()
-      .filter(role -> roleName.equals(role.getName()))
-      .findFirst()
-      .orElseThrow(() -> new IllegalStateException("unknown role: " + roleName))
-      .getVerbs();
-  }
-
   private AuthorizationInfo createAuthorizationInfo(User user, Set<String> groups) {
     Builder<String> builder = ImmutableSet.builder();
 
     collectGlobalPermissions(builder, user, groups);
-    collectRepositoryPermissions(builder, user, groups);
     builder.add(canReadOwnUser(user));
     if (!Authentications.isSubjectAnonymous(user.getName())) {
       builder.add(getUserAutocompletePermission());
@@ -295,6 +243,32 @@ public class DefaultAuthorizationCollector implements AuthorizationCollector
     //J+
   }
 
+  @Subscribe(async = false)
+  public void updateIndex(RepositoryEvent event) {
+    if (event.getEventType().isPost()) {
+      if (event.getEventType() == HandlerEventType.DELETE) {
+        repositoryPermissionIndex.remove(event.getItem());
+      } else {
+        repositoryPermissionIndex.update(event.getItem());
+      }
+    }
+  }
+
+  @Subscribe(async = false)
+  public void updateIndex(NamespaceEvent event) {
+    if (event.getEventType().isPost() && event.getEventType() != HandlerEventType.DELETE) {
+      repositoryPermissionIndex.update(event.getItem());
+    }
+  }
+
+  @Subscribe(async = false)
+  public void invalidateIndex(RepositoryRoleEvent event) {
+    if (event.getEventType().isPost()) {
+      logger.info("invalidate repository permission index, because repository role {} has changed", event.getItem().getName());
+      repositoryPermissionIndex.invalidate();
+    }
+  }
+
   @Subscribe(async = false)
   public void invalidateCache(AuthorizationChangedEvent event) {
     if (event.isEveryUserAffected()) {
@@ -374,13 +348,9 @@ public class DefaultAuthorizationCollector implements AuthorizationCollector
   /** authorization cache */
   private final Cache<CacheKey, AuthorizationInfo> cache;
 
-  /** repository dao */
-  private final RepositoryDAO repositoryDAO;
-
   /** security system */
   private final SecuritySystem securitySystem;
 
-  private final RepositoryPermissionProvider repositoryPermissionProvider;
   private final GroupCollector groupCollector;
-  private final NamespaceDao namespaceDao;
+  private final RepositoryPermissionIndex repositoryPermissionIndex;
 }
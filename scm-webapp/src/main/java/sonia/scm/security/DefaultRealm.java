@@ -31,6 +31,7 @@ import org.apache.shiro.authc.AuthenticationException;
 import org.apache.shiro.authc.AuthenticationInfo;
 import org.apache.shiro.authc.AuthenticationToken;
 import org.apache.shiro.authc.UsernamePasswordToken;
+import org.apache.shiro.authc.credential.CredentialsMatcher;
 import org.apache.shiro.authc.credential.PasswordMatcher;
 import org.apache.shiro.authc.credential.PasswordService;
 import org.apache.shiro.authz.AuthorizationInfo;
@@ -79,9 +80,10 @@ public class DefaultRealm extends AuthorizingRealm
    * @param service
    * @param authorizationCollectors
    * @param helperFactory
+   * @param credentialCache
    */
   @Inject
-  public DefaultRealm(PasswordService service, Set<AuthorizationCollector> authorizationCollectors, DAORealmHelperFactory helperFactory)
+  public DefaultRealm(PasswordService service, Set<AuthorizationCollector> authorizationCollectors, DAORealmHelperFactory helperFactory, VerifiedCredentialCache credentialCache)
   {
     this.authorizationCollectors = authorizationCollectors;
     this.helper = helperFactory.create(REALM);
@@ -89,7 +91,7 @@ public class DefaultRealm extends AuthorizingRealm
     PasswordMatcher matcher = new PasswordMatcher();
 
     matcher.setPasswordService(service);
-    setCredentialsMatcher(helper.wrapCredentialsMatcher(matcher));
+    setCredentialsMatcher(helper.wrapCredentialsMatcher(cached(matcher, credentialCache)));
     setAuthenticationTokenClass(UsernamePasswordToken.class);
     permissionResolver = new ScmPermissionResolver();
     setPermissionResolver(permissionResolver);
@@ -98,6 +100,22 @@ public class DefaultRealm extends AuthorizingRealm
     setCachingEnabled(false);
   }
 
+  private static CredentialsMatcher cached(CredentialsMatcher matcher, VerifiedCredentialCache credentialCache) {
+    return (token, info) -> {
+      char[] password = ((UsernamePasswordToken) token).getPassword();
+      Object hashed = info.getCredentials();
+      if (password == null || !(hashed instanceof String)) {
+        return matcher.doCredentialsMatch(token, info);
+      }
+      return credentialCache.verify(
+        String.valueOf(token.getPrincipal()),
+        new String(password),
+        (String) hashed,
+        () -> matcher.doCredentialsMatch(token, info)
+      );
+    };
+  }
+
   @Override
   public ScmPermissionResolver getPermissionResolver() {
     return permissionResolver;
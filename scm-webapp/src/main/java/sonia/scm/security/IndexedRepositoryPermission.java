@@ -0,0 +1,96 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.security;
+
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.permission.WildcardPermission;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Permission which grants the repository permissions of a single user, by resolving them against the
+ * {@link RepositoryPermissionIndex}. This replaces one wildcard permission string per accessible repository, which
+ * shiro would have to check one by one.
+ */
+class IndexedRepositoryPermission implements Permission {
+
+  private static final String SUBJECT = "repository";
+
+  private final RepositoryPermissionIndex index;
+  private final String username;
+  private final Set<String> groups;
+
+  IndexedRepositoryPermission(RepositoryPermissionIndex index, String username, Set<String> groups) {
+    this.index = index;
+    this.username = username;
+    this.groups = groups;
+  }
+
+  @Override
+  public boolean implies(Permission p) {
+    if (!(p instanceof WildcardPermission)) {
+      return false;
+    }
+    ScmWildcardPermission requested = Scopes.asScmWildcardPermission(p);
+    Set<String> subject = requested.getPart(0);
+    if (subject.size() != 1 || !subject.contains(SUBJECT)) {
+      return false;
+    }
+    Set<String> ids = requested.getPart(2);
+    if (ScmWildcardPermission.isWildcard(ids)) {
+      // permissions for all repositories are granted with global permissions
+      return false;
+    }
+    Set<String> verbs = requested.getPart(1);
+    for (String id : ids) {
+      if (!index.isPermitted(username, groups, id, verbs)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Expands this permission to one wildcard permission per accessible repository. This is expensive and should only
+   * be used, if the permissions have to be limited by a {@link Scope}.
+   */
+  Collection<ScmWildcardPermission> toWildcardPermissions() {
+    List<ScmWildcardPermission> permissions = new ArrayList<>();
+    index.forEachPermittedRepository(
+      username,
+      groups,
+      (id, verbs) -> permissions.add(new ScmWildcardPermission(SUBJECT + ":" + String.join(",", verbs) + ":" + id))
+    );
+    return permissions;
+  }
+
+  @Override
+  public String toString() {
+    return "repository permissions of " + username + " (groups " + groups + ")";
+  }
+}
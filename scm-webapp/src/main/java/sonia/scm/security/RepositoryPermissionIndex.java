@@ -0,0 +1,353 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.repository.Namespace;
+import sonia.scm.repository.NamespaceDao;
+import sonia.scm.repository.Repository;
+import sonia.scm.repository.RepositoryDAO;
+import sonia.scm.repository.RepositoryPermission;
+import sonia.scm.repository.RepositoryRole;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * Index of the repository and namespace permissions of all users and groups. For every repository the index stores
+ * the verbs of each user and group as bitset, so that a permission check for a single repository is a constant number
+ * of map lookups, no matter how many repositories a user can access. The index is built once on first access and is
+ * afterwards updated incrementally for single repositories and namespaces.
+ *
+ * Repository ids are stored in lower case, because the parts of shiro wildcard permissions are lower case as well.
+ */
+class RepositoryPermissionIndex {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RepositoryPermissionIndex.class);
+
+  private static final String WILDCARD = "*";
+
+  private final RepositoryDAO repositoryDAO;
+  private final NamespaceDao namespaceDao;
+  private final RepositoryPermissionProvider repositoryPermissionProvider;
+
+  private final Map<String, Integer> bitsByVerb = new ConcurrentHashMap<>();
+  private final List<String> verbsByBit = new CopyOnWriteArrayList<>();
+
+  private volatile State state;
+
+  RepositoryPermissionIndex(RepositoryDAO repositoryDAO, NamespaceDao namespaceDao, RepositoryPermissionProvider repositoryPermissionProvider) {
+    this.repositoryDAO = repositoryDAO;
+    this.namespaceDao = namespaceDao;
+    this.repositoryPermissionProvider = repositoryPermissionProvider;
+  }
+
+  /**
+   * Builds the index, if it has not been built yet.
+   *
+   * @throws IllegalStateException if a permission references an unknown repository role
+   */
+  void load() {
+    state();
+  }
+
+  /**
+   * Returns {@code true} if the user or one of its groups is permitted to use all of the given verbs on the
+   * repository with the given (lower case) id.
+   */
+  boolean isPermitted(String username, Set<String> groups, String repositoryId, Collection<String> verbs) {
+    Entry entry = get(repositoryId);
+    if (entry == null) {
+      return false;
+    }
+    BitSet granted = collect(entry, username, groups);
+    if (granted.get(bit(WILDCARD))) {
+      return true;
+    }
+    for (String verb : verbs) {
+      Integer bit = bitsByVerb.get(verb);
+      if (bit == null || !granted.get(bit)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Calls the consumer with the original id and the verbs for every repository, the user or one of its groups has
+   * permissions for.
+   */
+  void forEachPermittedRepository(String username, Set<String> groups, BiConsumer<String, Collection<String>> consumer) {
+    for (Entry entry : state().repositories.values()) {
+      BitSet granted = collect(entry, username, groups);
+      if (!granted.isEmpty()) {
+        consumer.accept(entry.id, toVerbs(granted));
+      }
+    }
+  }
+
+  synchronized void update(Repository repository) {
+    State current = state;
+    if (current != null) {
+      LOG.trace("update permission index for repository {}", repository);
+      try {
+        Map<String, Collection<String>> roles = collectRoles();
+        current.repositories.put(key(repository.getId()), createEntry(repository, roles));
+        current.namespaces.computeIfAbsent(repository.getNamespace(), namespace -> loadNamespace(namespace, roles));
+      } catch (IllegalStateException ex) {
+        dropOutdated(ex);
+      }
+    }
+  }
+
+  synchronized void remove(Repository repository) {
+    State current = state;
+    if (current != null) {
+      LOG.trace("remove repository {} from permission index", repository);
+      current.repositories.remove(key(repository.getId()));
+    }
+  }
+
+  synchronized void update(Namespace namespace) {
+    State current = state;
+    if (current != null) {
+      LOG.trace("update permission index for namespace {}", namespace.getNamespace());
+      try {
+        current.namespaces.put(namespace.getNamespace(), createGrants(namespace.getPermissions(), collectRoles()));
+      } catch (IllegalStateException ex) {
+        dropOutdated(ex);
+      }
+    }
+  }
+
+  /**
+   * The index must not keep the outdated permissions, so we drop it. The next rebuild fails with the same exception,
+   * which surfaces the broken permission during the next authorization.
+   */
+  private void dropOutdated(IllegalStateException ex) {
+    LOG.error("failed to update repository permission index, the index is dropped", ex);
+    state = null;
+  }
+
+  /**
+   * Drops the whole index, it will be rebuilt on next access.
+   */
+  synchronized void invalidate() {
+    LOG.debug("invalidate repository permission index");
+    state = null;
+  }
+
+  private Entry get(String repositoryId) {
+    State current = state();
+    Entry entry = current.repositories.get(repositoryId);
+    if (entry == null && !Objects.equals(current.lastModified, repositoryDAO.getLastModified())) {
+      // the repository could have been created, before we have received the event
+      entry = rebuild(current).repositories.get(repositoryId);
+    }
+    return entry;
+  }
+
+  private BitSet collect(Entry entry, String username, Set<String> groups) {
+    BitSet granted = new BitSet();
+    entry.grants.collect(username, groups, granted);
+    Grants namespaceGrants = state().namespaces.get(entry.namespace);
+    if (namespaceGrants != null) {
+      namespaceGrants.collect(username, groups, granted);
+    }
+    return granted;
+  }
+
+  private State state() {
+    State current = state;
+    if (current == null) {
+      current = rebuild(null);
+    }
+    return current;
+  }
+
+  private synchronized State rebuild(State outdated) {
+    State current = state;
+    if (current != null && current != outdated) {
+      // another thread has already built the index
+      return current;
+    }
+
+    LOG.debug("build repository permission index");
+    Long lastModified = repositoryDAO.getLastModified();
+    Map<String, Collection<String>> roles = collectRoles();
+    State created = new State(lastModified);
+    for (Repository repository : repositoryDAO.getAll()) {
+      created.repositories.put(key(repository.getId()), createEntry(repository, roles));
+      created.namespaces.computeIfAbsent(repository.getNamespace(), namespace -> loadNamespace(namespace, roles));
+    }
+    state = created;
+    return created;
+  }
+
+  private Entry createEntry(Repository repository, Map<String, Collection<String>> roles) {
+    return new Entry(repository.getId(), repository.getNamespace(), createGrants(repository.getPermissions(), roles));
+  }
+
+  private Grants loadNamespace(String namespace, Map<String, Collection<String>> roles) {
+    return namespaceDao.get(namespace)
+      .map(Namespace::getPermissions)
+      .map(permissions -> createGrants(permissions, roles))
+      .orElse(Grants.EMPTY);
+  }
+
+  private Grants createGrants(Collection<RepositoryPermission> permissions, Map<String, Collection<String>> roles) {
+    if (permissions == null || permissions.isEmpty()) {
+      return Grants.EMPTY;
+    }
+    Map<String, BitSet> users = new HashMap<>();
+    Map<String, BitSet> groups = new HashMap<>();
+    for (RepositoryPermission permission : permissions) {
+      BitSet verbs = toBits(getVerbs(permission, roles));
+      if (!verbs.isEmpty()) {
+        Map<String, BitSet> target = permission.isGroupPermission() ? groups : users;
+        target.computeIfAbsent(permission.getName(), name -> new BitSet()).or(verbs);
+      }
+    }
+    return new Grants(users, groups);
+  }
+
+  private Collection<String> getVerbs(RepositoryPermission permission, Map<String, Collection<String>> roles) {
+    if (permission.getRole() == null) {
+      return permission.getVerbs();
+    }
+    Collection<String> verbs = roles.get(permission.getRole());
+    if (verbs == null) {
+      throw new IllegalStateException("unknown role: " + permission.getRole());
+    }
+    return verbs;
+  }
+
+  private Map<String, Collection<String>> collectRoles() {
+    Map<String, Collection<String>> roles = new HashMap<>();
+    for (RepositoryRole role : repositoryPermissionProvider.availableRoles()) {
+      roles.putIfAbsent(role.getName(), role.getVerbs());
+    }
+    return roles;
+  }
+
+  private BitSet toBits(Collection<String> verbs) {
+    BitSet bits = new BitSet();
+    if (verbs != null) {
+      for (String verb : verbs) {
+        bits.set(bit(verb.toLowerCase(Locale.ENGLISH)));
+      }
+    }
+    return bits;
+  }
+
+  private Collection<String> toVerbs(BitSet bits) {
+    List<String> verbs = new ArrayList<>(bits.cardinality());
+    for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+      verbs.add(verbsByBit.get(i));
+    }
+    return verbs;
+  }
+
+  private int bit(String verb) {
+    Integer bit = bitsByVerb.get(verb);
+    if (bit == null) {
+      synchronized (verbsByBit) {
+        bit = bitsByVerb.computeIfAbsent(verb, v -> {
+          verbsByBit.add(v);
+          return verbsByBit.size() - 1;
+        });
+      }
+    }
+    return bit;
+  }
+
+  private static String key(String repositoryId) {
+    return repositoryId.toLowerCase(Locale.ENGLISH);
+  }
+
+  private static final class State {
+
+    private final Long lastModified;
+    private final Map<String, Entry> repositories = new ConcurrentHashMap<>();
+    private final Map<String, Grants> namespaces = new ConcurrentHashMap<>();
+
+    private State(Long lastModified) {
+      this.lastModified = lastModified;
+    }
+  }
+
+  private static final class Entry {
+
+    private final String id;
+    private final String namespace;
+    private final Grants grants;
+
+    private Entry(String id, String namespace, Grants grants) {
+      this.id = id;
+      this.namespace = namespace;
+      this.grants = grants;
+    }
+  }
+
+  private static final class Grants {
+
+    private static final Grants EMPTY = new Grants(Collections.emptyMap(), Collections.emptyMap());
+
+    private final Map<String, BitSet> users;
+    private final Map<String, BitSet> groups;
+
+    private Grants(Map<String, BitSet> users, Map<String, BitSet> groups) {
+      this.users = users;
+      this.groups = groups;
+    }
+
+    private void collect(String username, Set<String> groupNames, BitSet target) {
+      BitSet userVerbs = users.get(username);
+      if (userVerbs != null) {
+        target.or(userVerbs);
+      }
+      if (!groups.isEmpty()) {
+        for (String group : groupNames) {
+          BitSet groupVerbs = groups.get(group);
+          if (groupVerbs != null) {
+            target.or(groupVerbs);
+          }
+        }
+      }
+    }
+  }
+}
@@ -138,6 +138,13 @@ public class ScmWildcardPermission extends WildcardPermission {
     return CollectionUtils.intersection(theseEntries, scopeEntries);
   }
 
+  /**
+   * Returns the entries of the part at the given position. Missing parts are returned as wildcard.
+   */
+  Set<String> getPart(int position) {
+    return getEntries(getParts(), position);
+  }
+
   /**
    * Handles "shortened" permissions like <code>repository:read</code> that should be <code>repository:read:*</code>.
    */
@@ -148,7 +155,7 @@ public class ScmWildcardPermission extends WildcardPermission {
     return theseParts.get(position);
   }
 
-  private boolean isWildcard(Set<String> entries) {
+  static boolean isWildcard(Set<String> entries) {
     return entries.size() == 1 && entries.contains(WILDCARD_TOKEN);
   }
 }
@@ -123,7 +123,13 @@ public final class Scopes {
 
   private static List<Permission> authzPermissions(ScmPermissionResolver resolver, AuthorizationInfo authz){
     List<Permission> authzPermissions = Lists.newArrayList();
-    authzPermissions.addAll(nullToEmpty(authz.getObjectPermissions()));
+    for (Permission permission : nullToEmpty(authz.getObjectPermissions())) {
+      if (permission instanceof IndexedRepositoryPermission) {
+        authzPermissions.addAll(((IndexedRepositoryPermission) permission).toWildcardPermissions());
+      } else {
+        authzPermissions.add(permission);
+      }
+    }
     authzPermissions.addAll(resolve(resolver, authz.getStringPermissions()));
     return authzPermissions;
   }
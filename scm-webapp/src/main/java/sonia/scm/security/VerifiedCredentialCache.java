@@ -0,0 +1,162 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.security;
+
+import com.github.legman.Subscribe;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.HandlerEventType;
+import sonia.scm.user.UserEvent;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Short living cache for successfully verified credentials. Clients of the scm protocols send their credentials with
+ * every request, and verifying them against the stored password hash is deliberately expensive. The cache remembers
+ * successful verifications for a few seconds, so that only the first request of a clone or push has to pay for the
+ * hash.
+ * <p>
+ * The cache never stores the secret itself. Entries are keyed by a hmac of the principal, the secret and the stored
+ * hash, using a random key which lives only in memory. A change of the stored hash therefore never matches an
+ * existing entry. In addition all entries of a user are dropped if the user is modified or deleted, or if one of
+ * its api keys is removed.
+ * <p>
+ * The time to live can be configured in seconds with the system property {@code scm.security.credentialCache.ttl}
+ * ({@code 0} disables the cache), the maximum number of entries with {@code scm.security.credentialCache.size}.
+ *
+ * @since 2.15.0
+ */
+@Singleton
+public class VerifiedCredentialCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(VerifiedCredentialCache.class);
+
+  @VisibleForTesting
+  static final String PROPERTY_TTL = "scm.security.credentialCache.ttl";
+  @VisibleForTesting
+  static final String PROPERTY_SIZE = "scm.security.credentialCache.size";
+
+  private static final int DEFAULT_TTL = 30;
+  private static final int DEFAULT_SIZE = 1000;
+  private static final int KEY_LENGTH = 32;
+
+  private final HashFunction hmac;
+  private final Cache<HashCode, String> cache;
+
+  @Inject
+  public VerifiedCredentialCache() {
+    this(
+      Integer.getInteger(PROPERTY_TTL, DEFAULT_TTL),
+      Integer.getInteger(PROPERTY_SIZE, DEFAULT_SIZE),
+      Ticker.systemTicker()
+    );
+  }
+
+  @VisibleForTesting
+  VerifiedCredentialCache(int ttlInSeconds, int maximumSize, Ticker ticker) {
+    byte[] key = new byte[KEY_LENGTH];
+    new SecureRandom().nextBytes(key);
+    this.hmac = Hashing.hmacSha256(key);
+    if (ttlInSeconds > 0 && maximumSize > 0) {
+      this.cache = CacheBuilder.newBuilder()
+        .expireAfterWrite(ttlInSeconds, TimeUnit.SECONDS)
+        .maximumSize(maximumSize)
+        .ticker(ticker)
+        .build();
+    } else {
+      LOG.info("cache for verified credentials is disabled");
+      this.cache = null;
+    }
+  }
+
+  /**
+   * Returns {@code true} if the secret matches the stored hash. The expensive verifier is only called, if the same
+   * combination of principal, secret and hash was not successfully verified within the time to live.
+   *
+   * @param principal name of the principal
+   * @param secret secret sent by the client
+   * @param hashed hashed secret from the store
+   * @param verifier verifies the secret against the stored hash
+   *
+   * @return {@code true} if the credentials are valid
+   */
+  public boolean verify(String principal, String secret, String hashed, BooleanSupplier verifier) {
+    if (cache == null || principal == null || secret == null || hashed == null) {
+      return verifier.getAsBoolean();
+    }
+    HashCode key = key(principal, secret, hashed);
+    if (cache.getIfPresent(key) != null) {
+      LOG.trace("found verified credentials of {} in cache", principal);
+      return true;
+    }
+    boolean result = verifier.getAsBoolean();
+    if (result) {
+      cache.put(key, principal);
+    }
+    return result;
+  }
+
+  /**
+   * Removes all cached credentials of the given principal.
+   *
+   * @param principal name of the principal
+   */
+  public void invalidate(String principal) {
+    if (cache != null && cache.asMap().values().removeIf(principal::equals)) {
+      LOG.debug("removed verified credentials of {} from cache", principal);
+    }
+  }
+
+  @Subscribe(async = false)
+  public void onEvent(UserEvent event) {
+    HandlerEventType eventType = event.getEventType();
+    if (eventType == HandlerEventType.MODIFY || eventType == HandlerEventType.DELETE) {
+      invalidate(event.getItem().getName());
+    }
+  }
+
+  private HashCode key(String principal, String secret, String hashed) {
+    // the lengths keep the boundaries between the parts unambiguous
+    return hmac.newHasher()
+      .putInt(principal.length())
+      .putString(principal, StandardCharsets.UTF_8)
+      .putInt(secret.length())
+      .putString(secret, StandardCharsets.UTF_8)
+      .putString(hashed, StandardCharsets.UTF_8)
+      .hash();
+  }
+}
@@ -0,0 +1,260 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm;
+
+import com.google.common.io.ByteStreams;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sonia.scm.plugin.PluginLoader;
+import sonia.scm.plugin.UberWebResourceLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class WebAssetCacheTest {
+
+  @Mock
+  private PluginLoader pluginLoader;
+
+  @Mock
+  private UberWebResourceLoader webResourceLoader;
+
+  private Path cacheDirectory;
+  private Path resources;
+
+  private WebAssetCache cache;
+
+  @BeforeEach
+  void setUpCache(@TempDir Path directory) throws IOException {
+    lenient().when(pluginLoader.getUberWebResourceLoader()).thenReturn(webResourceLoader);
+    cacheDirectory = directory.resolve("cache");
+    resources = Files.createDirectory(directory.resolve("resources"));
+    cache = new WebAssetCache(pluginLoader, cacheDirectory);
+  }
+
+  @Test
+  void shouldCompressAssetOnFirstAccess() throws IOException {
+    Path file = write("app.js", script());
+
+    WebAsset asset = get(file);
+
+    assertThat(asset.getContentType()).isEqualTo("application/javascript");
+    assertThat(asset.getGzip()).hasValueSatisfying(gzip -> {
+      assertThat(gzip).startsWith(cacheDirectory);
+      assertThat(gunzip(gzip)).isEqualTo(script());
+    });
+    assertThat(asset.getBrotli()).isEmpty();
+  }
+
+  @Test
+  void shouldReturnSameAssetForUnmodifiedFile() throws IOException {
+    Path file = write("app.js", script());
+
+    assertThat(get(file)).isSameAs(get(file));
+  }
+
+  @Test
+  void shouldCreateNewAssetIfFileHasChanged() throws IOException {
+    Path file = write("app.js", script());
+    WebAsset asset = get(file);
+
+    write("app.js", script() + "console.log('changed');");
+
+    WebAsset changed = get(file);
+    assertThat(changed.getHash()).isNotEqualTo(asset.getHash());
+    assertThat(gunzip(changed.getGzip().get())).endsWith("changed');");
+  }
+
+  @Test
+  void shouldShareCompressedFilesForEqualContent() throws IOException {
+    WebAsset one = get(write("one.js", script()));
+    WebAsset two = get(write("two.js", script()));
+
+    assertThat(one.getHash()).isEqualTo(two.getHash());
+    assertThat(one.getGzip()).isEqualTo(two.getGzip());
+  }
+
+  @Test
+  void shouldRemoveCompressedFileOfReplacedAsset() throws IOException {
+    Path file = write("app.js", script());
+    Path gzip = get(file).getGzip().get();
+
+    write("app.js", script() + "console.log('changed');");
+    get(file);
+
+    assertThat(gzip).doesNotExist();
+  }
+
+  @Test
+  void shouldKeepCompressedFileWhichIsStillReferenced() throws IOException {
+    Path one = write("one.js", script());
+    Path gzip = get(one).getGzip().get();
+    get(write("two.js", script()));
+
+    write("one.js", script() + "console.log('changed');");
+    get(one);
+
+    assertThat(gzip).exists();
+  }
+
+  @Test
+  void shouldRemoveUnusedCompressedFilesOnStartup() throws IOException {
+    Files.createDirectories(cacheDirectory);
+    Path unused = Files.write(cacheDirectory.resolve("unused.gz"), new byte[]{42});
+    Files.setLastModifiedTime(unused, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(31)));
+    Path recent = Files.write(cacheDirectory.resolve("recent.gz"), new byte[]{42});
+    Path temp = Files.write(cacheDirectory.resolve("incomplete.tmp"), new byte[]{42});
+
+    new WebAssetCache(pluginLoader, cacheDirectory);
+
+    assertThat(unused).doesNotExist();
+    assertThat(temp).doesNotExist();
+    assertThat(recent).exists();
+  }
+
+  @Test
+  void shouldMarkReusedCompressedFilesAsUsed() throws IOException {
+    Path file = write("app.js", script());
+    Path gzip = get(file).getGzip().get();
+    WebAssetCache restarted = new WebAssetCache(pluginLoader, cacheDirectory);
+    Files.setLastModifiedTime(gzip, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(31)));
+
+    WebAsset asset = restarted.get(file.toUri().toURL()).get();
+
+    assertThat(asset.getGzip()).contains(gzip);
+    assertThat(Files.getLastModifiedTime(gzip).toMillis())
+      .isGreaterThan(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1));
+  }
+
+  @Test
+  void shouldUsePrecompressedFiles() throws IOException {
+    Path file = write("app.js", script());
+    Path gzip = write("app.js.gz", "gzip");
+    Path brotli = write("app.js.br", "brotli");
+
+    WebAsset asset = get(file);
+
+    assertThat(asset.getGzip()).contains(gzip);
+    assertThat(asset.getBrotli()).contains(brotli);
+  }
+
+  @Test
+  void shouldIgnoreOutdatedPrecompressedFiles() throws IOException {
+    Path file = write("app.js", script());
+    Path brotli = write("app.js.br", "brotli");
+    Files.setLastModifiedTime(brotli, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() - 10000));
+
+    WebAsset asset = get(file);
+
+    assertThat(asset.getBrotli()).isEmpty();
+  }
+
+  @Test
+  void shouldNotCompressSmallFiles() throws IOException {
+    WebAsset asset = get(write("small.js", "console.log('hello');"));
+
+    assertThat(asset.isCompressed()).isFalse();
+  }
+
+  @Test
+  void shouldNotCompressImages() throws IOException {
+    WebAsset asset = get(write("logo.png", script()));
+
+    assertThat(asset.getContentType()).isEqualTo("image/png");
+    assertThat(asset.isCompressed()).isFalse();
+  }
+
+  @Test
+  void shouldReturnEmptyForNonFileUrls() throws IOException {
+    Optional<WebAsset> asset = cache.get(new URL("http://hitchhiker.com/app.js"));
+
+    assertThat(asset).isEmpty();
+  }
+
+  @Test
+  void shouldReturnEmptyForDirectories() throws IOException {
+    Optional<WebAsset> asset = cache.get(resources.toUri().toURL());
+
+    assertThat(asset).isEmpty();
+  }
+
+  @Test
+  void shouldAppendHashAsVersion() throws IOException {
+    Path file = write("app.js", script());
+    when(webResourceLoader.getResource("/assets/app.js")).thenReturn(file.toUri().toURL());
+
+    String versioned = cache.versioned("assets/app.js");
+
+    assertThat(versioned).isEqualTo("assets/app.js?v=" + get(file).getHash());
+  }
+
+  @Test
+  void shouldNotVersionUnknownResources() {
+    String versioned = cache.versioned("assets/unknown.js");
+
+    assertThat(versioned).isEqualTo("assets/unknown.js");
+  }
+
+  private WebAsset get(Path file) throws IOException {
+    Optional<WebAsset> asset = cache.get(file.toUri().toURL());
+    assertThat(asset).isPresent();
+    return asset.get();
+  }
+
+  private Path write(String name, String content) throws IOException {
+    return Files.write(resources.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private String gunzip(Path gzip) throws IOException {
+    try (InputStream input = new GZIPInputStream(Files.newInputStream(gzip))) {
+      return new String(ByteStreams.toByteArray(input), StandardCharsets.UTF_8);
+    }
+  }
+
+  private String script() {
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      content.append("console.log('hello number ").append(i).append("');\n");
+    }
+    return content.toString();
+  }
+}
@@ -25,12 +25,14 @@
 package sonia.scm;
 
 import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import sonia.scm.plugin.PluginLoader;
@@ -40,17 +42,24 @@ import javax.servlet.ServletOutputStream;
 import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -75,13 +84,17 @@ public class WebResourceServletTest {
   @Mock
   private PushStateDispatcher pushStateDispatcher;
 
+  private WebAssetCache assetCache;
+
   private WebResourceServlet servlet;
 
   @Before
-  public void setUpMocks() {
+  public void setUpMocks() throws IOException {
     when(pluginLoader.getUberWebResourceLoader()).thenReturn(webResourceLoader);
     when(request.getContextPath()).thenReturn("/scm");
-    servlet = new WebResourceServlet(pluginLoader, pushStateDispatcher);
+    when(request.getDateHeader("If-Modified-Since")).thenReturn(-1L);
+    assetCache = new WebAssetCache(pluginLoader, temporaryFolder.newFolder().toPath());
+    servlet = new WebResourceServlet(pluginLoader, pushStateDispatcher, assetCache);
   }
 
   @Test
@@ -121,6 +134,90 @@ public class WebResourceServletTest {
     assertEquals("hello", output.buffer.toString());
   }
 
+  @Test
+  public void testDoGetWithGzip() throws IOException {
+    when(request.getRequestURI()).thenReturn("/scm/assets/app.js");
+    when(request.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+    TestingOutputServletOutputStream output = new TestingOutputServletOutputStream();
+    when(response.getOutputStream()).thenReturn(output);
+
+    String content = createContent();
+    File file = new File(temporaryFolder.newFolder(), "app.js");
+    Files.write(content.getBytes(Charsets.UTF_8), file);
+
+    when(webResourceLoader.getResource("/assets/app.js")).thenReturn(file.toURI().toURL());
+    servlet.doGet(request, response);
+
+    verify(response).setHeader("Content-Encoding", "gzip");
+    verify(response).setHeader("Cache-Control", "no-cache");
+    verify(response).setContentType("application/javascript");
+    try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(output.buffer.toByteArray()))) {
+      assertEquals(content, new String(ByteStreams.toByteArray(input), Charsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testDoGetWithRemovedGzip() throws IOException {
+    when(request.getRequestURI()).thenReturn("/scm/assets/app.js");
+    when(request.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+    TestingOutputServletOutputStream output = new TestingOutputServletOutputStream();
+    when(response.getOutputStream()).thenReturn(output);
+
+    String content = createContent();
+    File file = new File(temporaryFolder.newFolder(), "app.js");
+    Files.write(content.getBytes(Charsets.UTF_8), file);
+    URL url = file.toURI().toURL();
+    when(webResourceLoader.getResource("/assets/app.js")).thenReturn(url);
+
+    Path gzip = assetCache.get(url).flatMap(WebAsset::getGzip).orElseThrow(AssertionError::new);
+    java.nio.file.Files.delete(gzip);
+    servlet.doGet(request, response);
+
+    verify(response, never()).setHeader(eq("Content-Encoding"), anyString());
+    verify(response, never()).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    assertEquals(content, output.buffer.toString());
+  }
+
+  @Test
+  public void testDoGetWithMatchingETag() throws IOException {
+    when(request.getRequestURI()).thenReturn("/scm/README.txt");
+    ServletOutputStream output = mock(ServletOutputStream.class);
+    when(response.getOutputStream()).thenReturn(output);
+
+    File file = temporaryFolder.newFile();
+    Files.write("hello".getBytes(Charsets.UTF_8), file);
+    when(webResourceLoader.getResource("/README.txt")).thenReturn(file.toURI().toURL());
+
+    servlet.doGet(request, response);
+    ArgumentCaptor<String> etag = ArgumentCaptor.forClass(String.class);
+    verify(response).setHeader(eq("ETag"), etag.capture());
+
+    when(request.getHeader("If-None-Match")).thenReturn(etag.getValue());
+    servlet.doGet(request, response);
+
+    verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    verify(response, times(1)).getOutputStream();
+  }
+
+  @Test
+  public void testDoGetWithVersion() throws IOException {
+    when(request.getRequestURI()).thenReturn("/scm/README.txt");
+    when(response.getOutputStream()).thenReturn(new TestingOutputServletOutputStream());
+
+    File file = temporaryFolder.newFile();
+    Files.write("hello".getBytes(Charsets.UTF_8), file);
+    when(webResourceLoader.getResource("/README.txt")).thenReturn(file.toURI().toURL());
+
+    WebAssetCache assetCache = new WebAssetCache(pluginLoader, temporaryFolder.newFolder().toPath());
+    String versioned = assetCache.versioned("README.txt");
+    String version = versioned.substring(versioned.indexOf('=') + 1);
+    when(request.getParameter(WebAssetCache.VERSION_PARAMETER)).thenReturn(version);
+
+    servlet.doGet(request, response);
+
+    verify(response).setHeader("Cache-Control", "public, max-age=31536000, immutable");
+  }
+
   @Test
   public void testDoGetWithError() throws IOException {
     when(request.getRequestURI()).thenReturn("/scm/README.txt");
@@ -145,6 +242,14 @@ public class WebResourceServletTest {
     verify(response).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
   }
 
+  private String createContent() {
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      content.append("console.log('hello number ").append(i).append("');\n");
+    }
+    return content.toString();
+  }
+
   private static class TestingOutputServletOutputStream extends ServletOutputStream {
 
     private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
@@ -25,8 +25,8 @@
 package sonia.scm.api.v2.resources;
 
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.util.Providers;
-import de.otto.edison.hal.Links;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.shiro.subject.Subject;
 import org.apache.shiro.subject.support.SubjectThreadState;
@@ -55,14 +55,18 @@ import sonia.scm.web.RestDispatcher;
 import sonia.scm.web.VndMediaType;
 
 import javax.ws.rs.core.Response;
+import java.io.OutputStream;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.Silent.class)
@@ -96,7 +100,7 @@ public class DiffResourceTest extends RepositoryTestBase {
 
   @Before
   public void prepareEnvironment() {
-    diffRootResource = new DiffRootResource(serviceFactory, diffResultToDiffResultDtoMapper);
+    diffRootResource = new DiffRootResource(serviceFactory, diffResultToDiffResultDtoMapper, new ObjectMapper());
     dispatcher.addSingletonResource(getRepositoryRootResource());
     when(serviceFactory.create(new NamespaceAndName("space", "repo"))).thenReturn(service);
     when(serviceFactory.create(any(Repository.class))).thenReturn(service);
@@ -138,8 +142,14 @@ public class DiffResourceTest extends RepositoryTestBase {
   public void shouldGetParsedDiffs() throws Exception {
     DiffResult diffResult = mock(DiffResult.class);
     when(diffResultCommandBuilder.getDiffResult()).thenReturn(diffResult);
-    when(diffResultToDiffResultDtoMapper.mapForRevision(REPOSITORY, diffResult, "revision"))
-      .thenReturn(new DiffResultDto(Links.linkingTo().self("http://self").build()));
+    DiffResultToDiffResultDtoMapper.MappedDiffResult mappedDiffResult = mock(DiffResultToDiffResultDtoMapper.MappedDiffResult.class);
+    when(diffResultToDiffResultDtoMapper.streamForRevision(REPOSITORY, diffResult, "revision"))
+      .thenReturn(mappedDiffResult);
+    doAnswer(invocation -> {
+      OutputStream output = invocation.getArgument(1);
+      output.write("{\"_links\":{\"self\":{\"href\":\"http://self\"}}}".getBytes(StandardCharsets.UTF_8));
+      return null;
+    }).when(mappedDiffResult).write(any(), any());
     MockHttpRequest request = MockHttpRequest
       .get(DIFF_URL + "revision/parsed")
       .accept(VndMediaType.DIFF_PARSED);
@@ -151,6 +161,26 @@ public class DiffResourceTest extends RepositoryTestBase {
       .isEqualTo(200);
     assertThat(response.getContentAsString())
       .contains("\"self\":{\"href\":\"http://self\"}");
+    verify(service).close();
+  }
+
+  @Test
+  public void shouldPassOffsetAndLimitForParsedDiffs() throws Exception {
+    DiffResult diffResult = mock(DiffResult.class);
+    when(diffResultCommandBuilder.getDiffResult()).thenReturn(diffResult);
+    when(diffResultToDiffResultDtoMapper.streamForRevision(REPOSITORY, diffResult, "revision"))
+      .thenReturn(mock(DiffResultToDiffResultDtoMapper.MappedDiffResult.class));
+    MockHttpRequest request = MockHttpRequest
+      .get(DIFF_URL + "revision/parsed?offset=42&limit=21")
+      .accept(VndMediaType.DIFF_PARSED);
+    MockHttpResponse response = new MockHttpResponse();
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus())
+      .isEqualTo(200);
+    verify(diffResultCommandBuilder).setOffset(42);
+    verify(diffResultCommandBuilder).setLimit(21);
   }
 
   @Test
@@ -24,6 +24,7 @@
 
 package sonia.scm.api.v2.resources;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import de.otto.edison.hal.Link;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -34,6 +35,8 @@ import sonia.scm.repository.api.DiffLine;
 import sonia.scm.repository.api.DiffResult;
 import sonia.scm.repository.api.Hunk;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -111,6 +114,87 @@ class DiffResultToDiffResultDtoMapperTest {
       .isEqualTo("/scm/api/v2/repositories/space/X/incoming/feature%2Fsome/master/diff/parsed");
   }
 
+  @Test
+  void shouldTruncateFilesWhichExceedTheLineLimit() {
+    DiffResultToDiffResultDtoMapper limitedMapper = new DiffResultToDiffResultDtoMapper(resourceLinks, 2, 100);
+    DiffResult result = result(
+      modifiedFile("B.ts", "def", "abc",
+        hunk("@@ -3,4 1,2 @@", 1, 2, 3, 4,
+          insertedLine("a", 1),
+          modifiedLine("b", 2),
+          mock(DiffLine.class)
+        )
+      )
+    );
+
+    DiffResultDto dto = limitedMapper.mapForRevision(REPOSITORY, result, "123");
+
+    DiffResultDto.FileDto file = dto.getFiles().get(0);
+    assertThat(file.getHunks().get(0).getChanges()).hasSize(2);
+    assertThat(file.isTruncated()).isTrue();
+    assertThat(dto.isTruncated()).isTrue();
+    assertThat(dto.isPartial()).isFalse();
+    assertThat(dto.getLinks().getLinkBy("next")).isNotPresent();
+  }
+
+  @Test
+  void shouldOmitFilesAfterTheTotalLineLimit() {
+    DiffResultToDiffResultDtoMapper limitedMapper = new DiffResultToDiffResultDtoMapper(resourceLinks, 100, 3);
+    DiffResult result = result(
+      modifiedFile("B.ts", "def", "abc",
+        hunk("@@ -3,4 1,2 @@", 1, 2, 3, 4,
+          insertedLine("a", 1),
+          modifiedLine("b", 2),
+          deletedLine("c", 3)
+        )
+      ),
+      mock(DiffFile.class)
+    );
+
+    DiffResultDto dto = limitedMapper.mapForRevision(REPOSITORY, result, "123");
+
+    assertThat(dto.getFiles()).hasSize(1);
+    assertThat(dto.getFiles().get(0).isTruncated()).isFalse();
+    assertThat(dto.isPartial()).isTrue();
+    assertThat(dto.getLinks().getLinkBy("next"))
+      .isPresent()
+      .get()
+      .extracting("href")
+      .isEqualTo("/scm/api/v2/repositories/space/X/diff/123/parsed?offset=1");
+  }
+
+  @Test
+  void shouldCreateNextLinkForPartialResult() {
+    DiffResult result = createResult();
+    when(result.isPartial()).thenReturn(true);
+    when(result.getOffset()).thenReturn(10);
+    when(result.getLimit()).thenReturn(Optional.of(5));
+
+    DiffResultDto dto = mapper.mapForRevision(REPOSITORY, result, "123");
+
+    assertThat(dto.isPartial()).isTrue();
+    assertThat(dto.getLinks().getLinkBy("next"))
+      .isPresent()
+      .get()
+      .extracting("href")
+      .isEqualTo("/scm/api/v2/repositories/space/X/diff/123/parsed?offset=15&limit=5");
+  }
+
+  @Test
+  void shouldWriteFilesAsJson() throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    mapper.streamForRevision(REPOSITORY, createResult(), "123").write(new ObjectMapper(), output);
+
+    String json = output.toString();
+    assertThat(json)
+      .startsWith("{\"files\":[{")
+      .contains("\"newPath\":\"B.ts\"")
+      .contains("\"content\":\"b\"")
+      .contains("\"partial\":false")
+      .endsWith("\"_links\":{\"self\":{\"href\":\"/scm/api/v2/repositories/space/X/diff/123/parsed\"}}}");
+  }
+
   private DiffResult createResult() {
     return result(
       addedFile("A.java", "abc"),
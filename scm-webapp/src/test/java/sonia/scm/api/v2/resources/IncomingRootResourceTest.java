@@ -25,8 +25,8 @@
 package sonia.scm.api.v2.resources;
 
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.util.Providers;
-import de.otto.edison.hal.Links;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.shiro.subject.Subject;
 import org.apache.shiro.subject.support.SubjectThreadState;
@@ -39,6 +39,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.Answers;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
@@ -59,7 +60,9 @@ import sonia.scm.web.RestDispatcher;
 import sonia.scm.web.VndMediaType;
 
 import javax.ws.rs.core.Response;
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.net.URISyntaxException;
 import java.time.Instant;
 import java.util.Date;
@@ -70,7 +73,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static sonia.scm.repository.api.DiffFormat.NATIVE;
 
@@ -99,7 +104,7 @@ public class IncomingRootResourceTest extends RepositoryTestBase {
 
   @Mock
   private DiffCommandBuilder diffCommandBuilder;
-  @Mock
+  @Mock(answer = Answers.RETURNS_SELF)
   private DiffResultCommandBuilder diffResultCommandBuilder;
 
   @Mock
@@ -117,7 +122,7 @@ public class IncomingRootResourceTest extends RepositoryTestBase {
   @Before
   public void prepareEnvironment() {
     incomingChangesetCollectionToDtoMapper = new IncomingChangesetCollectionToDtoMapper(changesetToChangesetDtoMapper, resourceLinks);
-    incomingRootResource = new IncomingRootResource(serviceFactory, incomingChangesetCollectionToDtoMapper, diffResultToDiffResultDtoMapper);
+    incomingRootResource = new IncomingRootResource(serviceFactory, incomingChangesetCollectionToDtoMapper, diffResultToDiffResultDtoMapper, new ObjectMapper());
     dispatcher.addSingletonResource(getRepositoryRootResource());
     when(serviceFactory.create(new NamespaceAndName("space", "repo"))).thenReturn(repositoryService);
     when(serviceFactory.create(REPOSITORY)).thenReturn(repositoryService);
@@ -225,8 +230,14 @@ public class IncomingRootResourceTest extends RepositoryTestBase {
     when(diffResultCommandBuilder.setAncestorChangeset("target_changeset_id")).thenReturn(diffResultCommandBuilder);
     DiffResult diffResult = mock(DiffResult.class);
     when(diffResultCommandBuilder.getDiffResult()).thenReturn(diffResult);
-    when(diffResultToDiffResultDtoMapper.mapForIncoming(REPOSITORY, diffResult, "src_changeset_id", "target_changeset_id"))
-    .thenReturn(new DiffResultDto(Links.linkingTo().self("http://self").build()));
+    DiffResultToDiffResultDtoMapper.MappedDiffResult mappedDiffResult = mock(DiffResultToDiffResultDtoMapper.MappedDiffResult.class);
+    when(diffResultToDiffResultDtoMapper.streamForIncoming(REPOSITORY, diffResult, "src_changeset_id", "target_changeset_id"))
+      .thenReturn(mappedDiffResult);
+    doAnswer(invocation -> {
+      OutputStream output = invocation.getArgument(1);
+      output.write("{\"_links\":{\"self\":{\"href\":\"http://self\"}}}".getBytes(StandardCharsets.UTF_8));
+      return null;
+    }).when(mappedDiffResult).write(any(), any());
 
     MockHttpRequest request = MockHttpRequest
       .get(INCOMING_DIFF_URL + "src_changeset_id/target_changeset_id/diff/parsed")
@@ -239,6 +250,7 @@ public class IncomingRootResourceTest extends RepositoryTestBase {
       .isEqualTo(200);
     assertThat(response.getContentAsString())
       .contains("\"self\":{\"href\":\"http://self\"}");
+    verify(repositoryService).close();
   }
 
   @Test
@@ -34,6 +34,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import sonia.scm.WebAssetCache;
 import sonia.scm.plugin.InstalledPlugin;
 import sonia.scm.plugin.InstalledPluginDescriptor;
 import sonia.scm.plugin.PluginInformation;
@@ -55,6 +56,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -69,12 +71,16 @@ public class UIRootResourceTest {
   @Mock
   private HttpServletRequest request;
 
+  @Mock
+  private WebAssetCache assetCache;
+
   private final URI baseUri = URI.create("/");
   private final ResourceLinks resourceLinks = ResourceLinksMock.createMock(baseUri);
 
   @Before
   public void setUpRestService() {
-    UIPluginDtoMapper mapper = new UIPluginDtoMapper(resourceLinks, request);
+    when(assetCache.versioned(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+    UIPluginDtoMapper mapper = new UIPluginDtoMapper(resourceLinks, request, assetCache);
     UIPluginDtoCollectionMapper collectionMapper = new UIPluginDtoCollectionMapper(resourceLinks, mapper);
 
     UIPluginResource pluginResource = new UIPluginResource(pluginLoader, collectionMapper, mapper);
@@ -0,0 +1,111 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.cache;
+
+import org.junit.jupiter.api.Test;
+import sonia.scm.repository.BlameLine;
+import sonia.scm.repository.BlameResult;
+import sonia.scm.repository.BrowserResult;
+import sonia.scm.repository.Changeset;
+import sonia.scm.repository.ChangesetPagingResult;
+import sonia.scm.repository.Contributor;
+import sonia.scm.repository.FileObject;
+import sonia.scm.repository.Person;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StructuralCopyTest {
+
+  @Test
+  void shouldCopyChangesetPagingResult() {
+    Changeset changeset = new Changeset("42", 1L, new Person("trillian", "trillian@hitchhiker.com"), "Heart of Gold");
+    changeset.setBranches(singletonList("main"));
+    changeset.setParents(singletonList("21"));
+    changeset.setTags(singletonList("1.0.0"));
+    changeset.addContributor(new Contributor("Co-authored-by", new Person("dent")));
+    changeset.setProperty("hitchhiker", "marvin");
+    ChangesetPagingResult result = new ChangesetPagingResult(1, singletonList(changeset), "main");
+
+    ChangesetPagingResult copy = CopyStrategy.READWRITE.copyOnRead(result);
+
+    assertThat(copy).isNotSameAs(result).isEqualTo(result);
+    Changeset copiedChangeset = copy.getChangesets().get(0);
+    copiedChangeset.setDescription("Vogon");
+    copiedChangeset.getBranches().add("develop");
+    copiedChangeset.setProperty("hitchhiker", "zaphod");
+
+    assertThat(changeset.getDescription()).isEqualTo("Heart of Gold");
+    assertThat(changeset.getBranches()).containsOnly("main");
+    assertThat(changeset.getProperty("hitchhiker")).isEqualTo("marvin");
+  }
+
+  @Test
+  void shouldCopyBrowserResult() {
+    FileObject root = new FileObject();
+    root.setName("");
+    root.setPath("");
+    root.setDirectory(true);
+    FileObject child = new FileObject();
+    child.setName("README.md");
+    child.setPath("README.md");
+    child.setLength(42L);
+    child.setCommitDate(21L);
+    child.setDescription("initial commit");
+    root.addChild(child);
+    BrowserResult result = new BrowserResult("abc", "main", root);
+
+    BrowserResult copy = CopyStrategy.READWRITE.copyOnRead(result);
+
+    assertThat(copy).isNotSameAs(result).isEqualTo(result);
+    FileObject copiedChild = copy.getFile().getChildren().iterator().next();
+    assertThat(copiedChild).isNotSameAs(child);
+    copiedChild.setDescription("changed");
+
+    assertThat(child.getDescription()).contains("initial commit");
+  }
+
+  @Test
+  void shouldCopyBlameResult() {
+    BlameResult result = new BlameResult(asList(
+      new BlameLine(1, "abc", 1L, new Person("trillian"), "first", "line one"),
+      new BlameLine(2, "def", 2L, new Person("dent"), "second", "line two")
+    ));
+
+    BlameResult copy = CopyStrategy.READWRITE.copyOnRead(result);
+
+    assertThat(copy).isNotSameAs(result).isEqualTo(result);
+    copy.getLine(0).setCode("changed");
+
+    assertThat(result.getLine(0).getCode()).isEqualTo("line one");
+  }
+
+  @Test
+  void shouldNotSupportSubclasses() {
+    assertThat(StructuralCopy.isSupported(new Changeset() {})).isFalse();
+    assertThat(StructuralCopy.isSupported("a string")).isFalse();
+  }
+}
@@ -73,6 +73,7 @@ class EnvironmentInformationXmlGeneratorTest {
         "        </plugin>\n" +
         "    </plugins>",
       "<coreVersion>2.13.0</coreVersion>",
+      "<exportFormatVersion>2</exportFormatVersion>",
       "<arch>",
       "<os>");
   }
@@ -138,6 +138,21 @@ class ExportServiceTest {
     assertThat(exportService.isExporting(REPOSITORY)).isFalse();
   }
 
+  @Test
+  void shouldReportBytesWrittenForFinishedExport() throws IOException {
+    doNothing().when(subject).checkPermission("repository:export:" + REPOSITORY.getId());
+    try (OutputStream os = exportService.store(REPOSITORY, false, false, false)) {
+      os.write("Scm-Manager-Export".getBytes());
+    }
+
+    exportService.setExportFinished(REPOSITORY);
+
+    RepositoryExportInformation info = exportService.getExportInformation(REPOSITORY);
+    assertThat(info.getStatus()).isEqualTo(ExportStatus.FINISHED);
+    assertThat(info.getBytesWritten()).isEqualTo(18);
+    assertThat(info.getThroughput()).isPositive();
+  }
+
   @Test
   void shouldOnlyClearRepositoryExports() {
     doNothing().when(subject).checkPermission("repository:export:" + REPOSITORY.getId());
@@ -99,6 +99,27 @@ class ScmEnvironmentCompatibilityCheckerTest {
     assertThat(compatible).isFalse();
   }
 
+  @Test
+  void shouldReturnFalseIfExportFormatVersionIsNewer() {
+    ScmEnvironment env = createScmEnvironment("2.13.0", "linux", "64", Collections.emptyList());
+    env.setExportFormatVersion(FullScmRepositoryExporter.EXPORT_FORMAT_VERSION + 1);
+
+    boolean compatible = checker.check(env);
+
+    assertThat(compatible).isFalse();
+  }
+
+  @Test
+  void shouldReturnTrueForCurrentExportFormatVersion() {
+    when(scmContextProvider.getVersion()).thenReturn("2.13.0");
+    ScmEnvironment env = createScmEnvironment("2.13.0", "linux", "64", Collections.emptyList());
+    env.setExportFormatVersion(FullScmRepositoryExporter.EXPORT_FORMAT_VERSION);
+
+    boolean compatible = checker.check(env);
+
+    assertThat(compatible).isTrue();
+  }
+
   @Test
   void shouldReturnFalseIfPluginIsIncompatible() {
     when(scmContextProvider.getVersion()).thenReturn("2.13.0");
@@ -0,0 +1,111 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.importexport;
+
+import com.google.common.io.ByteStreams;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SplittingTarEntryOutputStreamTest {
+
+  @Test
+  void shouldWriteSingleEntryIfDataFitsIntoOnePart() throws IOException {
+    byte[] data = random(100);
+
+    byte[] archive = write(data, 1024);
+
+    try (TarArchiveInputStream tais = new TarArchiveInputStream(new ByteArrayInputStream(archive))) {
+      TarArchiveEntry entry = tais.getNextTarEntry();
+      assertThat(entry.getName()).isEqualTo("repository.bundle");
+      assertThat(ContinuedTarEntryInputStream.isContinued(entry)).isFalse();
+      assertThat(ByteStreams.toByteArray(tais)).isEqualTo(data);
+      assertThat(tais.getNextTarEntry()).isNull();
+    }
+  }
+
+  @Test
+  void shouldSplitAndJoinLargeEntries() throws IOException {
+    byte[] data = random(10_000);
+
+    byte[] archive = write(data, 1024);
+
+    try (TarArchiveInputStream tais = new TarArchiveInputStream(new ByteArrayInputStream(archive))) {
+      TarArchiveEntry entry = tais.getNextTarEntry();
+      assertThat(entry.getName()).isEqualTo("repository.bundle");
+      assertThat(ContinuedTarEntryInputStream.isContinued(entry)).isTrue();
+
+      InputStream joined = new ContinuedTarEntryInputStream(tais, entry);
+      assertThat(ByteStreams.toByteArray(joined)).isEqualTo(data);
+      assertThat(tais.getNextTarEntry().getName()).isEqualTo("next");
+    }
+  }
+
+  @Test
+  void shouldFailIfContinuedPartIsMissing() throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (TarArchiveOutputStream taos = new TarArchiveOutputStream(baos)) {
+      SplittingTarEntryOutputStream out = new SplittingTarEntryOutputStream(taos, "repository.bundle", 10);
+      out.write(random(15));
+      // simulate a truncated archive, by not closing the stream
+      taos.finish();
+    }
+
+    try (TarArchiveInputStream tais = new TarArchiveInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+      TarArchiveEntry entry = tais.getNextTarEntry();
+      InputStream joined = new ContinuedTarEntryInputStream(tais, entry);
+      assertThrows(IOException.class, () -> ByteStreams.toByteArray(joined));
+    }
+  }
+
+  private byte[] write(byte[] data, int partSize) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (TarArchiveOutputStream taos = new TarArchiveOutputStream(baos)) {
+      try (SplittingTarEntryOutputStream out = new SplittingTarEntryOutputStream(taos, "repository.bundle", partSize)) {
+        out.write(data);
+      }
+      TarArchiveEntry next = new TarArchiveEntry("next");
+      taos.putArchiveEntry(next);
+      taos.closeArchiveEntry();
+    }
+    return baos.toByteArray();
+  }
+
+  private byte[] random(int length) {
+    byte[] data = new byte[length];
+    new Random(42).nextBytes(data);
+    return data;
+  }
+}
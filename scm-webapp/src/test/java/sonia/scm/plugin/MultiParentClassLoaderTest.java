@@ -108,6 +108,34 @@ class MultiParentClassLoaderTest {
     assertThat(content).containsOnly("one", "two");
   }
 
+  @Test
+  void shouldOnlyAskFirstParentAndParentsWhichContainThePackage(@TempDir Path directory) throws IOException {
+    CountingPluginClassLoader one = createPluginClassLoader(directory.resolve("one"), "sonia/scm/one/one", "one");
+    CountingPluginClassLoader two = createPluginClassLoader(directory.resolve("two"), "sonia/scm/two/two", "two");
+    CountingPluginClassLoader three = createPluginClassLoader(directory.resolve("three"), "sonia/scm/three/three", "three");
+    MultiParentClassLoader classLoader = new MultiParentClassLoader(one, two, three);
+
+    assertResource(classLoader, "sonia/scm/three/three", "three");
+
+    // the first parent is always asked, because it delegates to the root class loader
+    assertThat(one.resourceLookups).isEqualTo(1);
+    assertThat(two.resourceLookups).isZero();
+    assertThat(three.resourceLookups).isEqualTo(1);
+  }
+
+  @Test
+  void shouldRememberMissingClasses(@TempDir Path directory) throws IOException {
+    CountingPluginClassLoader one = createPluginClassLoader(directory.resolve("one"), "sonia/scm/one/one", "one");
+    CountingPluginClassLoader two = createPluginClassLoader(directory.resolve("two"), "sonia/scm/two/two", "two");
+    MultiParentClassLoader classLoader = new MultiParentClassLoader(one, two);
+
+    assertThrows(ClassNotFoundException.class, () -> classLoader.loadClass("sonia.scm.two.ObjectFactory"));
+    assertThrows(ClassNotFoundException.class, () -> classLoader.loadClass("sonia.scm.two.ObjectFactory"));
+
+    assertThat(one.classLookups).isEqualTo(1);
+    assertThat(two.classLookups).isEqualTo(1);
+  }
+
   @SuppressWarnings("UnstableApiUsage")
   private List<String> toStrings(Enumeration<URL> urlEnumeration) throws IOException {
     List<String> content = new ArrayList<>();
@@ -137,6 +165,14 @@ class MultiParentClassLoaderTest {
     return createClassLoader(directory);
   }
 
+  private CountingPluginClassLoader createPluginClassLoader(Path directory, String resource, String content) throws IOException {
+    Path file = directory.resolve(resource);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    ClassLoader parent = ClassLoader.getSystemClassLoader().getParent();
+    return new CountingPluginClassLoader(new URL[]{directory.toUri().toURL()}, parent, content);
+  }
+
   private URLClassLoader createClassLoader(Path directory) throws MalformedURLException {
     ClassLoader parent = ClassLoader.getSystemClassLoader().getParent();
     return new URLClassLoader(new URL[]{directory.toUri().toURL()}, parent);
@@ -0,0 +1,111 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.plugin;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PluginPackagesTest {
+
+  @Test
+  void shouldCollectPackagesOfClassesDirectory(@TempDir Path directory) throws IOException {
+    Path classes = directory.resolve("classes");
+    create(classes.resolve("sonia/scm/mail/MailService.class"));
+    create(classes.resolve("META-INF/scm/plugin.xml"));
+    create(classes.resolve("root.txt"));
+
+    Optional<Set<String>> packages = PluginPackages.scan(new URL[]{classes.toUri().toURL()}, "mail");
+
+    assertThat(packages).hasValueSatisfying(
+      p -> assertThat(p).containsOnly("sonia/scm/mail", "sonia/scm", "sonia", "META-INF/scm", "META-INF", "")
+    );
+  }
+
+  @Test
+  void shouldCollectPackagesOfJar(@TempDir Path directory) throws IOException {
+    Path jar = directory.resolve("lib").resolve("mail.jar");
+    Files.createDirectories(jar.getParent());
+    try (JarOutputStream output = new JarOutputStream(Files.newOutputStream(jar))) {
+      output.putNextEntry(new JarEntry("javax/mail/"));
+      output.putNextEntry(new JarEntry("javax/mail/Session.class"));
+      output.putNextEntry(new JarEntry("META-INF/versions/11/javax/mail/util/Helper.class"));
+    }
+
+    Optional<Set<String>> packages = PluginPackages.scan(new URL[]{jar.toUri().toURL()}, "mail");
+
+    assertThat(packages).hasValueSatisfying(
+      p -> assertThat(p).containsOnly(
+        "javax/mail", "javax/mail/util", "javax", "",
+        "META-INF/versions/11/javax/mail/util", "META-INF/versions/11/javax/mail", "META-INF/versions/11/javax",
+        "META-INF/versions/11", "META-INF/versions", "META-INF"
+      )
+    );
+  }
+
+  @Test
+  void shouldIgnoreMissingDirectories(@TempDir Path directory) throws IOException {
+    Optional<Set<String>> packages = PluginPackages.scan(new URL[]{directory.resolve("classes").toUri().toURL()}, "mail");
+
+    assertThat(packages).hasValueSatisfying(p -> assertThat(p).isEmpty());
+  }
+
+  @Test
+  void shouldReturnEmptyOptionalForNonFileUrls() throws IOException {
+    Optional<Set<String>> packages = PluginPackages.scan(new URL[]{new URL("http://localhost/mail.jar")}, "mail");
+
+    assertThat(packages).isEmpty();
+  }
+
+  @Test
+  void shouldReturnPackageOfClass() {
+    assertThat(PluginPackages.packageOfClass("sonia.scm.mail.MailService")).isEqualTo("sonia/scm/mail");
+    assertThat(PluginPackages.packageOfClass("MailService")).isEmpty();
+  }
+
+  @Test
+  void shouldReturnPackageOfResource() {
+    assertThat(PluginPackages.packageOf("META-INF/scm/plugin.xml")).isEqualTo("META-INF/scm");
+    assertThat(PluginPackages.packageOf("plugin.txt")).isEmpty();
+  }
+
+  private void create(Path file) throws IOException {
+    Files.createDirectories(file.getParent());
+    try (OutputStream output = Files.newOutputStream(file)) {
+      output.write(42);
+    }
+  }
+}
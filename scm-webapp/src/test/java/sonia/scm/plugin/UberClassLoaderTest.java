@@ -41,6 +41,7 @@ import java.util.List;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class UberClassLoaderTest {
 
@@ -68,6 +69,57 @@ class UberClassLoaderTest {
     assertThat(toContent(resources)).containsOnly("mail", "review");
   }
 
+  @Test
+  void shouldOnlyAskPluginsWhichContainThePackage(@TempDir Path tempDir) throws IOException {
+    CountingPluginClassLoader mailClassLoader = createPluginClassLoader(tempDir, "sonia/scm/mail/mail.txt", "mail");
+    CountingPluginClassLoader reviewClassLoader = createPluginClassLoader(tempDir, "sonia/scm/review/review.txt", "review");
+
+    UberClassLoader uberClassLoader = new UberClassLoader(parentClassLoader, ImmutableSet.of(mailClassLoader, reviewClassLoader));
+    URL resource = uberClassLoader.findResource("sonia/scm/review/review.txt");
+
+    assertThat(toContent(Collections.singletonList(resource))).containsOnly("review");
+    assertThat(mailClassLoader.resourceLookups).isZero();
+    assertThat(reviewClassLoader.resourceLookups).isEqualTo(1);
+  }
+
+  @Test
+  void shouldNotAskAnyPluginForUnknownPackages(@TempDir Path tempDir) throws IOException {
+    CountingPluginClassLoader mailClassLoader = createPluginClassLoader(tempDir, "sonia/scm/mail/mail.txt", "mail");
+
+    UberClassLoader uberClassLoader = new UberClassLoader(parentClassLoader, ImmutableSet.of(mailClassLoader));
+
+    assertThrows(ClassNotFoundException.class, () -> uberClassLoader.loadClass("com.hitchhiker.Heart"));
+    assertThat(uberClassLoader.findResource("com/hitchhiker/heart.txt")).isNull();
+    assertThat(mailClassLoader.classLookups).isZero();
+    assertThat(mailClassLoader.resourceLookups).isZero();
+  }
+
+  @Test
+  void shouldRememberMissingClassesAndResources(@TempDir Path tempDir) throws IOException {
+    CountingPluginClassLoader mailClassLoader = createPluginClassLoader(tempDir, "sonia/scm/mail/mail.txt", "mail");
+
+    UberClassLoader uberClassLoader = new UberClassLoader(parentClassLoader, ImmutableSet.of(mailClassLoader));
+
+    assertThrows(ClassNotFoundException.class, () -> uberClassLoader.loadClass("sonia.scm.mail.ObjectFactory"));
+    assertThrows(ClassNotFoundException.class, () -> uberClassLoader.loadClass("sonia.scm.mail.ObjectFactory"));
+    assertThat(uberClassLoader.findResource("sonia/scm/mail/jaxb.index")).isNull();
+    assertThat(uberClassLoader.findResource("sonia/scm/mail/jaxb.index")).isNull();
+
+    assertThat(mailClassLoader.classLookups).isEqualTo(1);
+    assertThat(mailClassLoader.resourceLookups).isEqualTo(1);
+  }
+
+  @Test
+  void shouldFindDirectoriesWithoutOwnFiles(@TempDir Path tempDir) throws IOException {
+    CountingPluginClassLoader mailClassLoader = createPluginClassLoader(tempDir, "sonia/scm/mail/mail.txt", "mail");
+
+    UberClassLoader uberClassLoader = new UberClassLoader(parentClassLoader, ImmutableSet.of(mailClassLoader));
+
+    assertThat(uberClassLoader.findResource("sonia/scm")).isNotNull();
+    assertThat(uberClassLoader.findResource("sonia/scm/")).isNotNull();
+    assertThat(uberClassLoader.findResource("sonia")).isNotNull();
+  }
+
   @SuppressWarnings("UnstableApiUsage")
   private List<String> toContent(Iterable<URL> resources) throws IOException {
     List<String> content = new ArrayList<>();
@@ -92,5 +144,16 @@ class UberClassLoaderTest {
     }, parent);
   }
 
+  private CountingPluginClassLoader createPluginClassLoader(Path tempDir, String resource, String value) throws IOException {
+    Path directory = tempDir.resolve(UUID.randomUUID().toString());
+    Path file = directory.resolve(resource);
+    Files.createDirectories(file.getParent());
+    Files.write(file, value.getBytes(StandardCharsets.UTF_8));
+
+    return new CountingPluginClassLoader(new URL[]{
+      directory.toUri().toURL()
+    }, parentClassLoader, value);
+  }
+
 
 }
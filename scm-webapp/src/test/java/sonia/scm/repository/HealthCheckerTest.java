@@ -0,0 +1,223 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.repository;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sonia.scm.HandlerEventType;
+import sonia.scm.event.ScmEventBus;
+import sonia.scm.store.InMemoryDataStore;
+import sonia.scm.store.InMemoryDataStoreFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class HealthCheckerTest {
+
+  @Mock
+  private HealthCheck healthCheck;
+  @Mock
+  private RepositoryManager repositoryManager;
+  @Mock
+  private RepositoryLocationResolver locationResolver;
+  @Mock
+  private RepositoryLocationResolver.RepositoryLocationResolverInstance<Path> locationResolverInstance;
+  @Mock
+  private ScmEventBus eventBus;
+  @Mock
+  private Subject subject;
+
+  private final Repository puzzle = RepositoryTestData.create42Puzzle();
+  private final Repository heartOfGold = RepositoryTestData.createHeartOfGold();
+
+  private final InMemoryDataStore<HealthCheckFingerprint> fingerprints = new InMemoryDataStore<>();
+
+  private Path base;
+  private HealthChecker checker;
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp(@TempDir Path temp) throws IOException {
+    base = temp;
+    createData(puzzle);
+    createData(heartOfGold);
+
+    lenient().when(locationResolver.forClass(Path.class)).thenReturn(locationResolverInstance);
+    lenient().when(locationResolverInstance.getLocation(anyString()))
+      .thenAnswer(invocation -> base.resolve(invocation.getArgument(0, String.class)));
+    when(subject.isPermitted(anyString())).thenReturn(true);
+    lenient().when(subject.associateWith(any(Callable.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    ThreadContext.bind(subject);
+
+    checker = new HealthChecker(
+      Collections.singleton(healthCheck),
+      repositoryManager,
+      locationResolver,
+      new InMemoryDataStoreFactory(fingerprints),
+      eventBus,
+      2,
+      1
+    );
+  }
+
+  @AfterEach
+  void unbindSubject() {
+    ThreadContext.unbindSubject();
+  }
+
+  @Test
+  void shouldSkipUnchangedRepository() {
+    when(repositoryManager.getAll()).thenReturn(ImmutableList.of(puzzle));
+    when(healthCheck.check(puzzle)).thenReturn(HealthCheckResult.healthy());
+
+    checker.checkAll();
+    checker.checkAll();
+
+    verify(healthCheck, times(1)).check(puzzle);
+    verify(repositoryManager, never()).modify(any());
+    assertThat(lastEvent().getSkipped()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldCheckChangedRepository() throws IOException {
+    when(repositoryManager.getAll()).thenReturn(ImmutableList.of(puzzle));
+    when(healthCheck.check(puzzle)).thenReturn(HealthCheckResult.healthy());
+
+    checker.checkAll();
+    Files.write(data(puzzle).resolve("pushed"), "new".getBytes(StandardCharsets.UTF_8));
+    checker.checkAll();
+
+    verify(healthCheck, times(2)).check(puzzle);
+  }
+
+  @Test
+  void shouldAlwaysCheckUnhealthyRepository() {
+    when(repositoryManager.getAll()).thenReturn(ImmutableList.of(puzzle));
+    HealthCheckFailure failure = new HealthCheckFailure("42", "broken", "it is broken");
+    when(healthCheck.check(puzzle)).thenReturn(HealthCheckResult.unhealthy(failure));
+
+    checker.checkAll();
+    checker.checkAll();
+
+    verify(healthCheck, times(2)).check(puzzle);
+    verify(repositoryManager, times(2)).modify(puzzle);
+    assertThat(puzzle.getHealthCheckFailures()).containsExactly(failure);
+    assertThat(lastEvent().getUnhealthy()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldCheckRepositoryWithoutDirectory() {
+    Repository withoutDirectory = RepositoryTestData.createHappyVerticalPeopleTransporter();
+    when(repositoryManager.getAll()).thenReturn(ImmutableList.of(withoutDirectory));
+    when(healthCheck.check(withoutDirectory)).thenReturn(HealthCheckResult.healthy());
+
+    checker.checkAll();
+    checker.checkAll();
+
+    verify(healthCheck, times(2)).check(withoutDirectory);
+  }
+
+  @Test
+  void shouldPostProgressEvents() {
+    when(repositoryManager.getAll()).thenReturn(ImmutableList.of(puzzle, heartOfGold));
+    when(healthCheck.check(any())).thenReturn(HealthCheckResult.healthy());
+
+    checker.checkAll();
+
+    List<HealthCheckProgressEvent> events = events();
+    assertThat(events).hasSize(3);
+    assertThat(events.get(0).isFinished()).isFalse();
+    assertThat(events.get(2)).isEqualTo(new HealthCheckProgressEvent(2, 2, 0, 0, true));
+  }
+
+  @Test
+  void shouldSkipRepositoriesWithoutPermission() {
+    when(subject.isPermitted(anyString())).thenReturn(false);
+    when(repositoryManager.getAll()).thenReturn(ImmutableList.of(puzzle));
+
+    checker.checkAll();
+
+    verify(healthCheck, never()).check(any());
+    assertThat(lastEvent()).isEqualTo(new HealthCheckProgressEvent(0, 0, 0, 0, true));
+  }
+
+  @Test
+  void shouldRemoveFingerprintOfDeletedRepository() {
+    when(repositoryManager.getAll()).thenReturn(ImmutableList.of(puzzle, heartOfGold));
+    when(healthCheck.check(any())).thenReturn(HealthCheckResult.healthy());
+    checker.checkAll();
+
+    checker.onEvent(new RepositoryEvent(HandlerEventType.DELETE, puzzle));
+
+    assertThat(fingerprints.get(puzzle.getId())).isNull();
+    assertThat(fingerprints.get(heartOfGold.getId())).isNotNull();
+  }
+
+  private void createData(Repository repository) throws IOException {
+    Path data = data(repository);
+    Files.createDirectories(data.resolve("refs"));
+    Files.write(data.resolve("HEAD"), "ref: refs/heads/master".getBytes(StandardCharsets.UTF_8));
+  }
+
+  private Path data(Repository repository) {
+    return base.resolve(repository.getId()).resolve(RepositoryDirectoryHandler.REPOSITORIES_NATIVE_DIRECTORY);
+  }
+
+  private HealthCheckProgressEvent lastEvent() {
+    List<HealthCheckProgressEvent> events = events();
+    return events.get(events.size() - 1);
+  }
+
+  private List<HealthCheckProgressEvent> events() {
+    ArgumentCaptor<HealthCheckProgressEvent> captor = ArgumentCaptor.forClass(HealthCheckProgressEvent.class);
+    verify(eventBus, atLeastOnce()).post(captor.capture());
+    return captor.getAllValues();
+  }
+}
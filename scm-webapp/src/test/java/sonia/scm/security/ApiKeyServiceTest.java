@@ -48,6 +48,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class ApiKeyServiceTest {
@@ -61,7 +63,7 @@ class ApiKeyServiceTest {
   ApiKeyTokenHandler tokenHandler = new ApiKeyTokenHandler();
   DataStoreFactory storeFactory = new InMemoryDataStoreFactory(new InMemoryDataStore<ApiKeyCollection>());
   DataStore<ApiKeyCollection> store = storeFactory.withType(ApiKeyCollection.class).withName("apiKeys").build();
-  ApiKeyService service = new ApiKeyService(storeFactory, passwordService, keyGenerator, tokenHandler, passphraseGenerator);
+  ApiKeyService service = new ApiKeyService(storeFactory, passwordService, keyGenerator, tokenHandler, new VerifiedCredentialCache(), passphraseGenerator);
 
   @BeforeEach
   void mockPasswordService() {
@@ -151,6 +153,16 @@ class ApiKeyServiceTest {
       assertThat(service.check(secondKey)).extracting("permissionRole").isEqualTo("WRITE");
     }
 
+    @Test
+    void shouldVerifyPassphraseOnlyOnce() {
+      String key = service.createNewKey("dent","1", "READ").getToken();
+
+      service.check(key);
+      service.check(key);
+
+      verify(passwordService, times(1)).passwordsMatch(any(), any());
+    }
+
     @Test
     void shouldFailWhenAddingSameNameTwice() {
       String firstKey = service.createNewKey("dent","1", "READ").getToken();
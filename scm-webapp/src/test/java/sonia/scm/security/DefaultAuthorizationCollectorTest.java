@@ -40,14 +40,18 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
+import sonia.scm.HandlerEventType;
 import sonia.scm.SCMContext;
 import sonia.scm.cache.Cache;
 import sonia.scm.cache.CacheManager;
 import sonia.scm.group.GroupCollector;
 import sonia.scm.repository.Namespace;
 import sonia.scm.repository.NamespaceDao;
+import sonia.scm.repository.NamespaceModificationEvent;
 import sonia.scm.repository.Repository;
 import sonia.scm.repository.RepositoryDAO;
+import sonia.scm.repository.RepositoryEvent;
+import sonia.scm.repository.RepositoryModificationEvent;
 import sonia.scm.repository.RepositoryPermission;
 import sonia.scm.repository.RepositoryRole;
 import sonia.scm.repository.RepositoryTestData;
@@ -61,10 +65,13 @@ import static java.util.Optional.of;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.nullValue;
-import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyObject;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -133,12 +140,15 @@ public class DefaultAuthorizationCollectorTest {
     configuration = "classpath:sonia/scm/shiro-001.ini"
   )
   public void testCollectFromCache() {
-    AuthorizationInfo info = new SimpleAuthorizationInfo();
+    SimpleAuthorizationInfo info = new SimpleAuthorizationInfo(ImmutableSet.of(Role.USER));
+    info.addStringPermission("some:cached:permission");
     when(cache.get(anyObject())).thenReturn(info);
     authenticate(UserTestData.createTrillian(), "main");
 
     AuthorizationInfo authInfo = collector.collect();
-    assertSame(info, authInfo);
+    assertThat(authInfo.getRoles(), Matchers.contains(Role.USER));
+    assertThat(authInfo.getStringPermissions(), containsInAnyOrder("some:cached:permission"));
+    verify(cache, never()).put(any(), any());
   }
 
   /**
@@ -169,7 +179,7 @@ public class DefaultAuthorizationCollectorTest {
     assertThat(authInfo.getRoles(), Matchers.contains(Role.USER));
     assertThat(authInfo.getStringPermissions(), hasSize(6));
     assertThat(authInfo.getStringPermissions(), containsInAnyOrder("user:autocomplete", "group:autocomplete", "user:changePassword:trillian", "user:read:trillian", "user:changeApiKeys:trillian", "user:changePublicKeys:trillian"));
-    assertThat(authInfo.getObjectPermissions(), nullValue());
+    assertThat(authInfo.getObjectPermissions(), hasSize(1));
   }
 
   /**
@@ -186,7 +196,7 @@ public class DefaultAuthorizationCollectorTest {
     assertThat(authInfo.getRoles(), Matchers.contains(Role.USER));
     assertThat(authInfo.getStringPermissions(), hasSize(1));
     assertThat(authInfo.getStringPermissions(), containsInAnyOrder("user:read:_anonymous"));
-    assertThat(authInfo.getObjectPermissions(), nullValue());
+    assertThat(authInfo.getObjectPermissions(), hasSize(1));
   }
 
   /**
@@ -211,8 +221,9 @@ public class DefaultAuthorizationCollectorTest {
     // execute and assert
     AuthorizationInfo authInfo = collector.collect();
     assertThat(authInfo.getRoles(), Matchers.containsInAnyOrder(Role.USER));
-    assertThat(authInfo.getObjectPermissions(), nullValue());
-    assertThat(authInfo.getStringPermissions(), containsInAnyOrder("user:autocomplete", "group:autocomplete", "user:changePassword:trillian", "repository:read,pull:one", "repository:read,pull,push:two", "user:read:trillian", "user:changeApiKeys:trillian", "user:changePublicKeys:trillian"));
+    assertThat(authInfo.getStringPermissions(), containsInAnyOrder("user:autocomplete", "group:autocomplete", "user:changePassword:trillian", "user:read:trillian", "user:changeApiKeys:trillian", "user:changePublicKeys:trillian"));
+    assertPermitted(authInfo, "repository:read,pull:one", "repository:read,pull,push:two", "repository:read:two");
+    assertNotPermitted(authInfo, "repository:push:one", "repository:delete:two", "repository:read:three", "repository:read:*");
   }
 
   /**
@@ -243,8 +254,9 @@ public class DefaultAuthorizationCollectorTest {
     // execute and assert
     AuthorizationInfo authInfo = collector.collect();
     assertThat(authInfo.getRoles(), Matchers.containsInAnyOrder(Role.USER));
-    assertThat(authInfo.getObjectPermissions(), nullValue());
-    assertThat(authInfo.getStringPermissions(), containsInAnyOrder("user:autocomplete", "group:autocomplete", "user:changePassword:trillian", "repository:read,pull:one", "repository:read,pull,push:two", "user:read:trillian", "user:changeApiKeys:trillian", "user:changePublicKeys:trillian"));
+    assertThat(authInfo.getStringPermissions(), containsInAnyOrder("user:autocomplete", "group:autocomplete", "user:changePassword:trillian", "user:read:trillian", "user:changeApiKeys:trillian", "user:changePublicKeys:trillian"));
+    assertPermitted(authInfo, "repository:read,pull:one", "repository:read,pull,push:two", "repository:read:two");
+    assertNotPermitted(authInfo, "repository:push:one", "repository:delete:two", "repository:read:three", "repository:read:*");
   }
 
   /**
@@ -279,18 +291,8 @@ public class DefaultAuthorizationCollectorTest {
     // execute and assert
     AuthorizationInfo authInfo = collector.collect();
     assertThat(authInfo.getRoles(), Matchers.containsInAnyOrder(Role.USER));
-    assertThat(authInfo.getObjectPermissions(), nullValue());
-    assertThat(authInfo.getStringPermissions(), containsInAnyOrder(
-      "user:autocomplete",
-      "group:autocomplete",
-      "user:changePassword:trillian",
-      "repository:user:one",
-      "repository:system:one",
-      "repository:group:two",
-      "user:read:trillian",
-      "user:changeApiKeys:trillian",
-      "user:changePublicKeys:trillian"
-    ));
+    assertPermitted(authInfo, "repository:user:one", "repository:system:one", "repository:group:two");
+    assertNotPermitted(authInfo, "repository:group:one", "repository:user:two");
   }
 
   /**
@@ -319,6 +321,102 @@ public class DefaultAuthorizationCollectorTest {
     AuthorizationInfo authInfo = collector.collect();
   }
 
+  /**
+   * Tests that a modification with an unknown repository role does not keep outdated permissions.
+   */
+  @Test(expected = IllegalStateException.class)
+  @SubjectAware(
+    configuration = "classpath:sonia/scm/shiro-001.ini"
+  )
+  public void testCollectAfterModificationWithUnknownRepositoryRole() {
+    authenticate(UserTestData.createTrillian(), "main");
+    Repository heartOfGold = RepositoryTestData.createHeartOfGold();
+    heartOfGold.setId("one");
+    heartOfGold.setPermissions(newArrayList(new RepositoryPermission("trillian", asList("read", "pull"), false)));
+    when(repositoryDAO.getAll()).thenReturn(newArrayList(heartOfGold));
+    collector.collect();
+
+    Repository modified = heartOfGold.clone();
+    modified.setPermissions(newArrayList(new RepositoryPermission("trillian", "unknown", false)));
+    when(repositoryDAO.getAll()).thenReturn(newArrayList(modified));
+    collector.updateIndex(new RepositoryModificationEvent(HandlerEventType.MODIFY, modified, heartOfGold));
+
+    collector.collect();
+  }
+
+  /**
+   * Tests that the repository permissions are updated with repository events.
+   */
+  @Test
+  @SubjectAware(
+    configuration = "classpath:sonia/scm/shiro-001.ini"
+  )
+  public void testUpdateRepositoryPermissionsWithEvents() {
+    authenticate(UserTestData.createTrillian(), "main");
+    Repository heartOfGold = RepositoryTestData.createHeartOfGold();
+    heartOfGold.setId("one");
+    heartOfGold.setPermissions(newArrayList(new RepositoryPermission("trillian", asList("read", "pull"), false)));
+    when(repositoryDAO.getAll()).thenReturn(newArrayList(heartOfGold));
+
+    AuthorizationInfo authInfo = collector.collect();
+    assertPermitted(authInfo, "repository:read:one");
+
+    Repository modified = heartOfGold.clone();
+    modified.setPermissions(newArrayList(new RepositoryPermission("trillian", asList("read", "pull", "push"), false)));
+    collector.updateIndex(new RepositoryModificationEvent(HandlerEventType.MODIFY, modified, heartOfGold));
+    assertPermitted(authInfo, "repository:push:one");
+
+    Repository created = RepositoryTestData.create42Puzzle();
+    created.setId("two");
+    created.setPermissions(newArrayList(new RepositoryPermission("main", singletonList("read"), true)));
+    collector.updateIndex(new RepositoryEvent(HandlerEventType.CREATE, created));
+    assertPermitted(authInfo, "repository:read:two");
+
+    collector.updateIndex(new RepositoryEvent(HandlerEventType.DELETE, modified));
+    assertNotPermitted(authInfo, "repository:read:one");
+    verify(repositoryDAO, times(1)).getAll();
+  }
+
+  /**
+   * Tests that the namespace permissions are updated with namespace events.
+   */
+  @Test
+  @SubjectAware(
+    configuration = "classpath:sonia/scm/shiro-001.ini"
+  )
+  public void testUpdateNamespacePermissionsWithEvents() {
+    authenticate(UserTestData.createTrillian(), "main");
+    Repository heartOfGold = RepositoryTestData.createHeartOfGold();
+    heartOfGold.setId("one");
+    when(repositoryDAO.getAll()).thenReturn(newArrayList(heartOfGold));
+
+    AuthorizationInfo authInfo = collector.collect();
+    assertNotPermitted(authInfo, "repository:read:one");
+
+    Namespace namespace = new Namespace(heartOfGold.getNamespace());
+    namespace.setPermissions(newArrayList(new RepositoryPermission("trillian", singletonList("read"), false)));
+    collector.updateIndex(new NamespaceModificationEvent(HandlerEventType.MODIFY, namespace, new Namespace(heartOfGold.getNamespace())));
+
+    assertPermitted(authInfo, "repository:read:one");
+  }
+
+  private void assertPermitted(AuthorizationInfo authInfo, String... permissions) {
+    for (String permission : permissions) {
+      assertTrue("expected permission " + permission, isPermitted(authInfo, permission));
+    }
+  }
+
+  private void assertNotPermitted(AuthorizationInfo authInfo, String... permissions) {
+    for (String permission : permissions) {
+      assertFalse("unexpected permission " + permission, isPermitted(authInfo, permission));
+    }
+  }
+
+  private boolean isPermitted(AuthorizationInfo authInfo, String permission) {
+    ScmWildcardPermission requested = new ScmWildcardPermission(permission);
+    return authInfo.getObjectPermissions().stream().anyMatch(p -> p.implies(requested));
+  }
+
   /**
    * Tests {@link AuthorizationCollector#collect(PrincipalCollection)} ()} with global permissions.
    */
@@ -336,7 +434,7 @@ public class DefaultAuthorizationCollectorTest {
     // execute and assert
     AuthorizationInfo authInfo = collector.collect();
     assertThat(authInfo.getRoles(), Matchers.containsInAnyOrder(Role.USER));
-    assertThat(authInfo.getObjectPermissions(), nullValue());
+    assertThat(authInfo.getObjectPermissions(), hasSize(1));
     assertThat(authInfo.getStringPermissions(), containsInAnyOrder("one:one", "two:two", "user:read:trillian", "user:autocomplete", "group:autocomplete", "user:changePassword:trillian", "user:changeApiKeys:trillian", "user:changePublicKeys:trillian"));
   }
 
@@ -280,7 +280,7 @@ public class DefaultRealmTest
     authorizationCollectors = new HashSet<>();
     authorizationCollectors.add(collector);
 
-    realm = new DefaultRealm(service, authorizationCollectors, helperFactory);
+    realm = new DefaultRealm(service, authorizationCollectors, helperFactory, new VerifiedCredentialCache());
     
     // set permission resolver
     realm.setPermissionResolver(new WildcardPermissionResolver());
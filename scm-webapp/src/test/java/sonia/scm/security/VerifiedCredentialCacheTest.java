@@ -0,0 +1,144 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-present Cloudogu GmbH and Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package sonia.scm.security;
+
+import com.google.common.base.Ticker;
+import org.junit.jupiter.api.Test;
+import sonia.scm.HandlerEventType;
+import sonia.scm.user.User;
+import sonia.scm.user.UserEvent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VerifiedCredentialCacheTest {
+
+  private long now = 0;
+  private final Ticker ticker = new Ticker() {
+    @Override
+    public long read() {
+      return now;
+    }
+  };
+
+  private final AtomicInteger verifications = new AtomicInteger();
+
+  private final VerifiedCredentialCache cache = new VerifiedCredentialCache(30, 10, ticker);
+
+  @Test
+  void shouldVerifyOnlyOnce() {
+    assertThat(cache.verify("trillian", "secret", "hash", succeeding())).isTrue();
+    assertThat(cache.verify("trillian", "secret", "hash", succeeding())).isTrue();
+
+    assertThat(verifications).hasValue(1);
+  }
+
+  @Test
+  void shouldNotCacheFailedVerifications() {
+    assertThat(cache.verify("trillian", "wrong", "hash", failing())).isFalse();
+    assertThat(cache.verify("trillian", "wrong", "hash", failing())).isFalse();
+
+    assertThat(verifications).hasValue(2);
+  }
+
+  @Test
+  void shouldVerifyDifferentSecret() {
+    cache.verify("trillian", "secret", "hash", succeeding());
+
+    assertThat(cache.verify("trillian", "other", "hash", failing())).isFalse();
+  }
+
+  @Test
+  void shouldVerifyAgainIfStoredHashHasChanged() {
+    cache.verify("trillian", "secret", "hash", succeeding());
+
+    assertThat(cache.verify("trillian", "secret", "newHash", failing())).isFalse();
+  }
+
+  @Test
+  void shouldVerifyAgainAfterExpiration() {
+    cache.verify("trillian", "secret", "hash", succeeding());
+
+    now += TimeUnit.SECONDS.toNanos(31);
+
+    assertThat(cache.verify("trillian", "secret", "hash", failing())).isFalse();
+  }
+
+  @Test
+  void shouldVerifyAgainAfterInvalidation() {
+    cache.verify("trillian", "secret", "hash", succeeding());
+    cache.verify("dent", "secret", "hash", succeeding());
+
+    cache.invalidate("trillian");
+
+    assertThat(cache.verify("trillian", "secret", "hash", failing())).isFalse();
+    assertThat(cache.verify("dent", "secret", "hash", failing())).isTrue();
+  }
+
+  @Test
+  void shouldInvalidateOnModifiedUser() {
+    cache.verify("trillian", "secret", "hash", succeeding());
+
+    cache.onEvent(new UserEvent(HandlerEventType.MODIFY, new User("trillian")));
+
+    assertThat(cache.verify("trillian", "secret", "hash", failing())).isFalse();
+  }
+
+  @Test
+  void shouldInvalidateOnDeletedUser() {
+    cache.verify("trillian", "secret", "hash", succeeding());
+
+    cache.onEvent(new UserEvent(HandlerEventType.DELETE, new User("trillian")));
+
+    assertThat(cache.verify("trillian", "secret", "hash", failing())).isFalse();
+  }
+
+  @Test
+  void shouldAlwaysVerifyIfDisabled() {
+    VerifiedCredentialCache disabled = new VerifiedCredentialCache(0, 10, ticker);
+
+    disabled.verify("trillian", "secret", "hash", succeeding());
+    disabled.verify("trillian", "secret", "hash", succeeding());
+
+    assertThat(verifications).hasValue(2);
+  }
+
+  private BooleanSupplier succeeding() {
+    return () -> {
+      verifications.incrementAndGet();
+      return true;
+    };
+  }
+
+  private BooleanSupplier failing() {
+    return () -> {
+      verifications.incrementAndGet();
+      return false;
+    };
+  }
+}